@@ -0,0 +1,103 @@
+package com.av.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.av.autopivot.AutoPivotGenerator;
+import com.av.benchmark.SyntheticCSV.SEPARATOR;
+import com.av.csv.CSVFormat;
+import com.av.csv.discover.CSVDiscovery;
+
+/**
+ *
+ * Average time of the CSV discovery steps: separator detection, type
+ * detection of the sampled columns, and the discovery of a whole file,
+ * over synthetic files of various widths, separators and date formats.
+ * The date formats are ordered like the candidate date parsers, so the
+ * last one measures the worst case where every parser is tried.
+ *
+ * @author ActiveViam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CSVDiscoveryBenchmark {
+
+	/** Rows of the generated file, the discovery reads at most 1000 lines */
+	public static final int ROW_COUNT = 1000;
+
+	@Param({ "5", "20", "100" })
+	public int width;
+
+	@Param({ "SEMICOLON", "COMMA", "TAB" })
+	public SEPARATOR separator;
+
+	@Param({ "yyyy-MM-dd", "dd/MM/yyyy", "EEE MMM dd HH:mm:ss zzzz yyyy" })
+	public String datePattern;
+
+	protected CSVDiscovery discovery;
+
+	protected List<String> lines;
+
+	protected List<List<String>> columns;
+
+	protected Path file;
+
+	@Setup
+	public void setup() throws IOException {
+		AutoPivotGenerator.initRegistry(Collections.singletonList("com.av"));
+		discovery = new CSVDiscovery();
+
+		SyntheticCSV csv = new SyntheticCSV(width, 0.1d, separator, datePattern);
+		lines = new ArrayList<>(ROW_COUNT + 1);
+		lines.add(csv.header());
+		lines.addAll(csv.rows(ROW_COUNT));
+		columns = CSVDiscovery.toColumns(lines.subList(1, lines.size()), csv.getSeparator());
+		file = csv.write(Files.createTempFile("autopivot-discovery", ".csv"), ROW_COUNT);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public String detectSeparator() {
+		return discovery.detectSeparator(lines);
+	}
+
+	@Benchmark
+	public void detectType(Blackhole blackhole) {
+		for (List<String> column : columns) {
+			blackhole.consume(discovery.detectType(column));
+		}
+	}
+
+	@Benchmark
+	public CSVFormat discoverFile() throws IOException {
+		return discovery.discoverFile(file.toString());
+	}
+}
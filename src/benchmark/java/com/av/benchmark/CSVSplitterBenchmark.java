@@ -0,0 +1,66 @@
+package com.av.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.av.benchmark.SyntheticCSV.SEPARATOR;
+import com.av.csv.CSVSplitter;
+
+/**
+ *
+ * Throughput of {@link CSVSplitter#split(String, String)}, in rows per microsecond,
+ * over synthetic rows of various widths, quoting densities and separators.
+ *
+ * @author ActiveViam
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CSVSplitterBenchmark {
+
+	/** Number of rows split by each invocation */
+	public static final int ROW_COUNT = 1000;
+
+	@Param({ "5", "20", "100" })
+	public int width;
+
+	@Param({ "0", "0.3" })
+	public double quoteRatio;
+
+	@Param({ "SEMICOLON", "COMMA", "TAB", "PIPE" })
+	public SEPARATOR separator;
+
+	protected List<String> rows;
+
+	@Setup
+	public void setup() {
+		rows = new SyntheticCSV(width, quoteRatio, separator, "yyyy-MM-dd").rows(ROW_COUNT);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROW_COUNT)
+	public void split(Blackhole blackhole) {
+		String sep = separator.getValue();
+		for (int r = 0; r < ROW_COUNT; r++) {
+			blackhole.consume(CSVSplitter.split(rows.get(r), sep));
+		}
+	}
+}
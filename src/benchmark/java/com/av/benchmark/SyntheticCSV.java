@@ -0,0 +1,208 @@
+package com.av.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ * Deterministic generator of synthetic CSV files for the benchmarks.
+ * <p>
+ * The columns cycle through the types found in real files: identifiers,
+ * labels of a given cardinality, integers, decimals, dates and free text. Free
+ * text fields are quoted with the given probability, and then contain
+ * the separator so that the quote handling of the parsers is exercised.
+ * The same seed always produces the same file.
+ *
+ * @author ActiveViam
+ *
+ */
+public class SyntheticCSV {
+
+	/** Candidate separators, named so they can be used as benchmark parameters */
+	public enum SEPARATOR {
+		SEMICOLON(";"),
+		COMMA(","),
+		TAB("\t"),
+		PIPE("|");
+
+		private final String value;
+
+		SEPARATOR(String value) { this.value = value; }
+
+		public String getValue() { return value; }
+	}
+
+	/** Kinds of generated columns, cycled through by column index */
+	public enum COLUMN_KIND { ID, LABEL, INTEGER, DECIMAL, DATE, TEXT }
+
+	/** Default column kinds */
+	public static final List<COLUMN_KIND> DEFAULT_KINDS = Arrays.asList(COLUMN_KIND.values());
+
+	/** Default number of distinct values of the label columns */
+	public static final int DEFAULT_CARDINALITY = 8;
+
+	/** Default seed */
+	public static final long DEFAULT_SEED = 42L;
+
+	/** First generated date, 2018-01-01 UTC */
+	protected static final long START_DATE = 1514764800000L;
+
+	protected static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit" };
+
+	/** Number of columns */
+	protected final int width;
+
+	/** Probability that a text field is quoted */
+	protected final double quoteRatio;
+
+	/** Field separator */
+	protected final String separator;
+
+	/** Date pattern of the date columns */
+	protected final String datePattern;
+
+	/** Kinds of the columns, cycled through */
+	protected final List<COLUMN_KIND> kinds;
+
+	/** Number of distinct values of the label columns */
+	protected final int cardinality;
+
+	/** Seed of the random generator */
+	protected final long seed;
+
+	public SyntheticCSV(int width, double quoteRatio, SEPARATOR separator, String datePattern) {
+		this(width, quoteRatio, separator, datePattern, DEFAULT_KINDS, DEFAULT_CARDINALITY, DEFAULT_SEED);
+	}
+
+	public SyntheticCSV(int width, double quoteRatio, SEPARATOR separator, String datePattern,
+			List<COLUMN_KIND> kinds, int cardinality, long seed) {
+		this.width = width;
+		this.quoteRatio = quoteRatio;
+		this.separator = separator.getValue();
+		this.datePattern = datePattern;
+		this.kinds = kinds;
+		this.cardinality = cardinality;
+		this.seed = seed;
+	}
+
+	public String getSeparator() { return separator; }
+
+	/** @return header row with the column names */
+	public String header() {
+		StringBuilder header = new StringBuilder();
+		for (int c = 0; c < width; c++) {
+			if (c > 0) {
+				header.append(separator);
+			}
+			header.append(getKind(c).name()).append('_').append(c);
+		}
+		return header.toString();
+	}
+
+	/**
+	 * Generate the rows of the file, without header
+	 *
+	 * @param rowCount number of rows
+	 * @return text rows
+	 */
+	public List<String> rows(int rowCount) {
+		Random random = new Random(seed);
+		SimpleDateFormat dateFormat = createDateFormat();
+		List<String> rows = new ArrayList<>(rowCount);
+		StringBuilder row = new StringBuilder();
+		for (int r = 0; r < rowCount; r++) {
+			row.setLength(0);
+			appendRow(row, r, random, dateFormat);
+			rows.add(row.toString());
+		}
+		return rows;
+	}
+
+	/**
+	 * Write a CSV file with a header and the generated rows
+	 *
+	 * @param path file to write
+	 * @param rowCount number of rows
+	 * @return the file path
+	 * @throws IOException if the file cannot be written
+	 */
+	public Path write(Path path, long rowCount) throws IOException {
+		Random random = new Random(seed);
+		SimpleDateFormat dateFormat = createDateFormat();
+		StringBuilder row = new StringBuilder();
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			writer.write(header());
+			writer.newLine();
+			for (long r = 0; r < rowCount; r++) {
+				row.setLength(0);
+				appendRow(row, r, random, dateFormat);
+				writer.append(row);
+				writer.newLine();
+			}
+		}
+		return path;
+	}
+
+	protected void appendRow(StringBuilder row, long rowIndex, Random random, SimpleDateFormat dateFormat) {
+		for (int c = 0; c < width; c++) {
+			if (c > 0) {
+				row.append(separator);
+			}
+			switch (getKind(c)) {
+			case ID:
+				row.append("ID").append(rowIndex);
+				break;
+			case LABEL:
+				row.append('L').append(random.nextInt(cardinality));
+				break;
+			case INTEGER:
+				row.append(random.nextInt(100));
+				break;
+			case DECIMAL:
+				row.append(Math.round(random.nextGaussian() * 1000000d) / 100d);
+				break;
+			case DATE:
+				row.append(dateFormat.format(new Date(START_DATE + TimeUnit.DAYS.toMillis(random.nextInt(365)))));
+				break;
+			case TEXT:
+				boolean quoted = random.nextDouble() < quoteRatio;
+				if (quoted) {
+					row.append('"');
+				}
+				int wordCount = 2 + random.nextInt(6);
+				for (int w = 0; w < wordCount; w++) {
+					if (w > 0) {
+						row.append(quoted && w == 1 ? separator : " ");
+					}
+					row.append(WORDS[random.nextInt(WORDS.length)]);
+				}
+				if (quoted) {
+					row.append('"');
+				}
+				break;
+			}
+		}
+	}
+
+	protected COLUMN_KIND getKind(int column) {
+		return kinds.get(column % kinds.size());
+	}
+
+	protected SimpleDateFormat createDateFormat() {
+		SimpleDateFormat dateFormat = new SimpleDateFormat(datePattern, Locale.US);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return dateFormat;
+	}
+}
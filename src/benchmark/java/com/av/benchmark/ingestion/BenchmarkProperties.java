@@ -0,0 +1,37 @@
+package com.av.benchmark.ingestion;
+
+import java.util.Properties;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.av.autopivot.config.properties.AutoPivotProperties;
+
+/**
+ *
+ * AutoPivot properties read from the system properties instead of
+ * autopivot.properties, so that the benchmark only loads its own dataset.
+ *
+ * @author ActiveViam
+ *
+ */
+@Configuration
+public class BenchmarkProperties extends AutoPivotProperties {
+
+	/** Prefix of the AutoPivot properties */
+	public static final String PREFIX = "autopivot.";
+
+	@Override
+	@Bean
+	@Qualifier("autoPivotProperties")
+	public Properties autoPivotProperties() {
+		Properties properties = new Properties();
+		for (String key : System.getProperties().stringPropertyNames()) {
+			if (key.startsWith(PREFIX)) {
+				properties.setProperty(key, System.getProperty(key));
+			}
+		}
+		return properties;
+	}
+}
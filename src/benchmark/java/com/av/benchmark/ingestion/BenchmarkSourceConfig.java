@@ -0,0 +1,55 @@
+package com.av.benchmark.ingestion;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+
+import com.av.autopivot.config.source.SourceConfig;
+import com.av.csv.CSVFormat;
+import com.qfs.msg.IColumnCalculator;
+import com.qfs.msg.csv.IFileInfo;
+import com.qfs.msg.csv.ILineReader;
+import com.qfs.source.ITuplePublisher;
+
+/**
+ *
+ * Source configuration measuring the phases of the initial loading.
+ *
+ * @author ActiveViam
+ *
+ */
+@Configuration
+public class BenchmarkSourceConfig extends SourceConfig {
+
+	@Autowired
+	protected IngestionStatistics statistics;
+
+	@Override
+	protected List<IColumnCalculator<ILineReader>> createCalculatedColumns(CSVFormat discovery) {
+		List<IColumnCalculator<ILineReader>> calculatedColumns = new ArrayList<>();
+		for (IColumnCalculator<ILineReader> calculator : super.createCalculatedColumns(discovery)) {
+			calculatedColumns.add(new TimedColumnCalculator(calculator, statistics));
+		}
+		return calculatedColumns;
+	}
+
+	@Override
+	protected ITuplePublisher<IFileInfo<Path>> createPublisher(String storeName, ITuplePublisher<IFileInfo<Path>> publisher) {
+		return new TimedTuplePublisher<>(publisher, statistics);
+	}
+
+	@Override
+	@Bean
+	@DependsOn(value = "startManager")
+	public Void loadAllData() throws Exception {
+		long start = System.nanoTime();
+		super.loadAllData();
+		statistics.addLoad(System.nanoTime() - start);
+		return null;
+	}
+}
@@ -0,0 +1,165 @@
+package com.av.benchmark.ingestion;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.av.autopivot.AutoPivotGenerator;
+import com.av.autopivot.config.properties.AutoPivotProperties;
+import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
+import com.av.benchmark.SyntheticCSV;
+import com.av.benchmark.SyntheticCSV.COLUMN_KIND;
+import com.av.benchmark.SyntheticCSV.SEPARATOR;
+
+/**
+ *
+ * Headless end to end ingestion benchmark: generate a synthetic CSV file,
+ * load it with the datastore and the CSV source of AutoPivot, and report
+ * the throughput, the time of each phase and the peak heap.
+ * <p>
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec -Djmh.args= -Dbenchmark.main=com.av.benchmark.ingestion.IngestionBenchmark
+ * -Dbenchmark.jvmArgs="-Xmx8g -Dbench.rows=5000000"</code>, or from the IDE. The options are system properties:
+ * <ul>
+ * <li>bench.rows (1000000), bench.width (20), bench.cardinality (1000) of the label columns</li>
+ * <li>bench.kinds (ID,LABEL,INTEGER,DECIMAL,DATE,TEXT) cycled through by the columns</li>
+ * <li>bench.quoteRatio (0.1), bench.separator (SEMICOLON), bench.datePattern (yyyy-MM-dd)</li>
+ * <li>bench.file to load an existing file instead of a generated one</li>
+ * </ul>
+ * The AutoPivot options of the dataset, named bench, and the global options are passed
+ * the same way, for instance -Dautopivot.csv.parserThreads=4,
+ * -Dautopivot.discover.data.bench.datastore.partitionField=LABEL_1
+ * or -Dautopivot.discover.data.bench.decimalPrecision=6.
+ *
+ * @author ActiveViam
+ *
+ */
+public class IngestionBenchmark {
+
+	/** Name of the benchmarked dataset */
+	public static final String DATASET = "bench";
+
+	public static void main(String[] args) throws Exception {
+		long rows = Long.getLong("bench.rows", 1000000L);
+		String fileName = System.getProperty("bench.file");
+		boolean generated = fileName == null;
+
+		// Generate the file
+		Path file;
+		long generationMillis = 0L;
+		if (generated) {
+			SyntheticCSV csv = new SyntheticCSV(Integer.getInteger("bench.width", 20),
+												Double.parseDouble(System.getProperty("bench.quoteRatio", "0.1")),
+												SEPARATOR.valueOf(System.getProperty("bench.separator", SEPARATOR.SEMICOLON.name())),
+												System.getProperty("bench.datePattern", "yyyy-MM-dd"),
+												parseKinds(System.getProperty("bench.kinds")),
+												Integer.getInteger("bench.cardinality", 1000),
+												SyntheticCSV.DEFAULT_SEED);
+			long start = System.nanoTime();
+			file = csv.write(Files.createTempFile("autopivot-ingestion", ".csv"), rows);
+			generationMillis = (System.nanoTime() - start) / 1000000L;
+		} else {
+			file = Paths.get(fileName);
+		}
+		System.setProperty(DataInfo.DATA_INFO_ROOT_KEY + DATASET + "." + DataInfo.DATA_INFO_FILENAME, file.toString());
+
+		// Load the file in the datastore
+		AutoPivotGenerator.initRegistry(Collections.singletonList("com.av"));
+		System.gc();
+		resetPeakHeap();
+		long start = System.nanoTime();
+		try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(IngestionBenchmarkConfig.class)) {
+			long startupMillis = (System.nanoTime() - start) / 1000000L;
+			IngestionStatistics statistics = context.getBean(IngestionStatistics.class);
+			Integer parserThreads = context.getBean(AutoPivotProperties.class).getParserThreads();
+			report(file, generated ? rows : -1L, generationMillis, startupMillis, parserThreads, statistics);
+		} finally {
+			if (generated) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	protected static List<COLUMN_KIND> parseKinds(String kinds) {
+		if (kinds == null || kinds.trim().isEmpty()) {
+			return SyntheticCSV.DEFAULT_KINDS;
+		}
+		List<COLUMN_KIND> result = new ArrayList<>();
+		for (String kind : kinds.split(",")) {
+			result.add(COLUMN_KIND.valueOf(kind.trim().toUpperCase()));
+		}
+		return result;
+	}
+
+	protected static void report(Path file, long rows, long generationMillis, long startupMillis,
+			Integer parserThreads, IngestionStatistics statistics) throws IOException {
+		double megaBytes = Files.size(file) / (1024d * 1024d);
+		long loadMillis = Math.max(1L, statistics.getLoadMillis());
+		long tuples = statistics.getPublishedTuples();
+
+		System.out.println("=== AutoPivot ingestion benchmark ===");
+		print("File", file + (rows >= 0 ? " (generated in " + generationMillis + " ms)" : ""));
+		print("Size", format("%.1f MB", megaBytes));
+		print("Parser threads", parserThreads == null ? "default" : parserThreads.toString());
+		print("Rows published", tuples + " in " + statistics.getPublishCount() + " transactions");
+		print("Startup", startupMillis + " ms (datastore creation and loading)");
+		print("Load", loadMillis + " ms");
+		print("Throughput", format("%.1f MB/s, %.0f rows/s", megaBytes * 1000d / loadMillis, tuples * 1000d / loadMillis));
+		System.out.println("--- Phases (calculated columns are summed over the parser threads) ---");
+		print("Discovery", statistics.getDiscoveryMillis() + " ms (" + statistics.getDiscoveryCount() + " discoveries)");
+		print("Parse", Math.max(0L, loadMillis - statistics.getPublishMillis()) + " ms (load minus publish)");
+		print("Calculated columns", statistics.getCalculatedColumnMillis() + " ms");
+		print("Publish and commit", statistics.getPublishMillis() + " ms");
+		System.out.println("--- Memory ---");
+		print("Peak heap", format("%.1f MB", getPeakHeap() / (1024d * 1024d)));
+		print("Direct buffers", format("%.1f MB", getDirectMemory() / (1024d * 1024d)));
+	}
+
+	protected static void print(String label, String value) {
+		System.out.println(String.format(Locale.US, "%-20s %s", label, value));
+	}
+
+	protected static String format(String format, Object... values) {
+		return String.format(Locale.US, format, values);
+	}
+
+	protected static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/** @return sum of the peak usage of the heap memory pools */
+	protected static long getPeakHeap() {
+		long peak = 0L;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	/** @return memory used by the direct buffers */
+	protected static long getDirectMemory() {
+		long used = 0L;
+		for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+			if ("direct".equals(pool.getName())) {
+				used += pool.getMemoryUsed();
+			}
+		}
+		return used;
+	}
+}
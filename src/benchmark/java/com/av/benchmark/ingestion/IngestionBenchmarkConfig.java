@@ -0,0 +1,48 @@
+package com.av.benchmark.ingestion;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import com.av.autopivot.AutoPivotDiscoveryCreator;
+import com.av.autopivot.config.datastore.DatastoreDescriptionConfig;
+import com.av.autopivot.config.monitoring.MonitoringConfig;
+import com.av.autopivot.config.pivot.ActivePivotManagerDescriptionConfig;
+import com.qfs.server.cfg.impl.DatastoreConfig;
+
+/**
+ *
+ * Spring configuration of the ingestion benchmark: the datastore and
+ * the CSV source of AutoPivot, without the cube, the services and the web layer.
+ *
+ * @author ActiveViam
+ *
+ */
+@Configuration
+@Import(
+value = {
+		BenchmarkProperties.class,
+		ActivePivotManagerDescriptionConfig.class,
+		DatastoreDescriptionConfig.class,
+		DatastoreConfig.class,
+		MonitoringConfig.class,
+		BenchmarkSourceConfig.class
+})
+public class IngestionBenchmarkConfig {
+
+	@Bean
+	public IngestionStatistics ingestionStatistics() {
+		return new IngestionStatistics();
+	}
+
+	@Bean
+	public AutoPivotDiscoveryCreator discoveryCreator() {
+		return new TimedDiscoveryCreator();
+	}
+
+	/** The cube is not started, the data is only loaded in the datastore */
+	@Bean
+	public Void startManager() {
+		return null;
+	}
+}
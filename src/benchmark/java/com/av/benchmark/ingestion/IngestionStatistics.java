@@ -0,0 +1,56 @@
+package com.av.benchmark.ingestion;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ * Time spent in each phase of the ingestion, accumulated
+ * over the threads taking part in the loading.
+ *
+ * @author ActiveViam
+ *
+ */
+public class IngestionStatistics {
+
+	protected final LongAdder discoveryNanos = new LongAdder();
+	protected final LongAdder discoveryCount = new LongAdder();
+	protected final LongAdder calculatedColumnNanos = new LongAdder();
+	protected final LongAdder publishNanos = new LongAdder();
+	protected final LongAdder publishCount = new LongAdder();
+	protected final LongAdder publishedTuples = new LongAdder();
+	protected final LongAdder loadNanos = new LongAdder();
+
+	public void addDiscovery(long nanos) {
+		discoveryNanos.add(nanos);
+		discoveryCount.increment();
+	}
+
+	public void addCalculatedColumn(long nanos) {
+		calculatedColumnNanos.add(nanos);
+	}
+
+	public void addPublish(long nanos, int tupleCount) {
+		publishNanos.add(nanos);
+		publishCount.increment();
+		publishedTuples.add(tupleCount);
+	}
+
+	public void addLoad(long nanos) {
+		loadNanos.add(nanos);
+	}
+
+	public long getDiscoveryMillis() { return TimeUnit.NANOSECONDS.toMillis(discoveryNanos.sum()); }
+
+	public long getDiscoveryCount() { return discoveryCount.sum(); }
+
+	public long getCalculatedColumnMillis() { return TimeUnit.NANOSECONDS.toMillis(calculatedColumnNanos.sum()); }
+
+	public long getPublishMillis() { return TimeUnit.NANOSECONDS.toMillis(publishNanos.sum()); }
+
+	public long getPublishCount() { return publishCount.sum(); }
+
+	public long getPublishedTuples() { return publishedTuples.sum(); }
+
+	public long getLoadMillis() { return TimeUnit.NANOSECONDS.toMillis(loadNanos.sum()); }
+}
@@ -0,0 +1,36 @@
+package com.av.benchmark.ingestion;
+
+import com.qfs.msg.IColumnCalculator;
+import com.qfs.msg.csv.ILineReader;
+import com.qfs.msg.csv.translator.impl.AColumnCalculator;
+
+/**
+ *
+ * Column calculator measuring the time spent in the calculator it wraps.
+ *
+ * @author ActiveViam
+ *
+ */
+public class TimedColumnCalculator extends AColumnCalculator<ILineReader> {
+
+	/** Wrapped calculator */
+	protected final IColumnCalculator<ILineReader> calculator;
+
+	protected final IngestionStatistics statistics;
+
+	public TimedColumnCalculator(IColumnCalculator<ILineReader> calculator, IngestionStatistics statistics) {
+		super(calculator.getColumnName());
+		this.calculator = calculator;
+		this.statistics = statistics;
+	}
+
+	@Override
+	public Object compute(IColumnCalculationContext<ILineReader> context) {
+		long start = System.nanoTime();
+		try {
+			return calculator.compute(context);
+		} finally {
+			statistics.addCalculatedColumn(System.nanoTime() - start);
+		}
+	}
+}
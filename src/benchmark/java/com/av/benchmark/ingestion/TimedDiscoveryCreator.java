@@ -0,0 +1,30 @@
+package com.av.benchmark.ingestion;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.av.autopivot.AutoPivotDiscoveryCreator;
+import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
+import com.av.csv.CSVFormat;
+
+/**
+ *
+ * Discovery creator measuring the time spent discovering the data files.
+ *
+ * @author ActiveViam
+ *
+ */
+public class TimedDiscoveryCreator extends AutoPivotDiscoveryCreator {
+
+	@Autowired
+	protected IngestionStatistics statistics;
+
+	@Override
+	public CSVFormat createDiscoveryFormat(DataInfo dataToLoad) {
+		long start = System.nanoTime();
+		try {
+			return super.createDiscoveryFormat(dataToLoad);
+		} finally {
+			statistics.addDiscovery(System.nanoTime() - start);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.av.benchmark.ingestion;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.qfs.source.IStoreMessage;
+import com.qfs.source.ITuplePublisher;
+
+/**
+ *
+ * Tuple publisher measuring the time spent adding the
+ * tuples to the datastore and committing them.
+ * <p>
+ * The publishers of the dimension stores are called within the publisher
+ * of their data store: their tuples are counted, but only the outermost
+ * publication of a thread is timed, so that no time is counted twice.
+ *
+ * @author ActiveViam
+ *
+ * @param <I> type of the published messages content
+ */
+public class TimedTuplePublisher<I> implements ITuplePublisher<I> {
+
+	/** Number of publications in progress on each thread */
+	private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+	/** Wrapped publisher */
+	protected final ITuplePublisher<I> publisher;
+
+	protected final IngestionStatistics statistics;
+
+	public TimedTuplePublisher(ITuplePublisher<I> publisher, IngestionStatistics statistics) {
+		this.publisher = publisher;
+		this.statistics = statistics;
+	}
+
+	@Override
+	public void publish(IStoreMessage<? extends I, ?> message, List<Object[]> tuples) {
+		final int[] depth = DEPTH.get();
+		long start = System.nanoTime();
+		depth[0]++;
+		try {
+			publisher.publish(message, tuples);
+		} finally {
+			depth[0]--;
+			statistics.addPublish(depth[0] == 0 ? System.nanoTime() - start : 0L, tuples.size());
+		}
+	}
+
+	@Override
+	public Collection<String> getTargetStores() {
+		return publisher.getTargetStores();
+	}
+}
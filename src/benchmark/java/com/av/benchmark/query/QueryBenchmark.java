@@ -0,0 +1,277 @@
+package com.av.benchmark.query;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.webapp.WebAppContext;
+
+import com.av.autopivot.config.properties.AutoPivotProperties;
+import com.av.autopivot.server.AutoPivotLauncher;
+import com.av.benchmark.SyntheticCSV;
+
+/**
+ *
+ * Query latency benchmark of a generated cube and of the custom post processors.
+ * <p>
+ * A synthetic risks dataset is generated with the fxrate and currency_group
+ * refdata, the AutoPivot server is started in process and a catalog of MDX
+ * queries is executed over XMLA, from the grand total to the crossjoin of the
+ * counterparties and the currencies, on the pnl.SUM aggregated measure and on the
+ * FxMeasure and CGMTMMeasure post processors. The server is started once per phase:
+ * <ul>
+ * <li>cold: without aggregate cache, every execution computes the query</li>
+ * <li>warm: with the aggregate cache, the first execution of each query fills the cache</li>
+ * </ul>
+ * Each query is executed once, then bench.warmup times, then bench.iterations times
+ * measured. The p50 and p99 latencies and the bytes allocated per execution by all the
+ * threads of the JVM, client included, are printed and written as JSON in bench.output
+ * for trend tracking.
+ * <p>
+ * Run with <code>mvn -Pbenchmark test-compile exec:exec -Djmh.args= -Dbenchmark.main=com.av.benchmark.query.QueryBenchmark
+ * -Dbenchmark.jvmArgs="-Xmx8g -Dbench.rows=5000000"</code>, or from the IDE. The options are system properties:
+ * <ul>
+ * <li>bench.rows (1000000) of the risks file</li>
+ * <li>bench.warmup (5), bench.iterations (50) per query</li>
+ * <li>bench.phases (COLD,WARM), bench.cacheSize (100000) of the warm phase</li>
+ * <li>bench.queries to replace the catalog by a properties file of name=MDX, executed in name order</li>
+ * <li>bench.output (target/query-benchmark.json)</li>
+ * <li>bench.check (false) to only check that the default catalog runs: each query is
+ * executed twice on 10000 rows in the cold phase, a failing query fails the run</li>
+ * </ul>
+ * The AutoPivot options are passed the same way, for instance
+ * -Dautopivot.discover.data.risks.aggregateProviderType=BITMAP.
+ *
+ * @author ActiveViam
+ *
+ */
+public class QueryBenchmark {
+
+	/** Catalog of the generated cube */
+	public static final String CATALOG = RiskDataset.STORE_NAME + "_CATALOG";
+
+	/** Benchmark user, defined in the security configuration */
+	public static final String USER = "admin";
+	public static final String PASSWORD = "admin";
+
+	/** Benchmark phases */
+	public enum PHASE { COLD, WARM }
+
+	public static void main(String[] args) throws Exception {
+		boolean check = Boolean.getBoolean("bench.check");
+		long rows = Long.getLong("bench.rows", check ? 10000L : 1000000L);
+		int warmup = check ? 0 : Integer.getInteger("bench.warmup", 5);
+		int iterations = check ? 1 : Integer.getInteger("bench.iterations", 50);
+		int cacheSize = Integer.getInteger("bench.cacheSize", 100000);
+		Path output = Paths.get(System.getProperty("bench.output", "target/query-benchmark.json"));
+		Map<String, String> queries = check ? defaultQueries() : loadQueries(System.getProperty("bench.queries"));
+
+		List<PHASE> phases = new ArrayList<>();
+		for (String phase : (check ? PHASE.COLD.name() : System.getProperty("bench.phases", "COLD,WARM")).split(",")) {
+			phases.add(PHASE.valueOf(phase.trim().toUpperCase()));
+		}
+
+		// AutoPivot options of the command line
+		Map<String, String> overrides = new TreeMap<>();
+		for (String key : System.getProperties().stringPropertyNames()) {
+			if (key.startsWith("autopivot.") && !key.equals(AutoPivotProperties.CONFIG_FILE)) {
+				overrides.put(key, System.getProperty(key));
+			}
+		}
+
+		Path directory = Files.createTempDirectory("autopivot-query");
+		try {
+			RiskDataset dataset = new RiskDataset(rows, 5, 10, 10, 200, SyntheticCSV.DEFAULT_SEED);
+			long start = System.nanoTime();
+			dataset.write(directory);
+			print("Dataset", rows + " rows generated in " + (System.nanoTime() - start) / 1000000L + " ms");
+
+			List<String> results = new ArrayList<>();
+			for (PHASE phase : phases) {
+				Integer phaseCacheSize = phase == PHASE.WARM ? cacheSize : null;
+				Path config = dataset.writeConfiguration(directory, directory.resolve(phase.name().toLowerCase() + ".properties"),
+														 phaseCacheSize, overrides);
+				System.setProperty(AutoPivotProperties.CONFIG_FILE, config.toString());
+				results.add(runPhase(phase, phaseCacheSize, queries, warmup, iterations));
+			}
+
+			String json = "{\"benchmark\":\"query\",\"timestamp\":\"" + Instant.now() + "\",\"javaVersion\":\"" + System.getProperty("java.version")
+					+ "\",\"rows\":" + rows + ",\"warmup\":" + warmup + ",\"iterations\":" + iterations
+					+ ",\"phases\":[" + String.join(",", results) + "]}";
+			if (output.getParent() != null) {
+				Files.createDirectories(output.getParent());
+			}
+			Files.write(output, json.getBytes(StandardCharsets.UTF_8));
+			print("Results", output.toAbsolutePath().toString());
+			if (check) {
+				print("Check", "the " + queries.size() + " default queries ran without error");
+			}
+		} finally {
+			System.clearProperty(AutoPivotProperties.CONFIG_FILE);
+			delete(directory);
+		}
+	}
+
+	/** @return queries by name, in execution order */
+	public static Map<String, String> defaultQueries() {
+		String pnl = "[Measures].[pnl.SUM]";
+		String fx = "[Measures].[FxMeasure]";
+		String cg = "[Measures].[CGMTMMeasure]";
+		String usd = " WHERE [Analysis Dimension].[FxTargetCurrency].[USD]";
+		String currencies = "[Currency].[Currency].[Currency].Members";
+		String books = "[Book].[Book].[Book].Members";
+		String desks = "[Book].[Book].[Desk].Members";
+		String counterparties = "[Counterparty].[Counterparty].[Counterparty].Members";
+		String dates = "[AsOfDate].[AsOfDate].[AsOfDate].Members";
+		String groups = "[Analysis Dimension].[CurrencyGroup].[CurrencyGroup].Members";
+
+		Map<String, String> queries = new LinkedHashMap<>();
+		queries.put("pnl_total", select(pnl, null));
+		queries.put("pnl_by_currency", select(pnl, currencies));
+		queries.put("pnl_by_book", select(pnl, books));
+		queries.put("pnl_by_date_desk", select(pnl, crossjoin(dates, desks)));
+		queries.put("pnl_by_counterparty_currency", select(pnl, crossjoin(counterparties, currencies)));
+		queries.put("fx_total", select(fx, null) + usd);
+		queries.put("fx_by_book", select(fx, books) + usd);
+		queries.put("fx_by_counterparty_currency", select(fx, crossjoin(counterparties, currencies)) + usd);
+		queries.put("currency_group", select(cg, groups));
+		queries.put("currency_group_by_desk", select(cg, crossjoin(desks, groups)));
+		return queries;
+	}
+
+	protected static String select(String measure, String rows) {
+		return "SELECT " + (rows == null ? "" : "NON EMPTY " + rows + " ON ROWS, ")
+				+ "{" + measure + "} ON COLUMNS FROM [" + RiskDataset.STORE_NAME + "]";
+	}
+
+	protected static String crossjoin(String first, String second) {
+		return "Crossjoin(" + first + ", " + second + ")";
+	}
+
+	protected static Map<String, String> loadQueries(String fileName) throws IOException {
+		if (fileName == null) {
+			return defaultQueries();
+		}
+		Properties properties = new Properties();
+		try (InputStream input = Files.newInputStream(Paths.get(fileName))) {
+			properties.load(input);
+		}
+		Map<String, String> queries = new TreeMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			queries.put(name, properties.getProperty(name));
+		}
+		return queries;
+	}
+
+	/**
+	 * Start the server, execute the catalog and stop the server
+	 *
+	 * @return JSON results of the phase
+	 */
+	protected static String runPhase(PHASE phase, Integer cacheSize, Map<String, String> queries, int warmup, int iterations) throws Exception {
+		int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		System.out.println("=== AutoPivot query benchmark, " + phase + " phase ===");
+		Server server = AutoPivotLauncher.createServer(port);
+		long start = System.nanoTime();
+		server.start();
+		try {
+			Throwable failure = ((WebAppContext) server.getHandler()).getUnavailableException();
+			if (failure != null) {
+				throw new IllegalStateException("AutoPivot failed to start", failure);
+			}
+			long startupMillis = (System.nanoTime() - start) / 1000000L;
+			print("Startup", startupMillis + " ms (discovery, loading and cube start)");
+			print("Aggregate cache", cacheSize == null ? "disabled" : "size " + cacheSize);
+			System.out.println(String.format(Locale.US, "%-30s %10s %10s %10s %12s", "Query", "first ms", "p50 ms", "p99 ms", "alloc KB"));
+
+			XmlaClient client = new XmlaClient("http://localhost:" + port, USER, PASSWORD);
+			List<String> results = new ArrayList<>();
+			for (Map.Entry<String, String> query : queries.entrySet()) {
+				QueryStatistics statistics = run(client, query.getKey(), query.getValue(), warmup, iterations);
+				System.out.println(String.format(Locale.US, "%-30s %10.1f %10.1f %10.1f %12d",
+						statistics.getName(), statistics.getFirstMillis(), statistics.getLatencyMillis(50d),
+						statistics.getLatencyMillis(99d), statistics.getAllocatedBytes() / 1024L));
+				results.add(statistics.toJson());
+			}
+
+			return "{\"phase\":\"" + phase.name().toLowerCase() + "\",\"cacheSize\":" + cacheSize
+					+ ",\"startupMs\":" + startupMillis + ",\"queries\":[" + String.join(",", results) + "]}";
+		} finally {
+			server.stop();
+		}
+	}
+
+	protected static QueryStatistics run(XmlaClient client, String name, String mdx, int warmup, int iterations) throws IOException {
+		QueryStatistics statistics = new QueryStatistics(name, mdx, iterations);
+
+		long start = System.nanoTime();
+		long responseBytes = client.execute(CATALOG, mdx);
+		statistics.setFirst(System.nanoTime() - start, responseBytes);
+
+		for (int i = 0; i < warmup; i++) {
+			client.execute(CATALOG, mdx);
+		}
+		for (int i = 0; i < iterations; i++) {
+			long allocatedBefore = getAllocatedBytes();
+			start = System.nanoTime();
+			responseBytes = client.execute(CATALOG, mdx);
+			long nanos = System.nanoTime() - start;
+			long allocatedAfter = getAllocatedBytes();
+			statistics.add(nanos, allocatedBefore < 0L ? -1L : Math.max(0L, allocatedAfter - allocatedBefore), responseBytes);
+		}
+		return statistics;
+	}
+
+	/** @return bytes allocated by the live threads of the JVM, -1 if the JVM cannot measure it */
+	protected static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1L;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+			return -1L;
+		}
+		long allocated = 0L;
+		for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			if (bytes > 0L) {
+				allocated += bytes;
+			}
+		}
+		return allocated;
+	}
+
+	protected static void print(String label, String value) {
+		System.out.println(String.format(Locale.US, "%-20s %s", label, value));
+	}
+
+	protected static void delete(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.deleteIfExists(path);
+			}
+		}
+	}
+}
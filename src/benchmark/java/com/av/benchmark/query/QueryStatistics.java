@@ -0,0 +1,95 @@
+package com.av.benchmark.query;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ *
+ * Latencies and allocations of the executions of one query.
+ *
+ * @author ActiveViam
+ *
+ */
+public class QueryStatistics {
+
+	protected final String name;
+
+	protected final String mdx;
+
+	/** Latency of the first execution, in nanoseconds */
+	protected long firstNanos = -1L;
+
+	/** Latencies of the measured executions, in nanoseconds */
+	protected long[] nanos;
+
+	/** Bytes allocated by the measured executions */
+	protected long[] allocations;
+
+	protected int count;
+
+	/** Size of the last response */
+	protected long responseBytes;
+
+	public QueryStatistics(String name, String mdx, int iterations) {
+		this.name = name;
+		this.mdx = mdx;
+		this.nanos = new long[iterations];
+		this.allocations = new long[iterations];
+	}
+
+	public String getName() { return name; }
+
+	public String getMdx() { return mdx; }
+
+	public void setFirst(long nanos, long responseBytes) {
+		this.firstNanos = nanos;
+		this.responseBytes = responseBytes;
+	}
+
+	public void add(long nanos, long allocatedBytes, long responseBytes) {
+		this.nanos[count] = nanos;
+		this.allocations[count] = allocatedBytes;
+		this.responseBytes = responseBytes;
+		count++;
+	}
+
+	public double getFirstMillis() { return firstNanos / 1e6d; }
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return latency of the percentile, nearest rank, in milliseconds
+	 */
+	public double getLatencyMillis(double percentile) {
+		if (count == 0) {
+			return 0d;
+		}
+		long[] sorted = Arrays.copyOf(nanos, count);
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100d * count);
+		return sorted[Math.max(0, Math.min(count, rank) - 1)] / 1e6d;
+	}
+
+	public double getMeanMillis() {
+		return count == 0 ? 0d : Arrays.stream(nanos, 0, count).sum() / (1e6d * count);
+	}
+
+	/** @return average bytes allocated per execution, -1 when the JVM cannot measure it */
+	public long getAllocatedBytes() {
+		if (count == 0 || allocations[0] < 0L) {
+			return -1L;
+		}
+		return Arrays.stream(allocations, 0, count).sum() / count;
+	}
+
+	public String toJson() {
+		return String.format(Locale.US,
+				"{\"name\":\"%s\",\"mdx\":\"%s\",\"iterations\":%d,\"firstMs\":%.3f,\"p50Ms\":%.3f,\"p99Ms\":%.3f,"
+				+ "\"meanMs\":%.3f,\"allocatedBytes\":%d,\"responseBytes\":%d}",
+				escape(name), escape(mdx), count, getFirstMillis(), getLatencyMillis(50d), getLatencyMillis(99d),
+				getMeanMillis(), getAllocatedBytes(), responseBytes);
+	}
+
+	protected static String escape(String text) {
+		return text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ");
+	}
+}
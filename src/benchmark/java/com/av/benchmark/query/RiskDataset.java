@@ -0,0 +1,146 @@
+package com.av.benchmark.query;
+
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo;
+import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
+import com.av.autopivot.config.properties.AutoPivotProperties.RefDataInfo;
+
+/**
+ *
+ * Deterministic synthetic risks dataset, with the fxrate and currency_group
+ * refdata files, so that the cube of the risks store gets the custom post
+ * processors and analysis hierarchies of the sample application.
+ * <p>
+ * The risks file has the columns AsOfDate, Desk, Book, Currency, Counterparty,
+ * pnl and Quantity. Book depends on Desk, so the two columns are nested in
+ * the [Book].[Book] hierarchy by the hierarchy inference, enabled in the
+ * configuration of the dataset. The other columns are independent.
+ *
+ * @author ActiveViam
+ *
+ */
+public class RiskDataset {
+
+	/** Name of the dataset, the custom post processors are only added to the risks cube */
+	public static final String STORE_NAME = "risks";
+
+	/** Currencies of the trades, all present in the refdata files */
+	public static final String[] CURRENCIES = { "EUR", "USD", "JPY", "GBP", "CHF", "AUD", "CAD", "SEK" };
+
+	/** Refdata files copied from the test resources */
+	protected static final String[] REFDATA_FILES = { "refdata/fxrate.csv", "refdata/currency_group.csv" };
+
+	/** First as of date */
+	protected static final LocalDate START_DATE = LocalDate.of(2018, 1, 2);
+
+	protected final long rows;
+
+	protected final int dates;
+
+	protected final int desks;
+
+	protected final int booksPerDesk;
+
+	protected final int counterparties;
+
+	protected final long seed;
+
+	public RiskDataset(long rows, int dates, int desks, int booksPerDesk, int counterparties, long seed) {
+		this.rows = rows;
+		this.dates = dates;
+		this.desks = desks;
+		this.booksPerDesk = booksPerDesk;
+		this.counterparties = counterparties;
+		this.seed = seed;
+	}
+
+	public long getRows() { return rows; }
+
+	/**
+	 * Write the risks file in directory/data and the refdata files in directory/refdata
+	 *
+	 * @param directory root directory of the dataset
+	 * @throws IOException if the files cannot be written
+	 */
+	public void write(Path directory) throws IOException {
+		Path data = Files.createDirectories(directory.resolve("data"));
+		Random random = new Random(seed);
+		try (BufferedWriter writer = Files.newBufferedWriter(data.resolve(STORE_NAME + ".csv"), StandardCharsets.UTF_8)) {
+			writer.write("AsOfDate;Desk;Book;Currency;Counterparty;pnl;Quantity");
+			writer.newLine();
+			StringBuilder row = new StringBuilder();
+			for (long r = 0; r < rows; r++) {
+				int desk = random.nextInt(desks);
+				row.setLength(0);
+				row.append(START_DATE.plusDays(random.nextInt(dates))).append(';')
+				   .append("Desk_").append(desk).append(';')
+				   .append("Book_").append(desk).append('_').append(random.nextInt(booksPerDesk)).append(';')
+				   .append(CURRENCIES[random.nextInt(CURRENCIES.length)]).append(';')
+				   .append("Cpty_").append(random.nextInt(counterparties)).append(';')
+				   .append(String.format(Locale.US, "%.2f", random.nextGaussian() * 10000d)).append(';')
+				   .append(1 + random.nextInt(10000));
+				writer.append(row);
+				writer.newLine();
+			}
+		}
+
+		Path refdata = Files.createDirectories(directory.resolve("refdata"));
+		for (String resource : REFDATA_FILES) {
+			try (InputStream input = RiskDataset.class.getClassLoader().getResourceAsStream(resource)) {
+				if (input == null) {
+					throw new FileNotFoundException(resource);
+				}
+				Files.copy(input, refdata.resolve(resource.substring(resource.lastIndexOf('/') + 1)), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+
+	/**
+	 * Write the AutoPivot configuration of the dataset
+	 *
+	 * @param directory root directory of the dataset
+	 * @param file configuration file to write
+	 * @param cacheSize size of the aggregate cache of the cube, null to disable it
+	 * @param overrides other AutoPivot properties, for instance the aggregate provider type or the cached measures
+	 * @return the configuration file
+	 * @throws IOException if the file cannot be written
+	 */
+	public Path writeConfiguration(Path directory, Path file, Integer cacheSize, Map<String, String> overrides) throws IOException {
+		String data = DataInfo.DATA_INFO_ROOT_KEY + STORE_NAME + ".";
+		String refdata = RefDataInfo.REF_DATA_INFO_ROOT_KEY + "fxrate.";
+
+		Properties properties = new Properties();
+		properties.putAll(overrides);
+		properties.setProperty("autopivot.charset", StandardCharsets.UTF_8.name());
+		properties.setProperty(data + APropertyInfo.DATA_INFO_DIR_TO_WATCH, directory.resolve("data").toString());
+		properties.setProperty(data + APropertyInfo.DATA_INFO_PATHMATCHER, "glob:**" + STORE_NAME + "*.csv");
+		properties.setProperty(refdata + APropertyInfo.DATA_INFO_DIR_TO_WATCH, directory.resolve("refdata").toString());
+		properties.setProperty(refdata + APropertyInfo.DATA_INFO_PATHMATCHER, "glob:**.csv");
+		// The queries of the desks need the inferred Desk level of the [Book].[Book] hierarchy
+		properties.putIfAbsent(data + APropertyInfo.DATA_INFO_HIERARCHY_INFERENCE, "true");
+		if (cacheSize != null) {
+			properties.setProperty(data + APropertyInfo.DATA_INFO_PIVOT_CACHE_SIZE, cacheSize.toString());
+		} else {
+			properties.remove(data + APropertyInfo.DATA_INFO_PIVOT_CACHE_SIZE);
+		}
+
+		try (OutputStream output = Files.newOutputStream(file)) {
+			properties.store(output, "Query benchmark configuration");
+		}
+		return file;
+	}
+}
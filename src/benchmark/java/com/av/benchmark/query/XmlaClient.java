@@ -0,0 +1,96 @@
+package com.av.benchmark.query;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ *
+ * Minimal XMLA client executing MDX queries over HTTP, the way
+ * the Excel and ActiveUI clients query the cubes, with basic authentication.
+ *
+ * @author ActiveViam
+ *
+ */
+public class XmlaClient {
+
+	/** SOAP action of the XMLA queries */
+	public static final String EXECUTE_ACTION = "urn:schemas-microsoft-com:xml-analysis:Execute";
+
+	protected final URL url;
+
+	protected final String authorization;
+
+	public XmlaClient(String serverUrl, String user, String password) throws IOException {
+		this.url = new URL(serverUrl + "/xmla");
+		this.authorization = "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Execute an MDX query and read the whole response
+	 *
+	 * @param catalog catalog of the queried cube
+	 * @param mdx MDX statement
+	 * @return size of the response in bytes
+	 * @throws IOException if the query fails or returns a SOAP fault
+	 */
+	public long execute(String catalog, String mdx) throws IOException {
+		byte[] request = createRequest(catalog, mdx).getBytes(StandardCharsets.UTF_8);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Authorization", authorization);
+			connection.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+			connection.setRequestProperty("SOAPAction", EXECUTE_ACTION);
+			connection.setFixedLengthStreamingMode(request.length);
+			try (OutputStream output = connection.getOutputStream()) {
+				output.write(request);
+			}
+
+			int status = connection.getResponseCode();
+			InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			byte[] response = input == null ? new byte[0] : readAll(input);
+			String text = new String(response, StandardCharsets.UTF_8);
+			if (status >= 400 || text.contains(":Fault>")) {
+				throw new IOException("Query failed with HTTP status " + status + ": " + mdx + "\n" + text);
+			}
+			return response.length;
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	protected String createRequest(String catalog, String mdx) {
+		return "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+				+ "<Execute xmlns=\"urn:schemas-microsoft-com:xml-analysis\">"
+				+ "<Command><Statement>" + escape(mdx) + "</Statement></Command>"
+				+ "<Properties><PropertyList>"
+				+ "<Catalog>" + escape(catalog) + "</Catalog>"
+				+ "<Format>Multidimensional</Format>"
+				+ "<AxisFormat>TupleFormat</AxisFormat>"
+				+ "</PropertyList></Properties>"
+				+ "</Execute></soap:Body></soap:Envelope>";
+	}
+
+	protected static String escape(String text) {
+		return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+	}
+
+	protected static byte[] readAll(InputStream input) throws IOException {
+		try (InputStream in = input) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				output.write(buffer, 0, read);
+			}
+			return output.toByteArray();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.av.autopivot;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.av.autopivot.config.pivot.HeadlessAutoPivotConfig;
+import com.av.autopivot.config.properties.AutoPivotProperties.OrderedProperties;
+import com.av.autopivot.config.properties.EmbeddedAutoPivotProperties;
+import com.av.autopivot.config.source.LazyDatasetLoader;
+import com.av.autopivot.workload.IQueryListener;
+import com.av.autopivot.workload.QueryInterceptorBeanPostProcessor;
+import com.qfs.store.IDatastore;
+import com.quartetfs.biz.pivot.IActivePivotManager;
+import com.quartetfs.biz.pivot.IActivePivotVersion;
+import com.quartetfs.biz.pivot.IMultiVersionActivePivot;
+import com.quartetfs.biz.pivot.dto.CellSetDTO;
+import com.quartetfs.biz.pivot.query.IQuery;
+import com.quartetfs.biz.pivot.query.impl.MDXQuery;
+import com.quartetfs.fwk.QuartetRuntimeException;
+import com.quartetfs.fwk.query.QueryException;
+
+/**
+ * 
+ * Embedded AutoPivot, for batch jobs, tests and benchmarks: discover
+ * and load the configured datasets and query the generated cubes from
+ * Java, without the web server, the UI and the security stack.
+ * <pre>
+ * Properties properties = new Properties();
+ * properties.setProperty("autopivot.discover.data.risks.fileName", "data/risks.csv");
+ * try (AutoPivot autoPivot = AutoPivot.start(properties)) {
+ *     CellSetDTO cellSet = autoPivot.executeMdx("risks", "SELECT [Measures].[pnl.SUM] ON 0 FROM [risks]");
+ * }
+ * </pre>
+ * The properties are the ones of autopivot.properties. The startup
+ * timeline is written when autopivot.startup.traceFile is set.
+ * 
+ * @author ActiveViam
+ *
+ */
+public class AutoPivot implements AutoCloseable {
+
+	/** Logger **/
+	protected static final Logger LOGGER = Logger.getLogger(AutoPivot.class.getName());
+
+	/** Headless application context */
+	protected final AnnotationConfigApplicationContext context;
+
+	protected AutoPivot(AnnotationConfigApplicationContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * Discover and load the datasets, and start their cubes
+	 * 
+	 * @param properties AutoPivot properties
+	 * @return the started AutoPivot, to close when done
+	 */
+	public static AutoPivot start(Properties properties) {
+		long start = System.nanoTime();
+		Properties embeddedProperties = new OrderedProperties();
+		embeddedProperties.putAll(properties);
+
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		try {
+			context.registerBean(EmbeddedAutoPivotProperties.EMBEDDED_PROPERTIES, Properties.class, () -> embeddedProperties);
+			context.register(HeadlessAutoPivotConfig.class);
+			context.refresh();
+		} catch (RuntimeException e) {
+			context.close();
+			throw new QuartetRuntimeException("Could not start the embedded AutoPivot", e);
+		}
+		LOGGER.info("Embedded AutoPivot started in " + (System.nanoTime() - start) / 1_000_000L + " ms");
+		return new AutoPivot(context);
+	}
+
+	/** @return the ActivePivot manager of the generated cubes */
+	public IActivePivotManager getManager() {
+		return context.getBean(IActivePivotManager.class);
+	}
+
+	/** @return the datastore holding the loaded datasets */
+	public IDatastore getDatastore() {
+		return context.getBean(IDatastore.class);
+	}
+
+	/** @return the starter of the cubes of the datasets with pivot.lazyStart=true */
+	public LazyCubeStarter getLazyCubeStarter() {
+		return context.getBean(LazyCubeStarter.class);
+	}
+
+	/** @return the loader of the datasets with lazyLoad=true */
+	public LazyDatasetLoader getLazyDatasetLoader() {
+		return context.getBean(LazyDatasetLoader.class);
+	}
+
+	/** @return the names of the generated cubes, one per dataset, including the lazy cubes */
+	public Set<String> getCubeNames() {
+		Set<String> cubeNames = new TreeSet<>(getManager().getActivePivots().keySet());
+		cubeNames.addAll(getLazyCubeStarter().getCubeNames());
+		return cubeNames;
+	}
+
+	/**
+	 * @param cubeName cube name, the name of its dataset
+	 * @return the current version of the cube, a lazy cube is started and a lazy
+	 * dataset is loaded on the first call
+	 */
+	public IActivePivotVersion getCube(String cubeName) {
+		// Load the dataset before its cube is started, so its first version holds the data
+		getLazyDatasetLoader().touch(cubeName);
+		Map<String, IMultiVersionActivePivot> pivots = getManager().getActivePivots();
+		IMultiVersionActivePivot pivot = pivots.get(cubeName);
+		if (pivot == null) {
+			pivot = getLazyCubeStarter().getPivot(cubeName);
+		}
+		if (pivot == null) {
+			throw new QuartetRuntimeException("Unknown cube " + cubeName + ", the cubes are " + getCubeNames());
+		}
+		return pivot.getHead();
+	}
+
+	/**
+	 * Execute a query on the current version of a cube
+	 * 
+	 * @param cubeName cube name
+	 * @param query query, such as a GetAggregatesQuery
+	 * @return the result of the query
+	 * @throws QueryException if the query fails
+	 */
+	public <T> T execute(String cubeName, IQuery<T> query) throws QueryException {
+		return getCube(cubeName).execute(query);
+	}
+
+	/**
+	 * Execute an MDX query on the current version of a cube
+	 * 
+	 * @param cubeName cube name
+	 * @param mdx MDX query
+	 * @return the cell set of the query
+	 * @throws QueryException if the query fails
+	 */
+	public CellSetDTO executeMdx(String cubeName, String mdx) throws QueryException {
+		QueryInterceptorBeanPostProcessor.beforeQuery(context.getBeansOfType(IQueryListener.class).values(), cubeName, mdx);
+		return execute(cubeName, new MDXQuery(mdx));
+	}
+
+	/** @return the application context, to reach the other beans */
+	public AnnotationConfigApplicationContext getContext() {
+		return context;
+	}
+
+	/** Stop the cubes and the datastore */
+	@Override
+	public void close() {
+		context.close();
+	}
+}
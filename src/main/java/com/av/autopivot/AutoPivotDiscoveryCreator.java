@@ -17,12 +17,16 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.av.autopivot.config.properties.AutoPivotProperties;
 import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
 import com.av.autopivot.config.properties.AutoPivotProperties.RefDataInfo;
+import com.av.autopivot.monitoring.StartupTracer;
+import com.av.autopivot.monitoring.StartupTracer.Span;
 import com.av.csv.CSVFormat;
 import com.av.csv.discover.CSVDiscovery;
 import com.google.common.base.Strings;
@@ -112,10 +116,14 @@ public class AutoPivotDiscoveryCreator {
 	public CSVFormat createDiscoveryFormat(DataInfo dataToLoad) {
 		CSVFormat discovery = null;
 		if (Strings.isNullOrEmpty(dataToLoad.getDirToWatch()) == false) {
-			discovery = discoverDir(getDirectoryPathToWatch(dataToLoad), dataToLoad.getPathMatcher());
+			try (Span span = StartupTracer.begin("discover", dataToLoad.getDirToWatch() + " " + dataToLoad.getPathMatcher())) {
+				discovery = discoverDir(getDirectoryPathToWatch(dataToLoad), dataToLoad.getPathMatcher());
+			}
 		}
 		else {
-			discovery = discoverFile(dataToLoad);
+			try (Span span = StartupTracer.begin("discover", dataToLoad.getFileName())) {
+				discovery = discoverFile(dataToLoad);
+			}
 		}
 		return discovery;
 	}
@@ -162,7 +170,7 @@ public class AutoPivotDiscoveryCreator {
 		
 		try {
 			Files.walkFileTree(directory, matcherVisitor);
-			discovery = new CSVDiscovery().discoverFile(directory.toString() + "\\" + fileNameList.get(0), getCharset());
+			discovery = new CSVDiscovery().discoverFile(directory.resolve(fileNameList.get(0)).toString(), getCharset());
 			return discovery;
 		}
 		catch (Exception ex) {
@@ -171,24 +179,26 @@ public class AutoPivotDiscoveryCreator {
 		}
 	}
 
+	/**
+	 * Discover the refdata files, the refdata sets are discovered concurrently
+	 * 
+	 * @return the refdata sets with the format of each of their files
+	 */
 	public List<Pair<RefDataInfo, CSVFormat>> createDiscoveryRefFormat() {
-		ArrayList<Pair<RefDataInfo, CSVFormat>> discoveryList = new ArrayList<>();
-		
 		Map<String, RefDataInfo> refDataInfoMap = autoPivotProps.getRefDataInfoMap();
-		for (RefDataInfo refDataInfo : refDataInfoMap.values()) {
+		return refDataInfoMap.values().parallelStream().flatMap(refDataInfo -> {
 			if (Strings.isNullOrEmpty(refDataInfo.getDirToWatch()) == false) {
-				discoveryList.addAll(discoverRefDir(refDataInfo));
+				return discoverRefDir(refDataInfo).stream();
 			}
 			else {
-				discoveryList.add(discoverRefFile(refDataInfo));
+				return Stream.of(discoverRefFile(refDataInfo));
 			}
-		}
-		return discoveryList;
+		}).collect(Collectors.toList());
 	}
 	
 	private Pair<RefDataInfo, CSVFormat> discoverRefFile(RefDataInfo refDataInfo) {
 		Pair<RefDataInfo, CSVFormat> discovery = null;
-		try {
+		try (Span span = StartupTracer.begin("discover", refDataInfo.getFileName())) {
 			discovery = new Pair<RefDataInfo, CSVFormat>(refDataInfo,
 														 new CSVDiscovery().discoverFile(refDataInfo.getFileName(), getCharset()));
 		} catch (IOException ex) {
@@ -210,9 +220,9 @@ public class AutoPivotDiscoveryCreator {
 				
 				if (pattern.matches(name)) {
 					Pair<RefDataInfo, CSVFormat> discovery = null;
-					try {
+					try (Span span = StartupTracer.begin("discover", directory.resolve(name).toString())) {
 						discovery = new Pair<RefDataInfo, CSVFormat>(refDataInfo,
-																	 new CSVDiscovery().discoverFile(directory.toString() + "\\" + name.toString(), getCharset()));
+																	 new CSVDiscovery().discoverFile(directory.resolve(name).toString(), getCharset()));
 					} catch (IOException ex) {
 						throw new QuartetRuntimeException("Could not discover a csv file with pattern: {} in directory: {}", 
 														  refDataInfo.getPathMatcher(), directory.toString(), ex);
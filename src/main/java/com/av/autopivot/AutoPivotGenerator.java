@@ -21,19 +21,35 @@ package com.av.autopivot;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
 import java.util.logging.Logger;
 
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.COLUMN_ROLE;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.MEASURE;
+import com.av.autopivot.workload.PartialProviderAdvisor;
+import com.av.pivot.aggregation.ApproxDistinctCountAggregateFunction;
+import com.av.pivot.aggregation.MomentsAggregateFunction;
+import com.av.pivot.analysishierarchy.StoreAnalysisHierarchy;
+import com.av.pivot.postprocessing.ApproxDistinctCountPostProcessor;
+import com.av.pivot.postprocessing.MomentsPostProcessor;
+import com.av.pivot.postprocessing.MomentsPostProcessor.STATISTIC;
 import com.qfs.desc.IFieldDescription;
 import com.qfs.desc.IOptimizationDescription;
 import com.qfs.desc.IOptimizationDescription.Optimization;
+import com.qfs.desc.IReferenceDescription;
 import com.qfs.desc.IStoreDescription;
 import com.qfs.desc.impl.FieldDescription;
 import com.qfs.desc.impl.OptimizationDescription;
+import com.qfs.desc.impl.ReferenceDescription;
 import com.qfs.desc.impl.StoreDescription;
 import com.qfs.platform.IPlatform;
 import com.qfs.store.part.IPartitioningDescription;
@@ -59,6 +75,7 @@ import com.quartetfs.biz.pivot.definitions.IAxisLevelDescription;
 import com.quartetfs.biz.pivot.definitions.ICatalogDescription;
 import com.quartetfs.biz.pivot.definitions.IMeasuresDescription;
 import com.quartetfs.biz.pivot.definitions.INativeMeasureDescription;
+import com.quartetfs.biz.pivot.definitions.IPartialProviderDefinition;
 import com.quartetfs.biz.pivot.definitions.IPostProcessorDescription;
 import com.quartetfs.biz.pivot.definitions.impl.ActivePivotDescription;
 import com.quartetfs.biz.pivot.definitions.impl.ActivePivotInstanceDescription;
@@ -75,10 +92,12 @@ import com.quartetfs.biz.pivot.definitions.impl.AxisLevelDescription;
 import com.quartetfs.biz.pivot.definitions.impl.CatalogDescription;
 import com.quartetfs.biz.pivot.definitions.impl.MeasuresDescription;
 import com.quartetfs.biz.pivot.definitions.impl.NativeMeasureDescription;
+import com.quartetfs.biz.pivot.definitions.impl.PartialProviderDefinition;
 import com.quartetfs.biz.pivot.definitions.impl.PostProcessorDescription;
 import com.quartetfs.biz.pivot.definitions.impl.SelectionDescription;
 import com.quartetfs.fwk.Registry;
 import com.quartetfs.fwk.contributions.impl.ClasspathContributionProvider;
+import com.quartetfs.fwk.impl.Pair;
 
 /**
  * 
@@ -110,13 +129,32 @@ public class AutoPivotGenerator {
 	private static final Set<String> NUMERICS = QfsArrays.mutableSet("double", "float", "int", "long");
 	private static final Set<String> INTEGERS = QfsArrays.mutableSet("int", "long");
 	private static final Set<String> DECIMALS = QfsArrays.mutableSet("double", "float");
-	private static final Set<String> NUMERICS_ONLY = QfsArrays.mutableSet("double", "float", "long");
 	
-	/** Active Pivot Manager descriptions */
-	private volatile IActivePivotManagerDescription activePivotManagerDescription = null;
+	/** Post processors cheaper to compute again than to cache, left out of the POST_PROCESSED cache policy */
+	private static final Set<String> UNCACHED_POST_PROCESSORS = QfsArrays.mutableSet("FORMULA", "LEAF_COUNT");
+	
+	/** Property of a store backed analysis hierarchy naming its dimension */
+	public static final String ANALYSIS_DIMENSION_PROPERTY = "dimension";
+	
+	/** Default dimension of the store backed analysis hierarchies */
+	public static final String DEFAULT_ANALYSIS_DIMENSION = "Reference Data";
+	
+	/** Partial provider properties: plugin type (LEAF or BITMAP), levels and measures */
+	public static final String PARTIAL_PROVIDER_TYPE_PROPERTY = "type";
+	public static final String PARTIAL_PROVIDER_LEVELS_PROPERTY = "levels";
+	public static final String PARTIAL_PROVIDER_MEASURES_PROPERTY = "measures";
+	
+	/** Default partial provider type */
+	public static final String DEFAULT_PARTIAL_PROVIDER_TYPE = "LEAF";
+	
+	/** Catalogs of the generated cubes by cube name */
+	private final Map<String, ICatalogDescription> catalogs = new ConcurrentSkipListMap<>();
+	
+	/** Schemas of the generated cubes by cube name */
+	private final Map<String, IActivePivotSchemaInstanceDescription> schemas = new ConcurrentSkipListMap<>();
 	
 	/** Active Pivot descriptions Map */
-	private volatile Map<String, IActivePivotDescription> activePivotDescriptionMap = null;
+	private final Map<String, IActivePivotDescription> activePivotDescriptionMap = new ConcurrentHashMap<>();
 		
 	public static void initRegistry(List<String> packageList) {
 		List<String> consolidatedPackageList = new ArrayList<>();
@@ -135,6 +173,7 @@ public class AutoPivotGenerator {
 	 * 
 	 * Generate a complete ActivePivot Manager description, with one new catalog,
 	 * one new schema and one new cube, based on the provided input data format.
+	 * The cubes of different datasets can be generated concurrently.
 	 * 
 	 * @param storeDesc input data format
 	 */
@@ -143,8 +182,8 @@ public class AutoPivotGenerator {
 		IActivePivotSchemaDescription schema = createActivePivotSchemaDescription(storeDesc);
 		IActivePivotSchemaInstanceDescription instance = new ActivePivotSchemaInstanceDescription(storeDesc.getStoreName() + "_SCHEMA", schema);
 		
-		getCatalogs().add(catalog);
-		getSchemas().add(instance);
+		catalogs.put(storeDesc.getStoreName(), catalog);
+		schemas.put(storeDesc.getStoreName(), instance);
 	}
 	
 	private IActivePivotSchemaDescription createActivePivotSchemaDescription(StoreInfo storeDesc) {
@@ -155,7 +194,7 @@ public class AutoPivotGenerator {
 		for(int f = 0; f < storeDesc.getColumnCount(); f++) {
 			String fieldName = storeDesc.getColumnName(f);
 			String fieldType = storeDesc.getColumnType(f);
-			fields.add(new SelectionField(fieldName));
+			fields.add(new SelectionField(fieldName, storeDesc.getColumnExpression(fieldName)));
 			
 			if(fieldType.startsWith("DATE")) {
 				fields.add(new SelectionField(fieldName + ".YEAR"));
@@ -163,6 +202,13 @@ public class AutoPivotGenerator {
 				fields.add(new SelectionField(fieldName + ".DAY"));
 			}
 		}
+		
+		// Refdata attributes, joined through the references
+		for(StoreReference reference : storeDesc.getReferences()) {
+			for(Map.Entry<String, String> attribute : reference.getAttributes().entrySet()) {
+				fields.add(new SelectionField(attribute.getValue(), reference.getExpression(attribute.getKey())));
+			}
+		}
 		SelectionDescription selection = new SelectionDescription(storeDesc.getStoreName(), fields);
 		
 		// ActivePivot instance
@@ -189,6 +235,9 @@ public class AutoPivotGenerator {
 		for(int c = 0; c < storeDesc.getColumnCount(); c++) {
 			String columnName = storeDesc.getColumnName(c);
 			String columnType = storeDesc.getColumnType(c);
+			if(storeDesc.isNormalized(columnName)) {
+				continue;
+			}
 			FieldDescription desc = new FieldDescription(columnName, columnType);
 
 			// For date fields automatically add YEAR - MONTH - DAY fields
@@ -219,9 +268,8 @@ public class AutoPivotGenerator {
 		// Partitioning
 		IPartitioningDescription partitioning = createPartitioningDescription(storeDesc);
 		
-		@SuppressWarnings("unchecked")
 		StoreDescription desc = new StoreDescription(storeDesc.getStoreName(),
-													 Collections.EMPTY_LIST,
+													 storeDesc.getKeyFields(),
 													 fields,
 													 "COLUMN",
 													 partitioning,
@@ -231,6 +279,74 @@ public class AutoPivotGenerator {
 		return desc;
 	}
 	
+	/**
+	 * 
+	 * Generate the descriptions of the dimension stores of a dataset,
+	 * holding the columns normalized out of the data store, keyed
+	 * by the column they depend on. Each distinct key is stored once,
+	 * instead of repeating the wide string values on every fact.
+	 * 
+	 * @param storeDesc input data format
+	 * @return dimension store descriptions
+	 */
+	public List<IStoreDescription> createDimensionStoreDescriptions(StoreInfo storeDesc) {
+		List<IStoreDescription> stores = new ArrayList<>();
+		for(StoreReference dimensionStore : storeDesc.getDimensionStores()) {
+			List<IFieldDescription> fields = new ArrayList<>();
+			List<IOptimizationDescription> optimizations = new ArrayList<>();
+			
+			Map<String, String> columns = new LinkedHashMap<>();
+			for(String keyField : dimensionStore.getTargetKeyFields()) {
+				columns.put(keyField, storeDesc.getColumnType(storeDesc.getColumnNames().indexOf(keyField)));
+			}
+			for(String field : dimensionStore.getAttributes().keySet()) {
+				columns.put(field, dimensionStore.getAttributeType(field));
+			}
+			for(Map.Entry<String, String> column : columns.entrySet()) {
+				fields.add(new FieldDescription(column.getKey(), column.getValue()));
+				if("int".equalsIgnoreCase(column.getValue()) || "String".equalsIgnoreCase(column.getValue())) {
+					optimizations.add(new OptimizationDescription(column.getKey(), Optimization.DICTIONARY));
+				}
+			}
+			
+			LOGGER.info("Normalizing fields " + dimensionStore.getAttributes().keySet() + " of " + storeDesc.getStoreName()
+					+ " into dimension store " + dimensionStore.getTargetStore());
+			stores.add(new StoreDescription(dimensionStore.getTargetStore(),
+											dimensionStore.getTargetKeyFields(),
+											fields,
+											"COLUMN",
+											null,
+											optimizations,
+											false));
+		}
+		return stores;
+	}
+	
+	/**
+	 * 
+	 * Generate the descriptions of the references from a data store to the refdata stores
+	 * and to its dimension stores.
+	 * 
+	 * @param storeDesc input data format
+	 * @return reference descriptions
+	 */
+	public List<IReferenceDescription> createReferenceDescriptions(StoreInfo storeDesc) {
+		List<IReferenceDescription> references = new ArrayList<>();
+		List<StoreReference> storeReferences = new ArrayList<>(storeDesc.getReferences());
+		storeReferences.addAll(storeDesc.getDimensionStores());
+		for(StoreReference reference : storeReferences) {
+			List<Pair<String, String>> fieldMappings = new ArrayList<>();
+			for(Map.Entry<String, String> mapping : reference.getFieldMapping().entrySet()) {
+				fieldMappings.add(new Pair<>(mapping.getKey(), mapping.getValue()));
+			}
+			references.add(new ReferenceDescription(storeDesc.getStoreName(),
+													reference.getTargetStore(),
+													reference.getName(),
+													fieldMappings));
+		}
+		return references;
+	}
+	
 	/**
 	 * 
 	 * Automatically configure the partitioning of the datastore.
@@ -242,18 +358,37 @@ public class AutoPivotGenerator {
 	 * @return partitioning description
 	 */
 	public IPartitioningDescription createPartitioningDescription(StoreInfo storeDesc) {
-		int processorCount = IPlatform.CURRENT_PLATFORM.getProcessorCount();
-		int partitionCount = processorCount/2;
+		String partitioningField = getPartitioningField(storeDesc);
+		if(partitioningField == null) {
+			return null;
+		}
+		return new PartitioningDescriptionBuilder()
+				.addSubPartitioning(partitioningField, new ModuloFunctionDescription(getPartitionCount()))
+				.build();
+	}
+	
+	/** @return number of partitions of the stores, half the number of cores */
+	public int getPartitionCount() {
+		return IPlatform.CURRENT_PLATFORM.getProcessorCount()/2;
+	}
+	
+	/**
+	 * Select the partitioning field of a store, the configured one
+	 * or the first field that is not numerical.
+	 * 
+	 * @param storeDesc input data format
+	 * @return partitioning field, null if the store is not partitioned
+	 */
+	public String getPartitioningField(StoreInfo storeDesc) {
+		int partitionCount = getPartitionCount();
 		
 		if(partitionCount > 1) {
 			if (storeDesc.hasPartitionField()) {	
 				String partitioningField = storeDesc.getPartitionField();
 				for(int c = 0; c < storeDesc.getColumnCount(); c++) {
 					String fieldName = storeDesc.getColumnName(c);
-					if(fieldName.equalsIgnoreCase(partitioningField)) {
-						return new PartitioningDescriptionBuilder()
-						.addSubPartitioning(fieldName, new ModuloFunctionDescription(partitionCount))
-						.build();
+					if(fieldName.equalsIgnoreCase(partitioningField) && !storeDesc.isNormalized(fieldName)) {
+						return fieldName;
 					}
 				}
 				LOGGER.warning("Configured partitioning field '" + partitioningField + "' does not exist in input file format. Default partitioning will be used.");
@@ -265,13 +400,12 @@ public class AutoPivotGenerator {
 				String fieldName = storeDesc.getColumnName(c);
 				String fieldType = storeDesc.getColumnType(c);
 					
-				if(!"float".equalsIgnoreCase(fieldType) && 
+				if(!storeDesc.isNormalized(fieldName) &&
+				   !"float".equalsIgnoreCase(fieldType) && 
 				   !"double".equalsIgnoreCase(fieldType) && 
 				   !"long".equalsIgnoreCase(fieldType)) {
 					LOGGER.info("Applying default partitioning policy: " + partitionCount + " partitions with partitioning field '" + fieldName + "'");
-					return new PartitioningDescriptionBuilder()
-											.addSubPartitioning(fieldName, new ModuloFunctionDescription(partitionCount))
-											.build();
+					return fieldName;
 				}
 			}
 			
@@ -292,11 +426,18 @@ public class AutoPivotGenerator {
 		IActivePivotDescription activePivotDescription = getActivePivotDescription(storeDesc.getStoreName());
 		
 		IAggregateProviderDefinition apd = new AggregateProviderDefinition(storeDesc.getAggregateProviderType().name());
+		apd.setPartialProviders(createPartialProviders(storeDesc));
 		activePivotDescription.setAggregateProvider(apd);
 		
 		// Hierarchies and dimensions
 		createHierarchiesAndDimensions(storeDesc);
 		
+		// Refdata attributes joined through references
+		createReferenceHierarchies(storeDesc);
+		
+		// Analysis hierarchies backed by reference data stores
+		createAnalysisHierarchies(storeDesc);
+		
 		// Measures
 		createMeasures(storeDesc);
 		
@@ -305,46 +446,181 @@ public class AutoPivotGenerator {
 
 		// Add distinct count calculation for each level field
 		addDistinctCountPP(storeDesc);
+		addApproxDistinctCount(storeDesc);
 
 		// Aggregate cache configuration
-		initActivePivotCache(storeDesc.getStoreName(), storeDesc.getCacheSize());
+		configureAggregatesCache(storeDesc);
 		
 		return activePivotDescription;
 	}
 
+	/**
+	 * Create the partial aggregate providers configured for the dataset,
+	 * for instance the ones suggested by the {@link PartialProviderAdvisor}
+	 * from the query workload log.
+	 * 
+	 * @param storeDesc input data format
+	 * @return partial provider definitions, empty when none is configured
+	 */
+	private List<IPartialProviderDefinition> createPartialProviders(StoreInfo storeDesc) {
+		List<IPartialProviderDefinition> partialProviders = new ArrayList<>();
+		
+		for (Map.Entry<String, Properties> entry : storeDesc.getPartialProviders().entrySet()) {
+			Properties props = entry.getValue();
+			String type = props.getProperty(PARTIAL_PROVIDER_TYPE_PROPERTY, DEFAULT_PARTIAL_PROVIDER_TYPE).trim().toUpperCase();
+			
+			// Levels are given as hierarchy or hierarchy:level, the
+			// generated hierarchies have one level named after the hierarchy
+			Map<String, String> levels = new LinkedHashMap<>();
+			for (String level : splitList(props.getProperty(PARTIAL_PROVIDER_LEVELS_PROPERTY))) {
+				String[] hierarchyLevel = level.split(":", 2);
+				levels.put(hierarchyLevel[0], hierarchyLevel.length == 2 ? hierarchyLevel[1] : hierarchyLevel[0]);
+			}
+			if (levels.isEmpty()) {
+				LOGGER.warning("Ignoring partial provider '" + entry.getKey() + "' without levels");
+				continue;
+			}
+			
+			IPartialProviderDefinition partialProvider = new PartialProviderDefinition();
+			partialProvider.setKey(entry.getKey());
+			partialProvider.setPluginKey(type);
+			partialProvider.setLevels(levels);
+			partialProvider.setMeasures(splitList(props.getProperty(PARTIAL_PROVIDER_MEASURES_PROPERTY)));
+			partialProviders.add(partialProvider);
+			
+			LOGGER.info("Adding " + type + " partial provider '" + entry.getKey() + "' on levels " + levels.values()
+					+ " for measures " + (partialProvider.getMeasures().isEmpty() ? "[all]" : partialProvider.getMeasures()));
+		}
+		return partialProviders;
+	}
+	
+	/** @return trimmed non empty elements of a comma separated list */
+	private static List<String> splitList(String value) {
+		List<String> result = new ArrayList<>();
+		if (value != null) {
+			for (String token : value.split(",")) {
+				if (token.trim().isEmpty() == false) {
+					result.add(token.trim());
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Set up Active Pivot Aggregate cache with the provided size. If size is null, nothing is done.
+	 * <p>
+	 * The cache only keeps the measures selected by the cache policy of the dataset,
+	 * by default the post processed measures, which are expensive to recompute,
+	 * while native sums are cheaply recomputed by the aggregate provider.
+	 * The configuration can be applied again once custom post processors are added.
 	 * 
-	 * @param pivotCacheSize cache size
+	 * @param storeDesc input data format
 	 */
-	private void initActivePivotCache(String storeName, Integer pivotCacheSize) {
+	public void configureAggregatesCache(StoreInfo storeDesc) {
+		Integer pivotCacheSize = storeDesc.getCacheSize();
 		if(pivotCacheSize != null) {
-			LOGGER.info("Configuring aggregate cache of size " + pivotCacheSize);
+			List<String> cachedMeasures = getCachedMeasures(storeDesc);
+			if (cachedMeasures.isEmpty() && APropertyInfo.CACHE_ALL_MEASURES.equalsIgnoreCase(storeDesc.getCacheMeasures()) == false) {
+				// An empty list would cache all the measures
+				LOGGER.warning("No measure of " + storeDesc.getStoreName() + " matches the cache policy " + storeDesc.getCacheMeasures() + ", aggregate cache disabled");
+				getActivePivotDescription(storeDesc.getStoreName()).setAggregatesCacheDescription(null);
+				return ;
+			}
+			LOGGER.info("Configuring aggregate cache of size " + pivotCacheSize + " for measures " + cachedMeasures);
 			IAggregatesCacheDescription cacheDescription = new AggregatesCacheDescription();
 			cacheDescription.setSize(pivotCacheSize);
-			getActivePivotDescription(storeName).setAggregatesCacheDescription(cacheDescription);
+			cacheDescription.setMeasures(cachedMeasures);
+			getActivePivotDescription(storeDesc.getStoreName()).setAggregatesCacheDescription(cacheDescription);
 		}
 	}
+	
+	/**
+	 * The POST_PROCESSED policy caches the post processors except the formulas
+	 * and the leaf counts, any other policy is a single regular expression
+	 * matching the names of the cached measures, use | to match several.
+	 * 
+	 * @param storeDesc input data format
+	 * @return names of the measures kept in the aggregate cache, empty to cache all measures
+	 */
+	private List<String> getCachedMeasures(StoreInfo storeDesc) {
+		String policy = storeDesc.getCacheMeasures();
+		List<String> cachedMeasures = new ArrayList<>();
+		if (APropertyInfo.CACHE_ALL_MEASURES.equalsIgnoreCase(policy)) {
+			return cachedMeasures;
+		}
+		
+		if (APropertyInfo.CACHE_POST_PROCESSED_MEASURES.equalsIgnoreCase(policy)) {
+			for (IPostProcessorDescription pp : getPostProcessorsDescription(storeDesc.getStoreName())) {
+				if (UNCACHED_POST_PROCESSORS.contains(pp.getPluginKey()) == false) {
+					cachedMeasures.add(pp.getName());
+				}
+			}
+			return cachedMeasures;
+		}
+		
+		Pattern pattern = Pattern.compile(policy);
+		List<String> measureNames = new ArrayList<>();
+		for (IAggregatedMeasureDescription measure : getAggregatedMeasuresDescription(storeDesc.getStoreName())) {
+			measureNames.add(measure.getName());
+		}
+		for (IPostProcessorDescription pp : getPostProcessorsDescription(storeDesc.getStoreName())) {
+			measureNames.add(pp.getName());
+		}
+		for (String measureName : measureNames) {
+			if (pattern.matcher(measureName).matches()) {
+				cachedMeasures.add(measureName);
+			}
+		}
+		return cachedMeasures;
+	}
 
 	/**
-	 * Add a distinct count post processor to all numerics measures
+	 * Add a distinct count post processor to all the level fields
+	 * whose measure profile includes it
 	 * 
 	 * @param storeDesc input data format
 	 */
 	private void addDistinctCountPP(StoreInfo storeDesc) {
 		for(int f = 0; f < storeDesc.getColumnCount(); f++) {
 			String fieldName = storeDesc.getColumnName(f);
-			String fieldType = storeDesc.getColumnType(f);
 
-			if(!NUMERICS_ONLY.contains(fieldType)) {
+			if(storeDesc.getColumnRole(f) == COLUMN_ROLE.LEVEL && storeDesc.getMeasures(fieldName).contains(MEASURE.DISTINCT_COUNT)) {
 				IPostProcessorDescription dc = new PostProcessorDescription(fieldName + ".COUNT", "LEAF_COUNT", new Properties());
-				String leafExpression = fieldName + "@" + fieldName;
+				String leafExpression = fieldName + "@" + storeDesc.getHierarchyName(fieldName);
 				dc.getProperties().setProperty("leafLevels", leafExpression);
 				dc.setFolder("Distinct Count");
 				getPostProcessorsDescription(storeDesc.getStoreName()).add(dc);
 			}
 		}
 	}
+	
+	/**
+	 * Add an approximate distinct count, backed by HyperLogLog sketches,
+	 * to all the level fields whose measure profile includes it.
+	 * 
+	 * @param storeDesc input data format
+	 */
+	private void addApproxDistinctCount(StoreInfo storeDesc) {
+		String storeName = storeDesc.getStoreName();
+		for(int f = 0; f < storeDesc.getColumnCount(); f++) {
+			String fieldName = storeDesc.getColumnName(f);
+
+			if(storeDesc.getColumnRole(f) == COLUMN_ROLE.LEVEL && storeDesc.getMeasures(fieldName).contains(MEASURE.APPROX_DISTINCT_COUNT)) {
+				String sketchKey = ApproxDistinctCountAggregateFunction.getPluginKey(storeDesc.getDistinctCountPrecision());
+				IAggregatedMeasureDescription sketch = new AggregatedMeasureDescription(fieldName, sketchKey);
+				sketch.setVisible(false);
+				sketch.setFolder("Distinct Count");
+				getAggregatedMeasuresDescription(storeName).add(sketch);
+				
+				IPostProcessorDescription dc = new PostProcessorDescription(fieldName + ".APPROX_COUNT", ApproxDistinctCountPostProcessor.PLUGIN_KEY, new Properties());
+				dc.setUnderlyingMeasures(fieldName + "." + sketchKey);
+				dc.setFolder("Distinct Count");
+				dc.setFormatter(INTEGER_FORMAT);
+				getPostProcessorsDescription(storeName).add(dc);
+			}
+		}
+	}
 
 	/**
 	 * Create native measures to the cube ([measureName].Count & [measureName].TIMESTAMP)
@@ -364,85 +640,106 @@ public class AutoPivotGenerator {
 
 	/**
 	 * Create measures based on StoreInfo provided.
+	 * The measures of each numerical column are selected by the measure profile
+	 * of the dataset, or by the column measures matching its name. Without column
+	 * measures, the columns ending with id are not considered as measures,
+	 * see {@link StoreInfo#isAggregated(int)}.
 	 * 
 	 * @param storeDesc input data format
 	 */
 	private void createMeasures(StoreInfo storeDesc) {
+		String storeName = storeDesc.getStoreName();
+		int measureCount = 0;
 		for(int f = 0; f < storeDesc.getColumnCount(); f++) {
 			String fieldName = storeDesc.getColumnName(f);
 			String fieldType = storeDesc.getColumnType(f);
-			if(NUMERICS.contains(fieldType) && 
-			   !fieldName.endsWith("id") && 
-			   !fieldName.endsWith("ID")) {
-				String storeName = storeDesc.getStoreName();
+			if(!storeDesc.isAggregated(f)) {
+				continue;
+			}
+			
+			EnumSet<MEASURE> measures = storeDesc.getMeasures(fieldName);
+			if(measures.contains(MEASURE.SUM)) {
 				addSumMeasure(storeName, fieldName, fieldType);
+				measureCount++;
+			}
+			if(measures.contains(MEASURE.MIN)) {
 				addMinMeasure(storeName, fieldName, fieldType);
+				measureCount++;
+			}
+			if(measures.contains(MEASURE.MAX)) {
 				addMaxMeasure(storeName, fieldName, fieldType);
-				addAvgMeasure(storeName, fieldName, fieldType);
-				addStdAndSqrtMeasure(storeName, fieldName, fieldType);
+				measureCount++;
+			}
+			if(measures.contains(MEASURE.AVG) || measures.contains(MEASURE.STD)) {
+				measureCount += addAvgAndStdMeasures(storeName, fieldName, fieldType, measures);
 			}
 		}
+		LOGGER.info("Generated " + measureCount + " measures for the numerical columns of " + storeName);
 	}
 
 	/**
-	 * Add standard deviation and square measures to the cube description only if the measure type 
-	 * provided is a decimals
+	 * Add the average of a numerical field, and its standard deviation when the
+	 * field is a decimal. The standard deviation is read from a hidden moments
+	 * measure, that also provides the average. Without standard deviation the
+	 * average is the SUM divided by the contributors count, which costs nothing
+	 * beyond the SUM measure, hidden when it was not requested.
 	 * 
-	 * @param measureName to be added to the cube ([measureName].std & [measureName].SQ_SUM)
+	 * @param measureName to be added to the cube ([measureName].MOMENTS, [measureName].avg & [measureName].STD)
 	 * @param measureType type of the measure
+	 * @param measures measures requested for the field (AVG and/or STD)
+	 * @return number of measures added
 	 */
-	private void addStdAndSqrtMeasure(String storeName, String measureName, String measureType) {
-		if (DECIMALS.contains(measureType)) {
-			IAggregatedMeasureDescription sq_sum = new AggregatedMeasureDescription(measureName, "SQ_SUM");
-			sq_sum.setVisible(false);
-			
-			// Shared formula expressions
-			String countExpression = "aggregatedValue[contributors.COUNT]";
-			String squareSumExpression = "aggregatedValue[" + measureName + ".SQ_SUM]";
-			String avgExpression = "aggregatedValue[" + measureName + ".avg]";
+	private int addAvgAndStdMeasures(String storeName, String measureName, String measureType, EnumSet<MEASURE> measures) {
+		int measureCount = 0;
+		if(!NUMERICS.contains(measureType)) {
+			return measureCount;
+		}
+		
+		// Add standard deviation only for floating point inputs
+		if (measures.contains(MEASURE.STD) && DECIMALS.contains(measureType)) {
+			// Single pass (count, mean, M2) aggregate shared by the statistics
+			IAggregatedMeasureDescription moments = new AggregatedMeasureDescription(measureName, MomentsAggregateFunction.PLUGIN_KEY);
+			moments.setVisible(false);
+			moments.setFolder(measureName);
+			getAggregatedMeasuresDescription(storeName).add(moments);
+			measureCount++;
 			
-			// Define a formula post processor to compute the standard deviation
-			IPostProcessorDescription std = new PostProcessorDescription(measureName + ".STD", "FORMULA", new Properties());
-			String stdFormula = "(" + squareSumExpression + ", " + countExpression + ", /)";
-			stdFormula += ", (" + avgExpression + ", " + avgExpression + ", *), -, SQRT";
-			std.getProperties().setProperty("formula", stdFormula);
-
-			// Put the measures for that field in one folder
-			sq_sum.setFolder(measureName);
-			std.setFolder(measureName);
+			getPostProcessorsDescription(storeName).add(createMomentsPostProcessor(measureName, ".STD", STATISTIC.STD));
+			measureCount++;
 			
-			// Setup measure formatters
-			sq_sum.setFormatter(INTEGERS.contains(measureType) ? INTEGER_FORMAT : DOUBLE_FORMAT);
-			std.setFormatter(DOUBLE_FORMAT);
+			if (measures.contains(MEASURE.AVG)) {
+				getPostProcessorsDescription(storeName).add(createMomentsPostProcessor(measureName, ".avg", STATISTIC.AVG));
+				measureCount++;
+			}
+		} else if (measures.contains(MEASURE.AVG)) {
+			if (!measures.contains(MEASURE.SUM)) {
+				IAggregatedMeasureDescription sum = new AggregatedMeasureDescription(measureName, "SUM");
+				sum.setVisible(false);
+				sum.setFolder(measureName);
+				getAggregatedMeasuresDescription(storeName).add(sum);
+				measureCount++;
+			}
 			
-			// Add standard deviation only for floating point inputs
-			getAggregatedMeasuresDescription(storeName).add(sq_sum);
-			getPostProcessorsDescription(storeName).add(std);
-		}
-	}
-
-	/**
-	 * Add average measure to the cube description only if the measure type provided is a numerics
-	 * 
-	 * @param measureName to be added to the cube ([measureName].avg)
-	 * @param measureType type of the measure
-	 */
-	private void addAvgMeasure(String storeName, String measureName, String measureType) {
-		if(NUMERICS.contains(measureType)) {
-			// Shared formula expressions
+			// Define a formula post processor to compute the average
 			String countExpression = "aggregatedValue[contributors.COUNT]";
 			String sumExpression = "aggregatedValue[" + measureName + ".SUM]";
-			
-			// Define a formula post processor to compute the average
 			PostProcessorDescription avg = new PostProcessorDescription(measureName + ".avg", "FORMULA", new Properties());
-			String formula = sumExpression + ", " + countExpression + ", /";
-			avg.getProperties().setProperty("formula", formula);
-			
+			avg.getProperties().setProperty("formula", sumExpression + ", " + countExpression + ", /");
 			avg.setFolder(measureName);
 			avg.setFormatter(DOUBLE_FORMAT);
-			
 			getPostProcessorsDescription(storeName).add(avg);
+			measureCount++;
 		}
+		return measureCount;
+	}
+	
+	private IPostProcessorDescription createMomentsPostProcessor(String measureName, String suffix, STATISTIC statistic) {
+		IPostProcessorDescription pp = new PostProcessorDescription(measureName + suffix, MomentsPostProcessor.PLUGIN_KEY, new Properties());
+		pp.getProperties().setProperty(MomentsPostProcessor.STATISTIC_PROPERTY, statistic.name());
+		pp.setUnderlyingMeasures(measureName + "." + MomentsAggregateFunction.PLUGIN_KEY);
+		pp.setFolder(measureName);
+		pp.setFormatter(DOUBLE_FORMAT);
+		return pp;
 	}
 
 	/**
@@ -497,7 +794,10 @@ public class AutoPivotGenerator {
 	}
 
 	/**
-	 * Create Hierarchies and Dimension based on StoreInfo provided
+	 * Create Hierarchies and Dimension based on StoreInfo provided,
+	 * one hierarchy for each column planned as a level. The columns
+	 * upper in an inferred hierarchy are levels of the hierarchy
+	 * of their deepest descendant.
 	 * 
 	 * @param storeDesc input data format
 	 */
@@ -508,11 +808,13 @@ public class AutoPivotGenerator {
 			String fieldName = storeDesc.getColumnName(f);
 			String fieldType = storeDesc.getColumnType(f);
 
-			if(!NUMERICS_ONLY.contains(fieldType)) {
+			if(storeDesc.getColumnRole(f) == COLUMN_ROLE.LEVEL && !storeDesc.isUpperLevel(fieldName)) {
 				IAxisDimensionDescription dimension = new AxisDimensionDescription(fieldName);
 				IAxisHierarchyDescription h = new AxisHierarchyDescription(fieldName);
-				IAxisLevelDescription l = new AxisLevelDescription(fieldName);
-				h.getLevels().add(l);
+				List<String> levelNames = storeDesc.getInferredHierarchies().get(fieldName);
+				for (String levelName : levelNames == null ? Collections.singletonList(fieldName) : levelNames) {
+					h.getLevels().add(new AxisLevelDescription(levelName));
+				}
 				dimension.getHierarchies().add(h);
 				dimensions.addValues(Arrays.asList(dimension));
 				
@@ -544,106 +846,131 @@ public class AutoPivotGenerator {
 		getActivePivotDescription(storeDesc.getStoreName()).setAxisDimensions(dimensions);
 	}
 
-	public IActivePivotDescription getActivePivotDescription(String storeName) {
-		if (activePivotDescriptionMap == null) {
-			synchronized (this) {
-				if (activePivotDescriptionMap == null) {
-					ConcurrentHashMap<String, IActivePivotDescription> localMap = new ConcurrentHashMap<>();
-					localMap.put(storeName, new ActivePivotDescription());
-					activePivotDescriptionMap = localMap;
+	/**
+	 * Create a dimension for each referenced refdata store, with one
+	 * single level hierarchy for each non decimal refdata attribute
+	 * 
+	 * @param storeDesc input data format
+	 */
+	private void createReferenceHierarchies(StoreInfo storeDesc) {
+		for(StoreReference reference : storeDesc.getReferences()) {
+			IAxisDimensionDescription dimension = new AxisDimensionDescription(reference.getTargetStore());
+			for(Map.Entry<String, String> attribute : reference.getAttributes().entrySet()) {
+				if(HierarchyPlanner.getDefaultRole(reference.getAttributeType(attribute.getKey())) == COLUMN_ROLE.LEVEL) {
+					IAxisHierarchyDescription hierarchy = new AxisHierarchyDescription(attribute.getValue());
+					hierarchy.getLevels().add(new AxisLevelDescription(attribute.getValue()));
+					dimension.getHierarchies().add(hierarchy);
 				}
 			}
+			if(dimension.getHierarchies().isEmpty() == false) {
+				getActivePivotDescription(storeDesc.getStoreName())
+						.getAxisDimensions()
+						.getValues()
+						.add(dimension);
+			}
 		}
-		else {
-			if (activePivotDescriptionMap.containsKey(storeName) == false) {
-				activePivotDescriptionMap.put(storeName, new ActivePivotDescription());
+	}
+
+	/**
+	 * Create the store backed analysis hierarchies configured for the dataset.
+	 * Hierarchies sharing the same dimension name are grouped in one dimension.
+	 * 
+	 * @param storeDesc input data format
+	 */
+	private void createAnalysisHierarchies(StoreInfo storeDesc) {
+		Map<String, IAxisDimensionDescription> analysisDimensions = new LinkedHashMap<>();
+		
+		for (Map.Entry<String, Properties> entry : storeDesc.getAnalysisHierarchies().entrySet()) {
+			Properties props = new Properties();
+			props.putAll(entry.getValue());
+			String dimensionName = (String) props.remove(ANALYSIS_DIMENSION_PROPERTY);
+			if (dimensionName == null) {
+				dimensionName = DEFAULT_ANALYSIS_DIMENSION;
 			}
+			
+			IAxisHierarchyDescription hierarchy = new AxisHierarchyDescription(entry.getKey(), "CustomAH", true);
+			hierarchy.setPluginKey(StoreAnalysisHierarchy.PLUGIN_KEY);
+			hierarchy.setProperties(props);
+			
+			analysisDimensions.computeIfAbsent(dimensionName, AxisDimensionDescription::new)
+							  .getHierarchies()
+							  .add(hierarchy);
+			LOGGER.info("Adding analysis hierarchy '" + entry.getKey() + "' backed by store '" + props.getProperty(StoreAnalysisHierarchy.STORE_PROPERTY) + "'");
+		}
+		
+		if (analysisDimensions.isEmpty() == false) {
+			getActivePivotDescription(storeDesc.getStoreName())
+					.getAxisDimensions()
+					.getValues()
+					.addAll(analysisDimensions.values());
+		}
+	}
+
+	/**
+	 * @return aggregate cache configuration by cube name, null for the cubes without cache
+	 */
+	public Map<String, IAggregatesCacheDescription> getAggregatesCacheDescriptions() {
+		Map<String, IAggregatesCacheDescription> result = new LinkedHashMap<>();
+		for (Map.Entry<String, IActivePivotDescription> entry : activePivotDescriptionMap.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getAggregatesCacheDescription());
 		}
-		return activePivotDescriptionMap.get(storeName);
+		return result;
+	}
+
+	/**
+	 * Get the description of the cube of a dataset, created on first use
+	 * with empty measure lists. The cubes of the different datasets can be
+	 * generated concurrently, the description of one cube is not thread safe.
+	 * 
+	 * @param storeName dataset name
+	 * @return cube description
+	 */
+	public IActivePivotDescription getActivePivotDescription(String storeName) {
+		return activePivotDescriptionMap.computeIfAbsent(storeName, name -> {
+			IMeasuresDescription measuresDescription = new MeasuresDescription();
+			measuresDescription.setAggregatedMeasuresDescription(new ArrayList<IAggregatedMeasureDescription>());
+			measuresDescription.setPostProcessorsDescription(new ArrayList<IPostProcessorDescription>());
+			measuresDescription.setNativeMeasures(new ArrayList<INativeMeasureDescription>());
+			IActivePivotDescription activePivotDescription = new ActivePivotDescription();
+			activePivotDescription.setMeasuresDescription(measuresDescription);
+			return activePivotDescription;
+		});
 	}
 	
 	public List<IAggregatedMeasureDescription> getAggregatedMeasuresDescription(String storeName) {
-		IMeasuresDescription measureDesc = getMeasuresDescription(storeName);
-		if (measureDesc.getAggregatedMeasuresDescription() == null) {
-			synchronized (this) {
-				if (measureDesc.getAggregatedMeasuresDescription() == null) {
-					measureDesc.setAggregatedMeasuresDescription(new ArrayList<IAggregatedMeasureDescription>());
-				}
-			}
-		}
-		return measureDesc.getAggregatedMeasuresDescription();
+		return getMeasuresDescription(storeName).getAggregatedMeasuresDescription();
 	}
 	
 	public List<IPostProcessorDescription> getPostProcessorsDescription(String storeName) {
-		IMeasuresDescription measureDesc = getMeasuresDescription(storeName);
-		if (measureDesc.getPostProcessorsDescription() == null) {
-			synchronized (this) {
-				if (measureDesc.getPostProcessorsDescription() == null) {
-					measureDesc.setPostProcessorsDescription(new ArrayList<IPostProcessorDescription>());
-				}
-			}
-		}
-		return measureDesc.getPostProcessorsDescription();
+		return getMeasuresDescription(storeName).getPostProcessorsDescription();
 	}
 	
 	public IMeasuresDescription getMeasuresDescription(String storeName) {
-		IActivePivotDescription activePivotDescription = getActivePivotDescription(storeName);
-		if (activePivotDescription.getMeasuresDescription() == null) {
-			synchronized (this) {
-				if (activePivotDescription.getMeasuresDescription() == null) {
-					activePivotDescription.setMeasuresDescription(new MeasuresDescription());
-				}
-			}
-		}
-		return activePivotDescription.getMeasuresDescription();
+		return getActivePivotDescription(storeName).getMeasuresDescription();
 	}
 	
 	public List<INativeMeasureDescription> getNativeMeasureDescription(String storeName) {
-		IMeasuresDescription measureDesc = getMeasuresDescription(storeName);
-		if (measureDesc.getNativeMeasures() == null) {
-			synchronized (this) {
-				if (measureDesc.getNativeMeasures() == null) {
-					measureDesc.setNativeMeasures(new ArrayList<INativeMeasureDescription>());
-				}
-			}
-		}
-		return measureDesc.getNativeMeasures();
+		return getMeasuresDescription(storeName).getNativeMeasures();
 	}
 	
+	/**
+	 * @return the manager description, with the catalogs and schemas
+	 * of the generated cubes sorted by cube name
+	 */
 	public IActivePivotManagerDescription getActivePivotManagerDescription() {
-		if (activePivotManagerDescription == null) {
-			synchronized (this) {
-				if (activePivotManagerDescription == null) {
-					activePivotManagerDescription = new ActivePivotManagerDescription();
-				}
-			}
-		}
+		IActivePivotManagerDescription activePivotManagerDescription = new ActivePivotManagerDescription();
+		activePivotManagerDescription.setCatalogs(getCatalogs());
+		activePivotManagerDescription.setSchemas(getSchemas());
 		return activePivotManagerDescription;
 	}
 	
-	@SuppressWarnings("unchecked")
+	/** @return the catalogs of the generated cubes, sorted by cube name */
 	public List<ICatalogDescription> getCatalogs() {
-		IActivePivotManagerDescription apManagerDesc = getActivePivotManagerDescription();
-		if (apManagerDesc.getCatalogs() == null) {
-			synchronized (this) {
-				if (apManagerDesc.getCatalogs() == null) {
-					apManagerDesc.setCatalogs(new ArrayList<>());
-				}
-			}
-		}
-		return (List<ICatalogDescription>) apManagerDesc.getCatalogs();
+		return new ArrayList<>(catalogs.values());
 	}
 	
-	@SuppressWarnings("unchecked")
+	/** @return the schemas of the generated cubes, sorted by cube name */
 	public List<IActivePivotSchemaInstanceDescription> getSchemas() {
-		IActivePivotManagerDescription apManagerDesc = getActivePivotManagerDescription();
-		if (apManagerDesc.getSchemas() == null) {
-			synchronized (this) {
-				if (apManagerDesc.getSchemas() == null) {
-					apManagerDesc.setSchemas(new ArrayList<>());
-				}
-			}
-		}
-		return (List<IActivePivotSchemaInstanceDescription>) apManagerDesc.getSchemas();
+		return new ArrayList<>(schemas.values());
 	}
 }
@@ -0,0 +1,191 @@
+package com.av.autopivot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.COLUMN_ROLE;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.HIERARCHY_SELECTION;
+import com.av.csv.CSVFormat;
+import com.av.csv.discover.ColumnStatistics;
+import com.qfs.util.impl.QfsArrays;
+
+/**
+ *
+ * Decide which columns become hierarchies, based on the column
+ * statistics computed on the discovery sample.
+ * <p>
+ * Every hierarchy member costs memory in the cube and time on each commit,
+ * so the columns that are almost unique (identifiers, names) or that hold
+ * free text are kept as store fields, reachable through drillthrough.
+ * Integer columns with a large range or many distinct values are treated
+ * as measures. The role of a column can be forced with the columnRole
+ * property, and the selection disabled with hierarchySelection=ALL.
+ * <p>
+ * Level columns in a functional dependency, like Country and City, are
+ * nested in one multi level hierarchy, unless hierarchyInference=false.
+ *
+ * @author ActiveViam
+ *
+ */
+public class HierarchyPlanner {
+
+	/** Logger */
+	protected static final Logger LOGGER = Logger.getLogger(HierarchyPlanner.class.getName());
+
+	/** Types that are measures only */
+	private static final Set<String> NUMERICS_ONLY = QfsArrays.mutableSet("double", "float", "long");
+
+	/** Integer types */
+	private static final Set<String> INTEGERS = QfsArrays.mutableSet("int", "long");
+
+	/** Columns with more distinct values than this ratio of the sample are not levels */
+	public static final double MAX_LEVEL_UNIQUENESS = 0.9;
+
+	/** Minimum number of sampled values to trust the uniqueness */
+	public static final int MIN_UNIQUENESS_SAMPLE = 50;
+
+	/** Columns whose values are longer on average are considered free text */
+	public static final double MAX_LEVEL_AVERAGE_LENGTH = 50d;
+
+	/** Integer columns above this range or cardinality are measures */
+	public static final double MAX_INTEGER_LEVEL_RANGE = 1000d;
+	public static final int MAX_INTEGER_LEVEL_CARDINALITY = 100;
+
+	/**
+	 * Plan the role of each column of a discovered file
+	 *
+	 * @param discovery discovered file format, with its column statistics
+	 * @param selection hierarchy selection mode
+	 * @param columnRoles roles forced by column name pattern
+	 * @return role of each column
+	 */
+	public static List<COLUMN_ROLE> plan(CSVFormat discovery, HIERARCHY_SELECTION selection, Map<Pattern, COLUMN_ROLE> columnRoles) {
+		List<COLUMN_ROLE> roles = new ArrayList<>(discovery.getColumnCount());
+		for (int c = 0; c < discovery.getColumnCount(); c++) {
+			String name = discovery.getColumnName(c);
+			String type = discovery.getColumnType(c);
+
+			COLUMN_ROLE role = getForcedRole(name, columnRoles);
+			if (role == null) {
+				ColumnStatistics statistics = discovery.getColumnStatistics(c);
+				if (selection == HIERARCHY_SELECTION.AUTO && statistics != null) {
+					role = getRole(type, statistics);
+					if (role != getDefaultRole(type)) {
+						LOGGER.info("Column " + name + " is used as " + role + " instead of " + getDefaultRole(type) + ", " + statistics);
+					}
+				} else {
+					role = getDefaultRole(type);
+				}
+			}
+			roles.add(role);
+		}
+		return roles;
+	}
+
+	/**
+	 * Build multi level hierarchies from the functional dependencies between
+	 * the level columns: each column depending on another one, and having
+	 * no child itself, is the deepest level of a hierarchy whose upper levels
+	 * are its ancestors.
+	 *
+	 * @param names column names
+	 * @param roles role of each column
+	 * @param columnParents parent column by child column
+	 * @return levels from top to bottom, by hierarchy name (the deepest level)
+	 */
+	public static Map<String, List<String>> planHierarchies(List<String> names, List<COLUMN_ROLE> roles, Map<String, String> columnParents) {
+		return planHierarchies(names, roles, columnParents, Collections.emptyMap());
+	}
+
+	/**
+	 * Build multi level hierarchies from the functional dependencies between
+	 * the level columns, the columns forced to LEVEL by their columnRole keep
+	 * their single level hierarchy, so that the levels referenced by name,
+	 * by post processors for instance, do not move.
+	 *
+	 * @param names column names
+	 * @param roles role of each column
+	 * @param columnParents parent column by child column
+	 * @param columnRoles roles forced by column name pattern
+	 * @return levels from top to bottom, by hierarchy name (the deepest level)
+	 */
+	public static Map<String, List<String>> planHierarchies(List<String> names, List<COLUMN_ROLE> roles, Map<String, String> columnParents, Map<Pattern, COLUMN_ROLE> columnRoles) {
+		Set<String> levels = new HashSet<>();
+		for (int c = 0; c < names.size() && c < roles.size(); c++) {
+			if (roles.get(c) == COLUMN_ROLE.LEVEL && getForcedRole(names.get(c), columnRoles) != COLUMN_ROLE.LEVEL) {
+				levels.add(names.get(c));
+			}
+		}
+
+		// Only keep the dependencies between level columns
+		Map<String, String> parents = new LinkedHashMap<>();
+		for (Map.Entry<String, String> entry : columnParents.entrySet()) {
+			if (levels.contains(entry.getKey()) && levels.contains(entry.getValue())) {
+				parents.put(entry.getKey(), entry.getValue());
+			}
+		}
+
+		Map<String, List<String>> hierarchies = new LinkedHashMap<>();
+		for (String name : names) {
+			if (!parents.containsKey(name) || parents.containsValue(name)) {
+				continue;
+			}
+			LinkedList<String> hierarchyLevels = new LinkedList<>();
+			for (String level = name; level != null && !hierarchyLevels.contains(level); level = parents.get(level)) {
+				hierarchyLevels.addFirst(level);
+			}
+			hierarchies.put(name, new ArrayList<>(hierarchyLevels));
+			LOGGER.info("Inferred hierarchy " + name + " with levels " + hierarchyLevels);
+		}
+		return hierarchies;
+	}
+
+	/** @return role forced for a column, null if no pattern matches */
+	private static COLUMN_ROLE getForcedRole(String name, Map<Pattern, COLUMN_ROLE> columnRoles) {
+		for (Map.Entry<Pattern, COLUMN_ROLE> entry : columnRoles.entrySet()) {
+			if (entry.getKey().matcher(name).matches()) {
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+
+	/** @return role of a column when all the columns are selected: every column but decimals and longs is a level */
+	public static COLUMN_ROLE getDefaultRole(String type) {
+		return NUMERICS_ONLY.contains(type) ? COLUMN_ROLE.MEASURE : COLUMN_ROLE.LEVEL;
+	}
+
+	/**
+	 * @param type column type
+	 * @param statistics column statistics
+	 * @return role of a column given its statistics
+	 */
+	public static COLUMN_ROLE getRole(String type, ColumnStatistics statistics) {
+		COLUMN_ROLE role = getDefaultRole(type);
+		if (role != COLUMN_ROLE.LEVEL || type.startsWith("DATE")) {
+			return role;
+		}
+		if (INTEGERS.contains(type)) {
+			if (statistics.getRange() > MAX_INTEGER_LEVEL_RANGE || statistics.getDistinctCount() > MAX_INTEGER_LEVEL_CARDINALITY) {
+				return COLUMN_ROLE.MEASURE;
+			}
+			return COLUMN_ROLE.LEVEL;
+		}
+		if (statistics.getAverageLength() > MAX_LEVEL_AVERAGE_LENGTH) {
+			return COLUMN_ROLE.FIELD;
+		}
+		int nonEmpty = statistics.getSampleSize() - statistics.getEmptyCount();
+		if (nonEmpty >= MIN_UNIQUENESS_SAMPLE && statistics.getUniqueness() > MAX_LEVEL_UNIQUENESS) {
+			return COLUMN_ROLE.FIELD;
+		}
+		return COLUMN_ROLE.LEVEL;
+	}
+}
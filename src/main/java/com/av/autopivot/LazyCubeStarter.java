@@ -0,0 +1,110 @@
+package com.av.autopivot;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.activeviam.builders.StartBuilding;
+import com.av.autopivot.config.pivot.ActivePivotManagerDescriptionConfig;
+import com.qfs.store.IDatastore;
+import com.quartetfs.biz.pivot.IActivePivotManager;
+import com.quartetfs.biz.pivot.IMultiVersionActivePivot;
+import com.quartetfs.fwk.QuartetRuntimeException;
+
+/**
+ *
+ * Start the cubes of the rarely used datasets on their first query
+ * instead of with the manager, so that the embedded AutoPivot is ready
+ * sooner. Their data is loaded in the datastore with the other datasets.
+ * <p>
+ * Each lazy cube gets its own manager on the shared datastore, generated
+ * and started when the cube is first requested, and stopped with the
+ * embedded AutoPivot.
+ *
+ * @author ActiveViam
+ *
+ */
+public class LazyCubeStarter {
+
+	/** Logger **/
+	protected static final Logger LOGGER = Logger.getLogger(LazyCubeStarter.class.getName());
+
+	protected final IDatastore datastore;
+
+	/** Generates the cube of a dataset */
+	protected final ActivePivotManagerDescriptionConfig managerConfig;
+
+	/** Datasets started lazily, by cube name */
+	protected final Map<String, StoreInfo> lazyStores = new LinkedHashMap<>();
+
+	/** Managers of the started lazy cubes, by cube name */
+	protected final Map<String, IActivePivotManager> managers = new ConcurrentHashMap<>();
+
+	public LazyCubeStarter(IDatastore datastore, ActivePivotManagerDescriptionConfig managerConfig, List<StoreInfo> lazyStoreInfos) {
+		this.datastore = datastore;
+		this.managerConfig = managerConfig;
+		for (StoreInfo storeDesc : lazyStoreInfos) {
+			lazyStores.put(storeDesc.getStoreName(), storeDesc);
+		}
+	}
+
+	/** @return the names of the cubes started on their first query */
+	public Set<String> getCubeNames() {
+		return lazyStores.keySet();
+	}
+
+	/**
+	 * @param cubeName cube name
+	 * @return whether the lazy cube is started
+	 */
+	public boolean isStarted(String cubeName) {
+		return managers.containsKey(cubeName);
+	}
+
+	/**
+	 * Get a lazy cube, started on the first call
+	 *
+	 * @param cubeName cube name
+	 * @return the cube, or null if it is not started lazily
+	 */
+	public IMultiVersionActivePivot getPivot(String cubeName) {
+		StoreInfo storeDesc = lazyStores.get(cubeName);
+		if (storeDesc == null) {
+			return null;
+		}
+		return managers.computeIfAbsent(cubeName, name -> start(storeDesc)).getActivePivots().get(cubeName);
+	}
+
+	protected IActivePivotManager start(StoreInfo storeDesc) {
+		long start = System.nanoTime();
+		AutoPivotGenerator generator = new AutoPivotGenerator();
+		managerConfig.generateCube(generator, storeDesc);
+		IActivePivotManager manager = StartBuilding.manager()
+												   .setDescription(generator.getActivePivotManagerDescription())
+												   .setDatastoreAndPermissions(datastore)
+												   .build();
+		try {
+			manager.init(null);
+			manager.start();
+		} catch (Exception e) {
+			throw new QuartetRuntimeException("Could not start the cube " + storeDesc.getStoreName(), e);
+		}
+		LOGGER.info("Cube " + storeDesc.getStoreName() + " started on its first query in " + (System.nanoTime() - start) / 1_000_000L + " ms");
+		return manager;
+	}
+
+	/** Stop the started lazy cubes */
+	public void stop() {
+		for (Map.Entry<String, IActivePivotManager> manager : managers.entrySet()) {
+			try {
+				manager.getValue().stop();
+			} catch (Exception e) {
+				LOGGER.warning("Could not stop the cube " + manager.getKey() + ": " + e.getMessage());
+			}
+		}
+		managers.clear();
+	}
+}
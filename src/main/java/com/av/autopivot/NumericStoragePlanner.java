@@ -0,0 +1,88 @@
+package com.av.autopivot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.logging.Logger;
+
+import com.av.csv.CSVFormat;
+import com.av.csv.discover.ColumnStatistics;
+
+/**
+ *
+ * Choose the narrowest storage type of the numerical columns,
+ * from the precision required for the dataset and the ranges
+ * and precisions recorded by the discovery.
+ * <p>
+ * Decimal columns are stored as float, half the memory of a double,
+ * when the dataset requires at most {@link #FLOAT_PRECISION} significant
+ * digits and the sampled values are within the float range. Only the columns
+ * of the data stores that are not aggregated into measures are narrowed: the
+ * aggregates of a float column would be floats too, and the post processors
+ * and refdata lookups read their inputs as doubles. A warning
+ * is logged when the sample already holds values rounded by the float.
+ * Integer columns are already narrowed by the discovery, that tries
+ * the int parser before the long parser.
+ *
+ * @author ActiveViam
+ *
+ */
+public class NumericStoragePlanner {
+
+	/** Logger */
+	protected static final Logger LOGGER = Logger.getLogger(NumericStoragePlanner.class.getName());
+
+	/** Significant decimal digits preserved by a float */
+	public static final int FLOAT_PRECISION = 6;
+
+	/**
+	 * Plan the storage type of each column of a discovered file
+	 *
+	 * @param discovery discovered file format, with its column statistics
+	 * @param decimalPrecision significant digits required for the decimal columns
+	 * @param narrowable whether the column of an index can be stored in a narrower type
+	 * @return storage type of each column
+	 */
+	public static List<String> plan(CSVFormat discovery, int decimalPrecision, IntPredicate narrowable) {
+		List<String> types = new ArrayList<>(discovery.getColumnCount());
+		for (int c = 0; c < discovery.getColumnCount(); c++) {
+			String type = discovery.getColumnType(c);
+			if (narrowable.test(c) == false) {
+				types.add(type);
+				continue;
+			}
+			String storageType = getStorageType(type, discovery.getColumnStatistics(c), decimalPrecision);
+			if (!storageType.equals(type)) {
+				ColumnStatistics statistics = discovery.getColumnStatistics(c);
+				LOGGER.info("Column " + discovery.getColumnName(c) + " is stored as " + storageType + " instead of " + type);
+				if (statistics != null && statistics.getMaxPrecision() > FLOAT_PRECISION) {
+					LOGGER.warning("Column " + discovery.getColumnName(c) + " has values with " + statistics.getMaxPrecision()
+							+ " significant digits, they are rounded to " + FLOAT_PRECISION + " digits");
+				}
+			}
+			types.add(storageType);
+		}
+		return types;
+	}
+
+	/**
+	 * @param type discovered type
+	 * @param statistics column statistics, null if unknown
+	 * @param decimalPrecision significant digits required for the decimal columns
+	 * @return storage type of the column
+	 */
+	public static String getStorageType(String type, ColumnStatistics statistics, int decimalPrecision) {
+		if ("double".equals(type) && decimalPrecision <= FLOAT_PRECISION && isInFloatRange(statistics)) {
+			return "float";
+		}
+		return type;
+	}
+
+	/** @return true if the sampled values are within the float range, or if they are unknown */
+	private static boolean isInFloatRange(ColumnStatistics statistics) {
+		if (statistics == null || !statistics.isNumerical()) {
+			return true;
+		}
+		return Math.abs(statistics.getMin()) <= Float.MAX_VALUE && Math.abs(statistics.getMax()) <= Float.MAX_VALUE;
+	}
+}
@@ -0,0 +1,164 @@
+package com.av.autopivot;
+
+import static com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.NO_REFERENCE;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.av.csv.CSVFormat;
+import com.av.csv.discover.ColumnStatistics;
+
+/**
+ *
+ * Detect the references from a data store to the refdata stores,
+ * so that refdata attributes are joined once at insertion time
+ * and exposed as levels of the cube, instead of being looked up
+ * by the post processors at query time.
+ * <p>
+ * A refdata column is a join key candidate when its values are unique in
+ * the discovery sample. A data column of the same type joins it when it
+ * has the same name and at least {@link #MIN_NAME_OVERLAP} of its sampled values
+ * are found in the key, or, for String columns with another name, at least
+ * {@link #MIN_VALUE_OVERLAP}. References can be forced or disabled per
+ * refdata store with the reference property.
+ * <p>
+ * An attribute is prefixed with the name of its refdata store when a data
+ * column or an attribute of another reference of the data store has the same name.
+ *
+ * @author ActiveViam
+ *
+ */
+public class StarSchemaPlanner {
+
+	/** Logger */
+	protected static final Logger LOGGER = Logger.getLogger(StarSchemaPlanner.class.getName());
+
+	/** Minimum ratio of the data values found in the key, when the column names match */
+	public static final double MIN_NAME_OVERLAP = 0.5d;
+
+	/** Minimum ratio of the data values found in the key, when only the values match */
+	public static final double MIN_VALUE_OVERLAP = 0.9d;
+
+	/**
+	 * Plan the references of a data store
+	 *
+	 * @param storeName name of the data store
+	 * @param discovery data file format
+	 * @param references forced references, field mapping text by refdata store name
+	 * @param refDiscoveries refdata file formats
+	 * @return references of the data store
+	 */
+	public static List<StoreReference> plan(String storeName, CSVFormat discovery, Map<String, String> references, List<CSVFormat> refDiscoveries) {
+		List<StoreReference> result = new ArrayList<>();
+		List<CSVFormat> targets = new ArrayList<>();
+		Map<String, Integer> attributeCounts = new HashMap<>();
+		for (CSVFormat refDiscovery : refDiscoveries) {
+			String targetStore = refDiscovery.getFileNameWithoutExtension();
+			String forced = references.get(targetStore);
+			if (NO_REFERENCE.equalsIgnoreCase(forced)) {
+				continue;
+			}
+
+			Map<String, String> fieldMapping = forced != null ? parseFieldMapping(forced) : detectFieldMapping(discovery, refDiscovery);
+			if (fieldMapping.isEmpty()) {
+				continue;
+			}
+			if (!discovery.getColumnNames().containsAll(fieldMapping.keySet())
+					|| !refDiscovery.getColumnNames().containsAll(fieldMapping.values())) {
+				LOGGER.warning("Ignoring reference from " + storeName + " to " + targetStore + ", unknown fields in " + fieldMapping);
+				continue;
+			}
+
+			StoreReference reference = new StoreReference(storeName + "_to_" + targetStore, targetStore, fieldMapping);
+			for (String field : refDiscovery.getColumnNames()) {
+				if (!fieldMapping.containsValue(field)) {
+					attributeCounts.merge(field, 1, Integer::sum);
+				}
+			}
+			LOGGER.info((forced != null ? "Configured " : "Detected ") + reference);
+			result.add(reference);
+			targets.add(refDiscovery);
+		}
+
+		// Prefix the attributes that collide with a data column or with an attribute of another reference
+		for (int r = 0; r < result.size(); r++) {
+			StoreReference reference = result.get(r);
+			CSVFormat refDiscovery = targets.get(r);
+			for (int c = 0; c < refDiscovery.getColumnCount(); c++) {
+				String field = refDiscovery.getColumnName(c);
+				if (!reference.getFieldMapping().containsValue(field)) {
+					boolean collision = discovery.getColumnNames().contains(field) || attributeCounts.get(field) > 1;
+					String attributeName = collision ? reference.getTargetStore() + "_" + field : field;
+					reference.addAttribute(field, attributeName, refDiscovery.getColumnType(c));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Detect the best single field join between a data file and a refdata file
+	 *
+	 * @return refdata key field by data field, empty if no join is found
+	 */
+	protected static Map<String, String> detectFieldMapping(CSVFormat discovery, CSVFormat refDiscovery) {
+		Map<String, String> result = new LinkedHashMap<>();
+		double bestScore = 0d;
+		for (int k = 0; k < refDiscovery.getColumnCount(); k++) {
+			ColumnStatistics keyStatistics = refDiscovery.getColumnStatistics(k);
+			if (keyStatistics == null || !keyStatistics.isUnique() || keyStatistics.getDistinctCount() < 2) {
+				continue;
+			}
+			String key = refDiscovery.getColumnName(k);
+			String keyType = refDiscovery.getColumnType(k);
+
+			for (int c = 0; c < discovery.getColumnCount(); c++) {
+				ColumnStatistics statistics = discovery.getColumnStatistics(c);
+				String column = discovery.getColumnName(c);
+				if (statistics == null || statistics.getDistinctCount() == 0 || !keyType.equals(discovery.getColumnType(c))) {
+					continue;
+				}
+				boolean sameName = column.equalsIgnoreCase(key);
+				if (!sameName && !"String".equals(keyType)) {
+					continue;
+				}
+
+				Set<String> found = new HashSet<>(statistics.getDistinctValues());
+				found.retainAll(keyStatistics.getDistinctValues());
+				double overlap = (double) found.size() / statistics.getDistinctCount();
+				double score = sameName ? overlap + 1d : overlap;
+				if (overlap >= (sameName ? MIN_NAME_OVERLAP : MIN_VALUE_OVERLAP) && score > bestScore) {
+					bestScore = score;
+					result.clear();
+					result.put(column, key);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Parse a field mapping like dataField:refField,dataField2:refField2,
+	 * a field without colon has the same name in both stores
+	 *
+	 * @param text field mapping text
+	 * @return refdata field by data field
+	 */
+	public static Map<String, String> parseFieldMapping(String text) {
+		Map<String, String> result = new LinkedHashMap<>();
+		for (String token : text.split(",")) {
+			if (token.trim().isEmpty()) {
+				continue;
+			}
+			String[] fields = token.split(":", 2);
+			result.put(fields[0].trim(), fields.length == 2 ? fields[1].trim() : fields[0].trim());
+		}
+		return result;
+	}
+}
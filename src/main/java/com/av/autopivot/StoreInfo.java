@@ -1,15 +1,33 @@
 package com.av.autopivot;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo;
 import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.AGGREGATE_PROVIDER_TYPE;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.COLUMN_ROLE;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.MEASURE;
+import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
 import com.av.csv.CSVFormat;
 import com.google.common.base.Strings;
+import com.qfs.util.impl.QfsArrays;
 import com.quartetfs.fwk.QuartetRuntimeException;
 
 public class StoreInfo {
+	/** Dimension store properties: key field and comma separated fields moved to the dimension store */
+	public static final String DIMENSION_STORE_KEY_PROPERTY = "key";
+	public static final String DIMENSION_STORE_FIELDS_PROPERTY = "fields";
+	
+	/** Types of the numerical columns */
+	private static final Set<String> NUMERICS = QfsArrays.mutableSet("double", "float", "int", "long");
+	
 	/** Column names */
 	protected final List<String> columnNames;
 	
@@ -25,9 +43,45 @@ public class StoreInfo {
 	/** Active Pivot cache size */
 	protected Integer cacheSize;
 	
+	/** Measures kept in the aggregate cache */
+	protected String cacheMeasures = APropertyInfo.DEFAULT_PIVOT_CACHE_MEASURES;
+	
+	/** Whether the cube is started on its first query instead of with the manager */
+	protected boolean lazyStart = false;
+	
+	/** Precision of the approximate distinct count sketches */
+	protected int distinctCountPrecision = APropertyInfo.DEFAULT_DISTINCT_COUNT_PRECISION;
+	
 	/** Aggregate provider type */
 	protected AGGREGATE_PROVIDER_TYPE aggregateProviderType; 
 	
+	/** Measures generated for the columns */
+	protected EnumSet<MEASURE> measures = APropertyInfo.DEFAULT_MEASURE_PROFILE.getMeasures();
+	
+	/** Measures generated for the columns matching a pattern */
+	protected Map<Pattern, EnumSet<MEASURE>> columnMeasures = Collections.emptyMap();
+	
+	/** Role of each column, empty when the columns were not planned */
+	protected List<COLUMN_ROLE> columnRoles = Collections.emptyList();
+	
+	/** Multi level hierarchies, levels from top to bottom by hierarchy name */
+	protected Map<String, List<String>> inferredHierarchies = Collections.emptyMap();
+	
+	/** Key fields of the store, set for the referenced refdata stores */
+	protected List<String> keyFields = Collections.emptyList();
+	
+	/** References to refdata stores */
+	protected List<StoreReference> references = Collections.emptyList();
+	
+	/** References to the dimension stores holding normalized columns */
+	protected List<StoreReference> dimensionStores = Collections.emptyList();
+	
+	/** Store backed analysis hierarchies, by hierarchy name */
+	protected Map<String, Properties> analysisHierarchies = Collections.emptyMap();
+	
+	/** Partial aggregate providers, by provider name */
+	protected Map<String, Properties> partialProviders = Collections.emptyMap();
+	
 	public StoreInfo(String storeName,
 					 String partitionField,
 					 List<String> columnNames,
@@ -68,6 +122,10 @@ public class StoreInfo {
 		return columnNames.size();
 	}
 	
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+	
 	public String getColumnName(int index) {
 		return columnNames.get(index);
 	}
@@ -76,6 +134,23 @@ public class StoreInfo {
 		return columnTypes.get(index);
 	}
 	
+	/**
+	 * The numerical columns are aggregated unless they are fields, or named
+	 * like an id without column measures, or their measure profile is empty.
+	 * 
+	 * @return true if measures are generated for a column
+	 */
+	public boolean isAggregated(int index) {
+		String columnName = getColumnName(index);
+		if (!NUMERICS.contains(getColumnType(index)) || getColumnRole(index) == COLUMN_ROLE.FIELD) {
+			return false;
+		}
+		if (getColumnMeasures(columnName) == null && (columnName.endsWith("id") || columnName.endsWith("ID"))) {
+			return false;
+		}
+		return getMeasures(columnName).isEmpty() == false;
+	}
+	
 	public void setPartitionField(String fieldName) {
 		this.partitionField = fieldName;
 	}
@@ -92,17 +167,258 @@ public class StoreInfo {
 		return cacheSize;
 	}
 	
+	public String getCacheMeasures() {
+		return cacheMeasures;
+	}
+	
+	public void setCacheMeasures(String cacheMeasures) {
+		this.cacheMeasures = cacheMeasures;
+	}
+	
 	public AGGREGATE_PROVIDER_TYPE getAggregateProviderType() {
 		return aggregateProviderType;
 	}
+	
+	public void setMeasures(EnumSet<MEASURE> measures) {
+		this.measures = measures;
+	}
+	
+	public void setColumnMeasures(Map<String, EnumSet<MEASURE>> columnMeasures) {
+		this.columnMeasures = new LinkedHashMap<>();
+		for (Map.Entry<String, EnumSet<MEASURE>> entry : columnMeasures.entrySet()) {
+			this.columnMeasures.put(Pattern.compile(entry.getKey()), entry.getValue());
+		}
+	}
+	
+	/** @return the measures overridden for a column, null if the column matches no pattern */
+	public EnumSet<MEASURE> getColumnMeasures(String columnName) {
+		for (Map.Entry<Pattern, EnumSet<MEASURE>> entry : columnMeasures.entrySet()) {
+			if (entry.getKey().matcher(columnName).matches()) {
+				return entry.getValue();
+			}
+		}
+		return null;
+	}
+	
+	/** @return the measures to generate for a column */
+	public EnumSet<MEASURE> getMeasures(String columnName) {
+		EnumSet<MEASURE> result = getColumnMeasures(columnName);
+		return result == null ? measures : result;
+	}
+	
+	public void setColumnRoles(List<COLUMN_ROLE> columnRoles) {
+		this.columnRoles = columnRoles;
+	}
+	
+	/** @return role of a column in the cube */
+	public COLUMN_ROLE getColumnRole(int index) {
+		if (index < columnRoles.size()) {
+			return columnRoles.get(index);
+		}
+		return HierarchyPlanner.getDefaultRole(getColumnType(index));
+	}
+	
+	public Map<String, List<String>> getInferredHierarchies() {
+		return inferredHierarchies;
+	}
+	
+	public void setInferredHierarchies(Map<String, List<String>> inferredHierarchies) {
+		this.inferredHierarchies = inferredHierarchies;
+	}
+	
+	/** @return name of the hierarchy holding the level of a column */
+	public String getHierarchyName(String columnName) {
+		if (inferredHierarchies.containsKey(columnName)) {
+			return columnName;
+		}
+		for (Map.Entry<String, List<String>> entry : inferredHierarchies.entrySet()) {
+			if (entry.getValue().contains(columnName)) {
+				return entry.getKey();
+			}
+		}
+		return columnName;
+	}
+	
+	/** @return true if the column is an upper level of a multi level hierarchy */
+	public boolean isUpperLevel(String columnName) {
+		return getHierarchyName(columnName).equals(columnName) == false;
+	}
+	
+	public List<String> getKeyFields() {
+		return keyFields;
+	}
+	
+	public void setKeyFields(List<String> keyFields) {
+		this.keyFields = keyFields;
+	}
+	
+	public List<StoreReference> getReferences() {
+		return references;
+	}
+	
+	public void setReferences(List<StoreReference> references) {
+		this.references = references;
+	}
+	
+	public List<StoreReference> getDimensionStores() {
+		return dimensionStores;
+	}
+	
+	public void setDimensionStores(List<StoreReference> dimensionStores) {
+		this.dimensionStores = dimensionStores;
+	}
+	
+	/** @return true if the column is moved to a dimension store */
+	public boolean isNormalized(String columnName) {
+		return getDimensionStore(columnName) != null;
+	}
+	
+	/** @return the reference to the dimension store holding a column, null if the column is in the store */
+	public StoreReference getDimensionStore(String columnName) {
+		for (StoreReference dimensionStore : dimensionStores) {
+			if (dimensionStore.getAttributes().containsKey(columnName)) {
+				return dimensionStore;
+			}
+		}
+		return null;
+	}
+	
+	/** @return selection expression of a column, through the reference for the normalized columns */
+	public String getColumnExpression(String columnName) {
+		StoreReference dimensionStore = getDimensionStore(columnName);
+		return dimensionStore == null ? columnName : dimensionStore.getExpression(columnName);
+	}
+	
+	/**
+	 * Create the references to the dimension stores of a dataset, which hold
+	 * the columns depending on a key, such as the attributes of a counterparty
+	 * 
+	 * @param storeName data store name
+	 * @param dimensionStores properties of each dimension store
+	 * @param discovery data file format
+	 * @return references to the dimension stores
+	 */
+	public static List<StoreReference> createDimensionStores(String storeName, Map<String, Properties> dimensionStores, CSVFormat discovery) {
+		List<StoreReference> result = new ArrayList<>();
+		for (Map.Entry<String, Properties> entry : dimensionStores.entrySet()) {
+			String key = entry.getValue().getProperty(DIMENSION_STORE_KEY_PROPERTY, "").trim();
+			String dimensionStoreName = storeName + "_" + entry.getKey();
+			int keyIndex = discovery.getColumnNames().indexOf(key);
+			if (keyIndex < 0) {
+				throw new QuartetRuntimeException("Unknown key field '" + key + "' for dimension store " + dimensionStoreName);
+			}
+			
+			StoreReference reference = new StoreReference(storeName + "_to_" + dimensionStoreName,
+														  dimensionStoreName,
+														  Collections.singletonMap(key, key));
+			for (String field : entry.getValue().getProperty(DIMENSION_STORE_FIELDS_PROPERTY, "").split(",")) {
+				field = field.trim();
+				int fieldIndex = discovery.getColumnNames().indexOf(field);
+				if (field.isEmpty() || field.equals(key)) {
+					continue;
+				}
+				if (fieldIndex < 0 || discovery.getColumnType(fieldIndex).startsWith("DATE")) {
+					throw new QuartetRuntimeException("Field '" + field + "' of dimension store " + dimensionStoreName + " is unknown or a date");
+				}
+				reference.addAttribute(field, field, discovery.getColumnType(fieldIndex));
+			}
+			result.add(reference);
+		}
+		return result;
+	}
+	
+	/**
+	 * Propose dimension stores from the functional dependencies detected
+	 * on the discovery sample: a column that is the child of no other column
+	 * keys the chain of its parents, like City keying Country and Region.
+	 * The dependencies are only detected on low cardinality String columns.
+	 * 
+	 * @param discovery data file format
+	 * @return fields depending on each proposed key, by key
+	 */
+	public static Map<String, List<String>> proposeDimensionStores(CSVFormat discovery) {
+		Map<String, String> columnParents = discovery.getColumnParents();
+		Map<String, List<String>> result = new LinkedHashMap<>();
+		for (String key : columnParents.keySet()) {
+			if (columnParents.containsValue(key)) {
+				continue;
+			}
+			List<String> fields = new ArrayList<>();
+			for (String parent = columnParents.get(key); parent != null && !fields.contains(parent); parent = columnParents.get(parent)) {
+				fields.add(parent);
+			}
+			result.put(key, fields);
+		}
+		return result;
+	}
+	
+	public Map<String, Properties> getAnalysisHierarchies() {
+		return analysisHierarchies;
+	}
+	
+	public void setAnalysisHierarchies(Map<String, Properties> analysisHierarchies) {
+		this.analysisHierarchies = analysisHierarchies;
+	}
+	
+	public int getDistinctCountPrecision() {
+		return distinctCountPrecision;
+	}
+	
+	public void setDistinctCountPrecision(int distinctCountPrecision) {
+		this.distinctCountPrecision = distinctCountPrecision;
+	}
+	
+	public boolean isLazyStart() {
+		return lazyStart;
+	}
+	
+	public void setLazyStart(boolean lazyStart) {
+		this.lazyStart = lazyStart;
+	}
+	
+	public Map<String, Properties> getPartialProviders() {
+		return partialProviders;
+	}
+	
+	public void setPartialProviders(Map<String, Properties> partialProviders) {
+		this.partialProviders = partialProviders;
+	}
 
 	public static StoreInfo createStoreInfo(String storeName, APropertyInfo dataInfo, CSVFormat discovery) {
 		StoreInfo storeInfo = new StoreInfo(storeName,
 											dataInfo.getDataStorePartitionField(), 
 											discovery.getColumnNames(),
-											discovery.getColumnTypes(),
+											new ArrayList<>(discovery.getColumnTypes()),
 											dataInfo.getPivotCacheSize(),
 											dataInfo.getAggregateProviderType());
+		storeInfo.setAnalysisHierarchies(dataInfo.getAnalysisHierarchies());
+		storeInfo.setPartialProviders(dataInfo.getPartialProviders());
+		storeInfo.setCacheMeasures(dataInfo.getPivotCacheMeasures());
+		storeInfo.setLazyStart(dataInfo.isPivotLazyStart());
+		storeInfo.setDistinctCountPrecision(dataInfo.getDistinctCountPrecision());
+		storeInfo.setDimensionStores(createDimensionStores(storeName, dataInfo.getDimensionStores(), discovery));
+		
+		Map<Pattern, COLUMN_ROLE> columnRoles = new LinkedHashMap<>();
+		for (Map.Entry<String, COLUMN_ROLE> entry : dataInfo.getColumnRoles().entrySet()) {
+			columnRoles.put(Pattern.compile(entry.getKey()), entry.getValue());
+		}
+		storeInfo.setColumnRoles(HierarchyPlanner.plan(discovery, dataInfo.getHierarchySelection(), columnRoles));
+		if (dataInfo.isHierarchyInference()) {
+			storeInfo.setInferredHierarchies(HierarchyPlanner.planHierarchies(discovery.getColumnNames(),
+																			   storeInfo.columnRoles,
+																			   discovery.getColumnParents(),
+																			   columnRoles));
+		}
+		storeInfo.setMeasures(dataInfo.getMeasures());
+		storeInfo.setColumnMeasures(dataInfo.getColumnMeasures());
+		
+		// Only the data store columns that are not aggregated are narrowed
+		if (dataInfo instanceof DataInfo) {
+			List<String> storageTypes = NumericStoragePlanner.plan(discovery, dataInfo.getDecimalPrecision(), c -> storeInfo.isAggregated(c) == false);
+			for (int c = 0; c < storageTypes.size(); c++) {
+				storeInfo.columnTypes.set(c, storageTypes.get(c));
+			}
+		}
 
 		return storeInfo;
 	}
@@ -0,0 +1,63 @@
+package com.av.autopivot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reference from a data store to a refdata store: the fields joined
+ * at insertion time and the refdata attributes exposed in the cube.
+ *
+ * @author ActiveViam
+ *
+ */
+public class StoreReference {
+
+	/** Reference name */
+	protected final String name;
+
+	/** Referenced store */
+	protected final String targetStore;
+
+	/** Referenced key field by data store field */
+	protected final Map<String, String> fieldMapping;
+
+	/** Names of the refdata attributes in the cube, by refdata field */
+	protected final Map<String, String> attributes = new LinkedHashMap<>();
+
+	/** Types of the refdata attributes, by refdata field */
+	protected final Map<String, String> attributeTypes = new LinkedHashMap<>();
+
+	public StoreReference(String name, String targetStore, Map<String, String> fieldMapping) {
+		this.name = name;
+		this.targetStore = targetStore;
+		this.fieldMapping = fieldMapping;
+	}
+
+	public String getName() { return name; }
+
+	public String getTargetStore() { return targetStore; }
+
+	public Map<String, String> getFieldMapping() { return fieldMapping; }
+
+	/** @return key fields of the referenced store */
+	public List<String> getTargetKeyFields() { return new ArrayList<>(fieldMapping.values()); }
+
+	public void addAttribute(String field, String attributeName, String type) {
+		attributes.put(field, attributeName);
+		attributeTypes.put(field, type);
+	}
+
+	public Map<String, String> getAttributes() { return attributes; }
+
+	public String getAttributeType(String field) { return attributeTypes.get(field); }
+
+	/** @return selection expression of a refdata field, through the reference */
+	public String getExpression(String field) { return name + "/" + field; }
+
+	@Override
+	public String toString() {
+		return "StoreReference [name=" + name + ", targetStore=" + targetStore + ", fieldMapping=" + fieldMapping + "]";
+	}
+}
@@ -18,27 +18,46 @@
  */
 package com.av.autopivot.config.datastore;
 
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 
 import com.av.autopivot.AutoPivotDiscoveryCreator;
 import com.av.autopivot.AutoPivotGenerator;
+import com.av.autopivot.StarSchemaPlanner;
 import com.av.autopivot.StoreInfo;
+import com.av.autopivot.StoreReference;
 import com.av.autopivot.config.properties.AutoPivotProperties;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.COLUMN_ROLE;
 import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
 import com.av.autopivot.config.properties.AutoPivotProperties.RefDataInfo;
+import com.av.autopivot.monitoring.MemoryReport;
+import com.av.autopivot.monitoring.StartupTracer;
+import com.av.autopivot.monitoring.StartupTracer.Span;
+import com.av.autopivot.workload.PartialProviderAdvisor;
+import com.av.autopivot.workload.QueryWorkloadLog;
+import com.av.autopivot.workload.QueryWorkloadLog.QueryShape;
 import com.av.csv.CSVFormat;
 import com.qfs.desc.IDatastoreSchemaDescription;
 import com.qfs.desc.IReferenceDescription;
 import com.qfs.desc.IStoreDescription;
 import com.qfs.desc.impl.DatastoreSchemaDescription;
 import com.qfs.server.cfg.IDatastoreDescriptionConfig;
+import com.quartetfs.fwk.QuartetRuntimeException;
 import com.quartetfs.fwk.impl.Pair;
 
 /**
@@ -50,6 +69,9 @@ import com.quartetfs.fwk.impl.Pair;
  */
 public class DatastoreDescriptionConfig implements IDatastoreDescriptionConfig {
 
+	/** Logger */
+	protected static final Logger LOGGER = Logger.getLogger(DatastoreDescriptionConfig.class.getName());
+
 	/** AutoPivot Configuration */
 	@Autowired
 	protected AutoPivotProperties autoPivotProps;
@@ -58,6 +80,21 @@ public class DatastoreDescriptionConfig implements IDatastoreDescriptionConfig {
 	@Autowired
 	protected AutoPivotDiscoveryCreator discoveryCreator;
 	
+	/** Query workload of each cube, read on first use */
+	protected Map<String, Map<QueryShape, Integer>> workload;
+	
+	/** Data store infos of the startup discovery, computed on first use */
+	protected List<StoreInfo> dataStoreInfos;
+	
+	/** Refdata store infos of the startup discovery, computed on first use */
+	protected List<StoreInfo> refStoreInfos;
+	
+	/** Refdata file formats of the startup discovery, computed on first use */
+	protected List<Pair<RefDataInfo, CSVFormat>> refDiscoveryFormats;
+	
+	/** Data file formats of the startup discovery, by dataset */
+	protected final Map<String, CSVFormat> discoveries = new ConcurrentHashMap<>();
+	
 	/**
 	 * 
 	 * Generator of store and cube descriptions.
@@ -69,10 +106,112 @@ public class DatastoreDescriptionConfig implements IDatastoreDescriptionConfig {
 		return new AutoPivotGenerator();
 	}
 	
-	/** @return the references between stores */
-	public Collection<IReferenceDescription> references() {
+	/**
+	 * Discover the data files and plan their references to the refdata stores,
+	 * the datasets are discovered concurrently
+	 * 
+	 * @param refDiscoveries refdata file formats
+	 * @return data store infos
+	 */
+	public List<StoreInfo> createDataStoreInfos(List<CSVFormat> refDiscoveries) {
+		return autoPivotProps.getDataInfoMap().entrySet()
+							 .parallelStream()
+							 .map(entry -> createDataStoreInfo(entry.getKey(), entry.getValue(), refDiscoveries))
+							 .collect(Collectors.toList());
+	}
+	
+	protected StoreInfo createDataStoreInfo(String storeName, DataInfo dataInfo, List<CSVFormat> refDiscoveries) {
+		CSVFormat discovery = discoveryCreator.createDiscoveryFormat(dataInfo);
+		discoveries.put(storeName, discovery);
+		
+		StoreInfo storeDesc = StoreInfo.createStoreInfo(storeName, dataInfo, discovery);
+		List<StoreReference> references = new ArrayList<>();
+		for (StoreReference reference : StarSchemaPlanner.plan(storeName, discovery, dataInfo.getReferences(), refDiscoveries)) {
+			// The fields moved to a dimension store cannot be joined from the data store
+			if (reference.getFieldMapping().keySet().stream().anyMatch(storeDesc::isNormalized)) {
+				LOGGER.warning("Ignoring " + reference + ", its fields are normalized into a dimension store");
+			} else {
+				references.add(reference);
+			}
+		}
+		storeDesc.setReferences(references);
+		if (storeDesc.getDimensionStores().isEmpty()) {
+			logDimensionStores(storeName, discovery);
+		}
+		
+		if (storeDesc.getPartialProviders().isEmpty()) {
+			Map<QueryShape, Integer> cubeWorkload = getWorkload().get(storeName);
+			if (cubeWorkload != null) {
+				storeDesc.setPartialProviders(PartialProviderAdvisor.createPartialProviders(cubeWorkload,
+																							getLevels(storeDesc),
+																							PartialProviderAdvisor.DEFAULT_MAX_PROVIDERS,
+																							AutoPivotGenerator.DEFAULT_PARTIAL_PROVIDER_TYPE));
+			}
+		}
+		return storeDesc;
+	}
+	
+	/** Log the dimension stores proposed from the functional dependencies of a dataset, as properties */
+	protected static void logDimensionStores(String storeName, CSVFormat discovery) {
+		for (Map.Entry<String, List<String>> proposal : StoreInfo.proposeDimensionStores(discovery).entrySet()) {
+			String prefix = DataInfo.DATA_INFO_ROOT_KEY + storeName + "." + DataInfo.DATA_INFO_DIMENSION_STORE + "." + proposal.getKey();
+			LOGGER.info("The fields " + proposal.getValue() + " of " + storeName + " depend on " + proposal.getKey()
+					+ " in the discovery sample, they can be normalized into a dimension store with "
+					+ prefix + "." + StoreInfo.DIMENSION_STORE_KEY_PROPERTY + "=" + proposal.getKey() + " and "
+					+ prefix + "." + StoreInfo.DIMENSION_STORE_FIELDS_PROPERTY + "=" + String.join(",", proposal.getValue()));
+		}
+	}
+	
+	/** @return the columns of a store that are hierarchies of its cube */
+	protected static Set<String> getLevels(StoreInfo storeDesc) {
+		Set<String> levels = new HashSet<>();
+		for (int f = 0; f < storeDesc.getColumnCount(); f++) {
+			String columnName = storeDesc.getColumnName(f);
+			if (storeDesc.getColumnRole(f) == COLUMN_ROLE.LEVEL && storeDesc.isUpperLevel(columnName) == false) {
+				levels.add(columnName);
+			}
+		}
+		return levels;
+	}
+	
+	/**
+	 * Read the query workload log once, the partial providers of the datasets
+	 * without partialProvider properties are suggested from it
+	 * 
+	 * @return number of hits by query shape, by cube
+	 */
+	protected synchronized Map<String, Map<QueryShape, Integer>> getWorkload() {
+		if (workload == null) {
+			String workloadLog = autoPivotProps.getWorkloadLog();
+			if (workloadLog != null && Files.isRegularFile(Paths.get(workloadLog))) {
+				workload = QueryWorkloadLog.load(Paths.get(workloadLog));
+				LOGGER.info("Query workload of the cubes " + workload.keySet() + " read from " + workloadLog);
+			} else {
+				workload = Collections.emptyMap();
+			}
+		}
+		return workload;
+	}
+	
+	/** @return the refdata file formats */
+	public List<CSVFormat> createRefDiscoveries() {
+		List<CSVFormat> refDiscoveries = new ArrayList<>();
+		for (Pair<RefDataInfo, CSVFormat> pair : getRefDiscoveryFormats()) {
+			refDiscoveries.add(pair.getRight());
+		}
+		return refDiscoveries;
+	}
+	
+	/**
+	 * @param dataStoreInfos data stores
+	 * @return the references between stores
+	 */
+	public Collection<IReferenceDescription> references(List<StoreInfo> dataStoreInfos) {
 		final Collection<IReferenceDescription> references = new LinkedList<>();
-
+		AutoPivotGenerator generator = generator();
+		for (StoreInfo storeDesc : dataStoreInfos) {
+			references.addAll(generator.createReferenceDescriptions(storeDesc));
+		}
 		return references;
 	}
 	
@@ -89,37 +228,131 @@ public class DatastoreDescriptionConfig implements IDatastoreDescriptionConfig {
 	 */
 	@Bean
 	public IDatastoreSchemaDescription schemaDescription() {	
+		List<StoreInfo> dataStoreInfos = getDataStoreInfos();
+		
 		final Collection<IStoreDescription> stores = new LinkedList<>();
-		stores.addAll(generateFromData());
+		stores.addAll(generateFromData(dataStoreInfos));
 		stores.addAll(generateFromRefDate());
-		return new DatastoreSchemaDescription(stores, references());
+		return new DatastoreSchemaDescription(stores, references(dataStoreInfos));
+	}
+	
+	/**
+	 * Discover the data files once, the store infos are shared by the
+	 * schema, the cubes, the sources and the monitoring
+	 * 
+	 * @return data store infos
+	 */
+	public synchronized List<StoreInfo> getDataStoreInfos() {
+		if (dataStoreInfos == null) {
+			dataStoreInfos = createDataStoreInfos(createRefDiscoveries());
+		}
+		return dataStoreInfos;
+	}
+	
+	/**
+	 * Discover the refdata files once, keyed by the fields the data stores reference
+	 * 
+	 * @return refdata store infos
+	 */
+	public synchronized List<StoreInfo> getRefStoreInfos() {
+		if (refStoreInfos == null) {
+			refStoreInfos = createRefStoreInfos(getDataStoreInfos());
+		}
+		return refStoreInfos;
+	}
+	
+	/** @return the refdata files and their formats, discovered once */
+	public synchronized List<Pair<RefDataInfo, CSVFormat>> getRefDiscoveryFormats() {
+		if (refDiscoveryFormats == null) {
+			refDiscoveryFormats = discoveryCreator.createDiscoveryRefFormat();
+		}
+		return refDiscoveryFormats;
+	}
+	
+	/**
+	 * @param storeName dataset name
+	 * @return the data store info of the dataset discovered at startup, null if the dataset is unknown
+	 */
+	public StoreInfo getDataStoreInfo(String storeName) {
+		for (StoreInfo storeDesc : getDataStoreInfos()) {
+			if (storeDesc.getStoreName().equals(storeName)) {
+				return storeDesc;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @param storeName dataset name
+	 * @return the format of the data files of the dataset discovered at startup, null if the dataset is unknown
+	 */
+	public CSVFormat getDiscovery(String storeName) {
+		getDataStoreInfos();
+		return discoveries.get(storeName);
 	}
 	
-	private Collection<IStoreDescription> generateFromData() {
+	private Collection<IStoreDescription> generateFromData(List<StoreInfo> dataStoreInfos) {
 		final Collection<IStoreDescription> stores = new LinkedList<>();
-		Map<String, DataInfo> dataInfoMap = autoPivotProps.getDataInfoMap();
 		AutoPivotGenerator generator = generator();
-		for (Entry<String, DataInfo> entry : dataInfoMap.entrySet()) {			
-			CSVFormat discovery = discoveryCreator.createDiscoveryFormat(entry.getValue());
-			
-			StoreInfo storeDesc = StoreInfo.createStoreInfo(entry.getKey(), entry.getValue(), discovery);
-			stores.add(generator.createStoreDescription(storeDesc));
-		}
+		// The store descriptions of the datasets are independent, generate them concurrently
+		List<List<IStoreDescription>> storesByDataset = dataStoreInfos.parallelStream().map(storeDesc -> {
+			try (Span span = StartupTracer.begin("generate", "store " + storeDesc.getStoreName())) {
+				List<IStoreDescription> datasetStores = new ArrayList<>();
+				datasetStores.add(generator.createStoreDescription(storeDesc));
+				datasetStores.addAll(generator.createDimensionStoreDescriptions(storeDesc));
+				return datasetStores;
+			}
+		}).collect(Collectors.toList());
+		storesByDataset.forEach(stores::addAll);
 		return stores;
 	}
 	
 	private Collection<IStoreDescription> generateFromRefDate() {
 		final Collection<IStoreDescription> stores = new LinkedList<>();
-		List<Pair<RefDataInfo, CSVFormat>> discoveryList = discoveryCreator.createDiscoveryRefFormat();
 		AutoPivotGenerator generator = generator();
+		for (StoreInfo storeDesc : getRefStoreInfos()) {
+			try (Span span = StartupTracer.begin("generate", "store " + storeDesc.getStoreName())) {
+				stores.add(generator.createStoreDescription(storeDesc));
+			}
+		}
+		return stores;	
+	}
+	
+	/**
+	 * Discover the refdata files, keyed by the fields the data stores reference
+	 * 
+	 * @param dataStoreInfos data stores
+	 * @return refdata store infos
+	 */
+	public List<StoreInfo> createRefStoreInfos(List<StoreInfo> dataStoreInfos) {
+		List<StoreInfo> storeInfos = new ArrayList<>();
+		List<Pair<RefDataInfo, CSVFormat>> discoveryList = getRefDiscoveryFormats();
+		
+		// The referenced stores are keyed by the referenced fields
+		Map<String, List<String>> keyFields = new HashMap<>();
+		for (StoreInfo dataStoreInfo : dataStoreInfos) {
+			for (StoreReference reference : dataStoreInfo.getReferences()) {
+				List<String> previous = keyFields.putIfAbsent(reference.getTargetStore(), reference.getTargetKeyFields());
+				if (previous != null && !previous.equals(reference.getTargetKeyFields())) {
+					throw new QuartetRuntimeException("Store " + reference.getTargetStore() + " is referenced with different keys: "
+							+ previous + " and " + reference.getTargetKeyFields());
+				}
+			}
+		}
 		
 		for (Pair<RefDataInfo, CSVFormat> pair : discoveryList) {
 			RefDataInfo refDataInfo = pair.getLeft();
 			CSVFormat discovery = pair.getRight();
 			StoreInfo storeDesc = StoreInfo.createStoreInfo(discovery.getFileNameWithoutExtension(), refDataInfo, discovery);
-			stores.add(generator.createStoreDescription(storeDesc));
+			storeDesc.setKeyFields(keyFields.getOrDefault(storeDesc.getStoreName(), Collections.emptyList()));
+			storeInfos.add(storeDesc);
 		}
-		return stores;	
+		return storeInfos;
+	}
+	
+	/** @return an empty memory report, describing the columns of the stores discovered at startup */
+	public MemoryReport createMemoryReport() {
+		return new MemoryReport(getDataStoreInfos(), getRefStoreInfos());
 	}
 
 }
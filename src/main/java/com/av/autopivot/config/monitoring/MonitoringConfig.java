@@ -0,0 +1,85 @@
+package com.av.autopivot.config.monitoring;
+
+import java.nio.file.Paths;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.av.autopivot.config.properties.AutoPivotProperties;
+import com.av.autopivot.monitoring.IngestionMetricsRegistry;
+import com.av.autopivot.monitoring.IngestionMetricsRestService;
+import com.av.autopivot.monitoring.StartupTracingBeanPostProcessor;
+import com.av.autopivot.workload.QueryInterceptorBeanPostProcessor;
+import com.av.autopivot.workload.QueryWorkloadLog;
+
+/**
+ *
+ * Spring configuration of the AutoPivot monitoring: the ingestion
+ * metrics of the stores, registered over JMX and served over REST,
+ * the timeline of the startup and the log of the query workload.
+ *
+ * @author Florian
+ *
+ */
+@Configuration
+public class MonitoringConfig {
+
+	/** AutoPivot Configuration */
+	@Autowired
+	protected AutoPivotProperties autoPivotProps;
+
+	/**
+	 * Record the creation of the beans in the startup timeline, static
+	 * so that it is created before the other beans
+	 *
+	 * @return the bean post processor
+	 */
+	@Bean
+	public static StartupTracingBeanPostProcessor startupTracingBeanPostProcessor() {
+		return new StartupTracingBeanPostProcessor();
+	}
+
+	/**
+	 * Notify the query listeners of the MDX queries of the queries services,
+	 * static so that it is created before the services
+	 *
+	 * @return the bean post processor
+	 */
+	@Bean
+	public static QueryInterceptorBeanPostProcessor queryInterceptorBeanPostProcessor() {
+		return new QueryInterceptorBeanPostProcessor();
+	}
+
+	/**
+	 * Log of the MDX queries of the cubes, recording only when
+	 * the autopivot.workload.log property is set
+	 *
+	 * @return the query workload log
+	 */
+	@Bean(destroyMethod = "close")
+	public QueryWorkloadLog queryWorkloadLog() {
+		String workloadLog = autoPivotProps.getWorkloadLog();
+		return new QueryWorkloadLog(workloadLog == null ? null : Paths.get(workloadLog));
+	}
+
+	/**
+	 * Ingestion metrics of the stores, fed by the CSV source
+	 *
+	 * @return the registry of the ingestion metrics
+	 */
+	@Bean(destroyMethod = "unregister")
+	public IngestionMetricsRegistry ingestionMetricsRegistry() {
+		return new IngestionMetricsRegistry();
+	}
+
+	/**
+	 * REST service of the ingestion metrics
+	 *
+	 * @return the REST service
+	 */
+	@Bean
+	public IngestionMetricsRestService ingestionMetricsRestService() {
+		return new IngestionMetricsRestService(ingestionMetricsRegistry());
+	}
+}
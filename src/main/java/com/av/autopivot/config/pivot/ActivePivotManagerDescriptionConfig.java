@@ -18,9 +18,8 @@
  */
 package com.av.autopivot.config.pivot;
 
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.logging.Logger;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -29,14 +28,15 @@ import com.av.autopivot.AutoPivotGenerator;
 import com.av.autopivot.StoreInfo;
 import com.av.autopivot.config.datastore.DatastoreDescriptionConfig;
 import com.av.autopivot.config.properties.AutoPivotProperties;
-import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
 import com.av.autopivot.config.source.SourceConfig;
-import com.av.csv.CSVFormat;
-import com.av.pivot.aggregation.SumOrStringAggregateFunction;
+import com.av.autopivot.monitoring.StartupTracer;
+import com.av.autopivot.monitoring.StartupTracer.Span;
+import com.av.pivot.aggregation.SumOrStringDoubleAggregateFunction;
 import com.av.pivot.analysishierarchy.CurrencyGroupAnalysisHierarchy;
 import com.av.pivot.analysishierarchy.FxTargetCurrencyAnalysisHierarchy;
 import com.av.pivot.postprocessing.CurrencyGroupManyToManyPostProcessor;
 import com.av.pivot.postprocessing.FXPostProcessor;
+import com.av.pivot.postprocessing.SumOrStringPostProcessor;
 import com.qfs.server.cfg.IActivePivotManagerDescriptionConfig;
 import com.quartetfs.biz.pivot.definitions.IActivePivotManagerDescription;
 import com.quartetfs.biz.pivot.definitions.IAggregatedMeasureDescription;
@@ -61,6 +61,12 @@ import com.quartetfs.biz.pivot.postprocessing.impl.ADynamicAggregationPostProces
  */
 public class ActivePivotManagerDescriptionConfig implements IActivePivotManagerDescriptionConfig {
 
+	/** Logger */
+	protected static final Logger LOGGER = Logger.getLogger(ActivePivotManagerDescriptionConfig.class.getName());
+
+	/** Suffix of the hidden measures holding a SUMORSTRING_DOUBLE aggregate */
+	protected static final String AGGREGATE_SUFFIX = ".aggregate";
+
 	/** Autopivot Configuration */
 	@Autowired
 	protected AutoPivotProperties autoPivotProps;
@@ -76,26 +82,52 @@ public class ActivePivotManagerDescriptionConfig implements IActivePivotManagerD
 	@Autowired
 	protected AutoPivotDiscoveryCreator discoveryCreator;
 
+	/**
+	 * Generate the cubes of the datasets started with the manager. The
+	 * datasets are independent, their cubes are generated concurrently.
+	 */
 	@Override
 	public IActivePivotManagerDescription managerDescription() {
 
 		AutoPivotGenerator generator = datastoreConfig.generator();
 		
-		Map<String, DataInfo> dataInfoMap = autoPivotProps.getDataInfoMap();
-		for (Entry<String, DataInfo> entry : dataInfoMap.entrySet()) {
-			DataInfo dataInfo = entry.getValue();
-			
-			CSVFormat discovery = discoveryCreator.createDiscoveryFormat(dataInfo);
-			
-			StoreInfo storeDesc = StoreInfo.createStoreInfo(entry.getKey(), dataInfo, discovery);
+		datastoreConfig.getDataStoreInfos()
+					   .parallelStream()
+					   .filter(this::isStartedWithManager)
+					   .forEach(storeDesc -> generateCube(generator, storeDesc));
+		return generator.getActivePivotManagerDescription();
+	}
+	
+	/**
+	 * @param storeDesc data store
+	 * @return true to start the cube of the dataset with the manager
+	 */
+	protected boolean isStartedWithManager(StoreInfo storeDesc) {
+		if (storeDesc.isLazyStart()) {
+			LOGGER.warning("pivot.lazyStart is ignored by the server, the cube " + storeDesc.getStoreName() + " is started with the manager:"
+					+ " its query services only see the cubes of this manager, and a cube cannot be added to a started manager");
+		}
+		return true;
+	}
+	
+	/**
+	 * Generate the cube of a dataset, with the custom dimensions
+	 * and post processors of the risks dataset
+	 * 
+	 * @param generator generator, shared by the cubes generated concurrently
+	 * @param storeDesc data store
+	 */
+	public void generateCube(AutoPivotGenerator generator, StoreInfo storeDesc) {
+		try (Span span = StartupTracer.begin("generate", "cube " + storeDesc.getStoreName())) {
 			generator.createCube(storeDesc);
 			
-			if (entry.getKey().equals("risks")) {
+			if (storeDesc.getStoreName().equals("risks")) {
 				addCustomDimensions(generator, storeDesc);
 				addCustomPostProcessors(generator, storeDesc);
+				// Cache the custom post processors as well
+				generator.configureAggregatesCache(storeDesc);
 			}
 		}
-		return generator.getActivePivotManagerDescription();
 	}
 	
 	private void addCustomDimensions(AutoPivotGenerator generator, StoreInfo storeDesc) {
@@ -149,34 +181,59 @@ public class ActivePivotManagerDescriptionConfig implements IActivePivotManagerD
 		String storeName = storeDesc.getStoreName();
 		
 		// SumOrString Aggregated Measure
-		IAggregatedMeasureDescription sumOrString = new AggregatedMeasureDescription("pnl", SumOrStringAggregateFunction.PLUGIN_KEY);
+		IAggregatedMeasureDescription sumOrString = new AggregatedMeasureDescription("pnl", SumOrStringDoubleAggregateFunction.PLUGIN_KEY);
 		sumOrString.setFolder("CustomPP");
 		sumOrString.setFormatter(AutoPivotGenerator.DOUBLE_FORMAT);
 		sumOrString.setVisible(false);
 		generator.getAggregatedMeasuresDescription(storeName)
 				 .add(sumOrString);
+		generator.getPostProcessorsDescription(storeName)
+				 .add(createSumOrStringPostProcessor("pnl.SUMORSTRING", "pnl." + SumOrStringDoubleAggregateFunction.PLUGIN_KEY, false));
 		
 		// FXPostProcessor
 		Properties props = new Properties();
 		props.setProperty(ADynamicAggregationPostProcessor.LEAF_LEVELS, "Currency@Currency@Currency,FxTargetCurrency@FxTargetCurrency@Analysis Dimension");
-		props.setProperty(ADynamicAggregationPostProcessor.AGGREGATION_FUNCTION, SumOrStringAggregateFunction.PLUGIN_KEY);
-		IPostProcessorDescription fxPP = new PostProcessorDescription("FxMeasure", FXPostProcessor.PLUGIN_KEY, props);
+		props.setProperty(ADynamicAggregationPostProcessor.AGGREGATION_FUNCTION, SumOrStringDoubleAggregateFunction.PLUGIN_KEY);
+		IPostProcessorDescription fxPP = new PostProcessorDescription("FxMeasure" + AGGREGATE_SUFFIX, FXPostProcessor.PLUGIN_KEY, props);
 		fxPP.setFolder("CustomPP");
 		fxPP.setFormatter(AutoPivotGenerator.DOUBLE_FORMAT);
 		fxPP.setUnderlyingMeasures("pnl.SUM");
+		fxPP.setVisible(false);
 		generator.getPostProcessorsDescription(storeName)
 				 .add(fxPP);
+		generator.getPostProcessorsDescription(storeName)
+				 .add(createSumOrStringPostProcessor("FxMeasure", fxPP.getName(), true));
 		
 		// CurrencyGroupManyToManyPostProcessor
 		props = new Properties();
 		props.setProperty(ADynamicAggregationPostProcessor.ANALYSIS_LEVELS_PROPERTY, "CurrencyGroup@CurrencyGroup@Analysis Dimension,CurrencyGroup_1@CurrencyGroup@Analysis Dimension");
 		props.setProperty(ADynamicAggregationPostProcessor.LEAF_LEVELS, "Currency@Currency@Currency,CurrencyGroup_1@CurrencyGroup@Analysis Dimension");
-		props.setProperty(ADynamicAggregationPostProcessor.AGGREGATION_FUNCTION, SumOrStringAggregateFunction.PLUGIN_KEY);
-		IPostProcessorDescription cGMTMPP = new PostProcessorDescription("CGMTMMeasure", CurrencyGroupManyToManyPostProcessor.PLUGIN_KEY, props);
+		props.setProperty(ADynamicAggregationPostProcessor.AGGREGATION_FUNCTION, SumOrStringDoubleAggregateFunction.PLUGIN_KEY);
+		IPostProcessorDescription cGMTMPP = new PostProcessorDescription("CGMTMMeasure" + AGGREGATE_SUFFIX, CurrencyGroupManyToManyPostProcessor.PLUGIN_KEY, props);
 		cGMTMPP.setFolder("CustomPP");
 		cGMTMPP.setFormatter(AutoPivotGenerator.DOUBLE_FORMAT);
 		cGMTMPP.setUnderlyingMeasures("pnl.SUM");
+		cGMTMPP.setVisible(false);
 		generator.getPostProcessorsDescription(storeName)
 				 .add(cGMTMPP);
+		generator.getPostProcessorsDescription(storeName)
+				 .add(createSumOrStringPostProcessor("CGMTMMeasure", cGMTMPP.getName(), true));
+	}
+
+	/**
+	 * Create the measure displaying a SUMORSTRING_DOUBLE aggregate as a Double or a String
+	 *
+	 * @param name measure name
+	 * @param underlyingMeasure SUMORSTRING_DOUBLE measure
+	 * @param visible whether the measure is visible
+	 * @return post processor description
+	 */
+	protected IPostProcessorDescription createSumOrStringPostProcessor(String name, String underlyingMeasure, boolean visible) {
+		IPostProcessorDescription pp = new PostProcessorDescription(name, SumOrStringPostProcessor.PLUGIN_KEY, new Properties());
+		pp.setUnderlyingMeasures(underlyingMeasure);
+		pp.setFolder("CustomPP");
+		pp.setFormatter(AutoPivotGenerator.DOUBLE_FORMAT);
+		pp.setVisible(visible);
+		return pp;
 	}
 }
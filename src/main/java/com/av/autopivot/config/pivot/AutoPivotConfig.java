@@ -21,6 +21,7 @@ package com.av.autopivot.config.pivot;
 import static com.quartetfs.fwk.types.impl.ExtendedPluginInjector.inject;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,10 +37,16 @@ import com.av.autopivot.AutoPivotDiscoveryCreator;
 import com.av.autopivot.AutoPivotGenerator;
 import com.av.autopivot.config.contentserver.ContentServiceConfig;
 import com.av.autopivot.config.datastore.DatastoreDescriptionConfig;
+import com.av.autopivot.config.monitoring.MonitoringConfig;
 import com.av.autopivot.config.datastore.DatastoreServiceConfig;
 import com.av.autopivot.config.properties.AutoPivotProperties;
 import com.av.autopivot.config.source.SourceConfig;
 import com.av.autopivot.config.ui.ActiveUIResourceServerConfig;
+import com.av.autopivot.monitoring.AggregatesCacheMonitor;
+import com.av.autopivot.monitoring.MemoryReportRestService;
+import com.av.autopivot.monitoring.MemoryReporter;
+import com.av.autopivot.monitoring.StartupTracer;
+import com.av.autopivot.monitoring.StartupTracer.Span;
 import com.av.autopivot.security.ActivePivotBranchPermissionsManagerConfig;
 import com.av.autopivot.security.AutoPivotCorsFilterConfig;
 import com.av.autopivot.security.SecurityConfig;
@@ -108,6 +115,9 @@ value = {
 		ActivePivotServicesConfig.class,
 		ActiveViamRestServicesConfig.class,
 		
+		// Ingestion metrics over JMX and REST, startup timeline
+		MonitoringConfig.class,
+		
 		// XMLA Servlet
 		ActivePivotXmlaServletConfig.class,
 		
@@ -151,6 +161,10 @@ public class AutoPivotConfig {
 	@Autowired
 	protected SecurityConfig securityConfig;
 
+	/** Datastore description spring configuration, holding the generator */
+	@Autowired
+	protected DatastoreDescriptionConfig datastoreDescriptionConfig;
+
 	/** ActivePivot Service Config */
 	@Autowired
 	protected ActivePivotServicesConfig apServiceConfig;
@@ -175,8 +189,12 @@ public class AutoPivotConfig {
 		/* Initialize the ActivePivot Manager and start it */
 		/* *********************************************** */
 
-		apConfig.activePivotManager().init(null);
-		apConfig.activePivotManager().start();
+		try (Span span = StartupTracer.begin("pivot", "activePivotManager.init")) {
+			apConfig.activePivotManager().init(null);
+		}
+		try (Span span = StartupTracer.begin("pivot", "activePivotManager.start")) {
+			apConfig.activePivotManager().start();
+		}
 
 		return null;
 	}
@@ -214,6 +232,47 @@ public class AutoPivotConfig {
 		return new JMXEnabler(apConfig.activePivotManager());
 	}
 
+	/**
+	 * Enable JMX Monitoring of the aggregate caches: size, hit rate and evictions per cube
+	 *
+	 * @return the aggregate cache monitors
+	 */
+	@Bean
+	@DependsOn(value = "startManager")
+	public List<AggregatesCacheMonitor> aggregatesCacheMonitors() {
+		return AggregatesCacheMonitor.register(
+				apConfig.activePivotManager(),
+				datastoreDescriptionConfig.generator().getAggregatesCacheDescriptions());
+	}
+
+	/**
+	 * Memory report of the stores and cubes, computed in the background
+	 * after the initial loading and exposed over JMX
+	 *
+	 * @return the memory reporter
+	 */
+	@Bean(destroyMethod = "unregister")
+	@DependsOn(value = "loadAllData")
+	public MemoryReporter memoryReporter() {
+		MemoryReporter reporter = new MemoryReporter(
+				datastoreConfig.datastore(),
+				apConfig.activePivotManager(),
+				datastoreDescriptionConfig::createMemoryReport);
+		reporter.refreshInBackground();
+		reporter.register();
+		return reporter;
+	}
+
+	/**
+	 * REST service of the memory report
+	 *
+	 * @return the REST service
+	 */
+	@Bean
+	public MemoryReportRestService memoryReportRestService() {
+		return new MemoryReportRestService(memoryReporter());
+	}
+
 	/**
 	 * Enable JMX Monitoring for the Content Service
 	 *
@@ -0,0 +1,46 @@
+package com.av.autopivot.config.pivot;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+
+import com.av.autopivot.LazyCubeStarter;
+import com.av.autopivot.StoreInfo;
+import com.qfs.server.cfg.IDatastoreConfig;
+
+/**
+ *
+ * Cube descriptions of the embedded AutoPivot: the cubes of the datasets
+ * with pivot.lazyStart=true are left out of the manager and started on
+ * their first query by the {@link LazyCubeStarter}.
+ *
+ * @author ActiveViam
+ *
+ */
+public class EmbeddedActivePivotManagerDescriptionConfig extends ActivePivotManagerDescriptionConfig {
+
+	/** Datastore spring configuration */
+	@Autowired
+	protected IDatastoreConfig datastoreSpringConfig;
+
+	@Override
+	protected boolean isStartedWithManager(StoreInfo storeDesc) {
+		return storeDesc.isLazyStart() == false;
+	}
+
+	/**
+	 * Starter of the cubes of the rarely used datasets
+	 *
+	 * @return the lazy cube starter
+	 */
+	@Bean(destroyMethod = "stop")
+	public LazyCubeStarter lazyCubeStarter() {
+		List<StoreInfo> lazyStoreInfos = datastoreConfig.getDataStoreInfos()
+														.stream()
+														.filter(StoreInfo::isLazyStart)
+														.collect(Collectors.toList());
+		return new LazyCubeStarter(datastoreSpringConfig.datastore(), this, lazyStoreInfos);
+	}
+}
@@ -0,0 +1,102 @@
+package com.av.autopivot.config.pivot;
+
+import java.util.Arrays;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import com.activeviam.builders.StartBuilding;
+import com.av.autopivot.AutoPivotDiscoveryCreator;
+import com.av.autopivot.AutoPivotGenerator;
+import com.av.autopivot.config.datastore.DatastoreDescriptionConfig;
+import com.av.autopivot.config.monitoring.MonitoringConfig;
+import com.av.autopivot.config.properties.EmbeddedAutoPivotProperties;
+import com.av.autopivot.config.source.SourceConfig;
+import com.av.autopivot.monitoring.StartupTracer;
+import com.av.autopivot.monitoring.StartupTracer.Span;
+import com.qfs.server.cfg.IActivePivotManagerDescriptionConfig;
+import com.qfs.server.cfg.IDatastoreConfig;
+import com.qfs.server.cfg.impl.DatastoreConfig;
+import com.quartetfs.biz.pivot.IActivePivotManager;
+
+/**
+ *
+ * Spring configuration of an embedded AutoPivot: the datastore, the generated
+ * cubes and the CSV source, without the web layer, ActiveUI, XMLA, websockets,
+ * the content service, JWT and security.
+ * <p>
+ * The properties are given programmatically, see {@link com.av.autopivot.AutoPivot},
+ * and the cubes are queried through the Java API of the ActivePivot manager. The
+ * cubes of the datasets with pivot.lazyStart=true are started on their first query,
+ * the datasets with lazyLoad=true are loaded on their first query.
+ *
+ * @author ActiveViam
+ *
+ */
+@Configuration
+@Import(
+value = {
+		EmbeddedAutoPivotProperties.class,
+
+		EmbeddedActivePivotManagerDescriptionConfig.class,
+		DatastoreDescriptionConfig.class,
+		DatastoreConfig.class,
+		SourceConfig.class,
+
+		// Ingestion metrics over JMX, startup timeline
+		MonitoringConfig.class
+})
+public class HeadlessAutoPivotConfig {
+
+	/** Before anything else we statically initialize the ActiveViam Registry. */
+	static {
+		AutoPivotGenerator.initRegistry(Arrays.asList("com.av"));
+	}
+
+	/** Datastore spring configuration */
+	@Autowired
+	protected IDatastoreConfig datastoreConfig;
+
+	/** Generated cube descriptions */
+	@Autowired
+	protected IActivePivotManagerDescriptionConfig apManagerConfig;
+
+	/** Discover the input data file (CSV separator, column types) */
+	@Bean
+	public AutoPivotDiscoveryCreator discoveryCreator() {
+		return new AutoPivotDiscoveryCreator();
+	}
+
+	/**
+	 * ActivePivot manager of the generated cubes, without the
+	 * context values and the security of the server
+	 *
+	 * @return the ActivePivot manager
+	 */
+	@Bean(destroyMethod = "stop")
+	public IActivePivotManager activePivotManager() {
+		return StartBuilding.manager()
+							.setDescription(apManagerConfig.managerDescription())
+							.setDatastoreAndPermissions(datastoreConfig.datastore())
+							.build();
+	}
+
+	/**
+	 * Initialize and start the ActivePivot Manager
+	 *
+	 * @return void
+	 * @throws Exception any exception that occurred during the manager's start up
+	 */
+	@Bean
+	public Void startManager() throws Exception {
+		try (Span span = StartupTracer.begin("pivot", "activePivotManager.init")) {
+			activePivotManager().init(null);
+		}
+		try (Span span = StartupTracer.begin("pivot", "activePivotManager.start")) {
+			activePivotManager().start();
+		}
+		return null;
+	}
+}
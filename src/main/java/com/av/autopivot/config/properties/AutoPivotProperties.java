@@ -1,12 +1,23 @@
 package com.av.autopivot.config.properties;
 
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.jboss.logging.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +34,12 @@ public class AutoPivotProperties {
 	/** Logger **/
 	protected static final Logger LOGGER = Logger.getLogger(AutoPivotProperties.class.getName());
 	
+	/** System property overriding the configuration file, a path or a classpath resource */
+	public static final String CONFIG_FILE = "autopivot.config";
+	
+	/** Configuration file loaded from the classpath by default */
+	public static final String DEFAULT_CONFIG_FILE = "autopivot.properties";
+	
 	/** Charset key */
 	public static final String CHARSET = "autopivot.charset";
 	
@@ -33,15 +50,66 @@ public class AutoPivotProperties {
 	public String getCharset() { return charset; }
 	public void setCharset(String charset) { this.charset = charset; }
 	
+	/** Number of CSV parser threads, by default half the cores up to 8 */
+	public static final String PARSER_THREADS = "autopivot.csv.parserThreads";
+	private Integer parserThreads = null;
+	
+	public Integer getParserThreads() { return parserThreads; }
+	public void setParserThreads(Integer parserThreads) { this.parserThreads = parserThreads; }
+	
+	/** File of the startup timeline, written at the end of the initial loading, not written by default */
+	public static final String STARTUP_TRACE_FILE = "autopivot.startup.traceFile";
+	private String startupTraceFile = null;
+	
+	public String getStartupTraceFile() { return startupTraceFile; }
+	public void setStartupTraceFile(String startupTraceFile) { this.startupTraceFile = startupTraceFile; }
+	
+	/** File recording the MDX queries of the cubes, read back at startup to create partial providers, no query is recorded by default */
+	public static final String WORKLOAD_LOG = "autopivot.workload.log";
+	private String workloadLog = null;
+	
+	public String getWorkloadLog() { return workloadLog; }
+	public void setWorkloadLog(String workloadLog) { this.workloadLog = workloadLog; }
+	
 	public static abstract class APropertyInfo {
 		public static final String DATA_INFO_FILENAME = "fileName";
 		public static final String DATA_INFO_PIVOT_CACHE_SIZE = "pivot.cache.size";
+		public static final String DATA_INFO_PIVOT_CACHE_MEASURES = "pivot.cache.measures";
+		public static final String DATA_INFO_PIVOT_LAZY_START = "pivot.lazyStart";
+		public static final String DATA_INFO_LAZY_LOAD = "lazyLoad";
+		public static final String DATA_INFO_LAZY_LOAD_IDLE_TIMEOUT = "lazyLoad.idleTimeout";
 		public static final String DATA_INFO_DIR_TO_WATCH = "dirToWatch";
 		public static final String DATA_INFO_PATHMATCHER = "pathMatcher";
 		public static final String DATA_INFO_DATASTORE_PARTITIONFIELD = "datastore.partitionField";
 		public static final String DATA_INFO_AGGREGATE_PROVIDER_TYPE = "aggregateProviderType";
+		public static final String DATA_INFO_ANALYSIS_HIERARCHY = "analysisHierarchy";
+		public static final String DATA_INFO_MEASURE_PROFILE = "measureProfile";
+		public static final String DATA_INFO_MEASURES = "measures";
+		public static final String DATA_INFO_COLUMN_MEASURES = "columnMeasures";
+		public static final String DATA_INFO_PARTIAL_PROVIDER = "partialProvider";
+		public static final String DATA_INFO_HIERARCHY_SELECTION = "hierarchySelection";
+		public static final String DATA_INFO_COLUMN_ROLE = "columnRole";
+		public static final String DATA_INFO_HIERARCHY_INFERENCE = "hierarchyInference";
+		public static final String DATA_INFO_REFERENCE = "reference";
+		public static final String DATA_INFO_DIMENSION_STORE = "dimensionStore";
+		public static final String DATA_INFO_DECIMAL_PRECISION = "decimalPrecision";
+		public static final String DATA_INFO_DISTINCT_COUNT_PRECISION = "distinctCount.precision";
+		
+		/** Reference value disabling the reference to a refdata store */
+		public static final String NO_REFERENCE = "NONE";
 		
 		public static final String DEFAULT_PATH_MATCHER = "glob:**.csv";
+		
+		/** Cache policies, the other values are lists of measure name patterns */
+		public static final String CACHE_POST_PROCESSED_MEASURES = "POST_PROCESSED";
+		public static final String CACHE_ALL_MEASURES = "ALL";
+		public static final String DEFAULT_PIVOT_CACHE_MEASURES = CACHE_POST_PROCESSED_MEASURES;
+		/** Significant digits kept for the decimal columns, by default the ones of a double */
+		public static final int DEFAULT_DECIMAL_PRECISION = 15;
+		/** Precision of the approximate distinct count sketches, 2^12 registers of about 1.6% standard error */
+		public static final int DEFAULT_DISTINCT_COUNT_PRECISION = 12;
+		/** Seconds without query after which a lazily loaded dataset is unloaded */
+		public static final int DEFAULT_LAZY_LOAD_IDLE_TIMEOUT = 1800;
 		public static final AGGREGATE_PROVIDER_TYPE DEFAULT_AGGREGATE_PROVIDER_TYPE = AGGREGATE_PROVIDER_TYPE.JUST_IN_TIME;
 		
 		public enum AGGREGATE_PROVIDER_TYPE {
@@ -49,8 +117,57 @@ public class AutoPivotProperties {
 			BITMAP
 		}
 		
+		/** Measures generated for a column */
+		public enum MEASURE {
+			SUM,
+			MIN,
+			MAX,
+			AVG,
+			STD,
+			DISTINCT_COUNT,
+			APPROX_DISTINCT_COUNT
+		}
+		
+		/** Predefined sets of generated measures */
+		public enum MEASURE_PROFILE {
+			MINIMAL(EnumSet.of(MEASURE.SUM)),
+			STANDARD(EnumSet.of(MEASURE.SUM, MEASURE.MIN, MEASURE.MAX, MEASURE.AVG)),
+			FULL(EnumSet.of(MEASURE.SUM, MEASURE.MIN, MEASURE.MAX, MEASURE.AVG, MEASURE.STD, MEASURE.DISTINCT_COUNT)),
+			CUSTOM(EnumSet.noneOf(MEASURE.class));
+			
+			private final EnumSet<MEASURE> measures;
+			
+			private MEASURE_PROFILE(EnumSet<MEASURE> measures) {
+				this.measures = measures;
+			}
+			
+			public EnumSet<MEASURE> getMeasures() { return EnumSet.copyOf(measures); }
+		}
+		
+		public static final MEASURE_PROFILE DEFAULT_MEASURE_PROFILE = MEASURE_PROFILE.FULL;
+		
+		/** Role of a column in the cube */
+		public enum COLUMN_ROLE {
+			/** Single level hierarchy, numerical columns also get measures */
+			LEVEL,
+			/** Measures only */
+			MEASURE,
+			/** Store field only, reachable through drillthrough */
+			FIELD
+		}
+		
+		/** How the columns turned into hierarchies are selected */
+		public enum HIERARCHY_SELECTION {
+			/** Every column that is not a decimal or a long */
+			ALL,
+			/** Skip the high cardinality and free text columns, based on the column statistics */
+			AUTO
+		}
+		
+		public static final HIERARCHY_SELECTION DEFAULT_HIERARCHY_SELECTION = HIERARCHY_SELECTION.ALL;
+		
 		public APropertyInfo() {
-			properties = new HashMap<>();
+			properties = new LinkedHashMap<>();
 		}
 		
 		private Map<String, String> properties;
@@ -68,6 +185,15 @@ public class AutoPivotProperties {
 			return null;
 		}
 		
+		/**
+		 * @return measures kept in the aggregate cache, POST_PROCESSED (the default),
+		 * ALL or a comma separated list of regular expressions matched against the measure names
+		 */
+		public String getPivotCacheMeasures() {
+			String cacheMeasures = properties.get(DATA_INFO_PIVOT_CACHE_MEASURES);
+			return Strings.isNullOrEmpty(cacheMeasures) ? DEFAULT_PIVOT_CACHE_MEASURES : cacheMeasures.trim();
+		}
+		
 		public AGGREGATE_PROVIDER_TYPE getAggregateProviderType() {
 			if (Strings.isNullOrEmpty(properties.get(DATA_INFO_AGGREGATE_PROVIDER_TYPE)) == false) {
 				return AGGREGATE_PROVIDER_TYPE.valueOf(properties.get(DATA_INFO_AGGREGATE_PROVIDER_TYPE));
@@ -75,6 +201,200 @@ public class AutoPivotProperties {
 			return DEFAULT_AGGREGATE_PROVIDER_TYPE;
 		}
 		
+		public MEASURE_PROFILE getMeasureProfile() {
+			if (Strings.isNullOrEmpty(properties.get(DATA_INFO_MEASURE_PROFILE)) == false) {
+				return MEASURE_PROFILE.valueOf(properties.get(DATA_INFO_MEASURE_PROFILE).trim().toUpperCase());
+			}
+			return DEFAULT_MEASURE_PROFILE;
+		}
+		
+		/**
+		 * @return measures generated for the columns of the dataset, the measures of the
+		 * profile or, for the CUSTOM profile, the list set in the measures property
+		 */
+		public EnumSet<MEASURE> getMeasures() {
+			MEASURE_PROFILE profile = getMeasureProfile();
+			if (profile == MEASURE_PROFILE.CUSTOM) {
+				return parseMeasures(properties.get(DATA_INFO_MEASURES));
+			}
+			return profile.getMeasures();
+		}
+		
+		/**
+		 * Measures overridden per column, for instance columnMeasures.Price.*=STANDARD
+		 * or columnMeasures.Quantity=SUM,MAX. The key is a regular expression
+		 * matched against the column names, the value a profile or a list of measures.
+		 * 
+		 * @return measures by column name pattern
+		 */
+		public Map<String, EnumSet<MEASURE>> getColumnMeasures() {
+			// The first matching pattern wins, keep the order of the file
+			Map<String, EnumSet<MEASURE>> result = new LinkedHashMap<>();
+			String prefix = DATA_INFO_COLUMN_MEASURES + ".";
+			for (Map.Entry<String, String> entry : properties.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) {
+					result.put(entry.getKey().substring(prefix.length()), parseMeasures(entry.getValue()));
+				}
+			}
+			return result;
+		}
+		
+		public HIERARCHY_SELECTION getHierarchySelection() {
+			if (Strings.isNullOrEmpty(properties.get(DATA_INFO_HIERARCHY_SELECTION)) == false) {
+				return HIERARCHY_SELECTION.valueOf(properties.get(DATA_INFO_HIERARCHY_SELECTION).trim().toUpperCase());
+			}
+			return DEFAULT_HIERARCHY_SELECTION;
+		}
+		
+		/** @return significant digits to keep for the decimal columns, float storage is used when 6 digits or less are required */
+		public int getDecimalPrecision() {
+			String decimalPrecision = properties.get(DATA_INFO_DECIMAL_PRECISION);
+			return Strings.isNullOrEmpty(decimalPrecision) ? DEFAULT_DECIMAL_PRECISION : Integer.parseInt(decimalPrecision.trim());
+		}
+		
+		/** @return precision of the approximate distinct count sketches, between 4 and 18 */
+		public int getDistinctCountPrecision() {
+			String precision = properties.get(DATA_INFO_DISTINCT_COUNT_PRECISION);
+			return Strings.isNullOrEmpty(precision) ? DEFAULT_DISTINCT_COUNT_PRECISION : Integer.parseInt(precision.trim());
+		}
+		
+		/** @return true to start the cube of a rarely used dataset on its first query instead of with the manager, in the embedded AutoPivot only */
+		public boolean isPivotLazyStart() {
+			String lazyStart = properties.get(DATA_INFO_PIVOT_LAZY_START);
+			return Strings.isNullOrEmpty(lazyStart) == false && Boolean.parseBoolean(lazyStart.trim());
+		}
+		
+		/** @return true to load the data of the dataset on the first query of its cube instead of at startup */
+		public boolean isLazyLoad() {
+			String lazyLoad = properties.get(DATA_INFO_LAZY_LOAD);
+			return Strings.isNullOrEmpty(lazyLoad) == false && Boolean.parseBoolean(lazyLoad.trim());
+		}
+		
+		/** @return seconds without query after which a lazily loaded dataset is unloaded, 0 to keep it loaded */
+		public int getLazyLoadIdleTimeout() {
+			String idleTimeout = properties.get(DATA_INFO_LAZY_LOAD_IDLE_TIMEOUT);
+			return Strings.isNullOrEmpty(idleTimeout) ? DEFAULT_LAZY_LOAD_IDLE_TIMEOUT : Integer.parseInt(idleTimeout.trim());
+		}
+		
+		/** @return true to nest the functionally dependent columns in multi level hierarchies, false by default */
+		public boolean isHierarchyInference() {
+			String hierarchyInference = properties.get(DATA_INFO_HIERARCHY_INFERENCE);
+			return Strings.isNullOrEmpty(hierarchyInference) == false && Boolean.parseBoolean(hierarchyInference.trim());
+		}
+		
+		/**
+		 * References forced per refdata store, for instance reference.fxrate=Currency:CUR
+		 * with a comma separated list of dataField:refdataField, or NONE to
+		 * disable the reference detected to this refdata store.
+		 * 
+		 * @return field mapping text by refdata store name
+		 */
+		public Map<String, String> getReferences() {
+			Map<String, String> result = new TreeMap<>();
+			String prefix = DATA_INFO_REFERENCE + ".";
+			for (Map.Entry<String, String> entry : properties.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) {
+					result.put(entry.getKey().substring(prefix.length()), entry.getValue().trim());
+				}
+			}
+			return result;
+		}
+		
+		/**
+		 * Roles forced per column, for instance columnRole.Comment=FIELD.
+		 * The key is a regular expression matched against the column names.
+		 * 
+		 * @return role by column name pattern
+		 */
+		public Map<String, COLUMN_ROLE> getColumnRoles() {
+			// The first matching pattern wins, keep the order of the file
+			Map<String, COLUMN_ROLE> result = new LinkedHashMap<>();
+			String prefix = DATA_INFO_COLUMN_ROLE + ".";
+			for (Map.Entry<String, String> entry : properties.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) {
+					result.put(entry.getKey().substring(prefix.length()), COLUMN_ROLE.valueOf(entry.getValue().trim().toUpperCase()));
+				}
+			}
+			return result;
+		}
+		
+		/**
+		 * Parse a profile name or a comma separated list of measures
+		 * 
+		 * @param value text to parse
+		 * @return measures, empty if the value is empty
+		 */
+		public static EnumSet<MEASURE> parseMeasures(String value) {
+			EnumSet<MEASURE> result = EnumSet.noneOf(MEASURE.class);
+			if (Strings.isNullOrEmpty(value)) {
+				return result;
+			}
+			for (String token : value.split(",")) {
+				String name = token.trim().toUpperCase();
+				if (name.isEmpty()) {
+					continue;
+				}
+				try {
+					result.addAll(MEASURE_PROFILE.valueOf(name).getMeasures());
+				} catch (IllegalArgumentException ex) {
+					result.add(MEASURE.valueOf(name));
+				}
+			}
+			return result;
+		}
+		
+		/**
+		 * Group the analysis hierarchy properties by hierarchy name,
+		 * for instance analysisHierarchy.CurrencyGroup.store=currency_group
+		 * 
+		 * @return properties of each configured analysis hierarchy
+		 */
+		public Map<String, Properties> getAnalysisHierarchies() {
+			return getGroupedProperties(DATA_INFO_ANALYSIS_HIERARCHY);
+		}
+		
+		/**
+		 * Group the partial aggregate provider properties by provider name,
+		 * for instance partialProvider.bySex.levels=Sex,Pclass
+		 * 
+		 * @return properties of each configured partial provider
+		 */
+		public Map<String, Properties> getPartialProviders() {
+			return getGroupedProperties(DATA_INFO_PARTIAL_PROVIDER);
+		}
+		
+		/**
+		 * Group the dimension store properties by dimension store name,
+		 * for instance dimensionStore.counterparty.key=CptyId
+		 * 
+		 * @return properties of each configured dimension store
+		 */
+		public Map<String, Properties> getDimensionStores() {
+			return getGroupedProperties(DATA_INFO_DIMENSION_STORE);
+		}
+		
+		/**
+		 * Group the properties group.name.key=value by name
+		 * 
+		 * @param group first element of the property keys
+		 * @return properties by name
+		 */
+		protected Map<String, Properties> getGroupedProperties(String group) {
+			Map<String, Properties> result = new TreeMap<>();
+			String prefix = group + ".";
+			for (Map.Entry<String, String> entry : properties.entrySet()) {
+				String key = entry.getKey();
+				if (key.startsWith(prefix)) {
+					String[] groupKey = key.substring(prefix.length()).split("\\.", 2);
+					if (groupKey.length == 2) {
+						result.computeIfAbsent(groupKey[0], k -> new Properties())
+							  .setProperty(groupKey[1], entry.getValue());
+					}
+				}
+			}
+			return result;
+		}
+		
 		public String getPathMatcher() { 
 			String pathMatcher = properties.get(DATA_INFO_PATHMATCHER);
 			return Strings.isNullOrEmpty(pathMatcher) ? DEFAULT_PATH_MATCHER : pathMatcher; 
@@ -104,6 +424,48 @@ public class AutoPivotProperties {
 		public String getRootKey() { return REF_DATA_INFO_ROOT_KEY;	}
 	}
 	
+	/**
+	 * Properties enumerating their keys in insertion order, the order of the
+	 * file once loaded, so that the column patterns are matched in that order
+	 */
+	public static class OrderedProperties extends Properties {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Set<Object> orderedKeys = Collections.synchronizedSet(new LinkedHashSet<>());
+		
+		@Override
+		public synchronized Object put(Object key, Object value) {
+			orderedKeys.add(key);
+			return super.put(key, value);
+		}
+		
+		@Override
+		public synchronized void putAll(Map<?, ?> values) {
+			if (values instanceof Properties) {
+				// Keep the order of the copied properties when they are ordered
+				for (Object key : Collections.list(((Properties) values).keys())) {
+					put(key, values.get(key));
+				}
+			} else {
+				for (Map.Entry<?, ?> entry : values.entrySet()) {
+					put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		
+		@Override
+		public synchronized Object remove(Object key) {
+			orderedKeys.remove(key);
+			return super.remove(key);
+		}
+		
+		@Override
+		public synchronized Enumeration<Object> keys() {
+			return Collections.enumeration(new ArrayList<>(orderedKeys));
+		}
+	}
+	
 	private Map<String, DataInfo> dataInfoMap;
 	private Map<String, RefDataInfo> refDataInfoMap;
 	
@@ -118,30 +480,42 @@ public class AutoPivotProperties {
 	@Bean
 	@Qualifier("autoPivotProperties")
 	public Properties autoPivotProperties() {
-		FileInputStream fileInputStream = null;
-		
-		try {
-			String autopivotConfigPath = Thread.currentThread()
-											   .getContextClassLoader()
-											   .getResource("autopivot.properties")
-											   .getPath();
-			
-			Properties autopivotProps = new Properties();
-			fileInputStream = new FileInputStream(autopivotConfigPath);
-			autopivotProps.load(fileInputStream);
+		String configFile = System.getProperty(CONFIG_FILE);
+		try (InputStream inputStream = openConfigFile(configFile)) {
+			Properties autopivotProps = new OrderedProperties();
+			autopivotProps.load(inputStream);
 			return autopivotProps;
 		} catch (IOException ex) {
-			throw new QuartetRuntimeException("Could not load properly the autopivot.properties.");
+			throw new QuartetRuntimeException("Could not load properly the " + (configFile == null ? DEFAULT_CONFIG_FILE : configFile) + ".", ex);
 		}
-		finally {
-			if (fileInputStream != null) {
-				try {
-					fileInputStream.close();
-				} catch (IOException ex) {
-					throw new QuartetRuntimeException("Could not close properly the autopivot.properties.", ex);
-				}
+	}
+	
+	/**
+	 * Open the configuration file. A file set with -Dautopivot.config is looked
+	 * up in the file system first and then in the classpath, the default file is
+	 * only read from the classpath so that a stray autopivot.properties in the
+	 * working directory does not override it.
+	 * 
+	 * @param configFile path or classpath resource of the file, null for the default file
+	 * @return stream of the file content
+	 * @throws IOException if the file cannot be found or opened
+	 */
+	protected InputStream openConfigFile(String configFile) throws IOException {
+		if (configFile != null) {
+			Path path = Paths.get(configFile);
+			if (Files.isRegularFile(path)) {
+				return Files.newInputStream(path);
 			}
+		} else {
+			configFile = DEFAULT_CONFIG_FILE;
+		}
+		InputStream inputStream = Thread.currentThread()
+										.getContextClassLoader()
+										.getResourceAsStream(configFile);
+		if (inputStream == null) {
+			throw new FileNotFoundException(configFile);
 		}
+		return inputStream;
 	}
 	
 	@Autowired
@@ -155,6 +529,15 @@ public class AutoPivotProperties {
 			if (key.equals(CHARSET)) {
 				setCharset(autoPivotProperties.getProperty(key));
 			}
+			else if (key.equals(PARSER_THREADS)) {
+				setParserThreads(Integer.valueOf(autoPivotProperties.getProperty(key).trim()));
+			}
+			else if (key.equals(STARTUP_TRACE_FILE)) {
+				setStartupTraceFile(autoPivotProperties.getProperty(key).trim());
+			}
+			else if (key.equals(WORKLOAD_LOG)) {
+				setWorkloadLog(autoPivotProperties.getProperty(key).trim());
+			}
 			else if (key.startsWith(DataInfo.DATA_INFO_ROOT_KEY)) {
 				addPropertyInfo(dataInfoMap,
 								DataInfo.class,
@@ -170,7 +553,7 @@ public class AutoPivotProperties {
 								autoPivotProperties.getProperty(key));
 			}
 		}
-		LOGGER.info(" autopivot.properties is loaded.");
+		LOGGER.info(" " + System.getProperty(CONFIG_FILE, DEFAULT_CONFIG_FILE) + " is loaded.");
 	}
 	
 	private <T extends APropertyInfo> void addPropertyInfo(Map<String, T> propertyInfoMap, 
@@ -0,0 +1,38 @@
+package com.av.autopivot.config.properties;
+
+import java.util.Properties;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ *
+ * AutoPivot properties given programmatically to an embedded AutoPivot,
+ * registered in the application context under {@link #EMBEDDED_PROPERTIES},
+ * instead of read from the configuration file.
+ *
+ * @author ActiveViam
+ *
+ */
+@Configuration
+public class EmbeddedAutoPivotProperties extends AutoPivotProperties {
+
+	/** Name of the bean holding the given properties */
+	public static final String EMBEDDED_PROPERTIES = "embeddedAutoPivotProperties";
+
+	/** Properties given to the embedded AutoPivot */
+	@Autowired
+	@Qualifier(EMBEDDED_PROPERTIES)
+	protected Properties embeddedProperties;
+
+	@Override
+	@Bean
+	@Qualifier("autoPivotProperties")
+	public Properties autoPivotProperties() {
+		Properties properties = new OrderedProperties();
+		properties.putAll(embeddedProperties);
+		return properties;
+	}
+}
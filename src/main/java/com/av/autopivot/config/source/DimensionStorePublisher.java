@@ -0,0 +1,160 @@
+package com.av.autopivot.config.source;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.qfs.msg.IColumnCalculator;
+import com.qfs.msg.csv.ILineReader;
+import com.qfs.msg.csv.translator.impl.AColumnCalculator;
+import com.qfs.source.IStoreMessage;
+import com.qfs.source.ITuplePublisher;
+import com.quartetfs.fwk.format.IParser;
+
+/**
+ * Tuple publisher feeding a data store and its dimension stores from a
+ * single parse of the data files.
+ * <p>
+ * The key column of each dimension store is calculated by a
+ * {@link DimensionRowCalculator}, which parses the key and the normalized
+ * fields from the source columns of the line, and keeps the row of the
+ * dimension store until the chunk of the line is published. It reads no other
+ * column of the tuple: the key column is its own column, and the normalized
+ * fields are not columns of the data store. The rows of the dimension stores are
+ * then published with the tuples of the data store, in the same transaction
+ * when this publisher is wrapped in an auto commit publisher. Each key is
+ * published once per chunk, the keyed dimension store upserts it.
+ *
+ * @author ActiveViam
+ *
+ * @param <I> type of the published messages content
+ */
+public class DimensionStorePublisher<I> implements ITuplePublisher<I> {
+
+	/** Publisher of the data store */
+	protected final ITuplePublisher<I> publisher;
+
+	/** Dimension stores fed with the data store */
+	protected final List<DimensionFeed<I>> feeds = new ArrayList<>();
+
+	public DimensionStorePublisher(ITuplePublisher<I> publisher) {
+		this.publisher = publisher;
+	}
+
+	/**
+	 * Feed a dimension store with the data store
+	 *
+	 * @param keyIndex index of the key field in the tuples of the data store
+	 * @param keyField key field, first field of the dimension store
+	 * @param sourceColumns indexes in the source lines of the fields of the dimension store, in store order, key first
+	 * @param parsers parsers of the fields of the dimension store, in store order, key first
+	 * @param dimensionPublisher publisher of the dimension store, without commit
+	 * @return calculator of the key column of the data store, collecting the rows of the dimension store
+	 */
+	public IColumnCalculator<ILineReader> addDimensionStore(int keyIndex, String keyField, int[] sourceColumns, List<IParser<?>> parsers, ITuplePublisher<I> dimensionPublisher) {
+		DimensionFeed<I> feed = new DimensionFeed<>(keyIndex, dimensionPublisher);
+		feeds.add(feed);
+		return new DimensionRowCalculator(keyField, sourceColumns, parsers, feed.pendingRows);
+	}
+
+	@Override
+	public void publish(IStoreMessage<? extends I, ?> message, List<Object[]> tuples) {
+		publisher.publish(message, tuples);
+		for (DimensionFeed<I> feed : feeds) {
+			List<Object[]> rows = feed.collectRows(tuples);
+			if (rows.isEmpty() == false) {
+				feed.publisher.publish(message, rows);
+			}
+		}
+	}
+
+	@Override
+	public Collection<String> getTargetStores() {
+		Set<String> targetStores = new LinkedHashSet<>(publisher.getTargetStores());
+		for (DimensionFeed<I> feed : feeds) {
+			targetStores.addAll(feed.publisher.getTargetStores());
+		}
+		return targetStores;
+	}
+
+	/** Rows of a dimension store parsed and not published yet */
+	protected static class DimensionFeed<I> {
+
+		/** Index of the key field in the tuples of the data store */
+		protected final int keyIndex;
+
+		protected final ITuplePublisher<I> publisher;
+
+		/** Last parsed row of each key not published yet */
+		protected final Map<Object, Object[]> pendingRows = new ConcurrentHashMap<>();
+
+		protected DimensionFeed(int keyIndex, ITuplePublisher<I> publisher) {
+			this.keyIndex = keyIndex;
+			this.publisher = publisher;
+		}
+
+		/** @return the pending rows of the keys of the published tuples */
+		protected List<Object[]> collectRows(List<Object[]> tuples) {
+			List<Object[]> rows = new ArrayList<>();
+			for (Object[] tuple : tuples) {
+				Object key = tuple[keyIndex];
+				Object[] row = key == null ? null : pendingRows.remove(key);
+				if (row != null) {
+					rows.add(row);
+				}
+			}
+			return rows;
+		}
+	}
+
+	/**
+	 * Calculator of the key column of a data store, returning the key parsed
+	 * from the source line and keeping the row of the dimension store parsed
+	 * from the same line.
+	 */
+	protected static class DimensionRowCalculator extends AColumnCalculator<ILineReader> {
+
+		/** Indexes in the source lines of the fields of the dimension store, key first */
+		protected final int[] sourceColumns;
+
+		/** Parsers of the fields of the dimension store, key first */
+		protected final List<IParser<?>> parsers;
+
+		protected final Map<Object, Object[]> pendingRows;
+
+		protected DimensionRowCalculator(String keyField, int[] sourceColumns, List<IParser<?>> parsers, Map<Object, Object[]> pendingRows) {
+			super(keyField);
+			this.sourceColumns = sourceColumns;
+			this.parsers = parsers;
+			this.pendingRows = pendingRows;
+		}
+
+		@Override
+		public Object compute(IColumnCalculationContext<ILineReader> context) {
+			ILineReader line = context.getContext();
+			Object key = parse(line, 0);
+			if (key != null) {
+				Object[] row = new Object[sourceColumns.length];
+				row[0] = key;
+				for (int f = 1; f < sourceColumns.length; f++) {
+					row[f] = parse(line, f);
+				}
+				pendingRows.put(key, row);
+			}
+			return key;
+		}
+
+		/** @return the value of a field of the dimension store parsed from the source line, null when it is empty */
+		protected Object parse(ILineReader line, int field) {
+			CharSequence text = line.getValue(sourceColumns[field]);
+			if (text == null || text.length() == 0) {
+				return null;
+			}
+			return parsers.get(field).parse(text.toString());
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package com.av.autopivot.config.source;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
+import com.av.autopivot.config.source.SourceConfig.DatasetSource;
+import com.av.autopivot.workload.IQueryListener;
+import com.qfs.condition.impl.BaseConditions;
+import com.qfs.store.IDatastore;
+import com.qfs.store.transaction.DatastoreTransactionException;
+import com.qfs.store.transaction.ITransactionManager;
+import com.quartetfs.fwk.QuartetRuntimeException;
+
+/**
+ *
+ * Load the datasets with lazyLoad=true on the first query of their cube
+ * instead of during the initial loading, and unload them from the datastore
+ * once they have not been queried for their lazyLoad.idleTimeout. An unloaded
+ * dataset is loaded again from its files on its next query, so that a node
+ * can serve more datasets than fit in memory at once.
+ * <p>
+ * Each dataset is touched, loaded and unloaded under its own lock, the queries
+ * of the loaded datasets are not blocked by the loading of another one. A query
+ * of an idle dataset either resets its idle time before its eviction, or
+ * loads it again after its eviction, it never runs on the unloaded stores.
+ * <p>
+ * The loader is an {@link IQueryListener}: the MDX queries of the server and of
+ * the embedded AutoPivot touch the dataset of their cube before they are executed.
+ *
+ * @author ActiveViam
+ *
+ */
+public class LazyDatasetLoader implements IQueryListener {
+
+	/** Logger **/
+	protected static final Logger LOGGER = Logger.getLogger(LazyDatasetLoader.class.getName());
+
+	/** Longest delay between two checks of the idle datasets, in seconds */
+	protected static final long MAX_EVICTION_PERIOD = 60L;
+
+	/** Loads the files of a dataset */
+	protected final SourceConfig sourceConfig;
+
+	protected final IDatastore datastore;
+
+	/** Lazily loaded datasets, by dataset name */
+	protected final Map<String, LazyDataset> datasets = new LinkedHashMap<>();
+
+	/** Unloads the idle datasets */
+	protected final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "autopivot-dataset-evictor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public LazyDatasetLoader(SourceConfig sourceConfig, IDatastore datastore, Map<String, DataInfo> lazyDataInfos) {
+		this.sourceConfig = sourceConfig;
+		this.datastore = datastore;
+		long period = MAX_EVICTION_PERIOD;
+		for (Map.Entry<String, DataInfo> entry : lazyDataInfos.entrySet()) {
+			int idleTimeout = entry.getValue().getLazyLoadIdleTimeout();
+			datasets.put(entry.getKey(), new LazyDataset(entry.getKey(), entry.getValue(), idleTimeout));
+			if (idleTimeout > 0) {
+				// Unload the dataset at most a quarter of its timeout late
+				period = Math.min(period, Math.max(1L, idleTimeout / 4L));
+			}
+		}
+		evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.SECONDS);
+	}
+
+	/** @return the names of the lazily loaded datasets */
+	public Set<String> getDatasetNames() {
+		return datasets.keySet();
+	}
+
+	/**
+	 * @param datasetName dataset name
+	 * @return whether the data of the dataset is in the datastore
+	 */
+	public boolean isLoaded(String datasetName) {
+		LazyDataset dataset = datasets.get(datasetName);
+		return dataset != null && dataset.source != null;
+	}
+
+	/**
+	 * Record a query of a dataset, loading it if it is not loaded
+	 *
+	 * @param datasetName dataset name, the name of its cube
+	 * @return false if the dataset is not lazily loaded
+	 */
+	public boolean touch(String datasetName) {
+		LazyDataset dataset = datasets.get(datasetName);
+		if (dataset == null) {
+			return false;
+		}
+		dataset.touch();
+		return true;
+	}
+
+	@Override
+	public void beforeQuery(String cubeName, String mdx) {
+		touch(cubeName);
+	}
+
+	/**
+	 * Unload a dataset, it is loaded again on its next query
+	 *
+	 * @param datasetName dataset name
+	 */
+	public void unload(String datasetName) {
+		LazyDataset dataset = datasets.get(datasetName);
+		if (dataset != null) {
+			dataset.unload();
+		}
+	}
+
+	/** Unload the datasets not queried for their idle timeout */
+	public void evictIdle() {
+		evictIdle(System.nanoTime());
+	}
+
+	/**
+	 * Unload the datasets not queried for their idle timeout at a given time
+	 *
+	 * @param now time in the {@link System#nanoTime()} scale
+	 */
+	protected void evictIdle(long now) {
+		for (LazyDataset dataset : datasets.values()) {
+			try {
+				dataset.evictIfIdle(now);
+			} catch (RuntimeException e) {
+				LOGGER.warning("Could not unload the dataset " + dataset.name + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/** Stop the eviction and stop watching the files of the loaded datasets */
+	public void stop() {
+		evictor.shutdownNow();
+		for (LazyDataset dataset : datasets.values()) {
+			dataset.stopSource();
+		}
+	}
+
+	/**
+	 * Remove all the records of stores in one transaction
+	 *
+	 * @param storeNames store names
+	 */
+	protected void clear(List<String> storeNames) {
+		ITransactionManager transactionManager = datastore.getTransactionManager();
+		try {
+			transactionManager.startTransaction(storeNames.toArray(new String[storeNames.size()]));
+			for (String storeName : storeNames) {
+				transactionManager.removeWhere(storeName, BaseConditions.TRUE);
+			}
+			transactionManager.commitTransaction();
+		} catch (DatastoreTransactionException e) {
+			throw new QuartetRuntimeException("Could not unload the stores " + storeNames, e);
+		}
+	}
+
+	/** Dataset loaded on demand */
+	protected class LazyDataset {
+
+		protected final String name;
+
+		protected final DataInfo dataInfo;
+
+		protected final long idleTimeoutNanos;
+
+		/** Last query of the dataset */
+		protected volatile long lastAccessNanos = System.nanoTime();
+
+		/** Source watching the files of the dataset, null when it is not loaded */
+		protected volatile DatasetSource source;
+
+		protected LazyDataset(String name, DataInfo dataInfo, int idleTimeout) {
+			this.name = name;
+			this.dataInfo = dataInfo;
+			this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeout);
+		}
+
+		/** Record a query of the dataset and load it, under the lock of the eviction */
+		protected synchronized void touch() {
+			lastAccessNanos = System.nanoTime();
+			load();
+		}
+
+		protected synchronized void load() {
+			if (source == null) {
+				long start = System.nanoTime();
+				source = sourceConfig.loadDataset(name, dataInfo);
+				lastAccessNanos = System.nanoTime();
+				LOGGER.info("Dataset " + name + " loaded on demand in " + (lastAccessNanos - start) / 1_000_000L + " ms");
+			}
+		}
+
+		protected synchronized void unload() {
+			if (source != null) {
+				DatasetSource loaded = source;
+				source = null;
+				loaded.stop();
+				clear(loaded.getStoreNames());
+				LOGGER.info("Dataset " + name + " unloaded");
+			}
+		}
+
+		protected synchronized void evictIfIdle(long now) {
+			if (source != null && idleTimeoutNanos > 0L && now - lastAccessNanos > idleTimeoutNanos) {
+				LOGGER.info("Dataset " + name + " not queried for " + TimeUnit.NANOSECONDS.toSeconds(now - lastAccessNanos) + " s");
+				unload();
+			}
+		}
+
+		protected synchronized void stopSource() {
+			if (source != null) {
+				source.stop();
+			}
+		}
+	}
+}
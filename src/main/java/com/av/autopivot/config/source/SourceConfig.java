@@ -19,13 +19,21 @@
 package com.av.autopivot.config.source;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
@@ -33,13 +41,27 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.DependsOn;
 
 import com.av.autopivot.AutoPivotDiscoveryCreator;
+import com.av.autopivot.AutoPivotGenerator;
+import com.av.autopivot.StoreInfo;
+import com.av.autopivot.StoreReference;
+import com.av.autopivot.config.datastore.DatastoreDescriptionConfig;
 import com.av.autopivot.config.properties.AutoPivotProperties;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo;
 import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
 import com.av.autopivot.config.properties.AutoPivotProperties.RefDataInfo;
+import com.av.autopivot.monitoring.IngestionMetrics;
+import com.av.autopivot.monitoring.IngestionMetricsRegistry;
+import com.av.autopivot.monitoring.MonitoredColumnCalculator;
+import com.av.autopivot.monitoring.MonitoredTuplePublisher;
+import com.av.autopivot.monitoring.StartupTracer;
+import com.av.autopivot.monitoring.StartupTracer.Span;
 import com.av.csv.CSVFormat;
 import com.av.csv.calculator.DateDayCalculator;
 import com.av.csv.calculator.DateMonthCalculator;
 import com.av.csv.calculator.DateYearCalculator;
+import com.google.common.base.Strings;
+import com.qfs.desc.IFieldDescription;
+import com.qfs.desc.IStoreDescription;
 import com.qfs.msg.IColumnCalculator;
 import com.qfs.msg.csv.ICSVSource;
 import com.qfs.msg.csv.ICSVSourceConfiguration;
@@ -54,6 +76,11 @@ import com.qfs.source.ITuplePublisher;
 import com.qfs.source.impl.AutoCommitTuplePublisher;
 import com.qfs.source.impl.CSVMessageChannelFactory;
 import com.qfs.source.impl.TuplePublisher;
+import com.qfs.store.IDatastoreVersion;
+import com.qfs.store.query.IDictionaryCursor;
+import com.quartetfs.fwk.IPlugin;
+import com.quartetfs.fwk.Registry;
+import com.quartetfs.fwk.format.IParser;
 import com.quartetfs.fwk.impl.Pair;
 
 /**
@@ -82,12 +109,23 @@ public class SourceConfig {
 	/** AutoPivotDiscoveryCreator */
 	@Autowired
 	protected AutoPivotDiscoveryCreator discoveryCreator;
+	
+	/** Datastore description configuration, holding the generator */
+	@Autowired
+	protected DatastoreDescriptionConfig datastoreDescriptionConfig;
+	
+	/** Ingestion metrics of the stores */
+	@Autowired
+	protected IngestionMetricsRegistry ingestionMetrics;
 
 	/** Create and configure the CSV engine */
 	private ICSVSource<Path> createCSVSource(String sourceName) {
 		
-		// Allocate half the the machine cores to CSV parsing
-		Integer parserThreads = Math.min(8, Math.max(1, IPlatform.CURRENT_PLATFORM.getProcessorCount() / 2));
+		// Allocate half the the machine cores to CSV parsing, unless configured
+		Integer parserThreads = autoPivotProps.getParserThreads();
+		if (parserThreads == null) {
+			parserThreads = Math.min(8, Math.max(1, IPlatform.CURRENT_PLATFORM.getProcessorCount() / 2));
+		}
 		LOGGER.info("Allocating " + parserThreads + " parser threads.");
 		
 		CSVSource<Path> source = new CSVSource<Path>("CSVSource_" + sourceName);;
@@ -100,7 +138,165 @@ public class SourceConfig {
 	}
 	
 	/**
-	 * Load the CSV file
+	 * Create the columns calculated while parsing a file: the YEAR,
+	 * MONTH and DAY fields of each date column.
+	 * 
+	 * @param discovery CSV format
+	 * @return calculated columns
+	 */
+	protected List<IColumnCalculator<ILineReader>> createCalculatedColumns(CSVFormat discovery) {
+		List<IColumnCalculator<ILineReader>> calculatedColumns = new ArrayList<IColumnCalculator<ILineReader>>();
+		for(int c = 0; c < discovery.getColumnCount(); c++) {
+			String columnName = discovery.getColumnName(c);
+			String columnType = discovery.getColumnType(c);
+			
+			// When a date field is detected, we automatically
+			// calculate the YEAR, MONTH and DAY fields.
+			if(columnType.startsWith("DATE")) {
+				calculatedColumns.add(new DateYearCalculator(columnName, columnName + ".YEAR"));
+				calculatedColumns.add(new DateMonthCalculator(columnName, columnName + ".MONTH"));
+				calculatedColumns.add(new DateDayCalculator(columnName, columnName + ".DAY"));
+			}
+		}
+		return calculatedColumns;
+	}
+	
+	/**
+	 * Create the publisher of the parsed tuples into a store,
+	 * committing a transaction for each published chunk, and
+	 * recording the commits in the ingestion metrics of the store.
+	 * 
+	 * @param storeName target store
+	 * @return tuple publisher
+	 */
+	protected ITuplePublisher<IFileInfo<Path>> createPublisher(String storeName) {
+		return createPublisher(storeName, new MonitoredTuplePublisher<>(new AutoCommitTuplePublisher<>(new TuplePublisher<>(datastoreConfig.datastore(), storeName)),
+																		ingestionMetrics.getMetrics(storeName)));
+	}
+	
+	/**
+	 * Wrap the publisher of a store. The publishers of the refdata stores,
+	 * of the data stores and of their dimension stores all go through this
+	 * method, the publishers of the dimension stores are called within the
+	 * publisher of their data store.
+	 * 
+	 * @param storeName target store
+	 * @param publisher publisher of the store
+	 * @return tuple publisher, the given one by default
+	 */
+	protected ITuplePublisher<IFileInfo<Path>> createPublisher(String storeName, ITuplePublisher<IFileInfo<Path>> publisher) {
+		return publisher;
+	}
+	
+	/**
+	 * Create the publisher of a data store feeding its dimension stores in the
+	 * same transactions. The calculators collecting the rows of the dimension
+	 * stores replace the key columns in the calculated columns, they parse the
+	 * fields of the dimension stores from the columns of the source lines.
+	 * 
+	 * @param storeDesc data store
+	 * @param calculatedColumns calculated columns of the data store, completed
+	 * @return tuple publisher, without commit
+	 */
+	protected DimensionStorePublisher<IFileInfo<Path>> createDimensionStorePublisher(StoreInfo storeDesc, List<IColumnCalculator<ILineReader>> calculatedColumns) {
+		AutoPivotGenerator generator = datastoreDescriptionConfig.generator();
+		List<String> fieldNames = getFieldNames(generator.createStoreDescription(storeDesc));
+		DimensionStorePublisher<IFileInfo<Path>> publisher = new DimensionStorePublisher<>(new TuplePublisher<>(datastoreConfig.datastore(), storeDesc.getStoreName()));
+		@SuppressWarnings("rawtypes")
+		IPlugin<IParser> parserPlugin = Registry.getPlugin(IParser.class);
+		for (StoreReference dimensionStore : storeDesc.getDimensionStores()) {
+			String keyField = dimensionStore.getTargetKeyFields().get(0);
+			String dimensionStoreName = dimensionStore.getTargetStore();
+			ITuplePublisher<IFileInfo<Path>> dimensionPublisher = createPublisher(dimensionStoreName,
+																				  new MonitoredTuplePublisher<>(new TuplePublisher<>(datastoreConfig.datastore(), dimensionStoreName),
+																												ingestionMetrics.getMetrics(dimensionStoreName)));
+			
+			// The columns of the source lines are the columns of the store info, key first
+			List<String> fields = new ArrayList<>(dimensionStore.getAttributes().keySet());
+			int[] sourceColumns = new int[fields.size() + 1];
+			List<IParser<?>> parsers = new ArrayList<>(fields.size() + 1);
+			sourceColumns[0] = storeDesc.getColumnNames().indexOf(keyField);
+			parsers.add(parserPlugin.valueOf(storeDesc.getColumnType(sourceColumns[0])));
+			for (int f = 0; f < fields.size(); f++) {
+				sourceColumns[f + 1] = storeDesc.getColumnNames().indexOf(fields.get(f));
+				parsers.add(parserPlugin.valueOf(dimensionStore.getAttributeType(fields.get(f))));
+			}
+			calculatedColumns.add(publisher.addDimensionStore(fieldNames.indexOf(keyField),
+															  keyField,
+															  sourceColumns,
+															  parsers,
+															  dimensionPublisher));
+		}
+		return publisher;
+	}
+	
+	/**
+	 * Describe the tuples of a store and of its dimension stores
+	 * to their ingestion metrics
+	 * 
+	 * @param storeDesc loaded store
+	 * @return ingestion metrics of the store
+	 */
+	protected IngestionMetrics createMetrics(StoreInfo storeDesc) {
+		AutoPivotGenerator generator = datastoreDescriptionConfig.generator();
+		IngestionMetrics metrics = ingestionMetrics.getMetrics(storeDesc.getStoreName());
+		metrics.describe(getFieldNames(generator.createStoreDescription(storeDesc)),
+						 generator.getPartitioningField(storeDesc),
+						 generator.getPartitionCount());
+		for (IStoreDescription dimensionStore : generator.createDimensionStoreDescriptions(storeDesc)) {
+			ingestionMetrics.getMetrics(dimensionStore.getName()).describe(getFieldNames(dimensionStore), null, 1);
+		}
+		return metrics;
+	}
+	
+	private static List<String> getFieldNames(IStoreDescription storeDescription) {
+		List<String> fieldNames = new ArrayList<>();
+		for (IFieldDescription field : storeDescription.getFields()) {
+			fieldNames.add(field.getName());
+		}
+		return fieldNames;
+	}
+	
+	/**
+	 * Time the calculated columns of a store in its ingestion metrics
+	 * 
+	 * @param calculatedColumns calculated columns
+	 * @param metrics ingestion metrics of the store
+	 * @return monitored calculated columns
+	 */
+	private static List<IColumnCalculator<ILineReader>> monitor(List<IColumnCalculator<ILineReader>> calculatedColumns, IngestionMetrics metrics) {
+		List<IColumnCalculator<ILineReader>> monitored = new ArrayList<>(calculatedColumns.size());
+		for (IColumnCalculator<ILineReader> calculatedColumn : calculatedColumns) {
+			monitored.add(new MonitoredColumnCalculator(calculatedColumn, metrics));
+		}
+		return monitored;
+	}
+	
+	/**
+	 * Record the size of the files found for a store when its source starts
+	 * 
+	 * @param metrics ingestion metrics of the store
+	 * @param info dataset properties, the files are in the watched directory if there is one
+	 * @param discovery format of the file, or of the first file of the watched directory
+	 */
+	private void recordFiles(IngestionMetrics metrics, DataInfo info, CSVFormat discovery) {
+		try {
+			if (info == null || Strings.isNullOrEmpty(info.getDirToWatch())) {
+				metrics.addFile(Files.size(Paths.get(discovery.getFileName())));
+			} else {
+				PathMatcher matcher = FileSystems.getDefault().getPathMatcher(info.getPathMatcher());
+				try (Stream<Path> files = Files.walk(discoveryCreator.getDirectoryPathToWatch(info))) {
+					files.filter(file -> Files.isRegularFile(file) && matcher.matches(file.getFileName()))
+						 .forEach(file -> metrics.addFile(file.toFile().length()));
+				}
+			}
+		} catch (IOException | UncheckedIOException ex) {
+			LOGGER.warning("Cannot measure the files of store " + metrics.getStoreName() + ": " + ex.getMessage());
+		}
+	}
+	
+	/**
+	 * Load the CSV file, then write the startup timeline
 	 */
 	@Bean
 	@DependsOn(value = "startManager")
@@ -108,15 +304,33 @@ public class SourceConfig {
 		
 		loadData();
 		loadRefData();
+		checkRefDataKeys();
 		
 		LOGGER.info("AutoPivot initial loading complete.");
 		
+		writeStartupTrace();
+		
 		return null; // Void
 	}
+	
+	/** Write the startup timeline in the Chrome trace format if a file is configured */
+	protected void writeStartupTrace() {
+		String traceFile = autoPivotProps.getStartupTraceFile();
+		if (Strings.isNullOrEmpty(traceFile)) {
+			StartupTracer.stop();
+			return;
+		}
+		try {
+			StartupTracer.write(Paths.get(traceFile));
+			LOGGER.info("Startup timeline written to " + traceFile);
+		} catch (IOException ioe) {
+			LOGGER.warning("Cannot write the startup timeline to " + traceFile + ": " + ioe.getMessage());
+		}
+	}
 
 	private void loadRefData() {
 		AutoPivotTopicCreator topicCreator = new AutoPivotTopicCreator(discoveryCreator);
-		List<Pair<RefDataInfo, CSVFormat>> discoveryList = discoveryCreator.createDiscoveryRefFormat();
+		List<Pair<RefDataInfo, CSVFormat>> discoveryList = datastoreDescriptionConfig.getRefDiscoveryFormats();
 
 		// Derive calculated columns
 		for (Pair<RefDataInfo, CSVFormat> pair : discoveryList) {
@@ -128,73 +342,172 @@ public class SourceConfig {
 			
 			source.addTopic(topic);
 			
-			List<IColumnCalculator<ILineReader>> calculatedColumns = new ArrayList<IColumnCalculator<ILineReader>>();
-			for(int c = 0; c < discovery.getColumnCount(); c++) {
-				String columnName = discovery.getColumnName(c);
-				String columnType = discovery.getColumnType(c);
-				
-				// When a date field is detected, we automatically
-				// calculate the YEAR, MONTH and DAY fields.
-				if(columnType.startsWith("DATE")) {
-					calculatedColumns.add(new DateYearCalculator(columnName, columnName + ".YEAR"));
-					calculatedColumns.add(new DateMonthCalculator(columnName, columnName + ".MONTH"));
-					calculatedColumns.add(new DateDayCalculator(columnName, columnName + ".DAY"));
-				}
-				
-			};
+			IngestionMetrics metrics = createMetrics(StoreInfo.createStoreInfo(discovery.getFileNameWithoutExtension(), pair.getLeft(), discovery));
+			recordFiles(metrics, null, discovery);
+			
+			List<IColumnCalculator<ILineReader>> calculatedColumns = monitor(createCalculatedColumns(discovery), metrics);
 			channelFactory.setCalculatedColumns(discovery.getFileNameWithoutExtension(), calculatedColumns);
 		
 			// Create Listener to have an effective filewatching
-			final ITuplePublisher<IFileInfo<Path>> publisher 
-							= new AutoCommitTuplePublisher<>(new TuplePublisher<>(datastoreConfig.datastore(), 
-															 discovery.getFileNameWithoutExtension()));
+			final ITuplePublisher<IFileInfo<Path>> publisher = createPublisher(discovery.getFileNameWithoutExtension());
 			IStoreMessageChannel<IFileInfo<Path>, ILineReader> channel
 							= channelFactory.createChannel(discovery.getFileNameWithoutExtension(),
 														   discovery.getFileNameWithoutExtension(),
 														   publisher);
-			source.listen(channel);
+			try (Span span = StartupTracer.begin("load", discovery.getFileNameWithoutExtension())) {
+				source.listen(channel);
+			}
 		}
 	}
 
+	/**
+	 * Warn about the refdata stores whose key is not unique in their files.
+	 * The key of a referenced store is detected on the discovery sample only,
+	 * the rows loaded afterwards with a key already stored replace each other.
+	 */
+	protected void checkRefDataKeys() {
+		IDatastoreVersion head = datastoreConfig.datastore().getHead();
+		for (StoreInfo storeDesc : datastoreDescriptionConfig.getRefStoreInfos()) {
+			List<String> keyFields = storeDesc.getKeyFields();
+			if (keyFields.isEmpty()) {
+				continue;
+			}
+			long publishedTuples = ingestionMetrics.getMetrics(storeDesc.getStoreName()).getPublishedTuples();
+			long recordCount = 0L;
+			IDictionaryCursor cursor = head.getQueryRunner()
+										   .forStore(storeDesc.getStoreName())
+										   .withoutCondition()
+										   .selecting(keyFields)
+										   .run();
+			while (cursor.hasNext()) {
+				cursor.next();
+				recordCount++;
+			}
+			if (recordCount < publishedTuples) {
+				LOGGER.warning("Store " + storeDesc.getStoreName() + " is keyed on " + keyFields + " but " + (publishedTuples - recordCount)
+						+ " of its " + publishedTuples + " rows share a key and were replaced, the key was only unique in the discovery sample."
+						+ " Set the reference property of the referencing datasets to the right fields, or to " + APropertyInfo.NO_REFERENCE + ".");
+			}
+		}
+	}
+	
 	private void loadData() {
 		Map<String, DataInfo> dataInfoMap = autoPivotProps.getDataInfoMap();
 
 		for (Entry<String, DataInfo> entry : dataInfoMap.entrySet()) {
-			CSVFormat discovery = discoveryCreator.createDiscoveryFormat(entry.getValue());
-			ICSVSource<Path> source = createCSVSource(entry.getKey());
-			AutoPivotTopicCreator topicCreator = new AutoPivotTopicCreator(discoveryCreator);
-			ICSVTopic<Path> topic = topicCreator.createTopic(discovery, entry.getKey(), entry.getValue());
-			
-			source.addTopic(topic);
-			
-			CSVMessageChannelFactory<Path> channelFactory = new CSVMessageChannelFactory<>(source, datastoreConfig.datastore());
-			
-			// Derive calculated columns
-			List<IColumnCalculator<ILineReader>> calculatedColumns = new ArrayList<IColumnCalculator<ILineReader>>();
-			for(int c = 0; c < discovery.getColumnCount(); c++) {
-				String columnName = discovery.getColumnName(c);
-				String columnType = discovery.getColumnType(c);
-				
-				// When a date field is detected, we automatically
-				// calculate the YEAR, MONTH and DAY fields.
-				if(columnType.startsWith("DATE")) {
-					calculatedColumns.add(new DateYearCalculator(columnName, columnName + ".YEAR"));
-					calculatedColumns.add(new DateMonthCalculator(columnName, columnName + ".MONTH"));
-					calculatedColumns.add(new DateDayCalculator(columnName, columnName + ".DAY"));
-				}
-				
-			};
-			channelFactory.setCalculatedColumns(entry.getKey(), calculatedColumns);
-			
-			// Create Listener to have an effective filewatching
-			final ITuplePublisher<IFileInfo<Path>> publisher 
-							= new AutoCommitTuplePublisher<>(new TuplePublisher<>(datastoreConfig.datastore(), 
-																				  entry.getKey()));
-			IStoreMessageChannel<IFileInfo<Path>, ILineReader> channel
-							= channelFactory.createChannel(entry.getKey(),
-														   entry.getKey(),
-														   publisher);
+			if (isLoadedAtStartup(entry.getKey(), entry.getValue())) {
+				loadDataset(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * The datasets with lazyLoad=true are left out of the initial loading,
+	 * they are loaded on the first query of their cube by the {@link LazyDatasetLoader}.
+	 * 
+	 * @param storeName dataset name
+	 * @param dataInfo dataset properties
+	 * @return true to load the dataset during the initial loading
+	 */
+	protected boolean isLoadedAtStartup(String storeName, DataInfo dataInfo) {
+		return dataInfo.isLazyLoad() == false;
+	}
+	
+	/**
+	 * Loader of the datasets loaded on demand, notified of the MDX queries
+	 * 
+	 * @return the lazy dataset loader
+	 */
+	@Bean(destroyMethod = "stop")
+	public LazyDatasetLoader lazyDatasetLoader() {
+		Map<String, DataInfo> lazyDataInfos = new LinkedHashMap<>();
+		for (Entry<String, DataInfo> entry : autoPivotProps.getDataInfoMap().entrySet()) {
+			if (entry.getValue().isLazyLoad()) {
+				lazyDataInfos.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return new LazyDatasetLoader(this, datastoreConfig.datastore(), lazyDataInfos);
+	}
+	
+	/**
+	 * Load the files of a dataset into its store and its dimension stores,
+	 * and keep watching them. The format discovered at startup is reused.
+	 * 
+	 * @param storeName dataset name
+	 * @param dataInfo dataset properties
+	 * @return the source of the dataset, to stop watching its files
+	 */
+	public DatasetSource loadDataset(String storeName, DataInfo dataInfo) {
+		CSVFormat discovery = datastoreDescriptionConfig.getDiscovery(storeName);
+		ICSVSource<Path> source = createCSVSource(storeName);
+		AutoPivotTopicCreator topicCreator = new AutoPivotTopicCreator(discoveryCreator);
+		ICSVTopic<Path> topic = topicCreator.createTopic(discovery, storeName, dataInfo);
+		
+		source.addTopic(topic);
+		
+		CSVMessageChannelFactory<Path> channelFactory = new CSVMessageChannelFactory<>(source, datastoreConfig.datastore());
+		
+		StoreInfo storeDesc = datastoreDescriptionConfig.getDataStoreInfo(storeName);
+		IngestionMetrics metrics = createMetrics(storeDesc);
+		recordFiles(metrics, dataInfo, discovery);
+		
+		// Derive calculated columns
+		List<IColumnCalculator<ILineReader>> calculatedColumns = monitor(createCalculatedColumns(discovery), metrics);
+		
+		// The dimension stores are fed from the same parse as the data store,
+		// their rows are committed with the facts and upserted on the dimension key
+		DimensionStorePublisher<IFileInfo<Path>> dimensionPublisher = createDimensionStorePublisher(storeDesc, calculatedColumns);
+		channelFactory.setCalculatedColumns(storeName, calculatedColumns);
+		
+		// Create Listener to have an effective filewatching
+		DatasetSource datasetSource = new DatasetSource(source);
+		final ITuplePublisher<IFileInfo<Path>> publisher = createPublisher(storeName, new MonitoredTuplePublisher<>(new AutoCommitTuplePublisher<>(dimensionPublisher), metrics));
+		IStoreMessageChannel<IFileInfo<Path>, ILineReader> channel
+						= channelFactory.createChannel(storeName,
+													   storeName,
+													   publisher);
+		try (Span span = StartupTracer.begin("load", storeName)) {
 			source.listen(channel);
 		}
-	}	
+		datasetSource.addChannel(storeName, channel);
+		for (StoreReference dimensionStore : storeDesc.getDimensionStores()) {
+			datasetSource.addStoreName(dimensionStore.getTargetStore());
+		}
+		return datasetSource;
+	}
+	
+	/** Source of a loaded dataset, watching its files */
+	public static class DatasetSource {
+		
+		protected final ICSVSource<Path> source;
+		
+		/** Names of the fed stores, the data store then its dimension stores */
+		protected final List<String> storeNames = new ArrayList<>();
+		
+		protected final List<IStoreMessageChannel<IFileInfo<Path>, ILineReader>> channels = new ArrayList<>();
+		
+		protected DatasetSource(ICSVSource<Path> source) {
+			this.source = source;
+		}
+		
+		protected void addChannel(String storeName, IStoreMessageChannel<IFileInfo<Path>, ILineReader> channel) {
+			storeNames.add(storeName);
+			channels.add(channel);
+		}
+		
+		/** Add a store fed by the channels already added */
+		protected void addStoreName(String storeName) {
+			storeNames.add(storeName);
+		}
+		
+		/** @return names of the fed stores, the data store then its dimension stores */
+		public List<String> getStoreNames() { return storeNames; }
+		
+		/** Stop watching the files of the dataset */
+		public void stop() {
+			for (IStoreMessageChannel<IFileInfo<Path>, ILineReader> channel : channels) {
+				source.stopListening(channel);
+			}
+		}
+	}
 }
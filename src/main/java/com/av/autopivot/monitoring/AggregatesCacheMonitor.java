@@ -0,0 +1,135 @@
+package com.av.autopivot.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.quartetfs.biz.pivot.IActivePivotManager;
+import com.quartetfs.biz.pivot.IMultiVersionActivePivot;
+import com.quartetfs.biz.pivot.cache.IAggregatesCache;
+import com.quartetfs.biz.pivot.definitions.IAggregatesCacheDescription;
+
+/**
+ * Expose the statistics of the aggregate cache of a cube over JMX, so that the
+ * cache size and the cached measures can be tuned from real usage rather than guessed.
+ * <p>
+ * One monitor is registered per cube with an aggregate cache, under
+ * com.av.autopivot:type=AggregatesCache,cube=&lt;cube name&gt;.
+ *
+ * @author Florian
+ *
+ */
+public class AggregatesCacheMonitor implements AggregatesCacheMonitorMBean {
+
+	/** Logger */
+	private static final Logger LOGGER = Logger.getLogger(AggregatesCacheMonitor.class.getName());
+
+	/** JMX domain of the AutoPivot monitors */
+	public static final String JMX_DOMAIN = "com.av.autopivot";
+
+	/** ActivePivot manager */
+	protected final IActivePivotManager manager;
+
+	/** Monitored cube */
+	protected final String cubeName;
+
+	/** Cache configuration of the cube */
+	protected final IAggregatesCacheDescription description;
+
+	public AggregatesCacheMonitor(IActivePivotManager manager, String cubeName, IAggregatesCacheDescription description) {
+		this.manager = manager;
+		this.cubeName = cubeName;
+		this.description = description;
+	}
+
+	/**
+	 * Register a monitor for each cube of the manager with an aggregate cache.
+	 *
+	 * @param manager started ActivePivot manager
+	 * @param cacheDescriptions cache configuration by cube name
+	 * @return registered monitors
+	 */
+	public static List<AggregatesCacheMonitor> register(IActivePivotManager manager, Map<String, IAggregatesCacheDescription> cacheDescriptions) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		List<AggregatesCacheMonitor> monitors = new ArrayList<>();
+		for (Map.Entry<String, IAggregatesCacheDescription> entry : cacheDescriptions.entrySet()) {
+			if (entry.getValue() == null) {
+				continue;
+			}
+			AggregatesCacheMonitor monitor = new AggregatesCacheMonitor(manager, entry.getKey(), entry.getValue());
+			try {
+				ObjectName name = new ObjectName(JMX_DOMAIN + ":type=AggregatesCache,cube=" + ObjectName.quote(entry.getKey()));
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+				server.registerMBean(monitor, name);
+				monitors.add(monitor);
+			} catch (JMException jme) {
+				LOGGER.warning("Cannot register the aggregate cache monitor of cube " + entry.getKey() + ": " + jme.getMessage());
+			}
+		}
+		return monitors;
+	}
+
+	/** @return aggregate cache of the current version of the cube, null if there is none */
+	protected IAggregatesCache getCache() {
+		IMultiVersionActivePivot pivot = manager.getActivePivots().get(cubeName);
+		return pivot == null ? null : pivot.getHead().getAggregatesCache();
+	}
+
+	@Override
+	public String getCubeName() { return cubeName; }
+
+	@Override
+	public int getMaxSize() { return description.getSize(); }
+
+	@Override
+	public List<String> getCachedMeasures() {
+		List<String> measures = description.getMeasures();
+		return measures == null ? Collections.emptyList() : measures;
+	}
+
+	@Override
+	public long getSize() {
+		IAggregatesCache cache = getCache();
+		return cache == null ? 0L : cache.getSize();
+	}
+
+	@Override
+	public long getHitCount() {
+		IAggregatesCache cache = getCache();
+		return cache == null ? 0L : cache.getHitCount();
+	}
+
+	@Override
+	public long getMissCount() {
+		IAggregatesCache cache = getCache();
+		return cache == null ? 0L : cache.getMissCount();
+	}
+
+	@Override
+	public double getHitRate() {
+		long hits = getHitCount();
+		long lookups = hits + getMissCount();
+		return lookups == 0L ? 0d : (double) hits / lookups;
+	}
+
+	@Override
+	public long getEvictionCount() {
+		IAggregatesCache cache = getCache();
+		return cache == null ? 0L : cache.getEvictionCount();
+	}
+
+	@Override
+	public double getFillRatio() {
+		int maxSize = getMaxSize();
+		return maxSize <= 0 ? 0d : (double) getSize() / maxSize;
+	}
+}
@@ -0,0 +1,39 @@
+package com.av.autopivot.monitoring;
+
+import java.util.List;
+
+/**
+ * JMX interface of the {@link AggregatesCacheMonitor}.
+ *
+ * @author Florian
+ *
+ */
+public interface AggregatesCacheMonitorMBean {
+
+	/** @return name of the monitored cube */
+	String getCubeName();
+
+	/** @return configured maximum number of cached locations */
+	int getMaxSize();
+
+	/** @return measures kept in the cache, empty when all measures are cached */
+	List<String> getCachedMeasures();
+
+	/** @return number of locations currently in the cache */
+	long getSize();
+
+	/** @return number of lookups served by the cache */
+	long getHitCount();
+
+	/** @return number of lookups computed by the aggregate provider */
+	long getMissCount();
+
+	/** @return hits over lookups, between 0 and 1 */
+	double getHitRate();
+
+	/** @return number of locations evicted from the cache */
+	long getEvictionCount();
+
+	/** @return fill ratio of the cache, size over maximum size */
+	double getFillRatio();
+}
@@ -0,0 +1,240 @@
+package com.av.autopivot.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the loading of a store, updated concurrently by the parser
+ * threads: files and bytes read, published tuples, latency of the commits,
+ * time spent in the calculated columns, missing values by field and tuples
+ * by partition.
+ * <p>
+ * The counters are striped {@link LongAdder}s, and the tuples of a chunk are
+ * counted locally before being added, so the overhead is a few nanoseconds
+ * per published value. The partition of a tuple is computed as the modulo
+ * of the hash code of its partitioning field value, like the modulo partitioning
+ * of the generated data stores.
+ * <p>
+ * The metrics of each store are registered over JMX by the
+ * {@link IngestionMetricsRegistry}, under
+ * com.av.autopivot:type=Ingestion,store=&lt;store name&gt;.
+ *
+ * @author Florian
+ *
+ */
+public class IngestionMetrics implements IngestionMetricsMBean {
+
+	/** Loaded store */
+	protected final String storeName;
+
+	protected final LongAdder filesRead = new LongAdder();
+
+	protected final LongAdder bytesRead = new LongAdder();
+
+	protected final LongAdder publishedTuples = new LongAdder();
+
+	protected final LatencyHistogram publishLatency = new LatencyHistogram();
+
+	protected final LongAdder calculatedValues = new LongAdder();
+
+	protected final LongAdder calculatedColumnNanos = new LongAdder();
+
+	/** Layout of the published tuples, null until the store is described */
+	protected volatile Layout layout;
+
+	public IngestionMetrics(String storeName) {
+		this.storeName = storeName;
+	}
+
+	/**
+	 * Describe the published tuples, so that the missing values
+	 * and the partitions can be counted
+	 *
+	 * @param fieldNames fields of the store, in the order of the tuples
+	 * @param partitionField partitioning field, null if the store is not partitioned
+	 * @param partitionCount number of partitions
+	 */
+	public void describe(List<String> fieldNames, String partitionField, int partitionCount) {
+		this.layout = new Layout(fieldNames, partitionField, partitionCount);
+	}
+
+	/**
+	 * Record a file read by the source
+	 *
+	 * @param bytes size of the file
+	 */
+	public void addFile(long bytes) {
+		filesRead.increment();
+		bytesRead.add(bytes);
+	}
+
+	/**
+	 * Record a timed value of a calculated column, standing for
+	 * the untimed values of the sample
+	 *
+	 * @param nanos computation time
+	 * @param sampleRate number of values computed for each timed value
+	 */
+	public void addCalculatedValue(long nanos, int sampleRate) {
+		calculatedValues.add(sampleRate);
+		calculatedColumnNanos.add(nanos * sampleRate);
+	}
+
+	/**
+	 * Record a chunk of tuples published into the store
+	 *
+	 * @param tuples published tuples
+	 * @param nanos time to add the tuples and commit them
+	 */
+	public void addPublish(List<Object[]> tuples, long nanos) {
+		publishLatency.record(nanos);
+		publishedTuples.add(tuples.size());
+
+		Layout current = layout;
+		if (current == null) {
+			return;
+		}
+		long[] nulls = new long[current.fieldNames.length];
+		long[] partitions = new long[current.partitionTuples.length];
+		for (Object[] tuple : tuples) {
+			int fieldCount = Math.min(tuple.length, nulls.length);
+			for (int f = 0; f < fieldCount; f++) {
+				if (tuple[f] == null) {
+					nulls[f]++;
+				}
+			}
+			if (current.partitionIndex >= 0 && current.partitionIndex < tuple.length) {
+				Object value = tuple[current.partitionIndex];
+				partitions[Math.floorMod(value == null ? 0 : value.hashCode(), partitions.length)]++;
+			}
+		}
+		for (int f = 0; f < nulls.length; f++) {
+			if (nulls[f] > 0L) {
+				current.nullValues[f].add(nulls[f]);
+			}
+		}
+		for (int p = 0; p < partitions.length; p++) {
+			if (partitions[p] > 0L) {
+				current.partitionTuples[p].add(partitions[p]);
+			}
+		}
+	}
+
+	@Override
+	public String getStoreName() { return storeName; }
+
+	@Override
+	public long getFilesRead() { return filesRead.sum(); }
+
+	@Override
+	public long getBytesRead() { return bytesRead.sum(); }
+
+	@Override
+	public long getPublishedTuples() { return publishedTuples.sum(); }
+
+	@Override
+	public long getPublishCount() { return publishLatency.getCount(); }
+
+	@Override
+	public double getPublishMeanMillis() { return publishLatency.getMeanMillis(); }
+
+	@Override
+	public double getPublishP50Millis() { return publishLatency.getPercentileMillis(50d); }
+
+	@Override
+	public double getPublishP99Millis() { return publishLatency.getPercentileMillis(99d); }
+
+	@Override
+	public double getPublishMaxMillis() { return publishLatency.getMaxMillis(); }
+
+	@Override
+	public long getCalculatedValues() { return calculatedValues.sum(); }
+
+	@Override
+	public long getCalculatedColumnMillis() { return TimeUnit.NANOSECONDS.toMillis(calculatedColumnNanos.sum()); }
+
+	@Override
+	public Map<String, Long> getNullValues() {
+		Map<String, Long> result = new TreeMap<>();
+		Layout current = layout;
+		if (current != null) {
+			for (int f = 0; f < current.fieldNames.length; f++) {
+				long count = current.nullValues[f].sum();
+				if (count > 0L) {
+					result.put(current.fieldNames[f], count);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public String getPartitionField() {
+		Layout current = layout;
+		return current == null || current.partitionIndex < 0 ? null : current.fieldNames[current.partitionIndex];
+	}
+
+	@Override
+	public Map<Integer, Long> getPartitionTuples() {
+		Map<Integer, Long> result = new TreeMap<>();
+		Layout current = layout;
+		if (current != null && current.partitionIndex >= 0) {
+			for (int p = 0; p < current.partitionTuples.length; p++) {
+				result.put(p, current.partitionTuples[p].sum());
+			}
+		}
+		return result;
+	}
+
+	/** @return the metrics by name, for the REST service */
+	public Map<String, Object> toMap() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("storeName", getStoreName());
+		result.put("filesRead", getFilesRead());
+		result.put("bytesRead", getBytesRead());
+		result.put("publishedTuples", getPublishedTuples());
+		result.put("publishCount", getPublishCount());
+		result.put("publishMeanMillis", getPublishMeanMillis());
+		result.put("publishP50Millis", getPublishP50Millis());
+		result.put("publishP99Millis", getPublishP99Millis());
+		result.put("publishMaxMillis", getPublishMaxMillis());
+		result.put("calculatedValues", getCalculatedValues());
+		result.put("calculatedColumnMillis", getCalculatedColumnMillis());
+		result.put("nullValues", getNullValues());
+		result.put("partitionField", getPartitionField());
+		result.put("partitionTuples", getPartitionTuples());
+		return result;
+	}
+
+	/** Fields of the published tuples and their counters */
+	protected static class Layout {
+
+		protected final String[] fieldNames;
+
+		protected final LongAdder[] nullValues;
+
+		/** Index of the partitioning field, -1 if the store is not partitioned */
+		protected final int partitionIndex;
+
+		protected final LongAdder[] partitionTuples;
+
+		protected Layout(List<String> fieldNames, String partitionField, int partitionCount) {
+			this.fieldNames = fieldNames.toArray(new String[fieldNames.size()]);
+			this.nullValues = createAdders(this.fieldNames.length);
+			this.partitionIndex = partitionField == null ? -1 : fieldNames.indexOf(partitionField);
+			this.partitionTuples = createAdders(partitionIndex < 0 ? 0 : Math.max(1, partitionCount));
+		}
+
+		protected static LongAdder[] createAdders(int count) {
+			LongAdder[] adders = new LongAdder[count];
+			for (int a = 0; a < count; a++) {
+				adders[a] = new LongAdder();
+			}
+			return adders;
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package com.av.autopivot.monitoring;
+
+import java.util.Map;
+
+/**
+ * JMX interface of the {@link IngestionMetrics}.
+ *
+ * @author Florian
+ *
+ */
+public interface IngestionMetricsMBean {
+
+	/** @return name of the loaded store */
+	String getStoreName();
+
+	/** @return number of files found by the source when it started */
+	long getFilesRead();
+
+	/** @return size of the files found by the source when it started */
+	long getBytesRead();
+
+	/** @return number of tuples published into the store, one per parsed line */
+	long getPublishedTuples();
+
+	/** @return number of published chunks, each committed in its own transaction */
+	long getPublishCount();
+
+	/** @return mean latency to add a chunk to the store and commit it */
+	double getPublishMeanMillis();
+
+	/** @return median latency to add a chunk to the store and commit it */
+	double getPublishP50Millis();
+
+	/** @return 99th percentile of the latency to add a chunk to the store and commit it */
+	double getPublishP99Millis();
+
+	/** @return maximum latency to add a chunk to the store and commit it */
+	double getPublishMaxMillis();
+
+	/** @return number of values computed by the calculated columns, estimated from the timed sample */
+	long getCalculatedValues();
+
+	/** @return time spent in the calculated columns, summed over the parser threads and estimated from the timed sample */
+	long getCalculatedColumnMillis();
+
+	/** @return number of missing or unparsable values by field, the fields without any are omitted */
+	Map<String, Long> getNullValues();
+
+	/** @return partitioning field of the store, null if it is not partitioned */
+	String getPartitionField();
+
+	/** @return number of published tuples by partition */
+	Map<Integer, Long> getPartitionTuples();
+}
@@ -0,0 +1,74 @@
+package com.av.autopivot.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Ingestion metrics of the loaded stores, created on first use and
+ * registered over JMX under com.av.autopivot:type=Ingestion,store=&lt;store name&gt;.
+ *
+ * @author Florian
+ *
+ */
+public class IngestionMetricsRegistry {
+
+	/** Logger */
+	private static final Logger LOGGER = Logger.getLogger(IngestionMetricsRegistry.class.getName());
+
+	/** Metrics by store name */
+	protected final Map<String, IngestionMetrics> metrics = new ConcurrentSkipListMap<>();
+
+	/**
+	 * @param storeName loaded store
+	 * @return the metrics of the store, registered over JMX on first use
+	 */
+	public IngestionMetrics getMetrics(String storeName) {
+		return metrics.computeIfAbsent(storeName, this::register);
+	}
+
+	/** @return the metrics by store name */
+	public Map<String, IngestionMetrics> getAllMetrics() {
+		return Collections.unmodifiableMap(metrics);
+	}
+
+	protected IngestionMetrics register(String storeName) {
+		IngestionMetrics storeMetrics = new IngestionMetrics(storeName);
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = getObjectName(storeName);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(storeMetrics, name);
+		} catch (JMException jme) {
+			LOGGER.warning("Cannot register the ingestion metrics of store " + storeName + ": " + jme.getMessage());
+		}
+		return storeMetrics;
+	}
+
+	/** Unregister the metrics from JMX */
+	public void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (String storeName : metrics.keySet()) {
+			try {
+				ObjectName name = getObjectName(storeName);
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+			} catch (JMException jme) {
+				LOGGER.warning("Cannot unregister the ingestion metrics of store " + storeName + ": " + jme.getMessage());
+			}
+		}
+	}
+
+	protected static ObjectName getObjectName(String storeName) throws JMException {
+		return new ObjectName(AggregatesCacheMonitor.JMX_DOMAIN + ":type=Ingestion,store=" + ObjectName.quote(storeName));
+	}
+}
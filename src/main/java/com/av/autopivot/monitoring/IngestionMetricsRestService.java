@@ -0,0 +1,53 @@
+package com.av.autopivot.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST service returning the ingestion metrics of the loaded stores as JSON,
+ * for the monitoring tools that do not speak JMX.
+ * <ul>
+ * <li>GET /autopivot/monitoring/ingestion the metrics of all the stores</li>
+ * <li>GET /autopivot/monitoring/ingestion/{store} the metrics of one store</li>
+ * </ul>
+ *
+ * @author Florian
+ *
+ */
+@RestController
+@RequestMapping(IngestionMetricsRestService.URL)
+public class IngestionMetricsRestService {
+
+	/** Root URL of the service */
+	public static final String URL = "/autopivot/monitoring/ingestion";
+
+	protected final IngestionMetricsRegistry registry;
+
+	public IngestionMetricsRestService(IngestionMetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	@RequestMapping(method = RequestMethod.GET)
+	public Map<String, Map<String, Object>> getAllMetrics() {
+		Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+		for (Map.Entry<String, IngestionMetrics> entry : registry.getAllMetrics().entrySet()) {
+			result.put(entry.getKey(), entry.getValue().toMap());
+		}
+		return result;
+	}
+
+	@RequestMapping(value = "/{storeName}", method = RequestMethod.GET)
+	public ResponseEntity<Map<String, Object>> getMetrics(@PathVariable("storeName") String storeName) {
+		IngestionMetrics metrics = registry.getAllMetrics().get(storeName);
+		if (metrics == null) {
+			return ResponseEntity.notFound().build();
+		}
+		return ResponseEntity.ok(metrics.toMap());
+	}
+}
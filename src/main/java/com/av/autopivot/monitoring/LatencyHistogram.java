@@ -0,0 +1,95 @@
+package com.av.autopivot.monitoring;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with power of two buckets in microseconds,
+ * cheap enough to be recorded concurrently by the parser threads.
+ * The percentiles are the upper bound of their bucket, so they
+ * are accurate within a factor of two.
+ *
+ * @author Florian
+ *
+ */
+public class LatencyHistogram {
+
+	/** Number of buckets, the last one holds the latencies above about 18 minutes */
+	protected static final int BUCKET_COUNT = 32;
+
+	/** Bucket b holds the latencies between 2^(b-1) and 2^b microseconds */
+	protected final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+	protected final LongAdder count = new LongAdder();
+
+	protected final LongAdder totalNanos = new LongAdder();
+
+	protected final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0L);
+
+	public LatencyHistogram() {
+		for (int b = 0; b < BUCKET_COUNT; b++) {
+			buckets[b] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Record a latency
+	 *
+	 * @param nanos latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		buckets[getBucket(nanos)].increment();
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	/** Reset the histogram, the latencies recorded concurrently may be partially kept */
+	public void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		count.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+	}
+
+	protected static int getBucket(long nanos) {
+		long micros = nanos / 1000L;
+		return micros <= 0L ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	public long getCount() { return count.sum(); }
+
+	public double getMeanMillis() {
+		long n = count.sum();
+		return n == 0L ? 0d : totalNanos.sum() / (1e6d * n);
+	}
+
+	public double getMaxMillis() { return maxNanos.get() / 1e6d; }
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return upper bound of the bucket of the percentile, in milliseconds
+	 */
+	public double getPercentileMillis(double percentile) {
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0L;
+		for (int b = 0; b < BUCKET_COUNT; b++) {
+			counts[b] = buckets[b].sum();
+			total += counts[b];
+		}
+		if (total == 0L) {
+			return 0d;
+		}
+		long rank = Math.max(1L, (long) Math.ceil(percentile / 100d * total));
+		long cumulated = 0L;
+		for (int b = 0; b < BUCKET_COUNT; b++) {
+			cumulated += counts[b];
+			if (cumulated >= rank) {
+				return Math.min(1L << b, maxNanos.get() / 1000L) / 1e3d;
+			}
+		}
+		return getMaxMillis();
+	}
+}
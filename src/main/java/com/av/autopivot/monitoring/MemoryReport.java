@@ -0,0 +1,306 @@
+package com.av.autopivot.monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.av.autopivot.StoreInfo;
+import com.av.autopivot.StoreReference;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.AGGREGATE_PROVIDER_TYPE;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.COLUMN_ROLE;
+import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
+
+/**
+ * Memory footprint of the stores and cubes: bytes of the column chunks,
+ * dictionaries and indexes of each store field, and bytes of the hierarchies,
+ * aggregate provider and aggregate cache of each cube.
+ * <p>
+ * Each field is mapped back to the CSV column it is generated from, with the
+ * role of the column in the cube, and the fields expensive relative to their
+ * use are reported with the autopivot.properties setting that would reduce
+ * their footprint: a large dictionary on a level that could be a plain field,
+ * a drillthrough only field that could be moved to a dimension store, a double
+ * column that could be stored as float.
+ *
+ * @author Florian
+ *
+ */
+public class MemoryReport {
+
+	/** Share of the store or cube memory above which an item is reported as expensive */
+	public static final double EXPENSIVE_SHARE = 0.2d;
+
+	/** Size below which an item is never reported as expensive */
+	public static final long MIN_EXPENSIVE_BYTES = 16L << 20;
+
+	/** Field holding the memory of a store that is not attributed to a field */
+	public static final String STORE_FIELD = "(store)";
+
+	/** Kinds of store memory */
+	public enum STORE_ITEM {
+		CHUNKS,
+		DICTIONARY,
+		INDEX
+	}
+
+	/** Kinds of cube memory */
+	public enum CUBE_ITEM {
+		HIERARCHIES,
+		AGGREGATE_PROVIDER,
+		AGGREGATES_CACHE,
+		OTHER
+	}
+
+	/** Store infos by store name, describing the columns of the fields */
+	protected final Map<String, StoreInfo> storeInfos;
+
+	/** Dataset of each store, the dimension stores belong to the dataset of their data store */
+	protected final Map<String, String> datasets = new TreeMap<>();
+
+	/** Bytes by store, field and item */
+	protected final Map<String, Map<String, Map<STORE_ITEM, Long>>> stores = new TreeMap<>();
+
+	/** Bytes by cube and item */
+	protected final Map<String, Map<CUBE_ITEM, Long>> cubes = new TreeMap<>();
+
+	/** Bytes by cube and hierarchy */
+	protected final Map<String, Map<String, Long>> hierarchies = new TreeMap<>();
+
+	/**
+	 * @param dataStoreInfos data stores, named after their dataset
+	 * @param refStoreInfos refdata stores
+	 */
+	public MemoryReport(List<StoreInfo> dataStoreInfos, List<StoreInfo> refStoreInfos) {
+		this.storeInfos = new TreeMap<>();
+		for (StoreInfo refStoreInfo : refStoreInfos) {
+			storeInfos.put(refStoreInfo.getStoreName(), refStoreInfo);
+		}
+		for (StoreInfo dataStoreInfo : dataStoreInfos) {
+			storeInfos.put(dataStoreInfo.getStoreName(), dataStoreInfo);
+			datasets.put(dataStoreInfo.getStoreName(), dataStoreInfo.getStoreName());
+			for (StoreReference dimensionStore : dataStoreInfo.getDimensionStores()) {
+				storeInfos.put(dimensionStore.getTargetStore(), dataStoreInfo);
+				datasets.put(dimensionStore.getTargetStore(), dataStoreInfo.getStoreName());
+			}
+		}
+	}
+
+	/**
+	 * Add memory to a store field
+	 *
+	 * @param store store name
+	 * @param field field name, null for the memory of the store itself
+	 * @param item kind of memory
+	 * @param bytes on heap and off heap bytes
+	 */
+	public void addStoreMemory(String store, String field, STORE_ITEM item, long bytes) {
+		stores.computeIfAbsent(store, key -> new TreeMap<>())
+			  .computeIfAbsent(field == null ? STORE_FIELD : field, key -> new EnumMap<>(STORE_ITEM.class))
+			  .merge(item, bytes, Long::sum);
+	}
+
+	/**
+	 * Add memory to a cube
+	 *
+	 * @param cube cube name
+	 * @param hierarchy hierarchy name for the hierarchies, null otherwise
+	 * @param item kind of memory
+	 * @param bytes on heap and off heap bytes
+	 */
+	public void addCubeMemory(String cube, String hierarchy, CUBE_ITEM item, long bytes) {
+		cubes.computeIfAbsent(cube, key -> new EnumMap<>(CUBE_ITEM.class)).merge(item, bytes, Long::sum);
+		if (hierarchy != null) {
+			hierarchies.computeIfAbsent(cube, key -> new TreeMap<>()).merge(hierarchy, bytes, Long::sum);
+		}
+	}
+
+	/** @return the total bytes of each store */
+	public Map<String, Long> getStoreBytes() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, Map<String, Map<STORE_ITEM, Long>>> store : stores.entrySet()) {
+			long total = 0L;
+			for (Map<STORE_ITEM, Long> items : store.getValue().values()) {
+				total += sum(items);
+			}
+			result.put(store.getKey(), total);
+		}
+		return result;
+	}
+
+	/** @return the total bytes of each cube */
+	public Map<String, Long> getCubeBytes() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, Map<CUBE_ITEM, Long>> cube : cubes.entrySet()) {
+			result.put(cube.getKey(), sum(cube.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * @param store store name
+	 * @return the bytes of each field of the store and item
+	 */
+	public Map<String, Map<STORE_ITEM, Long>> getFieldBytes(String store) {
+		return stores.getOrDefault(store, Collections.emptyMap());
+	}
+
+	/**
+	 * @param cube cube name
+	 * @return the bytes of each item of the cube
+	 */
+	public Map<CUBE_ITEM, Long> getCubeItemBytes(String cube) {
+		return cubes.getOrDefault(cube, Collections.emptyMap());
+	}
+
+	/**
+	 * @param store store name
+	 * @param field field name
+	 * @return the CSV column the field is generated from, null if it is unknown
+	 */
+	public String getColumn(String store, String field) {
+		StoreInfo storeInfo = storeInfos.get(store);
+		if (storeInfo == null) {
+			return null;
+		}
+		if (storeInfo.getColumnNames().contains(field)) {
+			return field;
+		}
+		// The YEAR, MONTH and DAY fields are calculated from their date column
+		int dot = field.lastIndexOf('.');
+		if (dot > 0 && storeInfo.getColumnNames().contains(field.substring(0, dot))) {
+			return field.substring(0, dot);
+		}
+		return null;
+	}
+
+	/**
+	 * @return the settings that would reduce the footprint of the
+	 * fields and cubes expensive relative to their use
+	 */
+	public List<String> getSuggestions() {
+		List<String> suggestions = new ArrayList<>();
+		Map<String, Long> storeBytes = getStoreBytes();
+		for (Map.Entry<String, Map<String, Map<STORE_ITEM, Long>>> store : stores.entrySet()) {
+			String dataset = datasets.get(store.getKey());
+			StoreInfo storeInfo = storeInfos.get(store.getKey());
+			if (dataset == null || storeInfo == null) {
+				continue;
+			}
+			for (Map.Entry<String, Map<STORE_ITEM, Long>> field : store.getValue().entrySet()) {
+				long bytes = sum(field.getValue());
+				String column = getColumn(store.getKey(), field.getKey());
+				if (column == null || isExpensive(bytes, storeBytes.get(store.getKey())) == false) {
+					continue;
+				}
+				int index = storeInfo.getColumnNames().indexOf(column);
+				String type = storeInfo.getColumnType(index);
+				COLUMN_ROLE role = storeInfo.getColumnRole(index);
+				String prefix = DataInfo.DATA_INFO_ROOT_KEY + dataset + ".";
+				String usage = "Field " + field.getKey() + " of store " + store.getKey() + " uses " + toMegaBytes(bytes) + " MB, ";
+				long dictionaryBytes = field.getValue().getOrDefault(STORE_ITEM.DICTIONARY, 0L);
+				if (role == COLUMN_ROLE.LEVEL && dictionaryBytes * 2 > bytes && storeInfo.isUpperLevel(column) == false) {
+					suggestions.add(usage + "mostly its dictionary: if " + column + " is rarely used as a level, set "
+							+ prefix + APropertyInfo.DATA_INFO_COLUMN_ROLE + "." + column + "=" + COLUMN_ROLE.FIELD);
+				} else if (role == COLUMN_ROLE.FIELD && storeInfo.isNormalized(column) == false) {
+					suggestions.add(usage + "for drillthrough only: if " + column + " depends on a key, move it to a "
+							+ prefix + APropertyInfo.DATA_INFO_DIMENSION_STORE + ".<name>.fields");
+				} else if ("double".equalsIgnoreCase(type) && store.getKey().equals(storeInfo.getStoreName())
+						&& storeInfo.isAggregated(index) == false) {
+					// Only the data store columns that are not aggregated are narrowed to float
+					suggestions.add(usage + "as double: if 6 significant digits are enough, set "
+							+ prefix + APropertyInfo.DATA_INFO_DECIMAL_PRECISION + "=6 to store it as float");
+				}
+			}
+		}
+		for (Map.Entry<String, Map<CUBE_ITEM, Long>> cube : cubes.entrySet()) {
+			String dataset = datasets.get(cube.getKey());
+			StoreInfo storeInfo = storeInfos.get(cube.getKey());
+			if (dataset == null || storeInfo == null) {
+				continue;
+			}
+			long total = sum(cube.getValue());
+			String prefix = DataInfo.DATA_INFO_ROOT_KEY + dataset + ".";
+			long cacheBytes = cube.getValue().getOrDefault(CUBE_ITEM.AGGREGATES_CACHE, 0L);
+			if (isExpensive(cacheBytes, total)) {
+				suggestions.add("Aggregate cache of cube " + cube.getKey() + " uses " + toMegaBytes(cacheBytes) + " MB: reduce "
+						+ prefix + APropertyInfo.DATA_INFO_PIVOT_CACHE_SIZE + " or restrict " + prefix + APropertyInfo.DATA_INFO_PIVOT_CACHE_MEASURES);
+			}
+			long providerBytes = cube.getValue().getOrDefault(CUBE_ITEM.AGGREGATE_PROVIDER, 0L);
+			if (storeInfo.getAggregateProviderType() == AGGREGATE_PROVIDER_TYPE.BITMAP && isExpensive(providerBytes, total)) {
+				suggestions.add("Bitmap aggregate provider of cube " + cube.getKey() + " uses " + toMegaBytes(providerBytes) + " MB: reduce the measures with "
+						+ prefix + APropertyInfo.DATA_INFO_MEASURE_PROFILE + " or pre-aggregate the most queried levels only with "
+						+ prefix + APropertyInfo.DATA_INFO_PARTIAL_PROVIDER + ".<name>.levels");
+			}
+		}
+		return suggestions;
+	}
+
+	protected static boolean isExpensive(long bytes, Long total) {
+		return bytes >= MIN_EXPENSIVE_BYTES && total != null && bytes >= EXPENSIVE_SHARE * total;
+	}
+
+	protected static long sum(Map<?, Long> bytes) {
+		long total = 0L;
+		for (Long value : bytes.values()) {
+			total += value;
+		}
+		return total;
+	}
+
+	protected static long toMegaBytes(long bytes) {
+		return bytes >> 20;
+	}
+
+	/** @return the JSON key of an item, aggregatesCacheBytes for AGGREGATES_CACHE */
+	protected static String toKey(Enum<?> item) {
+		StringBuilder key = new StringBuilder();
+		for (String word : item.name().toLowerCase().split("_")) {
+			key.append(key.length() == 0 ? word : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+		}
+		return key.append("Bytes").toString();
+	}
+
+	/** @return the report by name, for the REST service */
+	public Map<String, Object> toMap() {
+		Map<String, Object> storeReports = new LinkedHashMap<>();
+		Map<String, Long> storeBytes = getStoreBytes();
+		for (Map.Entry<String, Map<String, Map<STORE_ITEM, Long>>> store : stores.entrySet()) {
+			Map<String, Object> fields = new LinkedHashMap<>();
+			for (Map.Entry<String, Map<STORE_ITEM, Long>> field : store.getValue().entrySet()) {
+				Map<String, Object> fieldReport = new LinkedHashMap<>();
+				fieldReport.put("column", getColumn(store.getKey(), field.getKey()));
+				fieldReport.put("bytes", sum(field.getValue()));
+				for (Map.Entry<STORE_ITEM, Long> item : field.getValue().entrySet()) {
+					fieldReport.put(toKey(item.getKey()), item.getValue());
+				}
+				fields.put(field.getKey(), fieldReport);
+			}
+			Map<String, Object> storeReport = new LinkedHashMap<>();
+			storeReport.put("bytes", storeBytes.get(store.getKey()));
+			storeReport.put("fields", fields);
+			storeReports.put(store.getKey(), storeReport);
+		}
+
+		Map<String, Object> cubeReports = new LinkedHashMap<>();
+		for (Map.Entry<String, Map<CUBE_ITEM, Long>> cube : cubes.entrySet()) {
+			Map<String, Object> cubeReport = new LinkedHashMap<>();
+			cubeReport.put("bytes", sum(cube.getValue()));
+			for (Map.Entry<CUBE_ITEM, Long> item : cube.getValue().entrySet()) {
+				cubeReport.put(toKey(item.getKey()), item.getValue());
+			}
+			cubeReport.put("hierarchies", hierarchies.getOrDefault(cube.getKey(), Collections.emptyMap()));
+			cubeReports.put(cube.getKey(), cubeReport);
+		}
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("stores", storeReports);
+		result.put("cubes", cubeReports);
+		result.put("suggestions", getSuggestions());
+		return result;
+	}
+}
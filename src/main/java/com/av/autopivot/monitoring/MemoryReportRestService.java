@@ -0,0 +1,37 @@
+package com.av.autopivot.monitoring;
+
+import java.util.Map;
+
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST service returning the memory report of the stores and cubes as JSON.
+ * <ul>
+ * <li>GET /autopivot/monitoring/memory the last computed report</li>
+ * <li>GET /autopivot/monitoring/memory?refresh=true the report computed again</li>
+ * </ul>
+ *
+ * @author Florian
+ *
+ */
+@RestController
+@RequestMapping(MemoryReportRestService.URL)
+public class MemoryReportRestService {
+
+	/** Root URL of the service */
+	public static final String URL = "/autopivot/monitoring/memory";
+
+	protected final MemoryReporter reporter;
+
+	public MemoryReportRestService(MemoryReporter reporter) {
+		this.reporter = reporter;
+	}
+
+	@RequestMapping(method = RequestMethod.GET)
+	public Map<String, Object> getReport(@RequestParam(value = "refresh", defaultValue = "false") boolean refresh) {
+		return (refresh ? reporter.refresh() : reporter.getReport()).toMap();
+	}
+}
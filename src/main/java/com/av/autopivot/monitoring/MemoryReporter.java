@@ -0,0 +1,264 @@
+package com.av.autopivot.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.av.autopivot.monitoring.MemoryReport.CUBE_ITEM;
+import com.av.autopivot.monitoring.MemoryReport.STORE_ITEM;
+import com.qfs.monitoring.memory.IMemoryMonitored;
+import com.qfs.monitoring.statistic.IStatisticAttribute;
+import com.qfs.monitoring.statistic.memory.IMemoryStatistic;
+import com.qfs.monitoring.statistic.memory.impl.DictionaryStatistic;
+import com.qfs.monitoring.statistic.memory.impl.IndexStatistic;
+import com.qfs.store.IDatastore;
+import com.quartetfs.biz.pivot.IActivePivotManager;
+import com.quartetfs.biz.pivot.IMultiVersionActivePivot;
+
+/**
+ * Compute the {@link MemoryReport} of the datastore and of the cubes from
+ * their ActivePivot memory statistics, and expose it over JMX under
+ * com.av.autopivot:type=Memory.
+ * <p>
+ * The statistics are trees of components with their on heap and off heap
+ * sizes. The memory of each node is attributed to the store and field of its
+ * closest ancestors naming them, and classified by the type of its closest
+ * dictionary, index or chunk statistic. The cube statistics are classified into
+ * hierarchies, aggregate provider and aggregate cache by the exact name of their
+ * closest classified ancestor, so that the components of a provider stay in the
+ * provider whatever their names. Only the memory of a node not retained by its
+ * children is added, so that nothing is counted twice.
+ * <p>
+ * Computing the statistics walks all the chunks of the datastore, so the
+ * first report is computed in the background after the initial loading,
+ * and on demand afterwards.
+ *
+ * @author Florian
+ *
+ */
+public class MemoryReporter implements MemoryReporterMBean {
+
+	/** Logger */
+	private static final Logger LOGGER = Logger.getLogger(MemoryReporter.class.getName());
+
+	/** Attributes naming the store of a statistic */
+	protected static final String[] STORE_ATTRIBUTES = { "store", "storeName", "store name" };
+
+	/** Attributes naming the field of a statistic */
+	protected static final String[] FIELD_ATTRIBUTES = { "field", "fieldName", "field name", "fields" };
+
+	/** Attributes naming the hierarchy of a statistic */
+	protected static final String[] HIERARCHY_ATTRIBUTES = { "hierarchy", "hierarchyName", "hierarchy name" };
+
+	/** Names of the cube statistics starting a kind of cube memory, in lower case */
+	protected static final Map<String, CUBE_ITEM> CUBE_STATISTICS = new HashMap<>();
+	static {
+		for (String name : new String[] { "hierarchies", "hierarchy", "axis hierarchy", "measure hierarchy" }) {
+			CUBE_STATISTICS.put(name, CUBE_ITEM.HIERARCHIES);
+		}
+		for (String name : new String[] { "provider", "providers", "aggregate provider", "partial provider", "partialprovider" }) {
+			CUBE_STATISTICS.put(name, CUBE_ITEM.AGGREGATE_PROVIDER);
+		}
+		for (String name : new String[] { "aggregatescache", "aggregates cache" }) {
+			CUBE_STATISTICS.put(name, CUBE_ITEM.AGGREGATES_CACHE);
+		}
+	}
+
+	protected final IDatastore datastore;
+
+	protected final IActivePivotManager manager;
+
+	/** Creates an empty report, describing the stores of the datasets */
+	protected final Supplier<MemoryReport> reportFactory;
+
+	/** Last computed report */
+	protected volatile MemoryReport report;
+
+	public MemoryReporter(IDatastore datastore, IActivePivotManager manager, Supplier<MemoryReport> reportFactory) {
+		this.datastore = datastore;
+		this.manager = manager;
+		this.reportFactory = reportFactory;
+	}
+
+	/** @return the last computed report, computed on first use */
+	public MemoryReport getReport() {
+		MemoryReport current = report;
+		return current == null ? refresh() : current;
+	}
+
+	@Override
+	public void computeReport() {
+		refresh();
+	}
+
+	/** @return the report computed from the current memory statistics */
+	public synchronized MemoryReport refresh() {
+		long start = System.nanoTime();
+		MemoryReport result = reportFactory.get();
+		if (datastore instanceof IMemoryMonitored) {
+			visitStore(((IMemoryMonitored) datastore).getMemoryStatistic(), null, null, STORE_ITEM.CHUNKS, result);
+		}
+		for (Map.Entry<String, IMultiVersionActivePivot> pivot : manager.getActivePivots().entrySet()) {
+			if (pivot.getValue() instanceof IMemoryMonitored) {
+				visitCube(((IMemoryMonitored) pivot.getValue()).getMemoryStatistic(), pivot.getKey(), null, CUBE_ITEM.OTHER, result);
+			}
+		}
+		report = result;
+		LOGGER.info("Memory report computed in " + (System.nanoTime() - start) / 1_000_000L + " ms");
+		for (String suggestion : result.getSuggestions()) {
+			LOGGER.info(suggestion);
+		}
+		return result;
+	}
+
+	/** Start a refresh in a background thread, the report is computed on first use until it is done */
+	public void refreshInBackground() {
+		Thread thread = new Thread(() -> {
+			try {
+				refresh();
+			} catch (RuntimeException re) {
+				LOGGER.warning("Cannot compute the memory report: " + re.getMessage());
+			}
+		}, "autopivot-memory-report");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	protected void visitStore(IMemoryStatistic statistic, String store, String field, STORE_ITEM item, MemoryReport result) {
+		store = getAttribute(statistic, STORE_ATTRIBUTES, store);
+		field = getAttribute(statistic, FIELD_ATTRIBUTES, field);
+		item = classifyStore(statistic, item);
+
+		long ownBytes = getOwnBytes(statistic);
+		if (store != null && ownBytes > 0L) {
+			result.addStoreMemory(store, field, item, ownBytes);
+		}
+		for (IMemoryStatistic child : getChildren(statistic)) {
+			visitStore(child, store, field, item, result);
+		}
+	}
+
+	protected void visitCube(IMemoryStatistic statistic, String cube, String hierarchy, CUBE_ITEM item, MemoryReport result) {
+		item = classifyCube(statistic.getName(), item);
+		if (item == CUBE_ITEM.HIERARCHIES) {
+			hierarchy = getAttribute(statistic, HIERARCHY_ATTRIBUTES, hierarchy);
+		}
+
+		long ownBytes = getOwnBytes(statistic);
+		if (ownBytes > 0L) {
+			result.addCubeMemory(cube, item == CUBE_ITEM.HIERARCHIES ? hierarchy : null, item, ownBytes);
+		}
+		for (IMemoryStatistic child : getChildren(statistic)) {
+			visitCube(child, cube, hierarchy, item, result);
+		}
+	}
+
+	/**
+	 * The dictionaries and indexes are classified by the type of their statistic,
+	 * the chunks they hold stay in the dictionary or the index.
+	 *
+	 * @param statistic store statistic
+	 * @param inherited kind of memory of the parent statistic
+	 * @return the kind of memory of the statistic
+	 */
+	protected static STORE_ITEM classifyStore(IMemoryStatistic statistic, STORE_ITEM inherited) {
+		if (statistic instanceof DictionaryStatistic) {
+			return STORE_ITEM.DICTIONARY;
+		} else if (statistic instanceof IndexStatistic) {
+			return STORE_ITEM.INDEX;
+		}
+		return inherited;
+	}
+
+	/**
+	 * A cube statistic is classified by its exact name, unless an ancestor
+	 * is already classified: a component named cache in the aggregate provider
+	 * belongs to the provider.
+	 *
+	 * @param name name of the cube statistic
+	 * @param inherited kind of memory of the parent statistic
+	 * @return the kind of memory of the statistic
+	 */
+	protected static CUBE_ITEM classifyCube(String name, CUBE_ITEM inherited) {
+		if (inherited != CUBE_ITEM.OTHER || name == null) {
+			return inherited;
+		}
+		return CUBE_STATISTICS.getOrDefault(name.toLowerCase(), CUBE_ITEM.OTHER);
+	}
+
+	/** @return on heap bytes of the node and off heap bytes not retained by its children */
+	protected static long getOwnBytes(IMemoryStatistic statistic) {
+		long offHeap = statistic.getRetainedOffHeap();
+		for (IMemoryStatistic child : getChildren(statistic)) {
+			offHeap -= child.getRetainedOffHeap();
+		}
+		return statistic.getShallowOnHeap() + Math.max(0L, offHeap);
+	}
+
+	protected static List<? extends IMemoryStatistic> getChildren(IMemoryStatistic statistic) {
+		List<? extends IMemoryStatistic> children = statistic.getChildren();
+		return children == null ? Collections.emptyList() : children;
+	}
+
+	/** @return the value of the first attribute found, or the inherited value */
+	protected static String getAttribute(IMemoryStatistic statistic, String[] names, String inherited) {
+		Map<String, IStatisticAttribute> attributes = statistic.getAttributes();
+		if (attributes != null) {
+			for (String name : names) {
+				IStatisticAttribute attribute = attributes.get(name);
+				if (attribute != null) {
+					return attribute.asText();
+				}
+			}
+		}
+		return inherited;
+	}
+
+	@Override
+	public Map<String, Long> getStoreBytes() { return getReport().getStoreBytes(); }
+
+	@Override
+	public Map<String, Long> getCubeBytes() { return getReport().getCubeBytes(); }
+
+	@Override
+	public List<String> getSuggestions() { return getReport().getSuggestions(); }
+
+	/** Register the reporter over JMX */
+	public void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = getObjectName();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException jme) {
+			LOGGER.warning("Cannot register the memory report: " + jme.getMessage());
+		}
+	}
+
+	/** Unregister the reporter from JMX */
+	public void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = getObjectName();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException jme) {
+			LOGGER.warning("Cannot unregister the memory report: " + jme.getMessage());
+		}
+	}
+
+	protected static ObjectName getObjectName() throws JMException {
+		return new ObjectName(AggregatesCacheMonitor.JMX_DOMAIN + ":type=Memory");
+	}
+}
@@ -0,0 +1,25 @@
+package com.av.autopivot.monitoring;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX interface of the {@link MemoryReporter}.
+ *
+ * @author Florian
+ *
+ */
+public interface MemoryReporterMBean {
+
+	/** @return on heap and off heap bytes of each store */
+	Map<String, Long> getStoreBytes();
+
+	/** @return on heap and off heap bytes of each cube */
+	Map<String, Long> getCubeBytes();
+
+	/** @return the settings that would reduce the footprint of the expensive fields and cubes */
+	List<String> getSuggestions();
+
+	/** Compute the report again from the current memory statistics */
+	void computeReport();
+}
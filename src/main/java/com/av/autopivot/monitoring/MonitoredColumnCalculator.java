@@ -0,0 +1,47 @@
+package com.av.autopivot.monitoring;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.qfs.msg.IColumnCalculator;
+import com.qfs.msg.csv.ILineReader;
+import com.qfs.msg.csv.translator.impl.AColumnCalculator;
+
+/**
+ * Column calculator recording the time spent in the calculator it wraps
+ * in the {@link IngestionMetrics} of the loaded store.
+ * <p>
+ * A calculator computes a value in a few tens of nanoseconds, as much as
+ * reading the clock twice and updating the counters. Only one value in
+ * {@link #SAMPLE_RATE}, drawn at random, is timed and recorded for the
+ * whole sample, the others are computed without any overhead but the draw.
+ *
+ * @author Florian
+ *
+ */
+public class MonitoredColumnCalculator extends AColumnCalculator<ILineReader> {
+
+	/** Number of computed values for each timed value, a power of two */
+	public static final int SAMPLE_RATE = 64;
+
+	/** Wrapped calculator */
+	protected final IColumnCalculator<ILineReader> calculator;
+
+	protected final IngestionMetrics metrics;
+
+	public MonitoredColumnCalculator(IColumnCalculator<ILineReader> calculator, IngestionMetrics metrics) {
+		super(calculator.getColumnName());
+		this.calculator = calculator;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public Object compute(IColumnCalculationContext<ILineReader> context) {
+		if ((ThreadLocalRandom.current().nextInt() & (SAMPLE_RATE - 1)) != 0) {
+			return calculator.compute(context);
+		}
+		long start = System.nanoTime();
+		Object value = calculator.compute(context);
+		metrics.addCalculatedValue(System.nanoTime() - start, SAMPLE_RATE);
+		return value;
+	}
+}
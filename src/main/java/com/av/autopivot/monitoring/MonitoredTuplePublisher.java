@@ -0,0 +1,41 @@
+package com.av.autopivot.monitoring;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.qfs.source.IStoreMessage;
+import com.qfs.source.ITuplePublisher;
+
+/**
+ * Tuple publisher recording the published tuples and the time to add
+ * them to the store and commit them in the {@link IngestionMetrics}
+ * of the store.
+ *
+ * @author Florian
+ *
+ * @param <I> type of the published messages content
+ */
+public class MonitoredTuplePublisher<I> implements ITuplePublisher<I> {
+
+	/** Wrapped publisher */
+	protected final ITuplePublisher<I> publisher;
+
+	protected final IngestionMetrics metrics;
+
+	public MonitoredTuplePublisher(ITuplePublisher<I> publisher, IngestionMetrics metrics) {
+		this.publisher = publisher;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void publish(IStoreMessage<? extends I, ?> message, List<Object[]> tuples) {
+		long start = System.nanoTime();
+		publisher.publish(message, tuples);
+		metrics.addPublish(tuples, System.nanoTime() - start);
+	}
+
+	@Override
+	public Collection<String> getTargetStores() {
+		return publisher.getTargetStores();
+	}
+}
@@ -0,0 +1,191 @@
+package com.av.autopivot.monitoring;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Profile of a post processor: duration of its computations, leaf locations
+ * evaluated, expansion factor, query cache hits and datastore queries.
+ * The computations slower than a threshold are logged with their location.
+ * <p>
+ * One profile is shared by the instances of a post processor, it is registered
+ * under com.av.autopivot:type=PostProcessor,cube=&lt;cube name&gt;,measure=&lt;measure name&gt;.
+ * The counters are {@link LongAdder}s, incremented concurrently by the query threads.
+ *
+ * @author Florian
+ *
+ */
+public class PostProcessorProfile implements PostProcessorProfileMBean {
+
+	/** Logger */
+	private static final Logger LOGGER = Logger.getLogger(PostProcessorProfile.class.getName());
+
+	/** Profiles by cube and measure */
+	protected static final Map<String, PostProcessorProfile> PROFILES = new ConcurrentHashMap<>();
+
+	protected final String cubeName;
+
+	protected final String measureName;
+
+	protected final String type;
+
+	protected final LatencyHistogram computeLatency = new LatencyHistogram();
+
+	protected final LongAdder leafCount = new LongAdder();
+
+	protected final LongAdder expansionInputs = new LongAdder();
+
+	protected final LongAdder expansionOutputs = new LongAdder();
+
+	protected final LongAdder cacheHits = new LongAdder();
+
+	protected final LongAdder cacheMisses = new LongAdder();
+
+	protected final LongAdder datastoreQueries = new LongAdder();
+
+	protected volatile long slowThresholdNanos = -1L;
+
+	public PostProcessorProfile(String cubeName, String measureName, String type) {
+		this.cubeName = cubeName;
+		this.measureName = measureName;
+		this.type = type;
+	}
+
+	/**
+	 * Get the profile of a post processor, registered over JMX when it is created
+	 *
+	 * @param cubeName cube of the post processor
+	 * @param measureName measure computed by the post processor
+	 * @param type plugin key of the post processor
+	 * @return the profile of the post processor
+	 */
+	public static PostProcessorProfile get(String cubeName, String measureName, String type) {
+		return PROFILES.computeIfAbsent(cubeName + "/" + measureName, key -> register(new PostProcessorProfile(cubeName, measureName, type)));
+	}
+
+	protected static PostProcessorProfile register(PostProcessorProfile profile) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(AggregatesCacheMonitor.JMX_DOMAIN + ":type=PostProcessor,cube=" + ObjectName.quote(profile.cubeName)
+					+ ",measure=" + ObjectName.quote(profile.measureName));
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(profile, name);
+		} catch (JMException jme) {
+			LOGGER.warning("Cannot register the profile of post processor " + profile.measureName + ": " + jme.getMessage());
+		}
+		return profile;
+	}
+
+	/**
+	 * Record a computation, logged when it is slower than the threshold
+	 *
+	 * @param location computed location
+	 * @param nanos duration of the computation
+	 */
+	public void addCompute(Object location, long nanos) {
+		computeLatency.record(nanos);
+		long threshold = slowThresholdNanos;
+		if (threshold >= 0L && nanos > threshold) {
+			LOGGER.info("Slow computation of " + measureName + " in cube " + cubeName + ": "
+					+ TimeUnit.NANOSECONDS.toMillis(nanos) + " ms for location " + location);
+		}
+	}
+
+	/** Record the evaluation of a leaf location */
+	public void addLeaf() { leafCount.increment(); }
+
+	/** Record a location to expand */
+	public void addExpansionInput() { expansionInputs.increment(); }
+
+	/** Record a location produced by an expansion */
+	public void addExpansionOutput() { expansionOutputs.increment(); }
+
+	/** Record a lookup served by the query cache */
+	public void addCacheHit() { cacheHits.increment(); }
+
+	/** Record a lookup missing from the query cache */
+	public void addCacheMiss() { cacheMisses.increment(); }
+
+	/** Record a query run on the datastore */
+	public void addDatastoreQuery() { datastoreQueries.increment(); }
+
+	@Override
+	public String getCubeName() { return cubeName; }
+
+	@Override
+	public String getMeasureName() { return measureName; }
+
+	@Override
+	public String getType() { return type; }
+
+	@Override
+	public long getComputeCount() { return computeLatency.getCount(); }
+
+	@Override
+	public double getComputeMeanMillis() { return computeLatency.getMeanMillis(); }
+
+	@Override
+	public double getComputeP50Millis() { return computeLatency.getPercentileMillis(50d); }
+
+	@Override
+	public double getComputeP99Millis() { return computeLatency.getPercentileMillis(99d); }
+
+	@Override
+	public double getComputeMaxMillis() { return computeLatency.getMaxMillis(); }
+
+	@Override
+	public long getLeafCount() { return leafCount.sum(); }
+
+	@Override
+	public double getLeavesPerCompute() {
+		long computeCount = getComputeCount();
+		return computeCount == 0L ? 0d : (double) getLeafCount() / computeCount;
+	}
+
+	@Override
+	public double getExpansionFactor() {
+		long inputs = expansionInputs.sum();
+		return inputs == 0L ? 1d : (double) expansionOutputs.sum() / inputs;
+	}
+
+	@Override
+	public long getCacheHits() { return cacheHits.sum(); }
+
+	@Override
+	public long getCacheMisses() { return cacheMisses.sum(); }
+
+	@Override
+	public long getDatastoreQueries() { return datastoreQueries.sum(); }
+
+	@Override
+	public long getSlowThresholdMillis() {
+		long threshold = slowThresholdNanos;
+		return threshold < 0L ? -1L : TimeUnit.NANOSECONDS.toMillis(threshold);
+	}
+
+	@Override
+	public void setSlowThresholdMillis(long slowThresholdMillis) {
+		this.slowThresholdNanos = slowThresholdMillis < 0L ? -1L : TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+	}
+
+	@Override
+	public void reset() {
+		computeLatency.reset();
+		leafCount.reset();
+		expansionInputs.reset();
+		expansionOutputs.reset();
+		cacheHits.reset();
+		cacheMisses.reset();
+		datastoreQueries.reset();
+	}
+}
@@ -0,0 +1,61 @@
+package com.av.autopivot.monitoring;
+
+/**
+ * JMX interface of the {@link PostProcessorProfile}.
+ *
+ * @author Florian
+ *
+ */
+public interface PostProcessorProfileMBean {
+
+	/** @return cube of the post processor */
+	String getCubeName();
+
+	/** @return measure computed by the post processor */
+	String getMeasureName();
+
+	/** @return plugin key of the post processor */
+	String getType();
+
+	/** @return number of computations, one per queried location */
+	long getComputeCount();
+
+	/** @return mean duration of a computation */
+	double getComputeMeanMillis();
+
+	/** @return median duration of a computation */
+	double getComputeP50Millis();
+
+	/** @return 99th percentile of the duration of a computation */
+	double getComputeP99Millis();
+
+	/** @return maximum duration of a computation */
+	double getComputeMaxMillis();
+
+	/** @return number of leaf locations evaluated */
+	long getLeafCount();
+
+	/** @return mean number of leaf locations evaluated per computation */
+	double getLeavesPerCompute();
+
+	/** @return mean number of locations produced by the expansion of a location, 1 when there is no expansion */
+	double getExpansionFactor();
+
+	/** @return number of lookups served by the query cache */
+	long getCacheHits();
+
+	/** @return number of lookups missing from the query cache */
+	long getCacheMisses();
+
+	/** @return number of queries run on the datastore */
+	long getDatastoreQueries();
+
+	/** @return duration above which the computations are logged, negative when disabled */
+	long getSlowThresholdMillis();
+
+	/** @param slowThresholdMillis duration above which the computations are logged, negative to disable */
+	void setSlowThresholdMillis(long slowThresholdMillis);
+
+	/** Reset the counters */
+	void reset();
+}
@@ -0,0 +1,202 @@
+package com.av.autopivot.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Timeline of the startup of the application: initialization of the Spring
+ * beans, discovery of the files, generation of the stores and cubes and initial
+ * loading of the data, with the thread running each step.
+ * <p>
+ * The steps are recorded from anywhere in the startup code with
+ * <pre>
+ * try (Span span = StartupTracer.begin("discover", fileName)) {
+ *     ...
+ * }
+ * </pre>
+ * and the timeline is written at the end of the initial loading in the Chrome
+ * trace event format, that can be opened in chrome://tracing or Perfetto. The
+ * timestamps are the microseconds elapsed since the start of the JVM. The
+ * recording stops once the timeline is written, so the later reloads of the
+ * watched files do not accumulate steps.
+ *
+ * @author Florian
+ *
+ */
+public class StartupTracer {
+
+	/** Process id of the events, a single process is traced */
+	protected static final int PID = 1;
+
+	/** {@link System#nanoTime()} at the start of the JVM */
+	protected static final long ORIGIN_NANOS = System.nanoTime() - ManagementFactory.getRuntimeMXBean().getUptime() * 1_000_000L;
+
+	/** Recorded steps */
+	protected static final Collection<Event> EVENTS = new ConcurrentLinkedQueue<>();
+
+	protected static volatile boolean recording = true;
+
+	private StartupTracer() {}
+
+	/**
+	 * Begin a step of the startup, ended when the returned span is closed
+	 *
+	 * @param category kind of step, bean, discover, generate, load...
+	 * @param name name of the step
+	 * @return the span of the step
+	 */
+	public static Span begin(String category, String name) {
+		return new Span(category, name);
+	}
+
+	/** @return whether the steps are still recorded */
+	public static boolean isRecording() { return recording; }
+
+	/** @return the recorded steps, in the order they ended */
+	public static List<Event> getEvents() {
+		return new ArrayList<>(EVENTS);
+	}
+
+	/** Stop the recording and drop the recorded steps, when the timeline is not written */
+	public static void stop() {
+		recording = false;
+		EVENTS.clear();
+	}
+
+	/**
+	 * Write the timeline in the Chrome trace event format and stop the recording
+	 *
+	 * @param file written file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Path file) throws IOException {
+		recording = false;
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			writer.write(toJson(getEvents()));
+		}
+		EVENTS.clear();
+	}
+
+	/**
+	 * @param events startup steps
+	 * @return the steps as a Chrome trace, with the names of their threads
+	 */
+	public static String toJson(List<Event> events) {
+		Map<Long, String> threads = new LinkedHashMap<>();
+		StringBuilder json = new StringBuilder("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+		String separator = "\n";
+		for (Event event : events) {
+			threads.putIfAbsent(event.threadId, event.threadName);
+			json.append(separator)
+				.append("{\"name\":").append(quote(event.name))
+				.append(",\"cat\":").append(quote(event.category))
+				.append(",\"ph\":\"X\",\"ts\":").append(event.startMicros)
+				.append(",\"dur\":").append(event.durationMicros)
+				.append(",\"pid\":").append(PID)
+				.append(",\"tid\":").append(event.threadId)
+				.append('}');
+			separator = ",\n";
+		}
+		for (Map.Entry<Long, String> thread : threads.entrySet()) {
+			json.append(separator)
+				.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(PID)
+				.append(",\"tid\":").append(thread.getKey())
+				.append(",\"args\":{\"name\":").append(quote(thread.getValue())).append("}}");
+			separator = ",\n";
+		}
+		return json.append("\n]}\n").toString();
+	}
+
+	protected static String quote(String value) {
+		StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+		for (int c = 0; c < value.length(); c++) {
+			char ch = value.charAt(c);
+			if (ch == '"' || ch == '\\') {
+				quoted.append('\\').append(ch);
+			} else if (ch < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) ch));
+			} else {
+				quoted.append(ch);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	/** Step of the startup, recorded when it is closed */
+	public static class Span implements AutoCloseable {
+
+		protected final String category;
+
+		protected final String name;
+
+		protected final long startNanos = System.nanoTime();
+
+		protected Span(String category, String name) {
+			this.category = category;
+			this.name = name;
+		}
+
+		@Override
+		public void close() {
+			if (recording) {
+				Thread thread = Thread.currentThread();
+				EVENTS.add(new Event(category, name,
+									 (startNanos - ORIGIN_NANOS) / 1000L,
+									 (System.nanoTime() - startNanos) / 1000L,
+									 thread.getId(),
+									 thread.getName()));
+			}
+		}
+	}
+
+	/** Recorded step of the startup */
+	public static class Event {
+
+		protected final String category;
+
+		protected final String name;
+
+		protected final long startMicros;
+
+		protected final long durationMicros;
+
+		protected final long threadId;
+
+		protected final String threadName;
+
+		protected Event(String category, String name, long startMicros, long durationMicros, long threadId, String threadName) {
+			this.category = category;
+			this.name = name;
+			this.startMicros = startMicros;
+			this.durationMicros = durationMicros;
+			this.threadId = threadId;
+			this.threadName = threadName;
+		}
+
+		public String getCategory() { return category; }
+
+		public String getName() { return name; }
+
+		public long getStartMicros() { return startMicros; }
+
+		public long getDurationMicros() { return durationMicros; }
+
+		public long getThreadId() { return threadId; }
+
+		public String getThreadName() { return threadName; }
+	}
+}
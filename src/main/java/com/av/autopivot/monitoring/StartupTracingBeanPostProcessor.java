@@ -0,0 +1,39 @@
+package com.av.autopivot.monitoring;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+
+import com.av.autopivot.monitoring.StartupTracer.Span;
+
+/**
+ * Record the creation of each Spring bean in the {@link StartupTracer}, from
+ * its instantiation to the end of its initialization. The beans created while
+ * creating another bean, its dependencies, are nested in its span.
+ *
+ * @author Florian
+ *
+ */
+public class StartupTracingBeanPostProcessor implements InstantiationAwareBeanPostProcessor {
+
+	/** Spans of the beans being created, by bean name */
+	protected final Map<String, Span> spans = new ConcurrentHashMap<>();
+
+	@Override
+	public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) {
+		if (StartupTracer.isRecording()) {
+			spans.put(beanName, StartupTracer.begin("bean", beanName));
+		}
+		return null;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		Span span = spans.remove(beanName);
+		if (span != null) {
+			span.close();
+		}
+		return bean;
+	}
+}
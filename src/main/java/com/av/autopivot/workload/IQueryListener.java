@@ -0,0 +1,20 @@
+package com.av.autopivot.workload;
+
+/**
+ * Notified of each MDX query before it is executed, by the
+ * {@link QueryInterceptorBeanPostProcessor} on the server and by the
+ * embedded AutoPivot. The listeners are the Spring beans of this type.
+ * <p>
+ * The listeners run in the thread of the query, before it is executed.
+ *
+ * @author Florian
+ *
+ */
+public interface IQueryListener {
+
+	/**
+	 * @param cubeName name of the queried cube
+	 * @param mdx MDX statement
+	 */
+	void beforeQuery(String cubeName, String mdx);
+}
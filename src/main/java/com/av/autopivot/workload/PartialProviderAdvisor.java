@@ -0,0 +1,191 @@
+package com.av.autopivot.workload;
+
+import static com.av.autopivot.AutoPivotGenerator.PARTIAL_PROVIDER_LEVELS_PROPERTY;
+import static com.av.autopivot.AutoPivotGenerator.PARTIAL_PROVIDER_MEASURES_PROPERTY;
+import static com.av.autopivot.AutoPivotGenerator.PARTIAL_PROVIDER_TYPE_PROPERTY;
+import static com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.DATA_INFO_PARTIAL_PROVIDER;
+import static com.av.autopivot.config.properties.AutoPivotProperties.DataInfo.DATA_INFO_ROOT_KEY;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.av.autopivot.AutoPivotGenerator;
+import com.av.autopivot.workload.QueryWorkloadLog.QueryShape;
+
+/**
+ * Suggest partial aggregate providers from a {@link QueryWorkloadLog}.
+ * <p>
+ * Queries are grouped by level combination and the combinations are visited
+ * from the most to the least queried. A combination is served by an already
+ * suggested provider when its levels are a subset of the provider levels,
+ * otherwise a new provider is suggested, until the maximum number of providers
+ * is reached. The number of providers and of levels per provider bound the
+ * memory spent on pre-aggregation, the remaining queries stay just-in-time.
+ * <p>
+ * The suggestions are printed as partialProvider properties, to be copied in
+ * autopivot.properties and applied by the {@link AutoPivotGenerator} on next start.
+ * When the workload log is configured, the suggestions are also applied at
+ * startup to the datasets without partialProvider properties.
+ *
+ * @author Florian
+ *
+ */
+public class PartialProviderAdvisor {
+
+	/** Default maximum number of suggested providers */
+	public static final int DEFAULT_MAX_PROVIDERS = 3;
+
+	/** Default maximum number of levels of a provider */
+	public static final int DEFAULT_MAX_LEVELS = 4;
+
+	/** Prefix of the names of the suggested providers */
+	public static final String WORKLOAD_PROVIDER_PREFIX = "workload";
+
+	/**
+	 * Suggest partial providers for a workload.
+	 *
+	 * @param workload number of hits by query shape
+	 * @param maxProviders maximum number of providers
+	 * @param maxLevels maximum number of levels of a provider
+	 * @return suggestions, the most queried first
+	 */
+	public static List<Suggestion> advise(Map<QueryShape, Integer> workload, int maxProviders, int maxLevels) {
+
+		// Group the queries by level combination
+		Map<Set<String>, Suggestion> combinations = new LinkedHashMap<>();
+		for (Map.Entry<QueryShape, Integer> entry : workload.entrySet()) {
+			Set<String> levels = entry.getKey().getLevels();
+			if (levels.isEmpty() || levels.size() > maxLevels) {
+				continue;
+			}
+			combinations.computeIfAbsent(levels, Suggestion::new).add(entry.getKey().getMeasures(), entry.getValue());
+		}
+
+		List<Suggestion> candidates = new ArrayList<>(combinations.values());
+		candidates.sort(Comparator.comparingInt(Suggestion::getHits).reversed());
+
+		List<Suggestion> result = new ArrayList<>();
+		for (Suggestion candidate : candidates) {
+			Suggestion provider = null;
+			for (Suggestion suggestion : result) {
+				if (suggestion.levels.containsAll(candidate.levels)) {
+					provider = suggestion;
+					break;
+				}
+			}
+			if (provider != null) {
+				provider.add(candidate.measures, candidate.hits);
+			} else if (result.size() < maxProviders) {
+				result.add(candidate);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Create the partial provider properties of the suggestions for a dataset,
+	 * the levels unknown to the dataset are ignored.
+	 *
+	 * @param workload number of hits by query shape of the dataset cube
+	 * @param knownLevels levels of the dataset
+	 * @param maxProviders maximum number of providers
+	 * @param type partial provider type, LEAF or BITMAP
+	 * @return the properties of each partial provider, by name
+	 */
+	public static Map<String, Properties> createPartialProviders(Map<QueryShape, Integer> workload, Set<String> knownLevels, int maxProviders, String type) {
+		Map<QueryShape, Integer> knownWorkload = new LinkedHashMap<>();
+		for (Map.Entry<QueryShape, Integer> entry : workload.entrySet()) {
+			Set<String> levels = new TreeSet<>(entry.getKey().getLevels());
+			levels.retainAll(knownLevels);
+			knownWorkload.merge(new QueryShape(levels, entry.getKey().getMeasures()), entry.getValue(), Integer::sum);
+		}
+
+		Map<String, Properties> partialProviders = new LinkedHashMap<>();
+		List<Suggestion> suggestions = advise(knownWorkload, maxProviders, DEFAULT_MAX_LEVELS);
+		for (int s = 0; s < suggestions.size(); s++) {
+			Suggestion suggestion = suggestions.get(s);
+			Properties props = new Properties();
+			props.setProperty(PARTIAL_PROVIDER_TYPE_PROPERTY, type);
+			props.setProperty(PARTIAL_PROVIDER_LEVELS_PROPERTY, String.join(",", suggestion.levels));
+			props.setProperty(PARTIAL_PROVIDER_MEASURES_PROPERTY, String.join(",", suggestion.measures));
+			partialProviders.put(WORKLOAD_PROVIDER_PREFIX + s, props);
+		}
+		return partialProviders;
+	}
+
+	/**
+	 * Print the partial provider properties of a dataset.
+	 *
+	 * @param dataset name of the dataset
+	 * @param suggestions suggested providers
+	 * @param type partial provider type, LEAF or BITMAP
+	 * @return properties text
+	 */
+	public static String toProperties(String dataset, List<Suggestion> suggestions, String type) {
+		StringBuilder sb = new StringBuilder();
+		for (int s = 0; s < suggestions.size(); s++) {
+			Suggestion suggestion = suggestions.get(s);
+			String prefix = DATA_INFO_ROOT_KEY + dataset + "." + DATA_INFO_PARTIAL_PROVIDER + "." + WORKLOAD_PROVIDER_PREFIX + s + ".";
+			sb.append("# ").append(suggestion.hits).append(" queries\n");
+			sb.append(prefix).append(PARTIAL_PROVIDER_TYPE_PROPERTY).append('=').append(type).append('\n');
+			sb.append(prefix).append(PARTIAL_PROVIDER_LEVELS_PROPERTY).append('=').append(String.join(",", suggestion.levels)).append('\n');
+			sb.append(prefix).append(PARTIAL_PROVIDER_MEASURES_PROPERTY).append('=').append(String.join(",", suggestion.measures)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Suggested partial provider.
+	 */
+	public static class Suggestion {
+
+		protected final Set<String> levels;
+
+		protected final Set<String> measures = new TreeSet<>();
+
+		protected int hits;
+
+		public Suggestion(Set<String> levels) {
+			this.levels = levels;
+		}
+
+		protected void add(Set<String> queryMeasures, int queryHits) {
+			measures.addAll(queryMeasures);
+			hits += queryHits;
+		}
+
+		public Set<String> getLevels() { return levels; }
+
+		public Set<String> getMeasures() { return measures; }
+
+		public int getHits() { return hits; }
+
+		@Override
+		public String toString() {
+			return "Suggestion [levels=" + levels + ", measures=" + measures + ", hits=" + hits + "]";
+		}
+	}
+
+	/**
+	 * Usage: PartialProviderAdvisor workloadLog dataset [maxProviders] [LEAF|BITMAP]
+	 */
+	public static void main(String[] params) {
+		if (params.length < 2) {
+			System.err.println("Usage: PartialProviderAdvisor workloadLog dataset [maxProviders] [LEAF|BITMAP]");
+			return ;
+		}
+		int maxProviders = params.length > 2 ? Integer.parseInt(params[2]) : DEFAULT_MAX_PROVIDERS;
+		String type = params.length > 3 ? params[3] : AutoPivotGenerator.DEFAULT_PARTIAL_PROVIDER_TYPE;
+
+		Map<QueryShape, Integer> workload = QueryWorkloadLog.load(Paths.get(params[0]), params[1]);
+		List<Suggestion> suggestions = advise(workload, maxProviders, DEFAULT_MAX_LEVELS);
+		System.out.print(toProperties(params[1], suggestions, type));
+	}
+}
@@ -0,0 +1,136 @@
+package com.av.autopivot.workload;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.util.ClassUtils;
+
+import com.quartetfs.biz.pivot.query.impl.MDXQuery;
+import com.quartetfs.biz.pivot.webservices.IQueriesService;
+
+/**
+ * Wrap the ActivePivot queries services, the entry point of the MDX queries
+ * of the user interface and the REST and SOAP clients, so that the
+ * {@link IQueryListener} beans are notified of each MDX query before it is executed.
+ * <p>
+ * The queried cube is read from the FROM clause of the statement. The listeners
+ * are looked up on the first query, once the context is refreshed.
+ * <p>
+ * Known limitations:
+ * <ul>
+ * <li>The services are wrapped in JDK proxies implementing their interfaces,
+ * a bean injected by the concrete class of a queries service no longer
+ * finds it, it must be injected by interface.</li>
+ * <li>Only the {@link MDXQuery} arguments of the queries services are seen.
+ * The continuous queries registered through the streaming service and the
+ * websocket endpoints, and the GetAggregates queries, are not notified: their
+ * datasets are not recorded in the workload log nor loaded on demand by them.
+ * Intercepting them would need a hook in the query executor of the cubes.</li>
+ * </ul>
+ *
+ * @author Florian
+ *
+ */
+public class QueryInterceptorBeanPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+	/** Logger */
+	private static final Logger LOGGER = Logger.getLogger(QueryInterceptorBeanPostProcessor.class.getName());
+
+	/** Match the cube of the FROM clause of a MDX statement */
+	private static final Pattern MDX_CUBE = Pattern.compile("\\bFROM\\s*\\[([^\\]]+)\\]", Pattern.CASE_INSENSITIVE);
+
+	/** Bean factory of the listeners */
+	protected ListableBeanFactory beanFactory;
+
+	/** Listeners, looked up on the first query */
+	protected volatile List<IQueryListener> listeners;
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+		this.beanFactory = (ListableBeanFactory) beanFactory;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (bean instanceof IQueriesService) {
+			LOGGER.info("Notifying the query listeners of the queries of " + beanName);
+			return Proxy.newProxyInstance(bean.getClass().getClassLoader(),
+										  ClassUtils.getAllInterfaces(bean),
+										  new QueryInterceptor(bean));
+		}
+		return bean;
+	}
+
+	/** @return the query listeners */
+	protected List<IQueryListener> getListeners() {
+		if (listeners == null) {
+			listeners = new ArrayList<>(beanFactory.getBeansOfType(IQueryListener.class).values());
+		}
+		return listeners;
+	}
+
+	/**
+	 * Notify the listeners of a MDX query.
+	 *
+	 * @param listeners query listeners
+	 * @param cubeName queried cube
+	 * @param mdx MDX statement
+	 */
+	public static void beforeQuery(Iterable<IQueryListener> listeners, String cubeName, String mdx) {
+		for (IQueryListener listener : listeners) {
+			listener.beforeQuery(cubeName, mdx);
+		}
+	}
+
+	/**
+	 * @param mdx MDX statement
+	 * @return the cube of its FROM clause, null if there is none
+	 */
+	public static String getCubeName(String mdx) {
+		Matcher matcher = MDX_CUBE.matcher(mdx);
+		return matcher.find() ? matcher.group(1) : null;
+	}
+
+	/** Notify the listeners of the MDX queries passed to a service */
+	protected class QueryInterceptor implements InvocationHandler {
+
+		/** Wrapped service */
+		protected final Object service;
+
+		protected QueryInterceptor(Object service) {
+			this.service = service;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (args != null) {
+				for (Object arg : args) {
+					if (arg instanceof MDXQuery) {
+						String mdx = ((MDXQuery) arg).getContent();
+						String cubeName = getCubeName(mdx);
+						if (cubeName != null) {
+							beforeQuery(getListeners(), cubeName, mdx);
+						}
+					}
+				}
+			}
+			try {
+				return method.invoke(service, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package com.av.autopivot.workload;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.quartetfs.fwk.QuartetRuntimeException;
+
+/**
+ * Log of the level combinations and measures hit by the queries of the cubes,
+ * persisted to disk so that it survives restarts.
+ * <p>
+ * Each query is appended as one tab separated line: cube name, comma separated
+ * levels and comma separated measures. The lines are queued without locking
+ * and written every {@link #FLUSH_PERIOD} seconds and on close, so that the
+ * queries do not wait for the disk. Levels are written as in the partial
+ * provider properties, the hierarchy name for the single level hierarchies
+ * generated by AutoPivot, or hierarchy:level.
+ * The {@link PartialProviderAdvisor} reads the log back to suggest
+ * partial aggregate providers on the hottest level combinations.
+ * <p>
+ * As a {@link IQueryListener} the log records the MDX queries of the cubes
+ * when the autopivot.workload.log property sets its path, it records nothing
+ * without a path.
+ *
+ * @author Florian
+ *
+ */
+public class QueryWorkloadLog implements IQueryListener, Closeable {
+
+	/** Logger */
+	private static final Logger LOGGER = Logger.getLogger(QueryWorkloadLog.class.getName());
+
+	/** Separator of the columns of a log line */
+	public static final String COLUMN_SEPARATOR = "\t";
+
+	/** Separator of the levels and measures of a log line */
+	public static final String LIST_SEPARATOR = ",";
+
+	/** Dimension of the measures in MDX */
+	private static final String MEASURES_DIMENSION = "Measures";
+
+	/** Match the paths such as [Measures].[Measure], [Dimension].[Hierarchy].[Level] or [Dimension].[Hierarchy].[AllMember].[Member] in a MDX statement */
+	private static final Pattern MDX_PATH = Pattern.compile("\\[[^\\]]+\\](?:\\s*\\.\\s*&?\\[[^\\]]+\\])*");
+
+	/** Match the names of a path */
+	private static final Pattern MDX_NAME = Pattern.compile("\\[([^\\]]+)\\]");
+
+	/** Delay between two writes of the recorded queries, in seconds */
+	public static final long FLUSH_PERIOD = 5L;
+
+	/** Path of the log, null when no query is recorded */
+	protected final Path path;
+
+	/** Lines recorded and not written yet */
+	protected final Queue<String> pendingLines = new ConcurrentLinkedQueue<>();
+
+	/** Writes the recorded lines, null when no query is recorded */
+	protected final ScheduledExecutorService flusher;
+
+	/** Writer appending to the log, opened lazily */
+	protected BufferedWriter writer;
+
+	public QueryWorkloadLog(Path path) {
+		this.path = path;
+		if (path == null) {
+			this.flusher = null;
+		} else {
+			this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "autopivot-workload-log");
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(this::flush, FLUSH_PERIOD, FLUSH_PERIOD, TimeUnit.SECONDS);
+		}
+	}
+
+	public Path getPath() { return path; }
+
+	@Override
+	public void beforeQuery(String cubeName, String mdx) {
+		if (path != null) {
+			recordMdx(cubeName, mdx);
+		}
+	}
+
+	/**
+	 * Record one query, it is written on the next flush.
+	 *
+	 * @param cube name of the queried cube
+	 * @param levels levels expressed by the query
+	 * @param measures measures of the query
+	 */
+	public void record(String cube, Collection<String> levels, Collection<String> measures) {
+		pendingLines.add(cube + COLUMN_SEPARATOR + String.join(LIST_SEPARATOR, new TreeSet<>(levels))
+				+ COLUMN_SEPARATOR + String.join(LIST_SEPARATOR, new TreeSet<>(measures)));
+	}
+
+	/**
+	 * Record a MDX query. The levels are approximated by the hierarchies the
+	 * axes of the statement refer to, which is exact for the single level
+	 * hierarchies generated by AutoPivot. The slicer of the WHERE clause, the
+	 * sub-selects and the members and sets of the WITH clause do not split
+	 * the result by level and are not recorded as levels, the measures of the
+	 * axes and of the slicer are recorded. Only the dimension and hierarchy of
+	 * a path are read, the levels and members after them are skipped.
+	 *
+	 * @param cube name of the queried cube
+	 * @param mdx MDX statement
+	 */
+	public void recordMdx(String cube, String mdx) {
+		Set<String> levels = new TreeSet<>();
+		Set<String> measures = new TreeSet<>();
+		int select = indexOfClause(mdx, "SELECT", 0);
+		int from = select < 0 ? -1 : indexOfClause(mdx, "FROM", select);
+		if (from >= 0) {
+			readPaths(mdx.substring(select, from), levels, measures);
+			int where = indexOfClause(mdx, "WHERE", from);
+			if (where >= 0) {
+				readPaths(mdx.substring(where), new TreeSet<>(), measures);
+			}
+		}
+		record(cube, levels, measures);
+	}
+
+	/**
+	 * Read the hierarchies and the measures of the paths of a MDX expression
+	 *
+	 * @param expression MDX expression
+	 * @param levels hierarchies of the paths
+	 * @param measures measures of the paths
+	 */
+	protected static void readPaths(String expression, Set<String> levels, Set<String> measures) {
+		Matcher path = MDX_PATH.matcher(expression);
+		while (path.find()) {
+			Matcher name = MDX_NAME.matcher(path.group());
+			if (name.find() == false) {
+				continue;
+			}
+			String dimension = name.group(1);
+			if (name.find() == false) {
+				continue; // [Cube], a named set or a single name
+			}
+			if (MEASURES_DIMENSION.equals(dimension)) {
+				measures.add(name.group(1));
+			} else {
+				levels.add(name.group(1));
+			}
+		}
+	}
+
+	/**
+	 * Find a keyword of a MDX statement outside of the names in brackets, the
+	 * strings and the parentheses
+	 *
+	 * @param mdx MDX statement
+	 * @param keyword keyword, in upper case
+	 * @param start index to search from, outside of any parentheses
+	 * @return index of the keyword, -1 if it is not found
+	 */
+	protected static int indexOfClause(String mdx, String keyword, int start) {
+		int depth = 0;
+		for (int i = start; i < mdx.length(); i++) {
+			char c = mdx.charAt(i);
+			if (c == '[') {
+				int end = mdx.indexOf(']', i);
+				if (end < 0) {
+					return -1;
+				}
+				i = end;
+			} else if (c == '"' || c == '\'') {
+				int end = mdx.indexOf(c, i + 1);
+				if (end < 0) {
+					return -1;
+				}
+				i = end;
+			} else if (c == '(' || c == '{') {
+				depth++;
+			} else if (c == ')' || c == '}') {
+				depth--;
+			} else if (depth == 0
+					&& mdx.regionMatches(true, i, keyword, 0, keyword.length())
+					&& (i == 0 || Character.isLetterOrDigit(mdx.charAt(i - 1)) == false)
+					&& (i + keyword.length() == mdx.length() || Character.isLetterOrDigit(mdx.charAt(i + keyword.length())) == false)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Write the recorded queries to the log */
+	public synchronized void flush() {
+		if (path == null) {
+			pendingLines.clear();
+			return;
+		} else if (pendingLines.isEmpty()) {
+			return;
+		}
+		try {
+			if (writer == null) {
+				writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+			String line;
+			while ((line = pendingLines.poll()) != null) {
+				writer.write(line);
+				writer.newLine();
+			}
+			writer.flush();
+		} catch (IOException ioe) {
+			LOGGER.warning("Cannot record queries in workload log " + path + ": " + ioe.getMessage());
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (flusher != null) {
+			flusher.shutdownNow();
+		}
+		flush();
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+	/**
+	 * Read the log and count the hits of each query shape of a cube.
+	 *
+	 * @param path path of the log
+	 * @param cube name of the cube
+	 * @return number of hits by query shape, in order of first appearance
+	 */
+	public static Map<QueryShape, Integer> load(Path path, String cube) {
+		return load(path).getOrDefault(cube, Collections.emptyMap());
+	}
+
+	/**
+	 * Read the log and count the hits of each query shape of each cube.
+	 *
+	 * @param path path of the log
+	 * @return number of hits by query shape in order of first appearance, by cube
+	 */
+	public static Map<String, Map<QueryShape, Integer>> load(Path path) {
+		Map<String, Map<QueryShape, Integer>> result = new LinkedHashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] columns = line.split(COLUMN_SEPARATOR, -1);
+				if (columns.length != 3) {
+					continue;
+				}
+				result.computeIfAbsent(columns[0], cube -> new LinkedHashMap<>())
+					  .merge(new QueryShape(split(columns[1]), split(columns[2])), 1, Integer::sum);
+			}
+		} catch (IOException ioe) {
+			throw new QuartetRuntimeException("Cannot read workload log " + path, ioe);
+		}
+		return result;
+	}
+
+	private static Set<String> split(String list) {
+		if (list.isEmpty()) {
+			return Collections.emptySet();
+		}
+		Set<String> result = new TreeSet<>();
+		for (String token : list.split(LIST_SEPARATOR)) {
+			result.add(token.trim());
+		}
+		return result;
+	}
+
+	/**
+	 * Levels and measures of a query.
+	 */
+	public static class QueryShape {
+
+		protected final Set<String> levels;
+
+		protected final Set<String> measures;
+
+		public QueryShape(Set<String> levels, Set<String> measures) {
+			this.levels = levels;
+			this.measures = measures;
+		}
+
+		public Set<String> getLevels() { return levels; }
+
+		public Set<String> getMeasures() { return measures; }
+
+		@Override
+		public int hashCode() {
+			return 31 * levels.hashCode() + measures.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof QueryShape)) {
+				return false;
+			}
+			QueryShape other = (QueryShape) obj;
+			return levels.equals(other.levels) && measures.equals(other.measures);
+		}
+
+		@Override
+		public String toString() {
+			return "QueryShape [levels=" + levels + ", measures=" + measures + "]";
+		}
+	}
+}
@@ -18,7 +18,11 @@
  */
 package com.av.csv;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+
+import com.av.csv.discover.ColumnStatistics;
 
 /**
  * 
@@ -38,14 +42,31 @@ public class CSVFormat {
 	/** Column types */
 	protected final List<String> columnTypes;
 	
+	/** Column statistics computed on the discovery sample, empty if unknown */
+	protected final List<ColumnStatistics> columnStatistics;
+	
+	/** Parent column of the columns that functionally depend on another one */
+	protected final Map<String, String> columnParents;
+	
 	/** File name */
 	protected final String fileName;	
 	
 	public CSVFormat(String fileName, String separator, List<String> columnNames, List<String> columnTypes) {
+		this(fileName, separator, columnNames, columnTypes, Collections.emptyList(), Collections.emptyMap());
+	}
+	
+	public CSVFormat(String fileName,
+					 String separator,
+					 List<String> columnNames,
+					 List<String> columnTypes,
+					 List<ColumnStatistics> columnStatistics,
+					 Map<String, String> columnParents) {
 		this.fileName = fileName;
 		this.separator = separator;
 		this.columnNames = columnNames;
 		this.columnTypes = columnTypes;
+		this.columnStatistics = columnStatistics;
+		this.columnParents = columnParents;
 	}
 	
 	/** Get the only the file name without extension */
@@ -72,5 +93,15 @@ public class CSVFormat {
 	
 	public String getColumnType(int columnIndex) {
 		return columnTypes.get(columnIndex);
-	}	
+	}
+	
+	public List<ColumnStatistics> getColumnStatistics() { return columnStatistics; }
+	
+	/** @return statistics of a column, null if unknown */
+	public ColumnStatistics getColumnStatistics(int columnIndex) {
+		return columnIndex < columnStatistics.size() ? columnStatistics.get(columnIndex) : null;
+	}
+	
+	/** @return parent column by child column name, for the columns detected as functionally dependent */
+	public Map<String, String> getColumnParents() { return columnParents; }
 }
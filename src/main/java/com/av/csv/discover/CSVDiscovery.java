@@ -32,6 +32,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.IntSummaryStatistics;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -158,14 +159,21 @@ public class CSVDiscovery {
 			List<String> content = lines.subList(1, lines.size());
 			List<List<String>> columns = toColumns(content, separator);
 			List<String> types = new ArrayList<>(columns.size());
+			List<ColumnStatistics> statistics = new ArrayList<>(columns.size());
 			for(List<String> column : columns) {
 				String type = detectType(column);
 				types.add(type);
+				statistics.add(ColumnStatistics.compute(column));
 			}
 
 			LOG.info("Detected types: " + types);
 			
-			return new CSVFormat(fileName, separator, headers, types);
+			Map<String, String> columnParents = FunctionalDependencies.detect(headers, types, columns);
+			if (columnParents.isEmpty() == false) {
+				LOG.info("Detected column dependencies (child=parent): " + columnParents);
+			}
+			
+			return new CSVFormat(fileName, separator, headers, types, statistics, columnParents);
 		}
 	}
 
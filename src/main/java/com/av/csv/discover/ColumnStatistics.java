@@ -0,0 +1,156 @@
+package com.av.csv.discover;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ *
+ * Statistics of a CSV column computed on the discovery sample:
+ * cardinality, uniqueness, text length, numerical range and precision.
+ * The distinct values are kept, the discovery sample being small.
+ *
+ * @author ActiveViam
+ *
+ */
+public class ColumnStatistics {
+
+	/** Number of sampled values */
+	protected final int sampleSize;
+
+	/** Number of empty values */
+	protected final int emptyCount;
+
+	/** Number of distinct non empty values */
+	protected final int distinctCount;
+
+	/** Average length of the non empty values */
+	protected final double averageLength;
+
+	/** Maximum length of the values */
+	protected final int maxLength;
+
+	/** Range of the numerical values, NaN if the column is not numerical */
+	protected final double min;
+	protected final double max;
+
+	/** Maximum number of significant digits and of fraction digits of the numerical values */
+	protected final int maxPrecision;
+	protected final int maxScale;
+
+	/** Distinct non empty values of the sample */
+	protected final Set<String> distinctValues;
+
+	public ColumnStatistics(Set<String> distinctValues, int sampleSize, int emptyCount, double averageLength, int maxLength, double min, double max) {
+		this(distinctValues, sampleSize, emptyCount, averageLength, maxLength, min, max, 0, 0);
+	}
+
+	public ColumnStatistics(Set<String> distinctValues, int sampleSize, int emptyCount, double averageLength, int maxLength,
+			double min, double max, int maxPrecision, int maxScale) {
+		this.distinctValues = distinctValues;
+		this.sampleSize = sampleSize;
+		this.emptyCount = emptyCount;
+		this.distinctCount = distinctValues.size();
+		this.averageLength = averageLength;
+		this.maxLength = maxLength;
+		this.min = min;
+		this.max = max;
+		this.maxPrecision = maxPrecision;
+		this.maxScale = maxScale;
+	}
+
+	/**
+	 * Compute the statistics of a sampled column
+	 *
+	 * @param values text values of the column
+	 * @return column statistics
+	 */
+	public static ColumnStatistics compute(List<String> values) {
+		Set<String> distinct = new HashSet<>();
+		int emptyCount = 0;
+		long totalLength = 0L;
+		int maxLength = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		boolean numerical = true;
+		int maxPrecision = 0;
+		int maxScale = 0;
+
+		for (String value : values) {
+			if (value == null || value.isEmpty()) {
+				emptyCount++;
+				continue;
+			}
+			distinct.add(value);
+			totalLength += value.length();
+			maxLength = Math.max(maxLength, value.length());
+			if (numerical) {
+				try {
+					double number = Double.parseDouble(value);
+					min = Math.min(min, number);
+					max = Math.max(max, number);
+					BigDecimal decimal = new BigDecimal(value.trim()).stripTrailingZeros();
+					maxPrecision = Math.max(maxPrecision, decimal.precision());
+					maxScale = Math.max(maxScale, decimal.scale());
+				} catch (NumberFormatException nfe) {
+					numerical = false;
+				}
+			}
+		}
+
+		int nonEmpty = values.size() - emptyCount;
+		if (!numerical || nonEmpty == 0) {
+			min = Double.NaN;
+			max = Double.NaN;
+			maxPrecision = 0;
+			maxScale = 0;
+		}
+		return new ColumnStatistics(distinct, values.size(), emptyCount,
+				nonEmpty == 0 ? 0d : (double) totalLength / nonEmpty, maxLength, min, max, maxPrecision, maxScale);
+	}
+
+	public int getSampleSize() { return sampleSize; }
+
+	public int getEmptyCount() { return emptyCount; }
+
+	public int getDistinctCount() { return distinctCount; }
+
+	public Set<String> getDistinctValues() { return distinctValues; }
+
+	/** @return true if no value appears twice in the sample */
+	public boolean isUnique() { return distinctCount == sampleSize - emptyCount; }
+
+	public double getAverageLength() { return averageLength; }
+
+	public int getMaxLength() { return maxLength; }
+
+	public double getMin() { return min; }
+
+	public double getMax() { return max; }
+
+	/** @return maximum number of significant digits of the numerical values */
+	public int getMaxPrecision() { return maxPrecision; }
+
+	/** @return maximum number of fraction digits of the numerical values, 2 for amounts in cents */
+	public int getMaxScale() { return maxScale; }
+
+	/** @return true if all the non empty values are numbers */
+	public boolean isNumerical() { return !Double.isNaN(min); }
+
+	/** @return width of the numerical range, NaN if the column is not numerical */
+	public double getRange() { return max - min; }
+
+	/** @return distinct values over non empty values, 1 when every value is unique */
+	public double getUniqueness() {
+		int nonEmpty = sampleSize - emptyCount;
+		return nonEmpty == 0 ? 0d : (double) distinctCount / nonEmpty;
+	}
+
+	@Override
+	public String toString() {
+		return "ColumnStatistics [sampleSize=" + sampleSize + ", distinctCount=" + distinctCount
+				+ ", averageLength=" + averageLength + ", min=" + min + ", max=" + max
+				+ ", maxPrecision=" + maxPrecision + ", maxScale=" + maxScale + "]";
+	}
+}
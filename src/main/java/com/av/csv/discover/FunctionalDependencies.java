@@ -0,0 +1,94 @@
+package com.av.csv.discover;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * Detection of the functional dependencies between the columns
+ * of the discovery sample: a column depends on a parent column when
+ * each of its values is always found with the same parent value,
+ * like City and Country.
+ *
+ * @author ActiveViam
+ *
+ */
+public class FunctionalDependencies {
+
+	/** Maximum number of distinct values of a column taking part in a dependency */
+	public static final int MAX_CARDINALITY = 500;
+
+	/** Minimum average number of rows per child value, below it the sample does not support the dependency */
+	public static final double MIN_ROWS_PER_VALUE = 2d;
+
+	/**
+	 * Detect the closest parent of each column.
+	 * <p>
+	 * Only String columns with at least two and at most {@link #MAX_CARDINALITY}
+	 * distinct values are considered. A parent must have strictly fewer distinct
+	 * values than its child, so that two columns in one to one relation are not
+	 * nested. When several parents are found, the one with the most distinct
+	 * values is the closest to the child.
+	 *
+	 * @param names column names
+	 * @param types column types
+	 * @param columns sampled values, column by column
+	 * @return parent column name by child column name
+	 */
+	public static Map<String, String> detect(List<String> names, List<String> types, List<List<String>> columns) {
+		int columnCount = Math.min(names.size(), columns.size());
+
+		// Distinct values of the candidate columns
+		Map<Integer, Integer> cardinalities = new LinkedHashMap<>();
+		for (int c = 0; c < columnCount; c++) {
+			if (!"String".equals(types.get(c))) {
+				continue;
+			}
+			ColumnStatistics statistics = ColumnStatistics.compute(columns.get(c));
+			int nonEmpty = statistics.getSampleSize() - statistics.getEmptyCount();
+			if (statistics.getDistinctCount() >= 2
+					&& statistics.getDistinctCount() <= MAX_CARDINALITY
+					&& nonEmpty >= MIN_ROWS_PER_VALUE * statistics.getDistinctCount()) {
+				cardinalities.put(c, statistics.getDistinctCount());
+			}
+		}
+
+		Map<String, String> parents = new LinkedHashMap<>();
+		for (Map.Entry<Integer, Integer> child : cardinalities.entrySet()) {
+			int closestParent = -1;
+			for (Map.Entry<Integer, Integer> parent : cardinalities.entrySet()) {
+				if (parent.getValue() >= child.getValue()) {
+					continue;
+				}
+				if (dependsOn(columns.get(child.getKey()), columns.get(parent.getKey()))
+						&& (closestParent < 0 || parent.getValue() > cardinalities.get(closestParent))) {
+					closestParent = parent.getKey();
+				}
+			}
+			if (closestParent >= 0) {
+				parents.put(names.get(child.getKey()), names.get(closestParent));
+			}
+		}
+		return parents;
+	}
+
+	/** @return true if each value of the child column is found with a single value of the parent column */
+	public static boolean dependsOn(List<String> child, List<String> parent) {
+		Map<String, String> parentByChild = new HashMap<>();
+		int rowCount = Math.min(child.size(), parent.size());
+		for (int r = 0; r < rowCount; r++) {
+			String childValue = child.get(r);
+			String parentValue = parent.get(r);
+			if (childValue == null || childValue.isEmpty() || parentValue == null || parentValue.isEmpty()) {
+				continue;
+			}
+			String previous = parentByChild.putIfAbsent(childValue, parentValue);
+			if (previous != null && !previous.equals(parentValue)) {
+				return false;
+			}
+		}
+		return !parentByChild.isEmpty();
+	}
+}
@@ -0,0 +1,120 @@
+package com.av.pivot.aggregation;
+
+import java.util.logging.Logger;
+
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo;
+import com.qfs.agg.IAggregationFunction;
+import com.qfs.agg.impl.AGenericAggregationFunction;
+import com.qfs.store.Types;
+import com.quartetfs.fwk.IPlugin;
+import com.quartetfs.fwk.QuartetPluginValue;
+import com.quartetfs.fwk.Registry;
+
+/**
+ * Approximate distinct count of the contributed values.
+ * <p>
+ * Each aggregate is a {@link HyperLogLog} sketch, merged on roll-up and
+ * updated in place when facts are inserted. The plugin registered under
+ * {@link #PLUGIN_KEY} uses the default precision of the datasets,
+ * {@link APropertyInfo#DEFAULT_DISTINCT_COUNT_PRECISION}, about 1.6% of standard
+ * error for 4KB per aggregate. The other precisions, set per dataset with the
+ * distinctCount.precision property, are registered on demand under their own
+ * key, see {@link #getPluginKey(int)}. Sketches do not support removals,
+ * deleted facts are still counted until the aggregates are rebuilt.
+ *
+ * @author Florian
+ *
+ */
+@QuartetPluginValue(intf = IAggregationFunction.class)
+public class ApproxDistinctCountAggregateFunction extends AGenericAggregationFunction<Object, Object> {
+
+	/** Logger **/
+	protected static final Logger LOGGER = Logger.getLogger(ApproxDistinctCountAggregateFunction.class.getName());
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = -4621870263315024712L;
+
+	/** Type identifying this aggregation function */
+	public static final String PLUGIN_KEY = "APPROX_DISTINCT_COUNT";
+
+	/** Precision of the sketches */
+	protected final int precision;
+
+	public ApproxDistinctCountAggregateFunction() {
+		this(APropertyInfo.DEFAULT_DISTINCT_COUNT_PRECISION);
+	}
+
+	public ApproxDistinctCountAggregateFunction(int precision) {
+		super(getKey(precision), Types.TYPE_OBJECT);
+		// Fail on an invalid precision when the measure is generated
+		new HyperLogLog(precision);
+		this.precision = precision;
+	}
+
+	public String getType() { return getKey(precision); }
+
+	/** @return plugin key of the sketches of a precision */
+	protected static String getKey(int precision) {
+		return precision == APropertyInfo.DEFAULT_DISTINCT_COUNT_PRECISION ? PLUGIN_KEY : PLUGIN_KEY + "_" + precision;
+	}
+
+	/**
+	 * Get the plugin key of the sketches of a precision, registering
+	 * the aggregation function of that precision on first use
+	 *
+	 * @param precision precision of the sketches
+	 * @return plugin key of the aggregation function
+	 */
+	public static synchronized String getPluginKey(int precision) {
+		String key = getKey(precision);
+		IPlugin<IAggregationFunction> plugin = Registry.getPlugin(IAggregationFunction.class);
+		if (plugin.valueOf(key) == null) {
+			plugin.add(new ApproxDistinctCountAggregateFunction(precision));
+		}
+		return key;
+	}
+
+	@Override
+	protected Object aggregate(boolean removal, Object aggregate, Object inputValue) {
+		if (inputValue instanceof HyperLogLog) {
+			return merge(removal, aggregate, inputValue);
+		}
+		if (removal) {
+			LOGGER.fine("Approximate distinct count does not support removals, the value is still counted");
+			return aggregate;
+		}
+		if (inputValue == null) {
+			return aggregate;
+		}
+
+		HyperLogLog sketch = aggregate == null ? new HyperLogLog(precision) : (HyperLogLog) aggregate;
+		sketch.add(inputValue);
+		return sketch;
+	}
+
+	@Override
+	protected Object merge(boolean removal, Object mainAggregate, Object contributedAggregate) {
+		if (removal) {
+			LOGGER.fine("Approximate distinct count does not support removals, the values are still counted");
+			return mainAggregate;
+		}
+		if (contributedAggregate == null) {
+			return mainAggregate;
+		}
+		if (mainAggregate == null) {
+			return new HyperLogLog((HyperLogLog) contributedAggregate);
+		}
+
+		HyperLogLog sketch = (HyperLogLog) mainAggregate;
+		sketch.merge((HyperLogLog) contributedAggregate);
+		return sketch;
+	}
+
+	@Override
+	protected Object cloneAggregate(Object aggregate) {
+		if (aggregate instanceof HyperLogLog) {
+			return new HyperLogLog((HyperLogLog) aggregate);
+		}
+		return aggregate;
+	}
+}
@@ -0,0 +1,138 @@
+package com.av.pivot.aggregation;
+
+import java.io.Serializable;
+
+/**
+ * HyperLogLog sketch estimating the number of distinct values added to it.
+ * <p>
+ * The sketch uses 2^precision one byte registers, its relative standard error
+ * is about 1.04 / sqrt(2^precision). Sketches of the same precision are merged
+ * by keeping the maximum of each register, so a sketch can be rolled up and
+ * updated incrementally, but values cannot be removed from it.
+ *
+ * @author Florian
+ *
+ */
+public class HyperLogLog implements Serializable {
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = 7283712460128943719L;
+
+	/** Bounds of the precision */
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 18;
+
+	/** Number of bits of the hash used to select the register */
+	protected final int precision;
+
+	/** Registers, the position of the first set bit seen for each bucket */
+	protected final byte[] registers;
+
+	public HyperLogLog(int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("HyperLogLog precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ", got " + precision);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	public HyperLogLog(HyperLogLog other) {
+		this.precision = other.precision;
+		this.registers = other.registers.clone();
+	}
+
+	public int getPrecision() { return precision; }
+
+	/** Add a value to the sketch, null values are ignored */
+	public void add(Object value) {
+		if (value != null) {
+			addHash(hash(value));
+		}
+	}
+
+	/** Add a 64 bits hash to the sketch */
+	public void addHash(long hash) {
+		final int index = (int) (hash >>> (64 - precision));
+		final long remaining = (hash << precision) | (1L << (precision - 1));
+		final byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+		if (rank > registers[index]) {
+			registers[index] = rank;
+		}
+	}
+
+	/** Merge another sketch of the same precision into this one */
+	public void merge(HyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of precision " + precision + " and " + other.precision);
+		}
+		final byte[] otherRegisters = other.registers;
+		for (int r = 0; r < registers.length; r++) {
+			if (otherRegisters[r] > registers[r]) {
+				registers[r] = otherRegisters[r];
+			}
+		}
+	}
+
+	/** @return estimation of the number of distinct values */
+	public long estimate() {
+		final int m = registers.length;
+		double sum = 0d;
+		int zeros = 0;
+		for (int r = 0; r < m; r++) {
+			sum += 1d / (1L << registers[r]);
+			if (registers[r] == 0) {
+				zeros++;
+			}
+		}
+
+		final double estimate = alpha(m) * m * m / sum;
+		if (estimate <= 2.5d * m && zeros > 0) {
+			// Small range correction, linear counting
+			return Math.round(m * Math.log((double) m / zeros));
+		}
+		return Math.round(estimate);
+	}
+
+	private static double alpha(int m) {
+		switch (m) {
+		case 16: return 0.673d;
+		case 32: return 0.697d;
+		case 64: return 0.709d;
+		default: return 0.7213d / (1d + 1.079d / m);
+		}
+	}
+
+	/** @return 64 bits hash of a value */
+	public static long hash(Object value) {
+		if (value instanceof CharSequence) {
+			// FNV-1a over the characters, the String hash code is too short
+			final CharSequence text = (CharSequence) value;
+			long h = 0xcbf29ce484222325L;
+			for (int c = 0; c < text.length(); c++) {
+				h ^= text.charAt(c);
+				h *= 0x100000001b3L;
+			}
+			return mix(h);
+		}
+		if (value instanceof Long || value instanceof Double) {
+			final long bits = value instanceof Long ? (Long) value : Double.doubleToLongBits((Double) value);
+			return mix(bits);
+		}
+		return mix(value.hashCode());
+	}
+
+	/** Murmur3 64 bits finalizer */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(estimate());
+	}
+}
@@ -0,0 +1,160 @@
+package com.av.pivot.aggregation;
+
+import java.io.Serializable;
+
+import com.qfs.agg.IAggregationFunction;
+import com.qfs.agg.impl.AGenericAggregationFunction;
+import com.qfs.store.Types;
+import com.quartetfs.fwk.QuartetPluginValue;
+
+/**
+ * Aggregation function computing the count, mean and sum of squared
+ * deviations (M2) of numerical values in a single pass.
+ * <p>
+ * Contributions follow Welford's algorithm and aggregates are merged
+ * with the parallel formula of Chan et al., which is numerically stable
+ * on large magnitudes, unlike the E[x²]-E[x]² form. Both contributions and
+ * merges can be removed, so the function works with real-time updates.
+ * The average and standard deviation are read from the {@link Moments} aggregate.
+ *
+ * @author Florian
+ *
+ */
+@QuartetPluginValue(intf = IAggregationFunction.class)
+public class MomentsAggregateFunction extends AGenericAggregationFunction<Object, Object> {
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = -8114236829317505912L;
+
+	/** Type identifying this aggregation function */
+	public static final String PLUGIN_KEY = "MOMENTS";
+
+	public MomentsAggregateFunction() {
+		super(PLUGIN_KEY, Types.TYPE_OBJECT);
+	}
+
+	public String getType() { return PLUGIN_KEY; }
+
+	@Override
+	protected Object aggregate(boolean removal, Object aggregate, Object inputValue) {
+		if (inputValue == null) {
+			return aggregate;
+		}
+		if (inputValue instanceof Moments) {
+			return merge(removal, aggregate, inputValue);
+		}
+		if (!(inputValue instanceof Number)) {
+			return aggregate;
+		}
+
+		final double value = ((Number) inputValue).doubleValue();
+		Moments moments = aggregate == null ? new Moments() : (Moments) aggregate;
+		if (removal) {
+			moments.remove(1L, value, 0d);
+		} else {
+			moments.add(1L, value, 0d);
+		}
+		return moments.count == 0L ? null : moments;
+	}
+
+	@Override
+	protected Object merge(boolean removal, Object mainAggregate, Object contributedAggregate) {
+		if (contributedAggregate == null) {
+			return mainAggregate;
+		}
+		final Moments contributed = (Moments) contributedAggregate;
+		if (mainAggregate == null) {
+			return removal ? null : new Moments(contributed);
+		}
+
+		Moments moments = (Moments) mainAggregate;
+		if (removal) {
+			moments.remove(contributed.count, contributed.mean, contributed.m2);
+		} else {
+			moments.add(contributed.count, contributed.mean, contributed.m2);
+		}
+		return moments.count == 0L ? null : moments;
+	}
+
+	@Override
+	protected Object cloneAggregate(Object aggregate) {
+		if (aggregate instanceof Moments) {
+			return new Moments((Moments) aggregate);
+		}
+		return aggregate;
+	}
+
+	/**
+	 * Mergeable (count, mean, M2) state.
+	 */
+	public static class Moments implements Serializable {
+
+		/** serialVersionUID */
+		private static final long serialVersionUID = 6601284405418762275L;
+
+		/** Number of values */
+		protected long count;
+
+		/** Mean of the values */
+		protected double mean;
+
+		/** Sum of the squared deviations from the mean */
+		protected double m2;
+
+		public Moments() {}
+
+		public Moments(Moments other) {
+			this.count = other.count;
+			this.mean = other.mean;
+			this.m2 = other.m2;
+		}
+
+		/** Merge the moments of another set of values */
+		protected void add(long otherCount, double otherMean, double otherM2) {
+			final long total = count + otherCount;
+			final double delta = otherMean - mean;
+			mean += delta * otherCount / total;
+			m2 += otherM2 + delta * delta * ((double) count * otherCount / total);
+			count = total;
+		}
+
+		/** Remove the moments of a subset of the values */
+		protected void remove(long otherCount, double otherMean, double otherM2) {
+			final long remaining = count - otherCount;
+			if (remaining <= 0L) {
+				count = 0L;
+				mean = 0d;
+				m2 = 0d;
+				return ;
+			}
+			// Shift the mean by the removed deviation rather than rebuilding the sum, stable on large magnitudes
+			final double remainingMean = mean + (mean - otherMean) * otherCount / remaining;
+			final double delta = otherMean - remainingMean;
+			m2 -= otherM2 + delta * delta * ((double) remaining * otherCount / count);
+			if (m2 < 0d) {
+				m2 = 0d; // rounding errors
+			}
+			mean = remainingMean;
+			count = remaining;
+		}
+
+		public long getCount() { return count; }
+
+		public double getMean() { return mean; }
+
+		/** @return population variance */
+		public double getVariance() {
+			return count == 0L ? 0d : m2 / count;
+		}
+
+		/** @return population standard deviation */
+		public double getStandardDeviation() {
+			return Math.sqrt(getVariance());
+		}
+
+		@Override
+		public String toString() {
+			return "Moments [count=" + count + ", mean=" + mean + ", m2=" + m2 + "]";
+		}
+	}
+}
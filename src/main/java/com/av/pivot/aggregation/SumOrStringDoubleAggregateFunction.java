@@ -0,0 +1,189 @@
+package com.av.pivot.aggregation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.qfs.agg.IAggregationFunction;
+import com.qfs.agg.impl.AGenericAggregationFunction;
+import com.qfs.store.Types;
+import com.quartetfs.fwk.QuartetPluginValue;
+
+/**
+ * Double specialization of the {@link SumOrStringAggregateFunction}.
+ * <p>
+ * The aggregate is a {@link SumOrString} updated in place: numerical
+ * contributions are added to its primitive double sum and String contributions
+ * to its error count, so no value is boxed per contribution. Both can be
+ * decontributed, so the function supports removals and can be used with
+ * the BITMAP aggregate provider and real-time updates. The counts are signed:
+ * a removal received before its contribution is kept until the contribution
+ * arrives, whatever the order of the updates.
+ * <p>
+ * The aggregate is not meant to be displayed, the
+ * {@link com.av.pivot.postprocessing.SumOrStringPostProcessor} turns it into
+ * a Double, or a String when the location received errors.
+ *
+ * @author Florian
+ *
+ */
+@QuartetPluginValue(intf = IAggregationFunction.class)
+public class SumOrStringDoubleAggregateFunction extends AGenericAggregationFunction<Object, Object> {
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = 3905125474583066254L;
+
+	/** Type identifying this aggregation function */
+	public static final String PLUGIN_KEY = "SUMORSTRING_DOUBLE";
+
+	public SumOrStringDoubleAggregateFunction() {
+		super(PLUGIN_KEY, Types.TYPE_OBJECT);
+	}
+
+	public String getType() { return PLUGIN_KEY; }
+
+	@Override
+	protected Object aggregate(boolean removal, Object aggregate, Object inputValue) {
+		if (inputValue == null) {
+			return aggregate;
+		}
+		if (inputValue instanceof SumOrString) {
+			return merge(removal, aggregate, inputValue);
+		}
+
+		SumOrString sumOrString = aggregate == null ? new SumOrString() : (SumOrString) aggregate;
+		if (inputValue instanceof Number) {
+			sumOrString.add(removal, ((Number) inputValue).doubleValue());
+		} else {
+			sumOrString.addError(removal, inputValue.toString(), 1);
+		}
+		return sumOrString.isEmpty() ? null : sumOrString;
+	}
+
+	@Override
+	protected Object merge(boolean removal, Object mainAggregate, Object contributedAggregate) {
+		if (contributedAggregate == null) {
+			return mainAggregate;
+		}
+		final SumOrString contributed = (SumOrString) contributedAggregate;
+		SumOrString sumOrString = mainAggregate == null ? new SumOrString() : (SumOrString) mainAggregate;
+		sumOrString.merge(removal, contributed);
+		return sumOrString.isEmpty() ? null : sumOrString;
+	}
+
+	@Override
+	protected Object cloneAggregate(Object aggregate) {
+		if (aggregate instanceof SumOrString) {
+			return new SumOrString((SumOrString) aggregate);
+		}
+		return aggregate;
+	}
+
+	/**
+	 * Sum of the numerical contributions, kept apart from the String contributions.
+	 */
+	public static class SumOrString implements Serializable {
+
+		/** serialVersionUID */
+		private static final long serialVersionUID = -1738413290734361205L;
+
+		/** Sum of the numerical contributions */
+		protected double sum;
+
+		/** Number of numerical contributions, negative when removals came first */
+		protected long count;
+
+		/** Number of String contributions, negative when removals came first */
+		protected int errorCount;
+
+		/** Signed number of contributions of each String, only created on the first error */
+		protected TreeMap<String, Integer> errors;
+
+		public SumOrString() {}
+
+		public SumOrString(SumOrString other) {
+			this.sum = other.sum;
+			this.count = other.count;
+			this.errorCount = other.errorCount;
+			if (other.errors != null) {
+				this.errors = new TreeMap<>(other.errors);
+			}
+		}
+
+		/** Add or remove a numerical contribution */
+		protected void add(boolean removal, double value) {
+			if (removal) {
+				sum -= value;
+				count--;
+			} else {
+				sum += value;
+				count++;
+			}
+		}
+
+		/** Add or remove String contributions */
+		protected void addError(boolean removal, String message, int contributions) {
+			if (errors == null) {
+				errors = new TreeMap<>();
+			}
+			final int delta = removal ? -contributions : contributions;
+			errors.merge(message, delta, (previous, added) -> previous + added == 0 ? null : previous + added);
+			errorCount += delta;
+			if (errors.isEmpty()) {
+				errors = null;
+			}
+		}
+
+		/** Add or remove the contributions of another aggregate */
+		protected void merge(boolean removal, SumOrString other) {
+			sum += removal ? -other.sum : other.sum;
+			count += removal ? -other.count : other.count;
+			if (other.errors != null) {
+				for (Map.Entry<String, Integer> error : other.errors.entrySet()) {
+					addError(removal, error.getKey(), error.getValue());
+				}
+			}
+		}
+
+		/** @return true once every contribution was removed */
+		protected boolean isEmpty() {
+			return count == 0L && sum == 0d && errors == null;
+		}
+
+		public double getSum() { return sum; }
+
+		public int getErrorCount() { return errorCount; }
+
+		/**
+		 * @return the value to display: the sum, or the String contributions
+		 * 		   currently aggregated when there is at least one
+		 */
+		public Object getValue() {
+			if (errors == null) {
+				return sum;
+			}
+			// Only the Strings contributed more than removed are displayed
+			List<String> messages = new ArrayList<>();
+			int contributions = 0;
+			for (Map.Entry<String, Integer> error : errors.entrySet()) {
+				if (error.getValue() > 0) {
+					messages.add(error.getKey());
+					contributions += error.getValue();
+				}
+			}
+			if (messages.isEmpty()) {
+				return sum;
+			} else if (messages.size() == 1) {
+				return messages.get(0);
+			}
+			return contributions + " errors: " + String.join(" ", messages);
+		}
+
+		@Override
+		public String toString() {
+			return "SumOrString [sum=" + sum + ", count=" + count + ", errorCount=" + errorCount + "]";
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package com.av.pivot.analysishierarchy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import com.google.common.base.Strings;
+import com.qfs.store.IDatastore;
+import com.qfs.store.IDatastoreVersion;
+import com.qfs.store.IReadableDatastore;
+import com.qfs.store.query.IDictionaryCursor;
+import com.qfs.store.record.IRecordBlock;
+import com.qfs.store.record.IRecordReader;
+import com.qfs.store.selection.IContinuousSelection;
+import com.qfs.store.selection.IStreamListener;
+import com.qfs.store.selection.impl.Selection;
+import com.quartetfs.biz.pivot.cube.hierarchy.IAnalysisHierarchyInfo;
+import com.quartetfs.biz.pivot.cube.hierarchy.ILevel;
+import com.quartetfs.biz.pivot.cube.hierarchy.ILevelInfo.ClassificationType;
+import com.quartetfs.biz.pivot.cube.hierarchy.IMultiVersionHierarchy;
+import com.quartetfs.biz.pivot.cube.hierarchy.axis.impl.AAnalysisHierarchy;
+import com.quartetfs.fwk.QuartetExtendedPluginValue;
+import com.quartetfs.fwk.QuartetRuntimeException;
+
+/**
+ * Analysis hierarchy whose members are read from a datastore store.
+ * <p>
+ * The hierarchy is configured with the properties of its description:
+ * <ul>
+ * <li>{@link #STORE_PROPERTY} store holding the members</li>
+ * <li>{@link #LEVEL_FIELDS_PROPERTY} comma separated store fields, one per level, from top to bottom</li>
+ * <li>{@link #DEFAULT_MEMBERS_PROPERTY} comma separated members used while the store is empty</li>
+ * </ul>
+ * The store is read once when the hierarchy is initialized, then a stream
+ * listener on the level fields of the store applies the records added and
+ * removed by each commit. The records of each distinct level path are counted,
+ * so a commit costs its own records rather than a scan of the store, and the
+ * hierarchy is only rebuilt when a path appears or disappears.
+ *
+ * @author Florian
+ *
+ */
+@QuartetExtendedPluginValue(intf = IMultiVersionHierarchy.class, key = StoreAnalysisHierarchy.PLUGIN_KEY)
+public class StoreAnalysisHierarchy extends AAnalysisHierarchy {
+
+	/** Logger **/
+	protected static final Logger LOGGER = Logger.getLogger(StoreAnalysisHierarchy.class.getName());
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = 4417953214180226911L;
+
+	/** analysis Hierarchy plugin key */
+	public static final String PLUGIN_KEY = "STORE_AH";
+
+	/** properties of the hierarchy */
+	public static final String STORE_PROPERTY = "store";
+	public static final String LEVEL_FIELDS_PROPERTY = "levelFields";
+	public static final String DEFAULT_MEMBERS_PROPERTY = "defaultMembers";
+
+	/** default member for each level when none is configured */
+	public static final String DEFAULT_MEMBER = "N/A";
+
+	/** store holding the members */
+	protected final String storeName;
+
+	/** store fields of the levels, from top to bottom */
+	protected final String[] levelFields;
+
+	/** path used while the store is empty */
+	protected final Object[] defaultPath;
+
+	/** number of records of each distinct path currently defined in the store */
+	private final Map<List<Object>, Integer> members = new LinkedHashMap<>();
+
+	/** epoch of the datastore version the members are up to date with, -1 until the store is read */
+	private long membersEpochId = -1L;
+
+	/** commits notified before the store is read, applied once it is read */
+	private final List<Delta> pendingDeltas = new ArrayList<>();
+
+	/** records added and removed by the transaction in progress */
+	private Delta currentDelta = new Delta();
+
+	/** version of the members, incremented each time a commit changes them */
+	private final AtomicLong membersVersion = new AtomicLong(0L);
+
+	/** version of the members used by the last build of the hierarchy */
+	private volatile long builtVersion = -1L;
+
+	public StoreAnalysisHierarchy(IAnalysisHierarchyInfo info) {
+		this(info, info.getProperties());
+	}
+
+	protected StoreAnalysisHierarchy(IAnalysisHierarchyInfo info, Properties properties) {
+		super(info);
+
+		if (properties == null || Strings.isNullOrEmpty(properties.getProperty(STORE_PROPERTY))) {
+			throw new QuartetRuntimeException("Analysis hierarchy " + info.getName() + " needs the '" + STORE_PROPERTY + "' property");
+		}
+		if (Strings.isNullOrEmpty(properties.getProperty(LEVEL_FIELDS_PROPERTY))) {
+			throw new QuartetRuntimeException("Analysis hierarchy " + info.getName() + " needs the '" + LEVEL_FIELDS_PROPERTY + "' property");
+		}
+		this.storeName = properties.getProperty(STORE_PROPERTY).trim();
+		this.levelFields = split(properties.getProperty(LEVEL_FIELDS_PROPERTY));
+		this.defaultPath = new Object[levelFields.length];
+
+		String[] defaultMembers = split(properties.getProperty(DEFAULT_MEMBERS_PROPERTY, ""));
+		for (int l = 0; l < levelFields.length; l++) {
+			defaultPath[l] = l < defaultMembers.length ? defaultMembers[l] : DEFAULT_MEMBER;
+		}
+	}
+
+	private static String[] split(String value) {
+		return Stream.of(value.split(","))
+					 .map(String::trim)
+					 .filter(s -> !s.isEmpty())
+					 .toArray(String[]::new);
+	}
+
+	@Override
+	public void init() {
+		super.init();
+
+		// Listen before reading, so that no commit is missed in between
+		registerStreamListener();
+		readMembers(getDatastoreVersion());
+	}
+
+	protected Object[] buildFinalPath(Object[] actualPath) {
+		if (isAllMembersEnabled == true) {
+			return Stream.concat(Stream.of(ILevel.ALLMEMBER), Stream.of(actualPath))
+						 .toArray();
+		}
+		return actualPath;
+	}
+
+	@Override
+	public Collection<Object[]> buildDiscriminatorPaths() {
+		final List<Object[]> result = new ArrayList<>();
+
+		synchronized (members) {
+			builtVersion = membersVersion.get();
+			for (List<Object> member : members.keySet()) {
+				result.add(buildFinalPath(member.toArray()));
+			}
+		}
+
+		// Store is probably not loaded at this step, so put default values
+		if (result.isEmpty()) {
+			result.add(buildFinalPath(defaultPath.clone()));
+		}
+		return result;
+	}
+
+	/**
+	 * Read the paths of the store once, then apply the commits notified
+	 * meanwhile that are more recent than the version read.
+	 *
+	 * @param dv datastore version to read
+	 */
+	protected void readMembers(IDatastoreVersion dv) {
+		if (dv == null) {
+			return ;
+		}
+
+		final Map<List<Object>, Integer> storeMembers = new LinkedHashMap<>();
+		IDictionaryCursor cursor = dv.getQueryRunner()
+									 .forStore(storeName)
+									 .withoutCondition()
+									 .selecting(levelFields)
+									 .run();
+		while (cursor.hasNext()) {
+			cursor.next();
+			storeMembers.merge(readPath(cursor.getRecord()), 1, Integer::sum);
+		}
+
+		synchronized (members) {
+			membersEpochId = dv.getEpochId();
+			members.putAll(storeMembers);
+			for (Delta delta : pendingDeltas) {
+				if (delta.epochId > membersEpochId) {
+					applyDelta(delta);
+				}
+			}
+			pendingDeltas.clear();
+			if (members.isEmpty() == false) {
+				membersVersion.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Apply the records added and removed by a commit to the path counts.
+	 * The members version only changes when a path appears or disappears.
+	 *
+	 * @param delta records of the commit
+	 */
+	protected void applyDelta(Delta delta) {
+		boolean changed = false;
+		for (List<Object> path : delta.removed) {
+			Integer count = members.get(path);
+			if (count == null) {
+				continue;
+			}
+			if (count <= 1) {
+				members.remove(path);
+				changed = true;
+			} else {
+				members.put(path, count - 1);
+			}
+		}
+		for (List<Object> path : delta.added) {
+			if (members.merge(path, 1, Integer::sum) == 1) {
+				changed = true;
+			}
+		}
+		membersEpochId = delta.epochId;
+		if (changed) {
+			long version = membersVersion.incrementAndGet();
+			LOGGER.fine("Members of " + getHierarchyInfo().getName() + " changed, members version is now " + version);
+		}
+	}
+
+	/** @return the level path of a record holding the level fields */
+	private List<Object> readPath(IRecordReader reader) {
+		Object[] path = new Object[levelFields.length];
+		for (int l = 0; l < path.length; l++) {
+			path[l] = reader.read(l);
+		}
+		return Arrays.asList(path);
+	}
+
+	/**
+	 * Listen to the records added to and removed from the members store,
+	 * selecting the level fields only. The members are updated at commit
+	 * time, and the hierarchy picks them up the next time the cube is rebuilt.
+	 */
+	private void registerStreamListener() {
+		IDatastore ds = getDatastore();
+		if (ds != null) {
+			IContinuousSelection continuousSelection = ds.register(new Selection(storeName, Arrays.asList(levelFields)));
+			continuousSelection.addListener(new IStreamListener() {
+
+				@Override
+				public void transactionStarted() {
+					currentDelta = new Delta();
+				}
+
+				@Override
+				public void recordsAdded(IRecordBlock<? extends IRecordReader> records) {
+					for (IRecordReader record : records) {
+						currentDelta.added.add(readPath(record));
+					}
+				}
+
+				@Override
+				public void recordsDeleted(IRecordBlock<? extends IRecordReader> records) {
+					for (IRecordReader record : records) {
+						currentDelta.removed.add(readPath(record));
+					}
+				}
+
+				@Override
+				public void transactionCommitted(IDatastoreVersion version) {
+					Delta delta = currentDelta;
+					currentDelta = new Delta();
+					delta.epochId = version.getEpochId();
+					synchronized (members) {
+						if (membersEpochId < 0L) {
+							pendingDeltas.add(delta);
+						} else if (delta.epochId > membersEpochId) {
+							applyDelta(delta);
+						}
+					}
+				}
+
+				@Override
+				public void transactionRolledBack() {
+					currentDelta = new Delta();
+				}
+			});
+		}
+	}
+
+	/** Level paths added and removed by a commit */
+	protected static class Delta {
+
+		protected final List<List<Object>> added = new ArrayList<>();
+
+		protected final List<List<Object>> removed = new ArrayList<>();
+
+		/** epoch of the commit */
+		protected long epochId;
+	}
+
+	@Override
+	public String getLevelName(int levelOrdinal) {
+		if (isAllMembersEnabled == true) {
+			if (levelOrdinal == 0) {
+				return ClassificationType.ALL.name();
+			}
+			return levelFields[levelOrdinal - 1];
+		}
+		return levelFields[levelOrdinal];
+	}
+
+	@Override
+	public boolean getNeedRebuild() {
+		return membersVersion.get() != builtVersion;
+	}
+
+	protected IDatastoreVersion getDatastoreVersion() {
+		IDatastore ds = getDatastore();
+		if (ds != null) {
+			return ds.getHead();
+		}
+		return null;
+	}
+
+	protected IDatastore getDatastore() {
+		if (datastore != null) {
+			IReadableDatastore readableDatastore = datastore.getDatastore();
+			if (readableDatastore instanceof IDatastore) {
+				return (IDatastore)readableDatastore;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public int getLevelsCount() {
+		if (isAllMembersEnabled == true) {
+			return levelFields.length + 1;
+		}
+		return levelFields.length;
+	}
+
+	@Override
+	public String getType() {
+		return PLUGIN_KEY;
+	}
+
+}
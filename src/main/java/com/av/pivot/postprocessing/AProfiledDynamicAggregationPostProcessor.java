@@ -0,0 +1,65 @@
+package com.av.pivot.postprocessing;
+
+import java.util.Properties;
+
+import com.av.autopivot.monitoring.PostProcessorProfile;
+import com.google.common.base.Strings;
+import com.quartetfs.biz.pivot.ILocation;
+import com.quartetfs.biz.pivot.cube.hierarchy.measures.IPostProcessorCreationContext;
+import com.quartetfs.biz.pivot.postprocessing.IPostProcessedRetrievalResultWriter;
+import com.quartetfs.biz.pivot.postprocessing.impl.ADynamicAggregationPostProcessor;
+import com.quartetfs.fwk.QuartetException;
+
+/**
+ * Dynamic aggregation post processor profiled over JMX.
+ * <p>
+ * The duration of each computation is recorded in the {@link PostProcessorProfile}
+ * of the measure, and the subclasses record their leaf evaluations, expansions,
+ * query cache lookups and datastore queries. The computations slower than the
+ * {@link #SLOW_THRESHOLD_PROPERTY} property, in milliseconds, are logged with
+ * their location. The threshold can also be changed over JMX.
+ *
+ * @author Florian
+ *
+ * @param <LeafType> type of the leaf values
+ * @param <OutputType> type of the aggregated values
+ */
+public abstract class AProfiledDynamicAggregationPostProcessor<LeafType, OutputType> extends ADynamicAggregationPostProcessor<LeafType, OutputType> {
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = 1L;
+
+	/** Duration in milliseconds above which the computations are logged, disabled by default */
+	public static final String SLOW_THRESHOLD_PROPERTY = "slowThreshold";
+
+	/** Profile of the measure */
+	protected transient PostProcessorProfile profile;
+
+	public AProfiledDynamicAggregationPostProcessor(String name, IPostProcessorCreationContext creationContext) {
+		super(name, creationContext);
+	}
+
+	@Override
+	public void init(Properties properties) throws QuartetException {
+		super.init(properties);
+
+		profile = PostProcessorProfile.get(getActivePivot().getId(), getName(), getType());
+		String slowThreshold = properties.getProperty(SLOW_THRESHOLD_PROPERTY);
+		if (Strings.isNullOrEmpty(slowThreshold) == false) {
+			profile.setSlowThresholdMillis(Long.parseLong(slowThreshold.trim()));
+		}
+	}
+
+	@Override
+	public void compute(ILocation location, IPostProcessedRetrievalResultWriter writer) throws QuartetException {
+		long start = System.nanoTime();
+		try {
+			super.compute(location, writer);
+		} finally {
+			profile.addCompute(location, System.nanoTime() - start);
+		}
+	}
+
+	/** @return the profile of the measure */
+	public PostProcessorProfile getProfile() { return profile; }
+}
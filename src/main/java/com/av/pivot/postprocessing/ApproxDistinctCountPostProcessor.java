@@ -0,0 +1,57 @@
+package com.av.pivot.postprocessing;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import com.av.pivot.aggregation.ApproxDistinctCountAggregateFunction;
+import com.av.pivot.aggregation.HyperLogLog;
+import com.quartetfs.biz.pivot.ILocation;
+import com.quartetfs.biz.pivot.cube.hierarchy.measures.IPostProcessorCreationContext;
+import com.quartetfs.biz.pivot.postprocessing.IPostProcessor;
+import com.quartetfs.biz.pivot.postprocessing.PostProcessorInitializationException;
+import com.quartetfs.biz.pivot.postprocessing.impl.ABasicPostProcessor;
+import com.quartetfs.fwk.QuartetException;
+import com.quartetfs.fwk.QuartetExtendedPluginValue;
+
+/**
+ * Read the estimated number of distinct values out of the sketch
+ * aggregated by an {@link ApproxDistinctCountAggregateFunction} measure.
+ *
+ * @author Florian
+ *
+ */
+@QuartetExtendedPluginValue(intf = IPostProcessor.class, key = ApproxDistinctCountPostProcessor.PLUGIN_KEY)
+public class ApproxDistinctCountPostProcessor extends ABasicPostProcessor<Long> {
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = 5128734098712340915L;
+
+	/** post processor plugin key */
+	public static final String PLUGIN_KEY = "APPROX_DISTINCT_COUNT_PP";
+
+	public ApproxDistinctCountPostProcessor(String name, IPostProcessorCreationContext creationContext) {
+		super(name, creationContext);
+	}
+
+	@Override
+	public String getType() {
+		return PLUGIN_KEY;
+	}
+
+	@Override
+	public void init(Properties properties) throws QuartetException {
+		super.init(properties);
+		if (this.underlyingMeasures == null || this.underlyingMeasures.length != 1) {
+			throw new PostProcessorInitializationException("Expecting exactly one sketch measure, got " + Arrays.toString(this.underlyingMeasures));
+		}
+	}
+
+	@Override
+	public Long evaluate(ILocation location, Object[] underlyingMeasures) {
+		final Object aggregate = underlyingMeasures[0];
+		if (!(aggregate instanceof HyperLogLog)) {
+			return null;
+		}
+		return ((HyperLogLog) aggregate).estimate();
+	}
+}
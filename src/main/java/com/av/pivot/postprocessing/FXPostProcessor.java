@@ -17,14 +17,13 @@ import com.quartetfs.biz.pivot.cube.hierarchy.ILevelInfo;
 import com.quartetfs.biz.pivot.cube.hierarchy.measures.IPostProcessorCreationContext;
 import com.quartetfs.biz.pivot.impl.LocationUtil;
 import com.quartetfs.biz.pivot.postprocessing.IPostProcessor;
-import com.quartetfs.biz.pivot.postprocessing.impl.ADynamicAggregationPostProcessor;
 import com.quartetfs.biz.pivot.query.IQueryCache;
 import com.quartetfs.fwk.QuartetException;
 import com.quartetfs.fwk.QuartetExtendedPluginValue;
 import com.quartetfs.fwk.QuartetRuntimeException;
 
 @QuartetExtendedPluginValue(intf = IPostProcessor.class, key = FXPostProcessor.PLUGIN_KEY)
-public class FXPostProcessor extends ADynamicAggregationPostProcessor<Object, Object>{
+public class FXPostProcessor extends AProfiledDynamicAggregationPostProcessor<Object, Object>{
 
 	/** serialVersionUID */
 	private static final long serialVersionUID = 8760095997904977181L;
@@ -83,11 +82,13 @@ public class FXPostProcessor extends ADynamicAggregationPostProcessor<Object, Ob
 
 	@Override
 	protected Object evaluateLeaf(ILocation leafLocation, Object[] underlyingMeasures) {
+		profile.addLeaf();
+		
 		// Retrieve the currency
 		final String currency = (String) LocationUtil.getCoordinate(leafLocation, currencyLevelInfo);
 
 		// Retrieve the measure in the native currency
-		final double measureNative = (Double) underlyingMeasures[0];
+		final double measureNative = ((Number) underlyingMeasures[0]).doubleValue();
 		
 		// Retrieve the target currency
 		String targetCurrency = FX_TARGET_CURRENCY;
@@ -124,10 +125,14 @@ public class FXPostProcessor extends ADynamicAggregationPostProcessor<Object, Ob
 		Object result = queryCache.get(storingKey);
 		
 		if (result == null) {
+			profile.addCacheMiss();
 			final Object rateRetrieved = getRateFromDataStore(currency, fxTargetCurrency);
 			final Object rateCached = queryCache.putIfAbsent(storingKey, rateRetrieved);
 			result = rateCached == null ? rateRetrieved : rateCached;
 		}
+		else {
+			profile.addCacheHit();
+		}
 		return result;
 	}
 
@@ -142,6 +147,7 @@ public class FXPostProcessor extends ADynamicAggregationPostProcessor<Object, Ob
 		parameters.put("currency_from_facts", currency);
 		parameters.put("currency_target", fxTargetCurrency);
 		
+		profile.addDatastoreQuery();
 		ICursor cursor = dv.getQueryManager()
 						   .forQuery(compiledQueryFxRate)
 						   .withParameters(parameters)
@@ -172,6 +178,6 @@ public class FXPostProcessor extends ADynamicAggregationPostProcessor<Object, Ob
 	private Double getFirstRate(ICursor cursor) {
 	    cursor.next();
 	    IRecordReader reader = cursor.getRecord();
-		return 1.0d / (Double)reader.read(FOREX_RATE);		
+		return 1.0d / ((Number) reader.read(FOREX_RATE)).doubleValue();		
 	}
 }
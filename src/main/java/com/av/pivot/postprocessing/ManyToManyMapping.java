@@ -0,0 +1,117 @@
+package com.av.pivot.postprocessing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.qfs.store.IDatastoreVersion;
+import com.qfs.store.query.IDictionaryCursor;
+import com.qfs.store.record.IRecordReader;
+
+/**
+ * Immutable snapshot of a many-to-many relation read from a group store.
+ * <p>
+ * Groups are stored once in an array, and each member is associated
+ * to the sorted indexes of its groups, so the expansion iterators
+ * only walk primitive arrays.
+ *
+ * @author Florian
+ *
+ */
+public class ManyToManyMapping {
+
+	/** Shared empty expansion */
+	public static final int[] NO_GROUP = new int[0];
+
+	/** Distinct group values, indexed by group id */
+	protected final Object[] groups;
+
+	/** Group id of each group value */
+	protected final Map<Object, Integer> groupIndexes;
+
+	/** Sorted group ids of each member */
+	protected final Map<Object, int[]> groupsByMember;
+
+	protected ManyToManyMapping(Object[] groups, Map<Object, Integer> groupIndexes, Map<Object, int[]> groupsByMember) {
+		this.groups = groups;
+		this.groupIndexes = groupIndexes;
+		this.groupsByMember = groupsByMember;
+	}
+
+	/**
+	 * Read the whole group store and build the mapping.
+	 *
+	 * @param dv datastore version to read
+	 * @param storeName group store
+	 * @param memberField field holding the members
+	 * @param groupField field holding the groups
+	 * @return mapping
+	 */
+	public static ManyToManyMapping create(IDatastoreVersion dv, String storeName, String memberField, String groupField) {
+		final List<Object> groups = new ArrayList<>();
+		final Map<Object, Integer> groupIndexes = new HashMap<>();
+		final Map<Object, List<Integer>> groupsByMember = new HashMap<>();
+
+		IDictionaryCursor cursor = dv.getQueryRunner()
+									 .forStore(storeName)
+									 .withoutCondition()
+									 .selecting(memberField, groupField)
+									 .run();
+		while (cursor.hasNext()) {
+			cursor.next();
+
+			IRecordReader reader = cursor.getRecord();
+			Object member = reader.read(0);
+			Object group = reader.read(1);
+
+			Integer groupIndex = groupIndexes.get(group);
+			if (groupIndex == null) {
+				groupIndex = groups.size();
+				groups.add(group);
+				groupIndexes.put(group, groupIndex);
+			}
+			groupsByMember.computeIfAbsent(member, m -> new ArrayList<>())
+						  .add(groupIndex);
+		}
+
+		final Map<Object, int[]> compactGroupsByMember = new HashMap<>(groupsByMember.size() * 2);
+		for (Map.Entry<Object, List<Integer>> entry : groupsByMember.entrySet()) {
+			int[] memberGroups = entry.getValue().stream().mapToInt(Integer::intValue).distinct().toArray();
+			Arrays.sort(memberGroups);
+			compactGroupsByMember.put(entry.getKey(), memberGroups);
+		}
+		return new ManyToManyMapping(groups.toArray(), groupIndexes, compactGroupsByMember);
+	}
+
+	/** @return group value of a group id */
+	public Object getGroup(int groupIndex) {
+		return groups[groupIndex];
+	}
+
+	/** @return number of distinct groups */
+	public int getGroupCount() {
+		return groups.length;
+	}
+
+	/** @return sorted group ids of a member, never null */
+	public int[] getGroups(Object member) {
+		int[] result = groupsByMember.get(member);
+		return result == null ? NO_GROUP : result;
+	}
+
+	/** @return true if the member belongs to the group */
+	public boolean contains(Object group, Object member) {
+		Integer groupIndex = groupIndexes.get(group);
+		if (groupIndex == null) {
+			return false;
+		}
+		return Arrays.binarySearch(getGroups(member), groupIndex) >= 0;
+	}
+
+	/** @return true if no relation was read */
+	public boolean isEmpty() {
+		return groupsByMember.isEmpty();
+	}
+}
@@ -0,0 +1,264 @@
+package com.av.pivot.postprocessing;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import com.google.common.base.Strings;
+import com.qfs.store.record.IRecordFormat;
+import com.quartetfs.biz.pivot.ILocation;
+import com.quartetfs.biz.pivot.ILocationExpansionProcedure;
+import com.quartetfs.biz.pivot.IPointLocationBuilder;
+import com.quartetfs.biz.pivot.IPointLocationReader;
+import com.quartetfs.biz.pivot.cellset.IAggregatesLocationResult;
+import com.quartetfs.biz.pivot.cube.hierarchy.ILevelInfo;
+import com.quartetfs.biz.pivot.cube.hierarchy.impl.HierarchiesUtil;
+import com.quartetfs.biz.pivot.cube.hierarchy.measures.IPostProcessorCreationContext;
+import com.quartetfs.biz.pivot.postprocessing.IPostProcessor;
+import com.quartetfs.biz.pivot.query.IQueryCache;
+import com.quartetfs.fwk.QuartetException;
+import com.quartetfs.fwk.QuartetExtendedPluginValue;
+import com.quartetfs.fwk.QuartetRuntimeException;
+
+/**
+ * Generic many-to-many post processor.
+ * <p>
+ * A member of a fact level (first leaf level) belongs to several groups,
+ * the relation being stored in a group store. The underlying measure of a
+ * member is expanded on two analysis levels: the group level and the
+ * member level. The relation is configured with the post processor properties:
+ * <ul>
+ * <li>{@link #GROUP_STORE_PROPERTY} store holding the relation</li>
+ * <li>{@link #MEMBER_FIELD_PROPERTY} and {@link #GROUP_FIELD_PROPERTY} fields of that store</li>
+ * <li>{@link #GROUP_LEVEL_PROPERTY} and {@link #MEMBER_LEVEL_PROPERTY} analysis levels to expand</li>
+ * </ul>
+ * The relation is read once per query and shared through the query cache.
+ *
+ * @author Florian
+ *
+ */
+@QuartetExtendedPluginValue(intf = IPostProcessor.class, key = ManyToManyPostProcessor.PLUGIN_KEY)
+public class ManyToManyPostProcessor extends AProfiledDynamicAggregationPostProcessor<Object, Object> {
+
+	/** Logger **/
+	protected static final Logger LOGGER = Logger.getLogger(ManyToManyPostProcessor.class.getName());
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = -2712094367231874408L;
+
+	/** post processor plugin key */
+	public static final String PLUGIN_KEY = "MTM_PP";
+
+	/** properties describing the relation */
+	public static final String GROUP_STORE_PROPERTY = "groupStore";
+	public static final String MEMBER_FIELD_PROPERTY = "memberField";
+	public static final String GROUP_FIELD_PROPERTY = "groupField";
+	public static final String GROUP_LEVEL_PROPERTY = "groupLevel";
+	public static final String MEMBER_LEVEL_PROPERTY = "memberLevel";
+
+	/** store holding the relation */
+	protected String groupStore;
+
+	/** store field holding the members */
+	protected String memberField;
+
+	/** store field holding the groups */
+	protected String groupField;
+
+	/** member level info from facts */
+	protected ILevelInfo factLevelInfo;
+
+	/** group level info from Analysis Hierarchy */
+	protected ILevelInfo groupLevelInfo;
+
+	/** member level info from Analysis Hierarchy */
+	protected ILevelInfo memberLevelInfo;
+
+	public ManyToManyPostProcessor(String name, IPostProcessorCreationContext creationContext) {
+		super(name, creationContext);
+	}
+
+	@Override
+	public String getType() {
+		return PLUGIN_KEY;
+	}
+
+	@Override
+	public void init(Properties properties) throws QuartetException {
+		super.init(properties);
+
+		if (this.leafLevelsInfo.isEmpty()) {
+			throw new QuartetRuntimeException(getType() + " needs at least the member level associated to the facts");
+		}
+		factLevelInfo = this.leafLevelsInfo.get(0);
+
+		groupStore = getRequiredProperty(properties, GROUP_STORE_PROPERTY);
+		memberField = getRequiredProperty(properties, MEMBER_FIELD_PROPERTY);
+		groupField = getRequiredProperty(properties, GROUP_FIELD_PROPERTY);
+		groupLevelInfo = HierarchiesUtil.getLevel(getActivePivot(), getRequiredProperty(properties, GROUP_LEVEL_PROPERTY)).getLevelInfo();
+		memberLevelInfo = HierarchiesUtil.getLevel(getActivePivot(), getRequiredProperty(properties, MEMBER_LEVEL_PROPERTY)).getLevelInfo();
+	}
+
+	private String getRequiredProperty(Properties properties, String key) {
+		String value = properties.getProperty(key);
+		if (Strings.isNullOrEmpty(value)) {
+			throw new QuartetRuntimeException(getType() + " property '" + key + "' is not defined");
+		}
+		return value;
+	}
+
+	@Override
+	protected Object evaluateLeaf(ILocation leafLocation, Object[] underlyingMeasures) {
+		profile.addLeaf();
+		return underlyingMeasures[0];
+	}
+
+	/**
+	 * Retrieve the relation from the query cache, or read it
+	 * from the group store the first time it is needed in the query.
+	 *
+	 * @return relation between members and groups
+	 */
+	protected ManyToManyMapping getMapping() {
+		final IQueryCache queryCache = getContext().get(IQueryCache.class);
+		final String storingKey = "[" + getType() + "/" + getName() + "]";
+		ManyToManyMapping result = (ManyToManyMapping) queryCache.get(storingKey);
+
+		if (result == null) {
+			profile.addCacheMiss();
+			profile.addDatastoreQuery();
+			final ManyToManyMapping mapping = ManyToManyMapping.create(getDatastoreVersion(), groupStore, memberField, groupField);
+			if (mapping.isEmpty()) {
+				LOGGER.warning("Store used to define groups: " + groupStore + " is probably empty");
+			}
+			final ManyToManyMapping cached = (ManyToManyMapping) queryCache.putIfAbsent(storingKey, mapping);
+			result = cached == null ? mapping : cached;
+		}
+		else {
+			profile.addCacheHit();
+		}
+		return result;
+	}
+
+	@Override
+	protected ILocationExpansionProcedure getExpansionProcedure(ILocation queryLocation, ILocation restrictedLocation) {
+		final ManyToManyMapping mapping = getMapping();
+		return new ILocationExpansionProcedure() {
+
+			@Override
+			public IExpansionIterator createIterator(ILocation scope) {
+				return new ManyToManyExpansionIterator(mapping);
+			}
+
+			@Override
+			public List<ILevelInfo> getExpansionLevels() {
+				return Arrays.asList(ManyToManyPostProcessor.this.groupLevelInfo,
+									 ManyToManyPostProcessor.this.memberLevelInfo);
+			}
+
+		};
+	}
+
+	/**
+	 * Expand a location over the groups of its member.
+	 * <p>
+	 * The iterator walks the group ids of the mapping with a cursor,
+	 * each {@link #reset} fully reinitializes its state so a single
+	 * iterator can be reused for all the locations of a scope.
+	 */
+	protected class ManyToManyExpansionIterator implements ILocationExpansionProcedure.IExpansionIterator {
+
+		/** relation used for the expansion */
+		protected final ManyToManyMapping mapping;
+
+		/** group ids of the current member */
+		protected int[] groups = ManyToManyMapping.NO_GROUP;
+
+		/** next expansion to produce */
+		protected int cursor;
+
+		/** number of expansions of the current location */
+		protected int count;
+
+		/** True if the group coordinate must be set */
+		protected boolean needGroup;
+
+		/** True if the member coordinate must be set */
+		protected boolean needMember;
+
+		/** current member being expanded */
+		protected Object currentMember;
+
+		public ManyToManyExpansionIterator(ManyToManyMapping mapping) {
+			this.mapping = mapping;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return cursor < count;
+		}
+
+		@Override
+		public void reset(IPointLocationReader location, IAggregatesLocationResult aggregates) {
+			groups = ManyToManyMapping.NO_GROUP;
+			cursor = 0;
+			count = 0;
+			needGroup = false;
+			needMember = false;
+			currentMember = null;
+			profile.addExpansionInput();
+
+			final Object member = getCoordinate(location, factLevelInfo);
+			if (member == null || IRecordFormat.GLOBAL_DEFAULT_OBJECT.equals(member)) {
+				return ; // N/A are ignored
+			}
+
+			// The member coordinate of the analysis hierarchy, when set, must be the fact member
+			final Object analysisMember = getCoordinate(location, memberLevelInfo);
+			if (analysisMember != null && !analysisMember.equals(member)) {
+				return ;
+			}
+
+			final Object group = getCoordinate(location, groupLevelInfo);
+			if (group != null) {
+				// A group coordinate already exists, keep the location only if it matches
+				if (mapping.contains(group, member) == false) {
+					return ;
+				}
+				count = 1;
+			}
+			else {
+				groups = mapping.getGroups(member);
+				count = groups.length;
+				needGroup = true;
+			}
+
+			currentMember = member;
+			needMember = analysisMember == null;
+		}
+
+		@Override
+		public void setNext(IPointLocationBuilder builder) {
+			if (needGroup) {
+				setCoordinate(builder, groupLevelInfo, mapping.getGroup(groups[cursor]));
+			}
+			if (needMember) {
+				setCoordinate(builder, memberLevelInfo, currentMember);
+			}
+			cursor++;
+			profile.addExpansionOutput();
+		}
+
+		private Object getCoordinate(IPointLocationReader location, ILevelInfo levelInfo) {
+			return location.getCoordinate(levelInfo.getHierarchyInfo().getOrdinal() - 1,
+										  levelInfo.getOrdinal());
+		}
+
+		private void setCoordinate(IPointLocationBuilder builder, ILevelInfo levelInfo, Object member) {
+			builder.setCoordinate(levelInfo.getHierarchyInfo().getOrdinal() - 1,
+								  levelInfo.getOrdinal(),
+								  member);
+		}
+	}
+}
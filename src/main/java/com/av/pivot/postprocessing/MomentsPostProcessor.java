@@ -0,0 +1,84 @@
+package com.av.pivot.postprocessing;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import com.av.pivot.aggregation.MomentsAggregateFunction;
+import com.av.pivot.aggregation.MomentsAggregateFunction.Moments;
+import com.quartetfs.biz.pivot.ILocation;
+import com.quartetfs.biz.pivot.cube.hierarchy.measures.IPostProcessorCreationContext;
+import com.quartetfs.biz.pivot.postprocessing.IPostProcessor;
+import com.quartetfs.biz.pivot.postprocessing.PostProcessorInitializationException;
+import com.quartetfs.biz.pivot.postprocessing.impl.ABasicPostProcessor;
+import com.quartetfs.fwk.QuartetException;
+import com.quartetfs.fwk.QuartetExtendedPluginValue;
+
+/**
+ * Read a statistic out of the aggregate of a {@link MomentsAggregateFunction} measure.
+ * <p>
+ * The statistic is chosen with the {@link #STATISTIC_PROPERTY} property
+ * (AVG, VARIANCE or STD, AVG by default). The only underlying measure is the
+ * moments measure, so the statistic is computed directly on the aggregate,
+ * without any formula.
+ *
+ * @author Florian
+ *
+ */
+@QuartetExtendedPluginValue(intf = IPostProcessor.class, key = MomentsPostProcessor.PLUGIN_KEY)
+public class MomentsPostProcessor extends ABasicPostProcessor<Double> {
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = 2235879023361485410L;
+
+	/** post processor plugin key */
+	public static final String PLUGIN_KEY = "MOMENTS_PP";
+
+	/** Property selecting the statistic */
+	public static final String STATISTIC_PROPERTY = "statistic";
+
+	/** Statistics computed from the moments */
+	public enum STATISTIC {
+		AVG,
+		VARIANCE,
+		STD
+	}
+
+	/** Statistic computed by this post processor */
+	protected STATISTIC statistic;
+
+	public MomentsPostProcessor(String name, IPostProcessorCreationContext creationContext) {
+		super(name, creationContext);
+	}
+
+	@Override
+	public String getType() {
+		return PLUGIN_KEY;
+	}
+
+	@Override
+	public void init(Properties properties) throws QuartetException {
+		super.init(properties);
+		if (this.underlyingMeasures == null || this.underlyingMeasures.length != 1) {
+			throw new PostProcessorInitializationException("Expecting exactly one moments measure, got " + Arrays.toString(this.underlyingMeasures));
+		}
+		statistic = STATISTIC.valueOf(properties.getProperty(STATISTIC_PROPERTY, STATISTIC.AVG.name()));
+	}
+
+	@Override
+	public Double evaluate(ILocation location, Object[] underlyingMeasures) {
+		final Object aggregate = underlyingMeasures[0];
+		if (!(aggregate instanceof Moments)) {
+			return null;
+		}
+
+		final Moments moments = (Moments) aggregate;
+		switch (statistic) {
+		case VARIANCE:
+			return moments.getVariance();
+		case STD:
+			return moments.getStandardDeviation();
+		default:
+			return moments.getMean();
+		}
+	}
+}
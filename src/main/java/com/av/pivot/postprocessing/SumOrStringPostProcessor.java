@@ -0,0 +1,58 @@
+package com.av.pivot.postprocessing;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import com.av.pivot.aggregation.SumOrStringDoubleAggregateFunction;
+import com.av.pivot.aggregation.SumOrStringDoubleAggregateFunction.SumOrString;
+import com.quartetfs.biz.pivot.ILocation;
+import com.quartetfs.biz.pivot.cube.hierarchy.measures.IPostProcessorCreationContext;
+import com.quartetfs.biz.pivot.postprocessing.IPostProcessor;
+import com.quartetfs.biz.pivot.postprocessing.PostProcessorInitializationException;
+import com.quartetfs.biz.pivot.postprocessing.impl.ABasicPostProcessor;
+import com.quartetfs.fwk.QuartetException;
+import com.quartetfs.fwk.QuartetExtendedPluginValue;
+
+/**
+ * Display the aggregate of a {@link SumOrStringDoubleAggregateFunction} measure:
+ * a Double when only numbers were aggregated at the location, a String
+ * made of the errors currently aggregated otherwise.
+ *
+ * @author Florian
+ *
+ */
+@QuartetExtendedPluginValue(intf = IPostProcessor.class, key = SumOrStringPostProcessor.PLUGIN_KEY)
+public class SumOrStringPostProcessor extends ABasicPostProcessor<Object> {
+
+	/** serialVersionUID */
+	private static final long serialVersionUID = -4361024185316829931L;
+
+	/** post processor plugin key */
+	public static final String PLUGIN_KEY = "SUMORSTRING_PP";
+
+	public SumOrStringPostProcessor(String name, IPostProcessorCreationContext creationContext) {
+		super(name, creationContext);
+	}
+
+	@Override
+	public String getType() {
+		return PLUGIN_KEY;
+	}
+
+	@Override
+	public void init(Properties properties) throws QuartetException {
+		super.init(properties);
+		if (this.underlyingMeasures == null || this.underlyingMeasures.length != 1) {
+			throw new PostProcessorInitializationException("Expecting exactly one SUMORSTRING_DOUBLE measure, got " + Arrays.toString(this.underlyingMeasures));
+		}
+	}
+
+	@Override
+	public Object evaluate(ILocation location, Object[] underlyingMeasures) {
+		final Object aggregate = underlyingMeasures[0];
+		if (aggregate instanceof SumOrString) {
+			return ((SumOrString) aggregate).getValue();
+		}
+		return aggregate;
+	}
+}
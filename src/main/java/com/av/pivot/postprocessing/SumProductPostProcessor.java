@@ -26,25 +26,35 @@ import com.quartetfs.biz.pivot.ILocation;
 import com.quartetfs.biz.pivot.cube.hierarchy.measures.IPostProcessorCreationContext;
 import com.quartetfs.biz.pivot.postprocessing.IPostProcessor;
 import com.quartetfs.biz.pivot.postprocessing.PostProcessorInitializationException;
-import com.quartetfs.biz.pivot.postprocessing.impl.ADynamicAggregationPostProcessor;
 import com.quartetfs.fwk.QuartetException;
 import com.quartetfs.fwk.QuartetExtendedPluginValue;
 
 /**
  * 
- * Dynamically perform the sum product of two underlying measures.
+ * Dynamically perform the sum product of underlying measures.
  * The base measures are taken at the leaf levels defined in the post processor,
  * multiplied together, and then the products are aggregated together
  * up to the level of the query (SUM aggregation by default).
  * <p>
+ * Any number of underlying measures can be multiplied. When the
+ * {@link #WEIGHTS_PROPERTY} property is set (comma separated list of numbers,
+ * one per underlying measure) the leaf value is the weighted sum of the
+ * underlying measures instead of their product.
+ * <p>
  * This post processor can be used directly from an MDX frontend
  * using the ActiveMeasure MDX function.
+ * <p>
+ * The underlying values are read as primitive doubles, but the leaves are
+ * still evaluated and re-aggregated one location at a time, each leaf result
+ * boxed in a Double: the bulk mode (column-wise evaluation over primitive arrays, split across
+ * cores and fed to the aggregation in chunks) is not implemented yet, it needs
+ * a batch hook in the dynamic aggregation that ActivePivot 5.7 does not expose.
  * 
  * @author ActiveViam
  *
  */
 @QuartetExtendedPluginValue(intf = IPostProcessor.class, key = SumProductPostProcessor.PLUGIN_TYPE)
-public class SumProductPostProcessor extends ADynamicAggregationPostProcessor<Double, Double> {
+public class SumProductPostProcessor extends AProfiledDynamicAggregationPostProcessor<Double, Double> {
 
 	/** serialVersionUID */
 	private static final long serialVersionUID = 1L;
@@ -52,6 +62,12 @@ public class SumProductPostProcessor extends ADynamicAggregationPostProcessor<Do
 	/** Type identifying this post processor */
 	public static final String PLUGIN_TYPE = "SUMPRODUCT";
 	
+	/** Optional weights of the underlying measures, turns the product into a weighted sum */
+	public static final String WEIGHTS_PROPERTY = "weights";
+	
+	/** Weights of the underlying measures, null for a product */
+	protected double[] weights;
+	
 	/** Constructor */
 	public SumProductPostProcessor(String name, IPostProcessorCreationContext creationContext) {
 		super(name, creationContext);
@@ -63,14 +79,32 @@ public class SumProductPostProcessor extends ADynamicAggregationPostProcessor<Do
 	@Override
 	public void init(Properties properties) throws QuartetException {
 		super.init(properties);
-		if(this.underlyingMeasures == null || this.underlyingMeasures.length != 2) {
-			throw new PostProcessorInitializationException("Expecting exactly two underlying measures, got " + Arrays.toString(this.underlyingMeasures));
+		
+		String weightsProperty = properties.getProperty(WEIGHTS_PROPERTY);
+		if(weightsProperty == null || weightsProperty.trim().isEmpty()) {
+			if(this.underlyingMeasures == null || this.underlyingMeasures.length < 2) {
+				throw new PostProcessorInitializationException("Expecting at least two underlying measures, got " + Arrays.toString(this.underlyingMeasures));
+			}
+			weights = null;
+		} else {
+			try {
+				weights = Arrays.stream(weightsProperty.split(","))
+								.map(String::trim)
+								.mapToDouble(Double::parseDouble)
+								.toArray();
+			} catch(NumberFormatException e) {
+				throw new PostProcessorInitializationException("Invalid " + WEIGHTS_PROPERTY + " property: " + weightsProperty, e);
+			}
+			if(this.underlyingMeasures == null || this.underlyingMeasures.length != weights.length) {
+				throw new PostProcessorInitializationException("Expecting one weight per underlying measure, got weights " + weightsProperty
+						+ " for measures " + Arrays.toString(this.underlyingMeasures));
+			}
 		}
 	}
 	
 
 	/**
-	 * @return product of the two underlying measures
+	 * @return product, or weighted sum, of the underlying measures
 	 */
 	@Override
 	protected Double evaluateLeaf(
@@ -78,7 +112,21 @@ public class SumProductPostProcessor extends ADynamicAggregationPostProcessor<Do
 			final IRecordReader underlyingValues,
 			final Object[] underlyingMeasuresBuffer)
 	{
-		return underlyingValues.readDouble(0) * underlyingValues.readDouble(1);
+		profile.addLeaf();
+		final int measureCount = underlyingMeasures.length;
+		if(weights == null) {
+			double product = underlyingValues.readDouble(0);
+			for(int m = 1; m < measureCount; m++) {
+				product *= underlyingValues.readDouble(m);
+			}
+			return product;
+		}
+		
+		double sum = 0d;
+		for(int m = 0; m < measureCount; m++) {
+			sum += weights[m] * underlyingValues.readDouble(m);
+		}
+		return sum;
 	}
 	
 	@Override
@@ -87,4 +135,4 @@ public class SumProductPostProcessor extends ADynamicAggregationPostProcessor<Do
 		throw new UnsupportedOperationException();
 	}
 
-}
\ No newline at end of file
+}
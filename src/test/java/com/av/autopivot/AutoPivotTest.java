@@ -0,0 +1,77 @@
+package com.av.autopivot;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.quartetfs.biz.pivot.dto.CellSetDTO;
+import com.quartetfs.fwk.query.QueryException;
+
+/**
+ * Start the embedded AutoPivot on a tiny dataset and query it in MDX.
+ * The queries run without any authenticated user, like the batch jobs.
+ */
+public class AutoPivotTest {
+
+	@ClassRule
+	public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+	private static AutoPivot autoPivot;
+
+	@BeforeClass
+	public static void start() throws IOException {
+		Path trades = FOLDER.newFile("trades.csv").toPath();
+		Files.write(trades, Arrays.asList(
+				"TradeId;Desk;Currency;pnl",
+				"T1;DeskA;EUR;1.5",
+				"T2;DeskA;USD;2.5",
+				"T3;DeskB;EUR;4.0",
+				"T4;DeskB;JPY;-1.0"));
+
+		Properties properties = new Properties();
+		properties.setProperty("autopivot.discover.data.trades.fileName", trades.toString());
+		autoPivot = AutoPivot.start(properties);
+	}
+
+	@AfterClass
+	public static void stop() {
+		if (autoPivot != null) {
+			autoPivot.close();
+		}
+	}
+
+	private static Object getValue(CellSetDTO cellSet, int cell) {
+		return cellSet.getCells().get(cell).getValue();
+	}
+
+	@Test
+	public void shouldGenerateACubePerDataset() {
+		assertThat(autoPivot.getCubeNames(), contains("trades"));
+	}
+
+	@Test
+	public void shouldAggregateTheWholeDataset() throws QueryException {
+		CellSetDTO cellSet = autoPivot.executeMdx("trades", "SELECT {[Measures].[pnl.SUM], [Measures].[contributors.COUNT]} ON 0 FROM [trades]");
+		assertThat(getValue(cellSet, 0), equalTo((Object) 7d));
+		assertThat(getValue(cellSet, 1), equalTo((Object) 4L));
+	}
+
+	@Test
+	public void shouldSliceOnALevel() throws QueryException {
+		CellSetDTO cellSet = autoPivot.executeMdx("trades", "SELECT [Measures].[pnl.SUM] ON 0 FROM [trades]"
+				+ " WHERE [Desk].[Desk].[AllMember].[DeskB]");
+		assertThat(getValue(cellSet, 0), equalTo((Object) 3d));
+	}
+}
@@ -0,0 +1,92 @@
+package com.av.autopivot;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.COLUMN_ROLE;
+import com.av.csv.discover.ColumnStatistics;
+import com.av.csv.discover.FunctionalDependencies;
+import com.google.common.collect.ImmutableMap;
+
+public class HierarchyPlannerTest {
+
+	private static List<String> values(String prefix, int count, int distinct) {
+		List<String> values = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			values.add(prefix + (i % distinct));
+		}
+		return values;
+	}
+	
+	@Test
+	public void shouldKeepLowCardinalityStringsAsLevels() {
+		ColumnStatistics statistics = ColumnStatistics.compute(values("desk-", 200, 5));
+		assertThat(HierarchyPlanner.getRole("String", statistics), equalTo(COLUMN_ROLE.LEVEL));
+	}
+	
+	@Test
+	public void shouldKeepUniqueStringsAsFields() {
+		ColumnStatistics statistics = ColumnStatistics.compute(values("trade-", 200, 200));
+		assertThat(statistics.getUniqueness(), equalTo(1d));
+		assertThat(HierarchyPlanner.getRole("String", statistics), equalTo(COLUMN_ROLE.FIELD));
+	}
+	
+	@Test
+	public void shouldKeepFreeTextAsFields() {
+		String comment = "This comment is long enough to be considered as free text by the planner";
+		ColumnStatistics statistics = ColumnStatistics.compute(Arrays.asList(comment, comment, comment));
+		assertThat(HierarchyPlanner.getRole("String", statistics), equalTo(COLUMN_ROLE.FIELD));
+	}
+	
+	@Test
+	public void shouldUseLargeRangeIntegersAsMeasures() {
+		ColumnStatistics statistics = ColumnStatistics.compute(Arrays.asList("1", "25000", "3", "3"));
+		assertThat(statistics.getRange(), equalTo(24999d));
+		assertThat(HierarchyPlanner.getRole("int", statistics), equalTo(COLUMN_ROLE.MEASURE));
+		assertThat(HierarchyPlanner.getRole("int", ColumnStatistics.compute(values("", 200, 3))), equalTo(COLUMN_ROLE.LEVEL));
+	}
+	
+	@Test
+	public void shouldNestFunctionallyDependentColumns() {
+		List<String> names = Arrays.asList("Region", "Country", "City", "Desk");
+		List<String> types = Arrays.asList("String", "String", "String", "String");
+		List<List<String>> columns = Arrays.asList(
+				new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+		String[][] cities = { {"Europe", "France", "Paris"}, {"Europe", "France", "Lyon"},
+							  {"Europe", "UK", "London"}, {"Asia", "Japan", "Tokyo"} };
+		for (int r = 0; r < 40; r++) {
+			String[] city = cities[r % cities.length];
+			columns.get(0).add(city[0]);
+			columns.get(1).add(city[1]);
+			columns.get(2).add(city[2]);
+			columns.get(3).add("desk-" + (r % 3));
+		}
+		
+		Map<String, String> parents = FunctionalDependencies.detect(names, types, columns);
+		assertThat(parents, equalTo(ImmutableMap.of("Country", "Region", "City", "Country")));
+		
+		List<COLUMN_ROLE> roles = Collections.nCopies(4, COLUMN_ROLE.LEVEL);
+		Map<String, List<String>> hierarchies = HierarchyPlanner.planHierarchies(names, roles, parents);
+		assertThat(hierarchies, equalTo(ImmutableMap.of("City", Arrays.asList("Region", "Country", "City"))));
+	}
+	
+	@Test
+	public void shouldKeepForcedLevelsOutOfTheInferredHierarchies() {
+		List<String> names = Arrays.asList("Region", "Country", "City", "Currency");
+		Map<String, String> parents = ImmutableMap.of("Country", "Region", "City", "Country", "Currency", "Country");
+		List<COLUMN_ROLE> roles = Collections.nCopies(4, COLUMN_ROLE.LEVEL);
+		
+		Map<Pattern, COLUMN_ROLE> columnRoles = ImmutableMap.of(Pattern.compile("Currency"), COLUMN_ROLE.LEVEL);
+		Map<String, List<String>> hierarchies = HierarchyPlanner.planHierarchies(names, roles, parents, columnRoles);
+		assertThat(hierarchies, equalTo(ImmutableMap.of("City", Arrays.asList("Region", "Country", "City"))));
+	}
+}
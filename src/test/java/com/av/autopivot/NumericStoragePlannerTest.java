@@ -0,0 +1,38 @@
+package com.av.autopivot;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.av.csv.discover.ColumnStatistics;
+
+public class NumericStoragePlannerTest {
+
+	private final ColumnStatistics amounts = ColumnStatistics.compute(Arrays.asList("12.50", "-3.2", "100", "0.01"));
+	
+	@Test
+	public void shouldRecordPrecisionAndScale() {
+		assertThat(amounts.getMaxPrecision(), equalTo(3));
+		assertThat(amounts.getMaxScale(), equalTo(2));
+	}
+	
+	@Test
+	public void shouldKeepDoubleByDefault() {
+		assertThat(NumericStoragePlanner.getStorageType("double", amounts, 15), equalTo("double"));
+	}
+	
+	@Test
+	public void shouldUseFloatWhenPrecisionAllows() {
+		assertThat(NumericStoragePlanner.getStorageType("double", amounts, 6), equalTo("float"));
+		assertThat(NumericStoragePlanner.getStorageType("long", amounts, 6), equalTo("long"));
+	}
+	
+	@Test
+	public void shouldKeepDoubleOutOfFloatRange() {
+		ColumnStatistics large = ColumnStatistics.compute(Arrays.asList("1e39", "2.5"));
+		assertThat(NumericStoragePlanner.getStorageType("double", large, 6), equalTo("double"));
+	}
+}
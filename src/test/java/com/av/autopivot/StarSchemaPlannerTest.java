@@ -0,0 +1,68 @@
+package com.av.autopivot;
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.av.csv.CSVFormat;
+import com.av.csv.discover.ColumnStatistics;
+import com.google.common.collect.ImmutableMap;
+
+public class StarSchemaPlannerTest {
+
+	private static CSVFormat format(String fileName, List<String> names, List<List<String>> columns) {
+		List<ColumnStatistics> statistics = new ArrayList<>();
+		for (List<String> column : columns) {
+			statistics.add(ColumnStatistics.compute(column));
+		}
+		return new CSVFormat(fileName, ";", names, Collections.nCopies(names.size(), "String"), statistics, Collections.emptyMap());
+	}
+	
+	private final CSVFormat trades = format("trades.csv", Arrays.asList("TradeId", "Ccy"), Arrays.asList(
+			Arrays.asList("T1", "T2", "T3", "T4"),
+			Arrays.asList("EUR", "USD", "EUR", "JPY")));
+	
+	private final CSVFormat currencies = format("refdata/currency.csv", Arrays.asList("CURRENCY", "NAME"), Arrays.asList(
+			Arrays.asList("EUR", "USD", "JPY", "GBP"),
+			Arrays.asList("Euro", "Dollar", "Yen", "Pound")));
+	
+	@Test
+	public void shouldDetectReferenceOnUniqueKeyFromValues() {
+		List<StoreReference> references = StarSchemaPlanner.plan("trades", trades, Collections.emptyMap(), Arrays.asList(currencies));
+		assertThat(references, hasSize(1));
+		assertThat(references.get(0).getFieldMapping(), equalTo(ImmutableMap.of("Ccy", "CURRENCY")));
+		assertThat(references.get(0).getAttributes(), equalTo(ImmutableMap.of("NAME", "NAME")));
+		assertThat(references.get(0).getExpression("NAME"), equalTo("trades_to_currency/NAME"));
+	}
+	
+	@Test
+	public void shouldNotReferenceWhenDisabled() {
+		List<StoreReference> references = StarSchemaPlanner.plan("trades", trades, ImmutableMap.of("currency", "NONE"), Arrays.asList(currencies));
+		assertThat(references, empty());
+	}
+	
+	@Test
+	public void shouldPrefixAttributesSharedByTwoReferences() {
+		CSVFormat desks = format("refdata/desk.csv", Arrays.asList("Desk", "NAME", "Region"), Arrays.asList(
+				Arrays.asList("D1", "D2", "D3"),
+				Arrays.asList("Rates", "Credit", "Equity"),
+				Arrays.asList("EMEA", "AMER", "APAC")));
+		CSVFormat deskTrades = format("trades.csv", Arrays.asList("TradeId", "Ccy", "Desk"), Arrays.asList(
+				Arrays.asList("T1", "T2", "T3", "T4"),
+				Arrays.asList("EUR", "USD", "EUR", "JPY"),
+				Arrays.asList("D1", "D2", "D1", "D3")));
+
+		List<StoreReference> references = StarSchemaPlanner.plan("trades", deskTrades, Collections.emptyMap(), Arrays.asList(currencies, desks));
+		assertThat(references, hasSize(2));
+		assertThat(references.get(0).getAttributes(), equalTo(ImmutableMap.of("NAME", "currency_NAME")));
+		assertThat(references.get(1).getAttributes(), equalTo(ImmutableMap.of("NAME", "desk_NAME", "Region", "Region")));
+	}
+}
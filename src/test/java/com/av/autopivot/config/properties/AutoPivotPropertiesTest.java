@@ -9,35 +9,41 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.StringReader;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Properties;
 
+import org.junit.Rule;
 import org.junit.Test;
-import org.junit.runner.RunWith;
-import org.mockito.Mockito;
-import org.powermock.api.mockito.PowerMockito;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
+import org.junit.rules.TemporaryFolder;
 
 import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo;
 import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.AGGREGATE_PROVIDER_TYPE;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.MEASURE;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.MEASURE_PROFILE;
 import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
+import com.av.autopivot.config.properties.AutoPivotProperties.OrderedProperties;
 import com.av.autopivot.config.properties.AutoPivotProperties.RefDataInfo;
 import com.google.common.base.Strings;
 import com.quartetfs.fwk.QuartetRuntimeException;
 
-@PrepareForTest({ AutoPivotProperties.class, FileInputStream.class })
-@RunWith(PowerMockRunner.class)
 public class AutoPivotPropertiesTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
 	@Test(expected = QuartetRuntimeException.class)
 	public void shouldThrowQuartetRuntimeExceptionWhenPropertyFileIsNotFound() throws Exception {
-		PowerMockito.whenNew(FileInputStream.class)
-					.withArguments(Mockito.anyString())
-					.thenThrow(new FileNotFoundException());
-		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
-		autoPivotProperties.autoPivotProperties();
+		String missingFile = folder.getRoot().toPath().resolve("missing.properties").toString();
+		System.setProperty(AutoPivotProperties.CONFIG_FILE, missingFile);
+		try {
+			AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+			autoPivotProperties.autoPivotProperties();
+		} finally {
+			System.clearProperty(AutoPivotProperties.CONFIG_FILE);
+		}
 	}
 	
 	@Test
@@ -212,6 +218,84 @@ public class AutoPivotPropertiesTest {
 		assertNull(dataInfo.getPivotCacheSize());
 	}
 	
+	@Test
+	public void shouldCachePostProcessedMeasuresWhenCacheMeasuresIsUndefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY, 
+																	DataInfo.DATA_INFO_PIVOT_CACHE_SIZE,
+																	"100"));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getPivotCacheMeasures(), equalTo(APropertyInfo.CACHE_POST_PROCESSED_MEASURES));
+	}
+	
+	@Test
+	public void shouldReturnCacheMeasuresWhenPropertyIsDefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY, 
+																	DataInfo.DATA_INFO_PIVOT_CACHE_MEASURES,
+																	" .*\\.STD "));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getPivotCacheMeasures(), equalTo(".*\\.STD"));
+	}
+
+	@Test
+	public void shouldReturnDistinctCountPrecisionWhenPropertyIsDefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY,
+																	DataInfo.DATA_INFO_DISTINCT_COUNT_PRECISION,
+																	" 14 "));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getDistinctCountPrecision(), equalTo(14));
+	}
+
+	@Test
+	public void shouldStartCubeWithManagerWhenLazyStartIsUndefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY,
+																	"dummyKey",
+																	"dummyValue"));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertFalse(dataInfo.isPivotLazyStart());
+	}
+
+	@Test
+	public void shouldReturnLazyStartWhenPropertyIsDefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY,
+																	DataInfo.DATA_INFO_PIVOT_LAZY_START,
+																	" true "));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.isPivotLazyStart(), equalTo(true));
+	}
+
+	@Test
+	public void shouldLoadAtStartupWhenLazyLoadIsUndefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY,
+																	"dummyKey",
+																	"dummyValue"));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertFalse(dataInfo.isLazyLoad());
+		assertThat(dataInfo.getLazyLoadIdleTimeout(), equalTo(APropertyInfo.DEFAULT_LAZY_LOAD_IDLE_TIMEOUT));
+	}
+
+	@Test
+	public void shouldReturnLazyLoadIdleTimeoutWhenPropertyIsDefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY,
+																	DataInfo.DATA_INFO_LAZY_LOAD_IDLE_TIMEOUT,
+																	" 600 "));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getLazyLoadIdleTimeout(), equalTo(600));
+	}
+
 	@Test
 	public void shouldReturnDefaultWhenAggregateProviderTypeIsUndefined() throws ParseException {
 		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
@@ -235,4 +319,95 @@ public class AutoPivotPropertiesTest {
 		assertNotNull(dataInfo.getAggregateProviderType());
 		assertThat(dataInfo.getAggregateProviderType(), equalTo(AGGREGATE_PROVIDER_TYPE.BITMAP));
 	}
+	
+	@Test
+	public void shouldReturnEmptyAnalysisHierarchiesWhenPropertyIsUndefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY, 
+																	"dummyKey",
+																	"dummyValue"));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getAnalysisHierarchies().entrySet(), hasSize(0));
+	}
+	
+	@Test
+	public void shouldGroupAnalysisHierarchyPropertiesByHierarchyName() throws ParseException {
+		Properties props = new Properties();
+		String root = DataInfo.DATA_INFO_ROOT_KEY + "test." + APropertyInfo.DATA_INFO_ANALYSIS_HIERARCHY;
+		props.put(root + ".FxPair.store", "fxrate");
+		props.put(root + ".FxPair.levelFields", "CUR,FOREIGN_CUR");
+		props.put(root + ".Group.store", "currency_group");
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(props);
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getAnalysisHierarchies().entrySet(), hasSize(2));
+		assertThat(dataInfo.getAnalysisHierarchies().get("FxPair").getProperty("store"), equalTo("fxrate"));
+		assertThat(dataInfo.getAnalysisHierarchies().get("FxPair").getProperty("levelFields"), equalTo("CUR,FOREIGN_CUR"));
+		assertThat(dataInfo.getAnalysisHierarchies().get("Group").getProperty("store"), equalTo("currency_group"));
+	}
+	
+	@Test
+	public void shouldReturnDefaultMeasuresWhenMeasureProfileIsUndefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY, 
+																	"dummyKey",
+																	"dummyValue"));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getMeasureProfile(), equalTo(APropertyInfo.DEFAULT_MEASURE_PROFILE));
+		assertThat(dataInfo.getMeasures(), equalTo(APropertyInfo.DEFAULT_MEASURE_PROFILE.getMeasures()));
+	}
+	
+	@Test
+	public void shouldReturnProfileMeasuresWhenMeasureProfileIsDefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY, 
+																	DataInfo.DATA_INFO_MEASURE_PROFILE,
+																	"minimal"));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getMeasureProfile(), equalTo(MEASURE_PROFILE.MINIMAL));
+		assertThat(dataInfo.getMeasures(), equalTo(EnumSet.of(MEASURE.SUM)));
+	}
+	
+	@Test
+	public void shouldReturnCustomMeasuresWhenMeasureProfileIsCustom() throws ParseException {
+		Properties props = createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY, DataInfo.DATA_INFO_MEASURE_PROFILE, "CUSTOM");
+		props.put(DataInfo.DATA_INFO_ROOT_KEY + "test." + DataInfo.DATA_INFO_MEASURES, "SUM, std");
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(props);
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getMeasures(), equalTo(EnumSet.of(MEASURE.SUM, MEASURE.STD)));
+	}
+	
+	@Test
+	public void shouldReturnColumnMeasuresWhenPropertyIsDefined() throws ParseException {
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(createPropertyForTest(DataInfo.DATA_INFO_ROOT_KEY, 
+																	DataInfo.DATA_INFO_COLUMN_MEASURES + ".Price.*",
+																	"MINIMAL,MAX"));
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertNotNull(dataInfo);
+		assertThat(dataInfo.getColumnMeasures().entrySet(), hasSize(1));
+		assertThat(dataInfo.getColumnMeasures(), hasEntry(equalTo("Price.*"), equalTo(EnumSet.of(MEASURE.SUM, MEASURE.MAX))));
+	}
+	
+	@Test
+	public void shouldKeepFileOrderOfColumnMeasures() throws Exception {
+		String prefix = DataInfo.DATA_INFO_ROOT_KEY + "test." + DataInfo.DATA_INFO_COLUMN_MEASURES + ".";
+		Properties props = new OrderedProperties();
+		props.load(new StringReader(prefix + "Price_EUR=MINIMAL\n" + prefix + "Price.*=STANDARD\n" + prefix + "Amount=MINIMAL\n"));
+		AutoPivotProperties autoPivotProperties = new AutoPivotProperties();
+		autoPivotProperties.loadConfiguration(props);
+		DataInfo dataInfo = autoPivotProperties.getDataInfoMap().get("test");
+		assertThat(new ArrayList<>(dataInfo.getColumnMeasures().keySet()), equalTo(Arrays.asList("Price_EUR", "Price.*", "Amount")));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldThrowIllegalArgumentExceptionWhenMeasureIsUnknown() {
+		APropertyInfo.parseMeasures("SUM,MEDIAN");
+	}
 }
@@ -0,0 +1,92 @@
+package com.av.autopivot.config.source;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.av.autopivot.AutoPivot;
+import com.qfs.store.query.IDictionaryCursor;
+import com.qfs.store.record.IRecordReader;
+
+/**
+ * Load a dataset normalized into a dimension store and read back
+ * the records of the data store and of the dimension store.
+ */
+public class DimensionStorePublisherTest {
+
+	@ClassRule
+	public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+	private static AutoPivot autoPivot;
+
+	@BeforeClass
+	public static void start() throws IOException {
+		Path trades = FOLDER.newFile("trades.csv").toPath();
+		Files.write(trades, Arrays.asList(
+				"TradeId;Book;Desk;pnl",
+				"T1;B1;DeskA;1.5",
+				"T2;B2;DeskA;2.5",
+				"T3;B1;DeskA;4.0"));
+
+		Properties properties = new Properties();
+		properties.setProperty("autopivot.discover.data.trades.fileName", trades.toString());
+		properties.setProperty("autopivot.discover.data.trades.dimensionStore.book.key", "Book");
+		properties.setProperty("autopivot.discover.data.trades.dimensionStore.book.fields", "Desk");
+		autoPivot = AutoPivot.start(properties);
+	}
+
+	@AfterClass
+	public static void stop() {
+		if (autoPivot != null) {
+			autoPivot.close();
+		}
+	}
+
+	/** @return the records of a store, one list of values per record */
+	private static List<List<Object>> readStore(String storeName, String... fields) {
+		IDictionaryCursor cursor = autoPivot.getDatastore().getHead().getQueryRunner()
+											.forStore(storeName)
+											.withoutCondition()
+											.selecting(Arrays.asList(fields))
+											.run();
+		List<List<Object>> records = new ArrayList<>();
+		while (cursor.hasNext()) {
+			cursor.next();
+			IRecordReader record = cursor.getRecord();
+			List<Object> values = new ArrayList<>();
+			for (int f = 0; f < fields.length; f++) {
+				values.add(record.read(f));
+			}
+			records.add(values);
+		}
+		return records;
+	}
+
+	@Test
+	public void shouldPublishTheKeysToTheDataStore() {
+		assertThat(readStore("trades", "TradeId", "Book"), containsInAnyOrder(
+				Arrays.<Object>asList("T1", "B1"),
+				Arrays.<Object>asList("T2", "B2"),
+				Arrays.<Object>asList("T3", "B1")));
+	}
+
+	@Test
+	public void shouldPublishEachKeyOnceToTheDimensionStore() {
+		assertThat(readStore("trades_book", "Book", "Desk"), containsInAnyOrder(
+				Arrays.<Object>asList("B1", "DeskA"),
+				Arrays.<Object>asList("B2", "DeskA")));
+	}
+}
@@ -0,0 +1,84 @@
+package com.av.autopivot.config.source;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.av.autopivot.config.properties.AutoPivotProperties.DataInfo;
+import com.av.autopivot.config.source.SourceConfig.DatasetSource;
+
+public class LazyDatasetLoaderTest {
+
+	/** Source counting the loads of the datasets instead of reading their files */
+	private static class CountingSourceConfig extends SourceConfig {
+
+		private int loadCount;
+
+		@Override
+		public DatasetSource loadDataset(String storeName, DataInfo dataInfo) {
+			loadCount++;
+			DatasetSource source = new DatasetSource(null);
+			source.addStoreName(storeName);
+			return source;
+		}
+	}
+
+	private final CountingSourceConfig sourceConfig = new CountingSourceConfig();
+
+	private final List<String> clearedStores = new ArrayList<>();
+
+	private final LazyDatasetLoader loader = new LazyDatasetLoader(sourceConfig, null, Collections.singletonMap("trades", createDataInfo(60))) {
+		@Override
+		protected void clear(List<String> storeNames) {
+			clearedStores.addAll(storeNames);
+		}
+	};
+
+	private static DataInfo createDataInfo(int idleTimeout) {
+		DataInfo dataInfo = new DataInfo();
+		dataInfo.setProperty("trades", DataInfo.DATA_INFO_ROOT_KEY + "trades." + DataInfo.DATA_INFO_LAZY_LOAD, "true");
+		dataInfo.setProperty("trades", DataInfo.DATA_INFO_ROOT_KEY + "trades." + DataInfo.DATA_INFO_LAZY_LOAD_IDLE_TIMEOUT, Integer.toString(idleTimeout));
+		return dataInfo;
+	}
+
+	@After
+	public void stop() {
+		loader.stop();
+	}
+
+	@Test
+	public void shouldLoadOnTheFirstQueryOnly() {
+		assertThat(loader.isLoaded("trades"), equalTo(false));
+
+		loader.beforeQuery("trades", "SELECT FROM [trades]");
+		loader.beforeQuery("trades", "SELECT FROM [trades]");
+
+		assertThat(loader.isLoaded("trades"), equalTo(true));
+		assertThat(sourceConfig.loadCount, equalTo(1));
+		assertThat(loader.touch("risks"), equalTo(false));
+	}
+
+	@Test
+	public void shouldEvictAfterTheIdleTimeoutAndReload() {
+		loader.touch("trades");
+
+		loader.evictIdle(System.nanoTime() + TimeUnit.SECONDS.toNanos(30));
+		assertThat(loader.isLoaded("trades"), equalTo(true));
+
+		loader.evictIdle(System.nanoTime() + TimeUnit.SECONDS.toNanos(61));
+		assertThat(loader.isLoaded("trades"), equalTo(false));
+		assertThat(clearedStores, contains("trades"));
+
+		loader.beforeQuery("trades", "SELECT FROM [trades]");
+		assertThat(loader.isLoaded("trades"), equalTo(true));
+		assertThat(sourceConfig.loadCount, equalTo(2));
+	}
+}
@@ -0,0 +1,55 @@
+package com.av.autopivot.monitoring;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class IngestionMetricsTest {
+
+	@Test
+	public void shouldCountNullValuesAndPartitions() {
+		IngestionMetrics metrics = new IngestionMetrics("risks");
+		metrics.describe(Arrays.asList("Desk", "Quantity", "pnl"), "Quantity", 2);
+		metrics.addPublish(Arrays.asList(new Object[] { "A", 1, null },
+										 new Object[] { null, 2, 1.5d },
+										 new Object[] { "B", 3, null }), 1000000L);
+		
+		Map<String, Long> nulls = new HashMap<>();
+		nulls.put("Desk", 1L);
+		nulls.put("pnl", 2L);
+		assertThat(metrics.getNullValues(), equalTo(nulls));
+		assertThat(metrics.getPublishedTuples(), equalTo(3L));
+		assertThat(metrics.getPartitionField(), equalTo("Quantity"));
+		assertThat(metrics.getPartitionTuples().get(0), equalTo(1L));
+		assertThat(metrics.getPartitionTuples().get(1), equalTo(2L));
+	}
+	
+	@Test
+	public void shouldIgnorePartitionsOfUnpartitionedStores() {
+		IngestionMetrics metrics = new IngestionMetrics("fxrate");
+		metrics.describe(Arrays.asList("CUR", "RATE"), null, 4);
+		metrics.addPublish(Collections.singletonList(new Object[] { "EUR", 1.1d }), 1000L);
+		assertThat(metrics.getPartitionField(), equalTo(null));
+		assertThat(metrics.getPartitionTuples().isEmpty(), equalTo(true));
+	}
+	
+	@Test
+	public void shouldComputePercentilesWithinABucket() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(1500000L); // 1.5 ms
+		}
+		histogram.record(100000000L); // 100 ms
+		assertThat(histogram.getCount(), equalTo(100L));
+		assertThat(histogram.getPercentileMillis(50d), closeTo(2.048d, 1e-9));
+		assertThat(histogram.getPercentileMillis(100d), closeTo(100d, 1e-9));
+		assertThat(histogram.getMaxMillis(), closeTo(100d, 1e-9));
+	}
+}
@@ -0,0 +1,81 @@
+package com.av.autopivot.monitoring;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.av.autopivot.StoreInfo;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.AGGREGATE_PROVIDER_TYPE;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.COLUMN_ROLE;
+import com.av.autopivot.config.properties.AutoPivotProperties.APropertyInfo.MEASURE;
+import com.av.autopivot.monitoring.MemoryReport.CUBE_ITEM;
+import com.av.autopivot.monitoring.MemoryReport.STORE_ITEM;
+
+public class MemoryReportTest {
+
+	private static final long MB = 1L << 20;
+
+	private static MemoryReport createReport() {
+		StoreInfo risks = new StoreInfo("risks",
+										null,
+										Arrays.asList("AsOfDate", "TradeId", "Comment", "Strike", "pnl"),
+										Arrays.asList("LocalDate[yyyy-MM-dd]", "String", "String", "double", "double"),
+										1000,
+										AGGREGATE_PROVIDER_TYPE.BITMAP);
+		risks.setColumnRoles(Arrays.asList(COLUMN_ROLE.LEVEL, COLUMN_ROLE.LEVEL, COLUMN_ROLE.FIELD, COLUMN_ROLE.LEVEL, COLUMN_ROLE.MEASURE));
+		risks.setColumnMeasures(Collections.singletonMap("Strike", EnumSet.noneOf(MEASURE.class)));
+		return new MemoryReport(Collections.singletonList(risks), Collections.emptyList());
+	}
+
+	@Test
+	public void shouldMapFieldsToTheirColumn() {
+		MemoryReport report = createReport();
+		assertThat(report.getColumn("risks", "AsOfDate.YEAR"), equalTo("AsOfDate"));
+		assertThat(report.getColumn("risks", "TradeId"), equalTo("TradeId"));
+		assertThat(report.getColumn("risks", "Unknown"), equalTo(null));
+		assertThat(report.getColumn("fxrate", "CUR"), equalTo(null));
+	}
+
+	@Test
+	public void shouldSumTheMemoryOfStoresAndCubes() {
+		MemoryReport report = createReport();
+		report.addStoreMemory("risks", "pnl", STORE_ITEM.CHUNKS, 10L);
+		report.addStoreMemory("risks", "pnl", STORE_ITEM.CHUNKS, 5L);
+		report.addStoreMemory("risks", null, STORE_ITEM.INDEX, 3L);
+		report.addCubeMemory("risks", "Desk", CUBE_ITEM.HIERARCHIES, 7L);
+		report.addCubeMemory("risks", null, CUBE_ITEM.AGGREGATE_PROVIDER, 2L);
+		assertThat(report.getStoreBytes().get("risks"), equalTo(18L));
+		assertThat(report.getFieldBytes("risks").get("pnl").get(STORE_ITEM.CHUNKS), equalTo(15L));
+		assertThat(report.getFieldBytes("risks").get(MemoryReport.STORE_FIELD).get(STORE_ITEM.INDEX), equalTo(3L));
+		assertThat(report.getCubeBytes().get("risks"), equalTo(9L));
+	}
+
+	@Test
+	public void shouldSuggestSettingsForExpensiveFields() {
+		MemoryReport report = createReport();
+		report.addStoreMemory("risks", "TradeId", STORE_ITEM.DICTIONARY, 300 * MB);
+		report.addStoreMemory("risks", "TradeId", STORE_ITEM.CHUNKS, 50 * MB);
+		report.addStoreMemory("risks", "Comment", STORE_ITEM.CHUNKS, 200 * MB);
+		report.addStoreMemory("risks", "Strike", STORE_ITEM.CHUNKS, 200 * MB);
+		report.addStoreMemory("risks", "pnl", STORE_ITEM.CHUNKS, 200 * MB);
+		report.addStoreMemory("risks", "AsOfDate", STORE_ITEM.CHUNKS, 50 * MB);
+		report.addCubeMemory("risks", null, CUBE_ITEM.AGGREGATE_PROVIDER, 100 * MB);
+		report.addCubeMemory("risks", null, CUBE_ITEM.AGGREGATES_CACHE, 1 * MB);
+
+		List<String> suggestions = report.getSuggestions();
+		assertThat(suggestions.size(), equalTo(4));
+		assertThat(suggestions.get(0), containsString("autopivot.discover.data.risks.dimensionStore.<name>.fields"));
+		// The aggregated pnl is kept as double, only the Strike level can be narrowed
+		assertThat(suggestions.get(1), containsString("Field Strike"));
+		assertThat(suggestions.get(1), containsString("autopivot.discover.data.risks.decimalPrecision=6"));
+		assertThat(suggestions.get(2), containsString("autopivot.discover.data.risks.columnRole.TradeId=FIELD"));
+		assertThat(suggestions.get(3), containsString("autopivot.discover.data.risks.measureProfile"));
+	}
+}
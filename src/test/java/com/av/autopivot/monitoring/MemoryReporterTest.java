@@ -0,0 +1,35 @@
+package com.av.autopivot.monitoring;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.av.autopivot.monitoring.MemoryReport.CUBE_ITEM;
+
+public class MemoryReporterTest {
+
+	/** Classify the statistics of a path of the cube statistic tree, from the cube to the leaf */
+	private static CUBE_ITEM classify(String... names) {
+		CUBE_ITEM item = CUBE_ITEM.OTHER;
+		for (String name : names) {
+			item = MemoryReporter.classifyCube(name, item);
+		}
+		return item;
+	}
+
+	@Test
+	public void shouldClassifyTheCubeStatisticsByName() {
+		assertThat(classify("risks", "hierarchies", "Desk"), equalTo(CUBE_ITEM.HIERARCHIES));
+		assertThat(classify("risks", "provider", "chunks"), equalTo(CUBE_ITEM.AGGREGATE_PROVIDER));
+		assertThat(classify("risks", "aggregatesCache"), equalTo(CUBE_ITEM.AGGREGATES_CACHE));
+		assertThat(classify("risks", "version"), equalTo(CUBE_ITEM.OTHER));
+	}
+
+	@Test
+	public void shouldKeepTheComponentsOfAProviderInTheProvider() {
+		assertThat(classify("risks", "provider", "cache"), equalTo(CUBE_ITEM.AGGREGATE_PROVIDER));
+		assertThat(classify("risks", "partial provider", "point index", "hierarchy"), equalTo(CUBE_ITEM.AGGREGATE_PROVIDER));
+		assertThat(classify("risks", "Cache hierarchy"), equalTo(CUBE_ITEM.OTHER));
+	}
+}
@@ -0,0 +1,45 @@
+package com.av.autopivot.monitoring;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import com.av.autopivot.monitoring.StartupTracer.Event;
+import com.av.autopivot.monitoring.StartupTracer.Span;
+
+public class StartupTracerTest {
+
+	@Test
+	public void shouldNestTheSpansOfTheSameThread() {
+		try (Span load = StartupTracer.begin("load", "test.risks")) {
+			try (Span discover = StartupTracer.begin("discover", "test.risks.csv")) {
+				// discovered
+			}
+		}
+		List<Event> events = StartupTracer.getEvents().stream()
+												  .filter(event -> event.getName().startsWith("test."))
+												  .collect(Collectors.toList());
+		assertThat(events.size(), equalTo(2));
+		Event discover = events.get(0);
+		Event load = events.get(1);
+		assertThat(discover.getCategory(), equalTo("discover"));
+		assertThat(load.getThreadId(), equalTo(discover.getThreadId()));
+		assertThat(load.getStartMicros() <= discover.getStartMicros(), equalTo(true));
+		assertThat(load.getStartMicros() + load.getDurationMicros() >= discover.getStartMicros() + discover.getDurationMicros(), equalTo(true));
+	}
+	
+	@Test
+	public void shouldWriteChromeTraceEvents() {
+		String json = StartupTracer.toJson(Arrays.asList(new Event("bean", "datastore", 1500L, 250L, 7L, "main"),
+														 new Event("load", "risks \"2018\"", 2000L, 100L, 7L, "main")));
+		assertThat(json, containsString("{\"name\":\"datastore\",\"cat\":\"bean\",\"ph\":\"X\",\"ts\":1500,\"dur\":250,\"pid\":1,\"tid\":7}"));
+		assertThat(json, containsString("\"name\":\"risks \\\"2018\\\"\""));
+		assertThat(json, containsString("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":7,\"args\":{\"name\":\"main\"}}"));
+	}
+}
@@ -0,0 +1,50 @@
+package com.av.autopivot.workload;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.av.autopivot.workload.PartialProviderAdvisor.Suggestion;
+import com.av.autopivot.workload.QueryWorkloadLog.QueryShape;
+
+public class PartialProviderAdvisorTest {
+
+	private static QueryShape shape(List<String> levels, String... measures) {
+		return new QueryShape(new TreeSet<>(levels), new TreeSet<>(Arrays.asList(measures)));
+	}
+	
+	@Test
+	public void shouldServeSubsetCombinationsWithTheHottestProvider() {
+		Map<QueryShape, Integer> workload = new LinkedHashMap<>();
+		workload.put(shape(Arrays.asList("Desk"), "PnL.SUM"), 5);
+		workload.put(shape(Arrays.asList("AsOfDate", "Desk"), "PnL.SUM"), 20);
+		workload.put(shape(Arrays.asList("Currency"), "Notional.SUM"), 3);
+		
+		List<Suggestion> suggestions = PartialProviderAdvisor.advise(workload, 1, 4);
+		
+		assertThat(suggestions, hasSize(1));
+		assertThat(suggestions.get(0).getLevels(), contains("AsOfDate", "Desk"));
+		assertThat(suggestions.get(0).getHits(), equalTo(25));
+	}
+	
+	@Test
+	public void shouldSkipCombinationsWithTooManyLevels() {
+		Map<QueryShape, Integer> workload = new LinkedHashMap<>();
+		workload.put(shape(Arrays.asList("A", "B", "C"), "PnL.SUM"), 50);
+		workload.put(shape(Arrays.asList("Desk"), "PnL.SUM", "Notional.SUM"), 2);
+		
+		List<Suggestion> suggestions = PartialProviderAdvisor.advise(workload, 3, 2);
+		
+		assertThat(suggestions, hasSize(1));
+		assertThat(suggestions.get(0).getMeasures(), contains("Notional.SUM", "PnL.SUM"));
+	}
+}
@@ -0,0 +1,67 @@
+package com.av.autopivot.workload;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.av.autopivot.workload.QueryWorkloadLog.QueryShape;
+
+public class QueryWorkloadLogTest {
+
+	private static QueryShape recordMdx(String cube, String mdx) throws IOException {
+		Path path = Files.createTempFile("workload", ".log");
+		try {
+			try (QueryWorkloadLog log = new QueryWorkloadLog(path)) {
+				log.beforeQuery(cube, mdx);
+			}
+			Map<QueryShape, Integer> workload = QueryWorkloadLog.load(path, cube);
+			assertThat(workload.size(), equalTo(1));
+			return workload.keySet().iterator().next();
+		} finally {
+			Files.delete(path);
+		}
+	}
+
+	@Test
+	public void shouldRecordHierarchiesAndMeasures() throws IOException {
+		QueryShape shape = recordMdx("risks", "SELECT [Measures].[pnl.SUM] ON 0, [Desk].[Desk].Members ON 1 FROM [risks]");
+
+		assertThat(shape.getLevels(), contains("Desk"));
+		assertThat(shape.getMeasures(), contains("pnl.SUM"));
+	}
+
+	@Test
+	public void shouldSkipTheMembersOfAPath() throws IOException {
+		QueryShape shape = recordMdx("risks", "SELECT NON EMPTY [Measures].[pnl.SUM] ON 0,"
+				+ " {[Desk].[Desk].[AllMember].[DeskA], [Currency].[Currency].[AllMember].&[EUR]} ON 1"
+				+ " FROM [risks] WHERE [AsOfDate].[AsOfDate].[AllMember].[2018-01-01]");
+
+		assertThat(shape.getLevels(), contains("Currency", "Desk"));
+		assertThat(shape.getMeasures(), contains("pnl.SUM"));
+	}
+
+	@Test
+	public void shouldOnlyRecordTheLevelsOfTheAxes() throws IOException {
+		QueryShape shape = recordMdx("risks", "WITH SET [Top Desks] AS TopCount([Book].[Book].[Book].Members, 3, [Measures].[pnl.SUM])"
+				+ " MEMBER [Measures].[pnl.EUR] AS [Measures].[pnl.SUM] * 0.9"
+				+ " SELECT {[Measures].[pnl.EUR]} ON 0, [Top Desks] * [Currency].[Currency].Members ON 1"
+				+ " FROM (SELECT [Desk].[Desk].[AllMember].[DeskA] ON 0 FROM [risks])"
+				+ " WHERE ([AsOfDate].[AsOfDate].[AllMember].[2018-01-01], [Measures].[pnl.MAX])");
+
+		assertThat(shape.getLevels(), contains("Currency"));
+		assertThat(shape.getMeasures(), contains("pnl.EUR", "pnl.MAX"));
+	}
+
+	@Test
+	public void shouldReadTheCubeOfTheQuery() {
+		assertThat(QueryInterceptorBeanPostProcessor.getCubeName("SELECT [Measures].[contributors.COUNT] ON 0 FROM [risks]"), equalTo("risks"));
+		assertThat(QueryInterceptorBeanPostProcessor.getCubeName("SELECT FROM (SELECT [Desk].[Desk].[AllMember].[DeskA] ON 0 from [risks])"), equalTo("risks"));
+	}
+}
@@ -0,0 +1,72 @@
+package com.av.pivot.aggregation;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class HyperLogLogTest {
+
+	@Test
+	public void shouldReturnZeroWhenSketchIsEmpty() {
+		HyperLogLog sketch = new HyperLogLog(12);
+		assertThat(sketch.estimate(), equalTo(0L));
+	}
+	
+	@Test
+	public void shouldCountSmallCardinalitiesExactly() {
+		HyperLogLog sketch = new HyperLogLog(12);
+		for (int i = 0; i < 100; i++) {
+			sketch.add("trade-" + (i % 10));
+		}
+		sketch.add(null);
+		assertThat(sketch.estimate(), equalTo(10L));
+	}
+	
+	@Test
+	public void shouldEstimateLargeCardinalitiesWithinFivePercent() {
+		HyperLogLog sketch = new HyperLogLog(12);
+		for (int i = 0; i < 200000; i++) {
+			sketch.add("trade-" + i);
+		}
+		assertThat(sketch.estimate(), allOf(greaterThan(190000L), lessThan(210000L)));
+	}
+	
+	@Test
+	public void shouldEstimateUnionWhenSketchesAreMerged() {
+		HyperLogLog left = new HyperLogLog(12);
+		HyperLogLog right = new HyperLogLog(12);
+		HyperLogLog all = new HyperLogLog(12);
+		for (int i = 0; i < 50000; i++) {
+			left.add(i);
+			right.add(i + 25000);
+			all.add(i);
+			all.add(i + 25000);
+		}
+		left.merge(right);
+		assertThat(left.estimate(), equalTo(all.estimate()));
+	}
+	
+	@Test
+	public void shouldNotChangeOriginalWhenCopyIsUpdated() {
+		HyperLogLog sketch = new HyperLogLog(10);
+		sketch.add("EUR");
+		HyperLogLog copy = new HyperLogLog(sketch);
+		copy.add("USD");
+		assertThat(sketch.estimate(), equalTo(1L));
+		assertThat(copy.estimate(), equalTo(2L));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldThrowIllegalArgumentExceptionWhenPrecisionsDiffer() {
+		new HyperLogLog(10).merge(new HyperLogLog(12));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldThrowIllegalArgumentExceptionWhenPrecisionIsOutOfBounds() {
+		new HyperLogLog(2);
+	}
+}
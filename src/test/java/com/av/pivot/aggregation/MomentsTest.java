@@ -0,0 +1,124 @@
+package com.av.pivot.aggregation;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.av.pivot.aggregation.MomentsAggregateFunction.Moments;
+
+public class MomentsTest {
+
+	/** Large offset, on which the E[x²]-E[x]² form loses all its digits */
+	protected static final double OFFSET = 1e9;
+
+	protected static List<Double> createValues(int count, long seed) {
+		Random random = new Random(seed);
+		List<Double> values = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			values.add(OFFSET + random.nextGaussian() * 10d);
+		}
+		return values;
+	}
+
+	/** @return population variance computed in two passes */
+	protected static double twoPassVariance(List<Double> values) {
+		double sum = 0d;
+		for (double value : values) {
+			sum += value;
+		}
+		double mean = sum / values.size();
+		double m2 = 0d;
+		for (double value : values) {
+			m2 += (value - mean) * (value - mean);
+		}
+		return m2 / values.size();
+	}
+
+	protected static double mean(List<Double> values) {
+		double sum = 0d;
+		for (double value : values) {
+			sum += value - OFFSET;
+		}
+		return OFFSET + sum / values.size();
+	}
+
+	protected static Moments accumulate(List<Double> values) {
+		Moments moments = new Moments();
+		for (double value : values) {
+			moments.add(1L, value, 0d);
+		}
+		return moments;
+	}
+
+	@Test
+	public void shouldMatchTwoPassVarianceWhenValuesAreAdded() {
+		List<Double> values = createValues(10000, 1L);
+		Moments moments = accumulate(values);
+		assertThat(moments.getCount(), equalTo(10000L));
+		assertThat(moments.getMean(), closeTo(mean(values), 1e-6));
+		assertThat(moments.getVariance(), closeTo(twoPassVariance(values), 1e-6 * twoPassVariance(values)));
+	}
+
+	@Test
+	public void shouldMatchTwoPassVarianceWhenAggregatesAreMerged() {
+		List<Double> left = createValues(3000, 2L);
+		List<Double> right = createValues(7000, 3L);
+		Moments moments = accumulate(left);
+		Moments other = accumulate(right);
+		moments.add(other.count, other.mean, other.m2);
+
+		List<Double> all = new ArrayList<>(left);
+		all.addAll(right);
+		assertThat(moments.getCount(), equalTo(10000L));
+		assertThat(moments.getMean(), closeTo(mean(all), 1e-6));
+		assertThat(moments.getVariance(), closeTo(twoPassVariance(all), 1e-6 * twoPassVariance(all)));
+	}
+
+	@Test
+	public void shouldMatchTwoPassVarianceWhenValuesAreRemoved() {
+		List<Double> values = createValues(10000, 4L);
+		Moments moments = accumulate(values);
+		List<Double> remaining = new ArrayList<>();
+		for (int i = 0; i < values.size(); i++) {
+			if (i % 3 == 0) {
+				moments.remove(1L, values.get(i), 0d);
+			} else {
+				remaining.add(values.get(i));
+			}
+		}
+		assertThat(moments.getCount(), equalTo((long) remaining.size()));
+		assertThat(moments.getMean(), closeTo(mean(remaining), 1e-6));
+		assertThat(moments.getVariance(), closeTo(twoPassVariance(remaining), 1e-6 * twoPassVariance(remaining)));
+	}
+
+	@Test
+	public void shouldMatchTwoPassVarianceWhenMergedAggregateIsRemoved() {
+		List<Double> kept = createValues(6000, 5L);
+		List<Double> removed = createValues(4000, 6L);
+		Moments moments = accumulate(kept);
+		Moments other = accumulate(removed);
+		moments.add(other.count, other.mean, other.m2);
+		moments.remove(other.count, other.mean, other.m2);
+
+		assertThat(moments.getCount(), equalTo(6000L));
+		assertThat(moments.getMean(), closeTo(mean(kept), 1e-6));
+		assertThat(moments.getVariance(), closeTo(twoPassVariance(kept), 1e-6 * twoPassVariance(kept)));
+	}
+
+	@Test
+	public void shouldBeEmptyWhenAllValuesAreRemoved() {
+		List<Double> values = createValues(10, 7L);
+		Moments moments = accumulate(values);
+		for (double value : values) {
+			moments.remove(1L, value, 0d);
+		}
+		assertThat(moments.getCount(), equalTo(0L));
+		assertThat(moments.getVariance(), equalTo(0d));
+	}
+}
@@ -0,0 +1,110 @@
+package com.av.pivot.aggregation;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.av.pivot.aggregation.SumOrStringDoubleAggregateFunction.SumOrString;
+
+public class SumOrStringDoubleTest {
+
+	protected final SumOrStringDoubleAggregateFunction function = new SumOrStringDoubleAggregateFunction();
+
+	protected Object aggregate(Object... values) {
+		Object aggregate = null;
+		for (Object value : values) {
+			aggregate = function.aggregate(false, aggregate, value);
+		}
+		return aggregate;
+	}
+
+	protected static Object value(Object aggregate) {
+		return ((SumOrString) aggregate).getValue();
+	}
+
+	@Test
+	public void shouldSumNumbers() {
+		Object aggregate = aggregate(1d, 2d, 3.5d);
+		assertThat(value(aggregate), equalTo((Object) 6.5d));
+	}
+
+	@Test
+	public void shouldDisplayTheErrorOverTheSum() {
+		Object aggregate = aggregate(1d, "Exchange rate of [USD/EUR] not found.", 2d);
+		assertThat(value(aggregate), equalTo((Object) "Exchange rate of [USD/EUR] not found."));
+		assertThat(((SumOrString) aggregate).getSum(), equalTo(3d));
+	}
+
+	@Test
+	public void shouldDisplayTheSumOnceTheErrorIsRemoved() {
+		Object aggregate = aggregate(1d, "error", 2d);
+		aggregate = function.aggregate(true, aggregate, "error");
+		assertThat(value(aggregate), equalTo((Object) 3d));
+	}
+
+	@Test
+	public void shouldNotDisplayARemovedError() {
+		Object aggregate = aggregate(1d, "first", "second");
+		aggregate = function.aggregate(true, aggregate, "second");
+		assertThat(value(aggregate), equalTo((Object) "first"));
+	}
+
+	@Test
+	public void shouldMergeAndRemoveAggregates() {
+		Object main = aggregate(1d, "error");
+		Object other = aggregate(2d, "other error");
+		main = function.merge(false, main, function.cloneAggregate(other));
+		assertThat(((SumOrString) main).getErrorCount(), equalTo(2));
+		assertThat(value(main), equalTo((Object) "2 errors: error other error"));
+
+		main = function.merge(true, main, other);
+		assertThat(value(main), equalTo((Object) "error"));
+		assertThat(((SumOrString) main).getSum(), equalTo(1d));
+	}
+
+	@Test
+	public void shouldBeEmptyWhenAllContributionsAreRemoved() {
+		Object aggregate = aggregate(1d, "error");
+		aggregate = function.aggregate(true, aggregate, 1d);
+		aggregate = function.aggregate(true, aggregate, "error");
+		assertThat(aggregate, equalTo(null));
+	}
+
+	/** Contribute 1 and 2, remove 1, in the given order of the three updates */
+	protected Object applyInOrder(int... order) {
+		final boolean[] removals = { false, false, true };
+		final Object[] values = { 1d, 2d, 1d };
+		Object aggregate = null;
+		for (int update : order) {
+			aggregate = function.aggregate(removals[update], aggregate, values[update]);
+		}
+		return aggregate;
+	}
+
+	@Test
+	public void shouldKeepTheRemovalsWhateverTheOrder() {
+		final int[][] orders = { {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0} };
+		for (int[] order : orders) {
+			assertThat(value(applyInOrder(order)), equalTo((Object) 2d));
+		}
+	}
+
+	@Test
+	public void shouldKeepARemovedErrorUntilItIsContributed() {
+		Object aggregate = function.aggregate(true, null, "error");
+		aggregate = function.aggregate(false, aggregate, 1d);
+		assertThat(value(aggregate), equalTo((Object) 1d));
+
+		aggregate = function.aggregate(false, aggregate, "error");
+		aggregate = function.aggregate(true, aggregate, 1d);
+		assertThat(aggregate, equalTo(null));
+	}
+
+	@Test
+	public void shouldMergeARemovalIntoAnEmptyAggregate() {
+		Object removed = function.merge(true, null, aggregate(3d));
+		Object aggregate = function.merge(false, removed, aggregate(3d, 4d));
+		assertThat(value(aggregate), equalTo((Object) 4d));
+	}
+}